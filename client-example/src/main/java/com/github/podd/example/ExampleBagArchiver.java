@@ -0,0 +1,776 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jzlib.JZlib;
+
+/**
+ * Writes bag directories into compressed tar.gz or zip archives, so that fewer bytes are uploaded
+ * for each bag, using an {@link ExampleParallelDeflateOutputStream} to compress each archive on
+ * several threads.
+ * <p>
+ * Each archive contains the files of the bag inside a single directory with the name of the bag,
+ * as recommended for serialised bags, in the order of their paths so that the same bag always
+ * gives the same entries. Archives are named using the name of the bag followed by the extension
+ * of the format, so they are found by {@link ExampleDumpManifest#findForBag(Path)}, and are
+ * written to a temporary file and then moved into place, so an interrupted run never leaves a
+ * partial archive.
+ * <p>
+ * Tar archives use the ustar format, with pax headers for paths longer than 100 bytes and files
+ * larger than 8GB. Zip archives use zip64 records when they are needed, and the size and CRC of
+ * each entry are written into its local header after the entry is compressed, rather than in a
+ * data descriptor.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ExampleBagArchiver implements AutoCloseable
+{
+    /**
+     * The formats that bags can be archived in.
+     */
+    public enum Format
+    {
+        TAR_GZ(".tar.gz"),
+        
+        ZIP(".zip");
+        
+        private final String extension;
+        
+        private Format(final String extension)
+        {
+            this.extension = extension;
+        }
+        
+        /**
+         * Gets the format with the given name, which is the extension of the format without the
+         * leading dot, such as "tar.gz" or "zip".
+         * 
+         * @throws IllegalArgumentException
+         *             If there was no format with the given name.
+         */
+        public static Format fromName(final String name)
+        {
+            for(final Format nextFormat : Format.values())
+            {
+                if(nextFormat.extension.substring(1).equalsIgnoreCase(name.trim()))
+                {
+                    return nextFormat;
+                }
+            }
+            throw new IllegalArgumentException("Archive format was not supported: " + name + " "
+                    + Arrays.toString(Format.values()));
+        }
+        
+        /**
+         * @return The extension of archives in this format, including the leading dot.
+         */
+        public String getExtension()
+        {
+            return this.extension;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return this.extension.substring(1);
+        }
+    }
+    
+    /**
+     * The format that bags are archived in before they are uploaded if no format is set using
+     * {@link #PROP_FORMAT}, as only single files can be uploaded.
+     */
+    public static final Format DEFAULT_FORMAT = Format.TAR_GZ;
+    
+    /**
+     * The default compression level, which is the same as the default for gzip.
+     */
+    public static final int DEFAULT_LEVEL = 6;
+    
+    /**
+     * The property used to set the format that bags are archived in, such as "tar.gz" or "zip".
+     * Bags are not archived if this is not set, unless they are uploaded, in which case
+     * {@link #DEFAULT_FORMAT} is used.
+     */
+    public static final String PROP_FORMAT = "examplearchive.format";
+    
+    /**
+     * The property used to set the compression level, from 0 for no compression to 9 for the best
+     * compression.
+     */
+    public static final String PROP_LEVEL = "examplearchive.level";
+    
+    /**
+     * The property used to set the number of threads used to compress each archive, which
+     * defaults to the number of processors.
+     */
+    public static final String PROP_THREAD_COUNT = "examplearchive.threadcount";
+    
+    private static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+    
+    private static final int TAR_BLOCK_SIZE = 512;
+    
+    private static final int TAR_RECORD_SIZE = 20 * ExampleBagArchiver.TAR_BLOCK_SIZE;
+    
+    private static final int TAR_NAME_LENGTH = 100;
+    
+    /**
+     * The largest size that fits in the 11 octal digits of a tar header.
+     */
+    private static final long TAR_MAX_SIZE = 077777777777L;
+    
+    private static final long ZIP_MAX_32 = 0xFFFFFFFFL;
+    
+    private static final int ZIP_MAX_16 = 0xFFFF;
+    
+    /**
+     * Entries at least this large are written using zip64 sizes, leaving room for the compressed
+     * data to be larger than the uncompressed data.
+     */
+    private static final long ZIP64_THRESHOLD = ExampleBagArchiver.ZIP_MAX_32 - (ExampleBagArchiver.ZIP_MAX_32 >>> 8);
+    
+    private static final int ZIP_VERSION = 20;
+    
+    private static final int ZIP64_VERSION = 45;
+    
+    /**
+     * Marks names as UTF-8.
+     */
+    private static final int ZIP_FLAG_UTF8 = 0x0800;
+    
+    private static final int ZIP_METHOD_DEFLATED = 8;
+    
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    
+    /**
+     * The DOS date and time for the 1st of January 1980, which is the earliest that can be
+     * represented.
+     */
+    private static final int DOS_TIME_MINIMUM = (1 << 21) | (1 << 16);
+    
+    private static final int FILE_MODE = 0644;
+    
+    /**
+     * The details of an entry that was written to a zip archive, for the central directory.
+     */
+    private static final class ZipEntryRecord
+    {
+        private final byte[] name;
+        private final int dosTime;
+        private final long offset;
+        private final boolean zip64;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        
+        private ZipEntryRecord(final byte[] name, final int dosTime, final long offset, final boolean zip64)
+        {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.offset = offset;
+            this.zip64 = zip64;
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final Format format;
+    
+    private final int level;
+    
+    private final int threadCount;
+    
+    private final ExecutorService executor;
+    
+    /**
+     * @param format
+     *            The format to write archives in.
+     * @param level
+     *            The compression level, from 0 for no compression to 9 for the best compression.
+     * @param threadCount
+     *            The number of threads used to compress each archive.
+     */
+    public ExampleBagArchiver(final Format format, final int level, final int threadCount)
+    {
+        if(level < JZlib.Z_NO_COMPRESSION || level > JZlib.Z_BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Compression level must be from " + JZlib.Z_NO_COMPRESSION + " to "
+                    + JZlib.Z_BEST_COMPRESSION + ": " + level);
+        }
+        if(threadCount < 1)
+        {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        
+        this.format = format;
+        this.level = level;
+        this.threadCount = threadCount;
+        this.executor = Executors.newFixedThreadPool(threadCount);
+    }
+    
+    /**
+     * Writes the given bag directory into an archive next to it, replacing any existing archive.
+     * 
+     * @param bagDirectory
+     *            The directory of the bag.
+     * @return The location of the archive.
+     * @throws IOException
+     *             If the bag could not be read, or changed while it was being archived, or the
+     *             archive could not be written.
+     */
+    public Path archive(final Path bagDirectory) throws IOException
+    {
+        final Path archive = ExampleBagArchiver.getArchivePath(bagDirectory, this.format);
+        final String bagName = bagDirectory.getFileName().toString();
+        final Map<String, Path> files = ExampleBagArchiver.listFiles(bagDirectory);
+        
+        final long started = System.nanoTime();
+        final Path temporary = Files.createTempFile(archive.getParent(), archive.getFileName().toString(), ".tmp");
+        final long bytesIn;
+        try
+        {
+            try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                    final OutputStream output =
+                            new BufferedOutputStream(Channels.newOutputStream(channel),
+                                    ExampleBagArchiver.OUTPUT_BUFFER_SIZE);)
+            {
+                if(this.format == Format.ZIP)
+                {
+                    bytesIn = this.writeZip(bagName, files, channel, output);
+                }
+                else
+                {
+                    bytesIn = this.writeTarGz(bagName, files, output);
+                }
+            }
+            try
+            {
+                Files.move(temporary, archive, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(final AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+        
+        this.log.info("Archived bag: {} files={} bytes={} compressed={} millis={}", archive, files.size(), bytesIn,
+                Files.size(archive), (System.nanoTime() - started) / 1000000);
+        return archive;
+    }
+    
+    /**
+     * Stops the compression threads.
+     */
+    @Override
+    public void close()
+    {
+        this.executor.shutdownNow();
+    }
+    
+    private ExampleParallelDeflateOutputStream createDeflateStream(final OutputStream output)
+    {
+        // Allow each thread to have a block waiting to be written while it compresses the next one
+        return new ExampleParallelDeflateOutputStream(output, this.executor, this.level,
+                ExampleParallelDeflateOutputStream.DEFAULT_BLOCK_SIZE, this.threadCount * 2);
+    }
+    
+    /**
+     * Gets the location of the archive for the given bag directory, which is next to the
+     * directory.
+     */
+    public static Path getArchivePath(final Path bagDirectory, final Format format)
+    {
+        final Path absolute = bagDirectory.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName() + format.getExtension());
+    }
+    
+    /**
+     * @return The format that archives are written in.
+     */
+    public Format getFormat()
+    {
+        return this.format;
+    }
+    
+    /**
+     * Converts the given time to an MS-DOS date and time, with the date in the high 16 bits,
+     * using the local time zone as zip tools do.
+     */
+    private static int getDosTime(final long millis)
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        final int year = calendar.get(Calendar.YEAR);
+        if(year < 1980)
+        {
+            return ExampleBagArchiver.DOS_TIME_MINIMUM;
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+    
+    /**
+     * Checks whether the given file is a compressed archive, using its name.
+     */
+    public static boolean isArchive(final Path file)
+    {
+        final String fileName = file.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        for(final Format nextFormat : Format.values())
+        {
+            if(fileName.endsWith(nextFormat.getExtension()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Lists the regular files in the given directory and its subdirectories.
+     * 
+     * @return A map from the path of each file relative to the directory, using forward slashes,
+     *         to the file, sorted by the relative path.
+     */
+    private static Map<String, Path> listFiles(final Path directory) throws IOException
+    {
+        final Map<String, Path> results = new TreeMap<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                {
+                    if(attrs.isRegularFile())
+                    {
+                        results.put(directory.relativize(file).toString().replace('\\', '/'), file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        return results;
+    }
+    
+    /**
+     * Copies the given file into the given stream, checking that it has the expected size, which
+     * has already been written into a header.
+     */
+    private static void transferFile(final Path file, final long expectedSize,
+            final ExampleParallelDeflateOutputStream output) throws IOException
+    {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);)
+        {
+            final long transferred = output.transferFrom(channel);
+            if(transferred != expectedSize)
+            {
+                throw new IOException("File changed size while it was being archived: " + file + " expected="
+                        + expectedSize + " actual=" + transferred);
+            }
+        }
+    }
+    
+    private static ByteBuffer allocateLittleEndian(final int capacity)
+    {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    private static void write(final OutputStream output, final ByteBuffer buffer) throws IOException
+    {
+        output.write(buffer.array(), 0, buffer.position());
+    }
+    
+    /**
+     * Writes a pax extended header containing the given records, which are already formatted.
+     */
+    private static void writePaxHeader(final OutputStream output, final String records, final long mtime)
+        throws IOException
+    {
+        final byte[] content = records.getBytes(StandardCharsets.UTF_8);
+        ExampleBagArchiver.writeTarHeader(output, "././@PaxHeader", content.length, mtime, 'x');
+        output.write(content);
+        ExampleBagArchiver.writeTarPadding(output, content.length);
+    }
+    
+    /**
+     * Formats a pax record, which starts with its own length in bytes, including the length.
+     */
+    private static String formatPaxRecord(final String key, final String value)
+    {
+        final int contentLength = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = contentLength;
+        while(true)
+        {
+            final int nextLength = contentLength + Integer.toString(length).length();
+            if(nextLength == length)
+            {
+                return length + " " + key + "=" + value + "\n";
+            }
+            length = nextLength;
+        }
+    }
+    
+    /**
+     * Writes a ustar header for a file, or a pax header if the type is 'x'. Names which are too long
+     * are truncated, and sizes which are too large are written as zero, so they must also be given
+     * in a pax header.
+     */
+    private static void writeTarHeader(final OutputStream output, final String name, final long size,
+            final long mtime, final char type) throws IOException
+    {
+        final byte[] header = new byte[ExampleBagArchiver.TAR_BLOCK_SIZE];
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, ExampleBagArchiver.TAR_NAME_LENGTH));
+        ExampleBagArchiver.writeOctal(header, 100, 8, ExampleBagArchiver.FILE_MODE);
+        ExampleBagArchiver.writeOctal(header, 108, 8, 0);
+        ExampleBagArchiver.writeOctal(header, 116, 8, 0);
+        ExampleBagArchiver.writeOctal(header, 124, 12, size > ExampleBagArchiver.TAR_MAX_SIZE ? 0 : size);
+        ExampleBagArchiver.writeOctal(header, 136, 12, mtime);
+        header[156] = (byte)type;
+        System.arraycopy("ustar\00000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        
+        // The checksum is computed with the checksum field filled with spaces
+        Arrays.fill(header, 148, 156, (byte)' ');
+        long checksum = 0;
+        for(final byte nextByte : header)
+        {
+            checksum += nextByte & 0xFF;
+        }
+        ExampleBagArchiver.writeOctal(header, 148, 7, checksum);
+        output.write(header);
+    }
+    
+    /**
+     * Writes a zero padded octal number, followed by a NUL, into the given field of a tar header.
+     * 
+     * @throws IllegalArgumentException
+     *             If the number was negative or had too many digits for the field.
+     */
+    static void writeOctal(final byte[] header, final int offset, final int length, final long value)
+    {
+        final String octal = Long.toOctalString(value);
+        final int digits = length - 1;
+        if(value < 0 || octal.length() > digits)
+        {
+            throw new IllegalArgumentException("Value does not fit in a tar header field of " + length + " bytes: "
+                    + value);
+        }
+        for(int i = 0; i < digits; i++)
+        {
+            final int index = i - (digits - octal.length());
+            header[offset + i] = (byte)(index < 0 ? '0' : octal.charAt(index));
+        }
+        header[offset + digits] = 0;
+    }
+    
+    /**
+     * Pads the given amount of tar data to a whole number of blocks.
+     */
+    private static void writeTarPadding(final OutputStream output, final long length) throws IOException
+    {
+        final int remainder = (int)(length % ExampleBagArchiver.TAR_BLOCK_SIZE);
+        if(remainder > 0)
+        {
+            output.write(new byte[ExampleBagArchiver.TAR_BLOCK_SIZE - remainder]);
+        }
+    }
+    
+    /**
+     * Writes a gzip member containing a tar archive of the given files.
+     * 
+     * @return The number of bytes in the tar archive.
+     */
+    private long writeTarGz(final String bagName, final Map<String, Path> files, final OutputStream output)
+        throws IOException
+    {
+        // Gzip header, with no modification time and the operating system set to unknown
+        final int extraFlags =
+                this.level == JZlib.Z_BEST_COMPRESSION ? 2 : this.level == JZlib.Z_BEST_SPEED ? 4 : 0;
+        output.write(new byte[] { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, (byte)extraFlags, (byte)0xff });
+        
+        final ExampleParallelDeflateOutputStream tar = this.createDeflateStream(output);
+        for(final Map.Entry<String, Path> nextFile : files.entrySet())
+        {
+            final Path file = nextFile.getValue();
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            final String name = bagName + "/" + nextFile.getKey();
+            final long size = attributes.size();
+            // Modification times before 1970, or too late for the header, are clamped to the range
+            // of the header field, which has the same width as the size field
+            final long mtime =
+                    Math.max(0, Math.min(attributes.lastModifiedTime().toMillis() / 1000,
+                            ExampleBagArchiver.TAR_MAX_SIZE));
+            
+            final StringBuilder paxRecords = new StringBuilder();
+            if(name.getBytes(StandardCharsets.UTF_8).length > ExampleBagArchiver.TAR_NAME_LENGTH)
+            {
+                paxRecords.append(ExampleBagArchiver.formatPaxRecord("path", name));
+            }
+            if(size > ExampleBagArchiver.TAR_MAX_SIZE)
+            {
+                paxRecords.append(ExampleBagArchiver.formatPaxRecord("size", Long.toString(size)));
+            }
+            if(paxRecords.length() > 0)
+            {
+                ExampleBagArchiver.writePaxHeader(tar, paxRecords.toString(), mtime);
+            }
+            
+            ExampleBagArchiver.writeTarHeader(tar, name, size, mtime, '0');
+            ExampleBagArchiver.transferFile(file, size, tar);
+            ExampleBagArchiver.writeTarPadding(tar, size);
+        }
+        // The end of the archive is marked by two empty blocks, and padded to a whole record
+        tar.write(new byte[2 * ExampleBagArchiver.TAR_BLOCK_SIZE]);
+        final int remainder = (int)(tar.getBytesIn() % ExampleBagArchiver.TAR_RECORD_SIZE);
+        if(remainder > 0)
+        {
+            tar.write(new byte[ExampleBagArchiver.TAR_RECORD_SIZE - remainder]);
+        }
+        tar.finish();
+        
+        final ByteBuffer trailer = ExampleBagArchiver.allocateLittleEndian(8);
+        trailer.putInt((int)tar.getCrc());
+        trailer.putInt((int)tar.getBytesIn());
+        ExampleBagArchiver.write(output, trailer);
+        return tar.getBytesIn();
+    }
+    
+    /**
+     * Writes a zip archive of the given files, writing the sizes and CRC of each entry into its
+     * local header after it is compressed.
+     * 
+     * @return The number of uncompressed bytes in the entries.
+     */
+    private long writeZip(final String bagName, final Map<String, Path> files, final FileChannel channel,
+            final OutputStream output) throws IOException
+    {
+        final List<ZipEntryRecord> entries = new ArrayList<>(files.size());
+        long result = 0;
+        for(final Map.Entry<String, Path> nextFile : files.entrySet())
+        {
+            final Path file = nextFile.getValue();
+            final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            final long size = attributes.size();
+            output.flush();
+            final ZipEntryRecord entry =
+                    new ZipEntryRecord((bagName + "/" + nextFile.getKey()).getBytes(StandardCharsets.UTF_8),
+                            ExampleBagArchiver.getDosTime(attributes.lastModifiedTime().toMillis()),
+                            channel.position(), size >= ExampleBagArchiver.ZIP64_THRESHOLD);
+            
+            final int extraLength = entry.zip64 ? 20 : 0;
+            final ByteBuffer header = ExampleBagArchiver.allocateLittleEndian(30 + entry.name.length + extraLength);
+            header.putInt(0x04034b50);
+            header.putShort((short)(entry.zip64 ? ExampleBagArchiver.ZIP64_VERSION : ExampleBagArchiver.ZIP_VERSION));
+            header.putShort((short)ExampleBagArchiver.ZIP_FLAG_UTF8);
+            header.putShort((short)ExampleBagArchiver.ZIP_METHOD_DEFLATED);
+            header.putInt(entry.dosTime);
+            // The CRC and sizes are filled in after the entry is written
+            header.putInt(0);
+            header.putInt(entry.zip64 ? -1 : 0);
+            header.putInt(entry.zip64 ? -1 : 0);
+            header.putShort((short)entry.name.length);
+            header.putShort((short)extraLength);
+            header.put(entry.name);
+            if(entry.zip64)
+            {
+                header.putShort((short)ExampleBagArchiver.ZIP64_EXTRA_ID);
+                header.putShort((short)16);
+                header.putLong(0);
+                header.putLong(0);
+            }
+            ExampleBagArchiver.write(output, header);
+            
+            final ExampleParallelDeflateOutputStream data = this.createDeflateStream(output);
+            ExampleBagArchiver.transferFile(file, size, data);
+            data.finish();
+            entry.crc = data.getCrc();
+            entry.compressedSize = data.getBytesOut();
+            entry.size = data.getBytesIn();
+            if(!entry.zip64 && entry.compressedSize >= ExampleBagArchiver.ZIP_MAX_32)
+            {
+                throw new IOException("Compressed entry was too large for its header: " + file);
+            }
+            
+            final ByteBuffer sizes = ExampleBagArchiver.allocateLittleEndian(entry.zip64 ? 16 : 12);
+            if(entry.zip64)
+            {
+                sizes.putLong(entry.size);
+                sizes.putLong(entry.compressedSize);
+                ExampleBagArchiver.writeAt(channel, ExampleBagArchiver.allocateLittleEndian(4)
+                        .putInt((int)entry.crc), entry.offset + 14);
+                ExampleBagArchiver.writeAt(channel, sizes, entry.offset + 30 + entry.name.length + 4);
+            }
+            else
+            {
+                sizes.putInt((int)entry.crc);
+                sizes.putInt((int)entry.compressedSize);
+                sizes.putInt((int)entry.size);
+                ExampleBagArchiver.writeAt(channel, sizes, entry.offset + 14);
+            }
+            entries.add(entry);
+            result += entry.size;
+        }
+        
+        output.flush();
+        final long directoryOffset = channel.position();
+        long directorySize = 0;
+        for(final ZipEntryRecord nextEntry : entries)
+        {
+            directorySize += ExampleBagArchiver.writeZipDirectoryEntry(output, nextEntry);
+        }
+        ExampleBagArchiver.writeZipEnd(output, entries.size(), directoryOffset, directorySize);
+        return result;
+    }
+    
+    /**
+     * Writes the given buffer at the given position in the channel, without changing the position
+     * of the channel.
+     */
+    private static void writeAt(final FileChannel channel, final ByteBuffer buffer, final long position)
+        throws IOException
+    {
+        buffer.flip();
+        long nextPosition = position;
+        while(buffer.hasRemaining())
+        {
+            nextPosition += channel.write(buffer, nextPosition);
+        }
+    }
+    
+    /**
+     * Writes the central directory header for the given entry.
+     * 
+     * @return The number of bytes written.
+     */
+    private static int writeZipDirectoryEntry(final OutputStream output, final ZipEntryRecord entry) throws IOException
+    {
+        final boolean zip64Offset = entry.offset >= ExampleBagArchiver.ZIP_MAX_32;
+        final int extraLength = (entry.zip64 ? 16 : 0) + (zip64Offset ? 8 : 0);
+        final int length = 46 + entry.name.length + (extraLength > 0 ? extraLength + 4 : 0);
+        final ByteBuffer header = ExampleBagArchiver.allocateLittleEndian(length);
+        header.putInt(0x02014b50);
+        // Made by Unix, so that the external attributes are read as a file mode
+        header.putShort((short)(3 << 8 | ExampleBagArchiver.ZIP64_VERSION));
+        header.putShort((short)(extraLength > 0 ? ExampleBagArchiver.ZIP64_VERSION : ExampleBagArchiver.ZIP_VERSION));
+        header.putShort((short)ExampleBagArchiver.ZIP_FLAG_UTF8);
+        header.putShort((short)ExampleBagArchiver.ZIP_METHOD_DEFLATED);
+        header.putInt(entry.dosTime);
+        header.putInt((int)entry.crc);
+        header.putInt(entry.zip64 ? -1 : (int)entry.compressedSize);
+        header.putInt(entry.zip64 ? -1 : (int)entry.size);
+        header.putShort((short)entry.name.length);
+        header.putShort((short)(extraLength > 0 ? extraLength + 4 : 0));
+        // No comment, starting on the first disk, with no internal attributes
+        header.putShort((short)0);
+        header.putShort((short)0);
+        header.putShort((short)0);
+        header.putInt((0100000 | ExampleBagArchiver.FILE_MODE) << 16);
+        header.putInt(zip64Offset ? -1 : (int)entry.offset);
+        header.put(entry.name);
+        if(extraLength > 0)
+        {
+            header.putShort((short)ExampleBagArchiver.ZIP64_EXTRA_ID);
+            header.putShort((short)extraLength);
+            if(entry.zip64)
+            {
+                header.putLong(entry.size);
+                header.putLong(entry.compressedSize);
+            }
+            if(zip64Offset)
+            {
+                header.putLong(entry.offset);
+            }
+        }
+        ExampleBagArchiver.write(output, header);
+        return length;
+    }
+    
+    /**
+     * Writes the end of central directory record, preceded by the zip64 end of central directory
+     * record and locator if any of the values do not fit in the original record.
+     */
+    private static void writeZipEnd(final OutputStream output, final int entryCount, final long directoryOffset,
+            final long directorySize) throws IOException
+    {
+        final boolean zip64 =
+                entryCount >= ExampleBagArchiver.ZIP_MAX_16 || directoryOffset >= ExampleBagArchiver.ZIP_MAX_32
+                        || directorySize >= ExampleBagArchiver.ZIP_MAX_32;
+        if(zip64)
+        {
+            final long recordOffset = directoryOffset + directorySize;
+            final ByteBuffer record = ExampleBagArchiver.allocateLittleEndian(56 + 20);
+            record.putInt(0x06064b50);
+            record.putLong(44);
+            record.putShort((short)(3 << 8 | ExampleBagArchiver.ZIP64_VERSION));
+            record.putShort((short)ExampleBagArchiver.ZIP64_VERSION);
+            record.putInt(0);
+            record.putInt(0);
+            record.putLong(entryCount);
+            record.putLong(entryCount);
+            record.putLong(directorySize);
+            record.putLong(directoryOffset);
+            // Locator for the zip64 record, which is on the only disk
+            record.putInt(0x07064b50);
+            record.putInt(0);
+            record.putLong(recordOffset);
+            record.putInt(1);
+            ExampleBagArchiver.write(output, record);
+        }
+        
+        final ByteBuffer end = ExampleBagArchiver.allocateLittleEndian(22);
+        end.putInt(0x06054b50);
+        end.putShort((short)0);
+        end.putShort((short)0);
+        end.putShort((short)Math.min(entryCount, ExampleBagArchiver.ZIP_MAX_16));
+        end.putShort((short)Math.min(entryCount, ExampleBagArchiver.ZIP_MAX_16));
+        end.putInt((int)Math.min(directorySize, ExampleBagArchiver.ZIP_MAX_32));
+        end.putInt((int)Math.min(directoryOffset, ExampleBagArchiver.ZIP_MAX_32));
+        end.putShort((short)0);
+        ExampleBagArchiver.write(output, end);
+    }
+}
@@ -0,0 +1,728 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import gov.loc.repository.bagit.Bag;
+import gov.loc.repository.bagit.BagFactory;
+import gov.loc.repository.bagit.BagInfoTxt;
+import gov.loc.repository.bagit.BagPartFactory;
+import gov.loc.repository.bagit.Manifest;
+import gov.loc.repository.bagit.writer.impl.FileSystemWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a stream of payload files into one or more BagIt bags, starting a new bag whenever the
+ * next file would take the current bag over a maximum size.
+ * <p>
+ * Payload files are staged into their bag using an {@link ExampleImageStager}, which checksums each
+ * file and then copies it without reading it into the Java heap again, in parallel on a pool of
+ * workers, so the caller can keep adding files while earlier files are still being written. The
+ * number of files waiting to be written is bounded, so files can be added from a source of any
+ * size. Once a bag is full, its manifest and tag files are written using the BagIt library on a
+ * separate thread, from the checksums computed while staging, so that payload files are never read
+ * again.
+ * <p>
+ * If bags are disabled, the payload files are written to a single directory without any size
+ * limit or tag files. Instances are not thread-safe.
+ * <p>
+ * Bags can be written over the bags from an earlier run. Payload files whose digests are already
+ * known, and which are already in place with the same size, are not staged again, any other files
+ * in the payload of each bag are removed before its tag files are rewritten, and any bags with
+ * higher numbers than the last bag are removed.
+ */
+public class ExampleBagBuilder implements AutoCloseable
+{
+    /**
+     * The default maximum number of payload bytes in each bag.
+     */
+    public static final long DEFAULT_MAX_BAG_BYTES = 10L * 1024 * 1024 * 1024;
+    
+    /**
+     * The default number of workers used to copy and checksum payload files.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 4;
+    
+    /**
+     * The algorithm used for the payload manifest of each bag.
+     */
+    public static final Manifest.Algorithm PAYLOAD_ALGORITHM = Manifest.Algorithm.SHA256;
+    
+    /**
+     * Property used to set the maximum number of payload bytes in each bag.
+     */
+    public static final String PROP_MAX_BAG_BYTES = "examplebag.maxbytes";
+    
+    /**
+     * Property used to set the number of workers used to copy and checksum payload files.
+     */
+    public static final String PROP_THREAD_COUNT = "examplebag.threads";
+    
+    /**
+     * The directory inside each bag that contains the payload files.
+     */
+    static final String PAYLOAD_DIRECTORY = "data";
+    
+    /**
+     * A bag that payload files are being added to or written to.
+     */
+    private static final class PendingBag
+    {
+        private final Path directory;
+        private final int number;
+        private final List<Future<PayloadFile>> files = new ArrayList<>();
+        private long bytes;
+        
+        private PendingBag(final Path directory, final int number)
+        {
+            this.directory = directory;
+            this.number = number;
+        }
+    }
+    
+    /**
+     * A payload file that has been written to a bag.
+     */
+    private static final class PayloadFile
+    {
+        private final String path;
+        private final ExampleStagedImage staged;
+        
+        private PayloadFile(final String path, final ExampleStagedImage staged)
+        {
+            this.path = path;
+            this.staged = staged;
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final BagFactory bagFactory = new BagFactory();
+    
+    private final Path outputDirectory;
+    
+    private final String name;
+    
+    private final long maxBagBytes;
+    
+    private final boolean bagged;
+    
+    private final ExecutorService workers;
+    
+    private final ExecutorService completer = Executors.newSingleThreadExecutor();
+    
+    private final Semaphore pendingFiles;
+    
+    private final ExampleImageStager stager = new ExampleImageStager(
+            ExampleBagBuilder.PAYLOAD_ALGORITHM.javaSecurityAlgorithm);
+    
+    private final List<Future<Path>> bags = new ArrayList<>();
+    
+    private final List<ExampleStagedImage> stagedFiles = Collections
+            .synchronizedList(new ArrayList<ExampleStagedImage>());
+    
+    private PendingBag currentBag;
+    
+    /**
+     * @param outputDirectory
+     *            The directory to create the bags in.
+     * @param name
+     *            The name of the bags, which is followed by the number of each bag to give the
+     *            name of its directory.
+     * @param maxBagBytes
+     *            The maximum number of payload bytes in each bag. Files which are larger than this
+     *            are written to a bag of their own.
+     * @param threadCount
+     *            The number of workers used to copy and checksum payload files.
+     * @param bagged
+     *            True to write bags, or false to write the payload files to a single directory
+     *            named using the given name, without any tag files.
+     */
+    public ExampleBagBuilder(final Path outputDirectory, final String name, final long maxBagBytes,
+            final int threadCount, final boolean bagged)
+    {
+        if(maxBagBytes < 1)
+        {
+            throw new IllegalArgumentException("Maximum bag size must be positive: " + maxBagBytes);
+        }
+        if(threadCount < 1)
+        {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        
+        this.outputDirectory = outputDirectory;
+        this.name = name;
+        this.maxBagBytes = maxBagBytes;
+        this.bagged = bagged;
+        this.workers = Executors.newFixedThreadPool(threadCount);
+        this.pendingFiles = new Semaphore(threadCount * 4);
+    }
+    
+    /**
+     * Adds a payload file with the given content.
+     * 
+     * @param content
+     *            The content of the file.
+     * @param payloadPath
+     *            The path of the file inside the payload directory, using forward slashes.
+     * @throws IOException
+     *             If the bag directory could not be created, or the builder was interrupted while
+     *             waiting for earlier files to be written.
+     */
+    public void addPayload(final byte[] content, final String payloadPath) throws IOException
+    {
+        final Path target = this.startPayload(payloadPath, content.length);
+        this.submit(new Callable<PayloadFile>()
+            {
+                @Override
+                public PayloadFile call() throws IOException
+                {
+                    return ExampleBagBuilder.this.write(content, target, payloadPath);
+                }
+            });
+    }
+    
+    /**
+     * Adds a payload file which is staged from the given file. PNG files are checked before they
+     * are staged, unless checking has been disabled using {@link #getImageStager()}.
+     * 
+     * @param source
+     *            The file to stage.
+     * @param payloadPath
+     *            The path of the file inside the payload directory, using forward slashes.
+     * @throws IOException
+     *             If the size of the file could not be found, the bag directory could not be
+     *             created, or the builder was interrupted while waiting for earlier files to be
+     *             written. Failures staging the file, including invalid PNG files, are thrown
+     *             from {@link #finish()}.
+     */
+    public void addPayload(final Path source, final String payloadPath) throws IOException
+    {
+        this.addPayload(source, payloadPath, null);
+    }
+    
+    /**
+     * Adds a payload file which is staged from the given file, unless the digest of the file is
+     * already known and a file with the same size is already in place from an earlier run.
+     * 
+     * @param source
+     *            The file to stage.
+     * @param payloadPath
+     *            The path of the file inside the payload directory, using forward slashes.
+     * @param knownDigest
+     *            The digest of the file from an earlier run, if the file has not changed since, or
+     *            null to always stage the file.
+     * @throws IOException
+     *             If the attributes of the file could not be read, the bag directory could not be
+     *             created, or the builder was interrupted while waiting for earlier files to be
+     *             written. Failures staging the file, including invalid PNG files, are thrown
+     *             from {@link #finish()}.
+     */
+    public void addPayload(final Path source, final String payloadPath, final String knownDigest)
+        throws IOException
+    {
+        final BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        final Path target = this.startPayload(payloadPath, attributes.size());
+        this.submit(new Callable<PayloadFile>()
+            {
+                @Override
+                public PayloadFile call() throws IOException
+                {
+                    final ExampleStagedImage staged;
+                    if(knownDigest != null && Files.isRegularFile(target) && Files.size(target) == attributes.size())
+                    {
+                        staged = new ExampleStagedImage();
+                        staged.source = source;
+                        staged.target = target;
+                        staged.size = attributes.size();
+                        staged.digest = knownDigest;
+                        staged.reused = true;
+                    }
+                    else
+                    {
+                        staged = ExampleBagBuilder.this.stager.stage(source, target);
+                    }
+                    staged.payloadPath = payloadPath;
+                    staged.lastModified = attributes.lastModifiedTime().toMillis();
+                    return new PayloadFile(ExampleBagBuilder.this.getBagPath(payloadPath), staged);
+                }
+            });
+    }
+    
+    /**
+     * Stops writing any remaining files. Bags which have not been completed are left without tag
+     * files, and are not valid.
+     */
+    @Override
+    public void close()
+    {
+        this.workers.shutdownNow();
+        this.completer.shutdownNow();
+    }
+    
+    /**
+     * Writes the tag files for the given bag, after all of its payload files have been written.
+     * 
+     * @return The directory of the bag.
+     */
+    private Path complete(final PendingBag bag) throws IOException
+    {
+        final List<PayloadFile> files = new ArrayList<>(bag.files.size());
+        long bytes = 0;
+        for(final Future<PayloadFile> nextFile : bag.files)
+        {
+            final PayloadFile payloadFile = ExampleBagBuilder.getResult(nextFile);
+            files.add(payloadFile);
+            bytes += payloadFile.staged.size;
+            this.stagedFiles.add(payloadFile.staged);
+        }
+        this.prune(bag, files);
+        
+        if(!this.bagged)
+        {
+            this.log.info("Wrote {} files: {} bytes={}", files.size(), bag.directory, bytes);
+            return bag.directory;
+        }
+        
+        // Files may be written in any order, so sort the manifest to make it reproducible
+        Collections.sort(files, new Comparator<PayloadFile>()
+            {
+                @Override
+                public int compare(final PayloadFile o1, final PayloadFile o2)
+                {
+                    return o1.path.compareTo(o2.path);
+                }
+            });
+        
+        try (final Bag nextBag = this.bagFactory.createBag();)
+        {
+            final BagPartFactory parts = nextBag.getBagPartFactory();
+            nextBag.putBagFile(parts.createBagItTxt());
+            
+            final BagInfoTxt bagInfo = parts.createBagInfoTxt();
+            bagInfo.setBaggingDate(new Date());
+            bagInfo.setBagGroupIdentifier(this.name);
+            // The number of bags is not known until all of the files have been added
+            bagInfo.setBagCount(bag.number + " of ?");
+            bagInfo.setPayloadOxum(bytes + "." + files.size());
+            nextBag.putBagFile(bagInfo);
+            
+            final Manifest manifest =
+                    parts.createManifest(ExampleBagBuilder.getPayloadManifestName());
+            for(final PayloadFile nextFile : files)
+            {
+                manifest.put(nextFile.path, nextFile.staged.digest);
+            }
+            nextBag.putBagFile(manifest);
+            
+            // The payload files are already in place, so only write the tag files
+            final FileSystemWriter writer = new FileSystemWriter(this.bagFactory);
+            writer.setTagFilesOnly(true);
+            nextBag.write(writer, bag.directory.toFile());
+        }
+        
+        this.log.info("Completed bag: {} files={} bytes={}", bag.directory, files.size(), bytes);
+        return bag.directory;
+    }
+    
+    /**
+     * Writes the tag files for the given bag on the completion thread once all of its payload
+     * files have been written.
+     */
+    private void completeLater(final PendingBag bag)
+    {
+        this.bags.add(this.completer.submit(new Callable<Path>()
+            {
+                @Override
+                public Path call() throws IOException
+                {
+                    return ExampleBagBuilder.this.complete(bag);
+                }
+            }));
+    }
+    
+    /**
+     * Deletes the files inside the given directory that are not in the given set of paths relative
+     * to the directory, along with any directories that are left empty, or deletes everything if
+     * no set is given.
+     */
+    private static void delete(final Path directory, final Set<String> keep) throws IOException
+    {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+            {
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException
+                {
+                    if(exc != null)
+                    {
+                        throw exc;
+                    }
+                    if(keep == null)
+                    {
+                        Files.delete(dir);
+                    }
+                    else if(!dir.equals(directory))
+                    {
+                        try (final DirectoryStream<Path> entries = Files.newDirectoryStream(dir);)
+                        {
+                            if(!entries.iterator().hasNext())
+                            {
+                                Files.delete(dir);
+                            }
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+                
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+                {
+                    if(keep == null
+                            || !keep.contains(directory.relativize(file).toString().replace(File.separatorChar, '/')))
+                    {
+                        Files.delete(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+    }
+    
+    /**
+     * Waits for all of the payload files to be written and all of the bags to be completed.
+     * 
+     * @return The directories of the bags, in the order they were created, or the single
+     *         directory containing the payload files if bags are disabled.
+     * @throws IOException
+     *             If any of the files or bags could not be written.
+     */
+    public List<Path> finish() throws IOException
+    {
+        if(this.currentBag != null)
+        {
+            this.completeLater(this.currentBag);
+            this.currentBag = null;
+        }
+        
+        final List<Path> results = new ArrayList<>(this.bags.size());
+        IOException failure = null;
+        for(final Future<Path> nextBag : this.bags)
+        {
+            try
+            {
+                results.add(ExampleBagBuilder.getResult(nextBag));
+            }
+            catch(final IOException e)
+            {
+                if(failure == null)
+                {
+                    failure = e;
+                }
+                else
+                {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        
+        this.workers.shutdown();
+        this.completer.shutdown();
+        if(failure != null)
+        {
+            throw failure;
+        }
+        
+        if(this.bagged)
+        {
+            // Remove any bags left from an earlier run that had more bags
+            for(int number = this.bags.size() + 1;; number++)
+            {
+                final Path staleBag = this.getBagDirectory(number);
+                if(!Files.isDirectory(staleBag))
+                {
+                    break;
+                }
+                this.log.info("Removing bag from an earlier run: {}", staleBag);
+                ExampleBagBuilder.delete(staleBag, null);
+                for(final ExampleBagArchiver.Format nextFormat : ExampleBagArchiver.Format.values())
+                {
+                    Files.deleteIfExists(ExampleBagArchiver.getArchivePath(staleBag, nextFormat));
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * @return The directory of the bag with the given number, or the single directory for the
+     *         payload files if bags are disabled.
+     */
+    private Path getBagDirectory(final int number)
+    {
+        return this.outputDirectory.resolve(this.bagged ? String.format("%s-%04d", this.name, number) : this.name);
+    }
+    
+    /**
+     * @return The path of the given payload file relative to the bag directory.
+     */
+    private String getBagPath(final String payloadPath)
+    {
+        return this.bagged ? ExampleBagBuilder.PAYLOAD_DIRECTORY + "/" + payloadPath : payloadPath;
+    }
+    
+    /**
+     * @return The name of the payload manifest file in each bag.
+     */
+    static String getPayloadManifestName()
+    {
+        return "manifest-" + ExampleBagBuilder.PAYLOAD_ALGORITHM.bagItAlgorithm + ".txt";
+    }
+    
+    /**
+     * @return The details of each payload file, including the files which were reused from an
+     *         earlier run, after {@link #finish()} has returned.
+     */
+    public List<ExampleStagedImage> getStagedFiles()
+    {
+        synchronized(this.stagedFiles)
+        {
+            return new ArrayList<>(this.stagedFiles);
+        }
+    }
+    
+    /**
+     * @return The stager used for payload files added from files, which can be used to configure
+     *         hard links and PNG checks before any files are added.
+     */
+    public ExampleImageStager getImageStager()
+    {
+        return this.stager;
+    }
+    
+    /**
+     * Waits for the given task, unwrapping any exception that caused it to fail.
+     */
+    private static <T> T getResult(final Future<T> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a bag to be written");
+        }
+        catch(final ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if(cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            if(cause instanceof RuntimeException)
+            {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error)
+            {
+                throw (Error)cause;
+            }
+            throw new IOException("Could not write bag", cause);
+        }
+    }
+    
+    private static MessageDigest newDigest() throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance(ExampleBagBuilder.PAYLOAD_ALGORITHM.javaSecurityAlgorithm);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new IOException("Payload checksum algorithm was not supported: "
+                    + ExampleBagBuilder.PAYLOAD_ALGORITHM, e);
+        }
+    }
+    
+    /**
+     * Creates the given payload file, replacing any existing file.
+     */
+    private static FileChannel openTarget(final Path target) throws IOException
+    {
+        Files.createDirectories(target.getParent());
+        // Existing files are removed rather than truncated, as they may be links to another file
+        Files.deleteIfExists(target);
+        return FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    
+    /**
+     * Adds a payload file of the given size to the current bag, starting a new bag first if the
+     * file would take the current bag over the maximum size.
+     * 
+     * @return The location to write the payload file to.
+     */
+    private Path startPayload(final String payloadPath, final long size) throws IOException
+    {
+        ExampleBagBuilder.validatePayloadPath(payloadPath);
+        
+        if(this.currentBag == null || this.bagged && this.currentBag.bytes > 0
+                && this.currentBag.bytes + size > this.maxBagBytes)
+        {
+            if(this.currentBag != null)
+            {
+                this.completeLater(this.currentBag);
+            }
+            final int number = this.bags.size() + 1;
+            this.currentBag = new PendingBag(this.getBagDirectory(number), number);
+            Files.createDirectories(this.currentBag.directory);
+        }
+        this.currentBag.bytes += size;
+        return this.currentBag.directory.resolve(this.getBagPath(payloadPath));
+    }
+    
+    /**
+     * Removes any payload files left in the given bag from an earlier run.
+     */
+    private void prune(final PendingBag bag, final List<PayloadFile> files) throws IOException
+    {
+        final Set<String> keep = new HashSet<>();
+        for(final PayloadFile nextFile : files)
+        {
+            keep.add(this.bagged ? nextFile.path.substring(ExampleBagBuilder.PAYLOAD_DIRECTORY.length() + 1)
+                    : nextFile.path);
+        }
+        final Path payloadDirectory =
+                this.bagged ? bag.directory.resolve(ExampleBagBuilder.PAYLOAD_DIRECTORY) : bag.directory;
+        if(Files.isDirectory(payloadDirectory))
+        {
+            ExampleBagBuilder.delete(payloadDirectory, keep);
+        }
+    }
+    
+    /**
+     * Submits the task to write the last payload file added to the current bag, once fewer than
+     * the maximum number of files are waiting to be written.
+     */
+    private void submit(final Callable<PayloadFile> task) throws IOException
+    {
+        try
+        {
+            this.pendingFiles.acquire();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to add a payload file");
+        }
+        
+        try
+        {
+            this.currentBag.files.add(this.workers.submit(new Callable<PayloadFile>()
+                {
+                    @Override
+                    public PayloadFile call() throws Exception
+                    {
+                        try
+                        {
+                            return task.call();
+                        }
+                        finally
+                        {
+                            ExampleBagBuilder.this.pendingFiles.release();
+                        }
+                    }
+                }));
+        }
+        catch(final RuntimeException e)
+        {
+            this.pendingFiles.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Checks that the given payload path is relative and stays inside the payload directory.
+     */
+    static void validatePayloadPath(final String payloadPath)
+    {
+        if(payloadPath.isEmpty() || payloadPath.startsWith("/") || payloadPath.contains("\\"))
+        {
+            throw new IllegalArgumentException("Payload path was not a relative path: " + payloadPath);
+        }
+        for(final String nextSegment : payloadPath.split("/"))
+        {
+            if(nextSegment.isEmpty() || nextSegment.equals(".") || nextSegment.equals(".."))
+            {
+                throw new IllegalArgumentException("Payload path was not normalised: " + payloadPath);
+            }
+        }
+    }
+    
+    /**
+     * Writes the given content to the given target, computing its checksum.
+     */
+    private PayloadFile write(final byte[] content, final Path target, final String payloadPath)
+        throws IOException
+    {
+        final MessageDigest digest = ExampleBagBuilder.newDigest();
+        digest.update(content);
+        try (final FileChannel output = ExampleBagBuilder.openTarget(target);)
+        {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            while(buffer.hasRemaining())
+            {
+                output.write(buffer);
+            }
+        }
+        final ExampleStagedImage staged = new ExampleStagedImage();
+        staged.target = target;
+        staged.payloadPath = payloadPath;
+        staged.size = content.length;
+        staged.digest = ExampleStreamingDigester.toHex(digest.digest());
+        return new PayloadFile(this.getBagPath(payloadPath), staged);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.nio.file.Path;
+
+/**
+ * Container for the details of a bag transferred by {@link ExampleBagUploader}.
+ */
+public class ExampleBagTransfer
+{
+    public Path localPath;
+    public String remotePath;
+    
+    /**
+     * The size of the bag.
+     */
+    public long size;
+    
+    /**
+     * The offset that the transfer started from, which is greater than zero if a partial remote
+     * file was resumed.
+     */
+    public long offset;
+    
+    /**
+     * The number of bytes sent, which is zero if the remote file was already complete.
+     */
+    public long bytesTransferred;
+    
+    /**
+     * The time taken to send the bytes, in nanoseconds.
+     */
+    public long elapsedNanos;
+    
+    /**
+     * True if the digests of the remote bag were computed on the server and matched the local bag.
+     */
+    public boolean digestVerified;
+    
+    /**
+     * @return The number of bytes sent per second, or zero if no bytes were sent.
+     */
+    public double getBytesPerSecond()
+    {
+        if(this.bytesTransferred == 0 || this.elapsedNanos <= 0)
+        {
+            return 0;
+        }
+        return this.bytesTransferred * 1000000000.0 / this.elapsedNanos;
+    }
+    
+}
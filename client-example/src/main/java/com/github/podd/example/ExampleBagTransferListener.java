@@ -0,0 +1,37 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+
+/**
+ * Receives the details of each bag uploaded by {@link ExampleBagUploader} as soon as its transfer
+ * completes, so that completed transfers can be recorded even if a later bag fails.
+ */
+public interface ExampleBagTransferListener
+{
+    /**
+     * Called after the given bag and its digest files have been uploaded. This may be called
+     * concurrently from each of the upload sessions.
+     * 
+     * @param transfer
+     *            The details of the completed transfer.
+     * @throws IOException
+     *             If the transfer could not be recorded, which fails the upload of the bag.
+     */
+    void transferred(ExampleBagTransfer transfer) throws IOException;
+}
@@ -0,0 +1,851 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.schmizz.sshj.DefaultConfig;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.sftp.FileAttributes;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
+import net.schmizz.sshj.userauth.keyprovider.KeyProvider;
+import net.schmizz.sshj.xfer.FileSystemFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.podd.client.api.PoddClientException;
+import com.github.podd.utils.PoddDigestUtils.Algorithm;
+
+/**
+ * Uploads bags and their digests to a remote SSH server using a pool of SFTP sessions, with each
+ * bag uploaded in parallel on its own session.
+ * <p>
+ * Bags which already exist on the remote server with the same size are not uploaded again. If a
+ * smaller partial copy of a bag exists, and the end of the partial copy matches the same range of
+ * the local bag, the upload resumes from the end of the partial copy. Otherwise the remote copy is
+ * replaced.
+ * <p>
+ * Bags are never downloaded to check them. Remote digest files are read directly, and the digests
+ * of remote bags are computed on the server using {@link ExampleRemoteDigestVerifier} when the
+ * server supports it, so that bags with the same size but different content are replaced, and
+ * resumed uploads are checked.
+ * <p>
+ * Digests which are not given for a bag are computed while the bag is being uploaded, so that each
+ * bag is only read from disk once. Bags are read into a heap buffer, whose array is passed to both
+ * the digests and the SFTP write requests without any further copies, with the sizes of the reads
+ * and writes set using {@link #setReadBufferSize(int)} and {@link #setWriteBufferSize(int)}. SSH
+ * compression is used unless it is disabled using {@link #setCompression(boolean)}, which avoids
+ * compressing bags again when they are already compressed archives.
+ */
+public class ExampleBagUploader implements AutoCloseable
+{
+    /**
+     * The default number of SSH sessions used to upload bags in parallel.
+     */
+    public static final int DEFAULT_SESSION_COUNT = 4;
+    
+    /**
+     * The default size of the buffer used to read each bag from disk.
+     */
+    public static final int DEFAULT_READ_BUFFER_SIZE = 1024 * 1024;
+    
+    /**
+     * The default port of the SSH server that bags are uploaded to.
+     */
+    public static final int DEFAULT_PORT = 22;
+    
+    /**
+     * Property used to set whether SSH compression is used. This defaults to false when all of the
+     * bags are compressed archives, and true otherwise.
+     */
+    public static final String PROP_COMPRESSION = "examplebagupload.compression";
+    
+    /**
+     * Property used to set the fingerprint of the SSH server that bags are uploaded to.
+     */
+    public static final String PROP_FINGERPRINT = "examplebagupload.fingerprint";
+    
+    /**
+     * Property used to set the SSH server that bags are uploaded to. Bags are not uploaded if this
+     * is not set.
+     */
+    public static final String PROP_HOST = "examplebagupload.host";
+    
+    /**
+     * Property used to set the private key file used to log in to the SSH server.
+     */
+    public static final String PROP_KEY_FILE = "examplebagupload.keyfile";
+    
+    /**
+     * Property used to set the port of the SSH server that bags are uploaded to.
+     */
+    public static final String PROP_PORT = "examplebagupload.port";
+    
+    /**
+     * Property used to set the size of the buffer used to read each bag from disk.
+     */
+    public static final String PROP_READ_BUFFER_SIZE = "examplebagupload.readbuffersize";
+    
+    /**
+     * Property used to set the directory on the SSH server that the output directory of a dump is
+     * uploaded to.
+     */
+    public static final String PROP_REMOTE_PATH = "examplebagupload.remotepath";
+    
+    /**
+     * Property used to set the number of SSH sessions used to upload bags in parallel.
+     */
+    public static final String PROP_SESSION_COUNT = "examplebagupload.sessioncount";
+    
+    /**
+     * Property used to set the user name used to log in to the SSH server.
+     */
+    public static final String PROP_USERNAME = "examplebagupload.username";
+    
+    /**
+     * Property used to set the size of each SFTP write request.
+     */
+    public static final String PROP_WRITE_BUFFER_SIZE = "examplebagupload.writebuffersize";
+    
+    /**
+     * The default size of each SFTP write request, which is within the packet size supported by
+     * common SFTP servers.
+     */
+    public static final int TRANSFER_BUFFER_SIZE = 32 * 1024;
+    
+    /**
+     * The number of bytes at the end of a partial remote bag that must match the local bag for the
+     * upload to be resumed.
+     */
+    static final int RESUME_CHECK_SIZE = 64 * 1024;
+    
+    /**
+     * Default configuration for SSHJ, to avoid recreating it for each session.
+     */
+    private static final DefaultConfig DEFAULT_CONFIG = new DefaultConfig();
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final String sshServerFingerprint;
+    private final String sshHost;
+    private final int portNo;
+    private final String username;
+    private final KeyProvider keyProvider;
+    private final ExampleRemoteDigestVerifier verifier;
+    private final Set<Algorithm> algorithms = Collections.unmodifiableSet(EnumSet.allOf(Algorithm.class));
+    
+    private volatile int readBufferSize = ExampleBagUploader.DEFAULT_READ_BUFFER_SIZE;
+    private volatile int writeBufferSize = ExampleBagUploader.TRANSFER_BUFFER_SIZE;
+    private volatile boolean compression = true;
+    private volatile ExampleBagTransferListener transferListener;
+    
+    private final ExecutorService executor;
+    private final BlockingQueue<SftpSession> idleSessions = new LinkedBlockingQueue<>();
+    private final Set<SftpSession> openSessions = Collections
+            .newSetFromMap(new ConcurrentHashMap<SftpSession, Boolean>());
+    
+    /**
+     * @param sshServerFingerprint
+     *            The fingerprint of the host key for the SSH server.
+     * @param sshHost
+     *            The host name of the SSH server.
+     * @param portNo
+     *            The port for the SSH server.
+     * @param username
+     *            The username to authenticate with.
+     * @param keyProvider
+     *            The key to authenticate with.
+     * @param sessionCount
+     *            The maximum number of SSH sessions to open, which is also the maximum number of
+     *            bags that are uploaded at the same time.
+     */
+    public ExampleBagUploader(final String sshServerFingerprint, final String sshHost, final int portNo,
+            final String username, final KeyProvider keyProvider, final int sessionCount)
+    {
+        this(sshServerFingerprint, sshHost, portNo, username, keyProvider, sessionCount,
+                new ExampleRemoteDigestVerifier(true));
+    }
+    
+    /**
+     * @param sshServerFingerprint
+     *            The fingerprint of the host key for the SSH server.
+     * @param sshHost
+     *            The host name of the SSH server.
+     * @param portNo
+     *            The port for the SSH server.
+     * @param username
+     *            The username to authenticate with.
+     * @param keyProvider
+     *            The key to authenticate with.
+     * @param sessionCount
+     *            The maximum number of SSH sessions to open, which is also the maximum number of
+     *            bags that are uploaded at the same time.
+     * @param verifier
+     *            The verifier used to check the digests of remote bags and digest files.
+     */
+    public ExampleBagUploader(final String sshServerFingerprint, final String sshHost, final int portNo,
+            final String username, final KeyProvider keyProvider, final int sessionCount,
+            final ExampleRemoteDigestVerifier verifier)
+    {
+        if(sessionCount < 1)
+        {
+            throw new IllegalArgumentException("Session count must be positive: " + sessionCount);
+        }
+        
+        this.sshServerFingerprint = sshServerFingerprint;
+        this.sshHost = sshHost;
+        this.portNo = portNo;
+        this.username = username;
+        this.keyProvider = keyProvider;
+        this.verifier = verifier;
+        this.executor = Executors.newFixedThreadPool(sessionCount);
+    }
+    
+    private SftpSession borrowSession() throws IOException
+    {
+        final SftpSession nextSession = this.idleSessions.poll();
+        if(nextSession != null)
+        {
+            return nextSession;
+        }
+        
+        this.log.debug("Opening SSH session: {}:{}", this.sshHost, this.portNo);
+        final SSHClient sshClient = new SSHClient(ExampleBagUploader.DEFAULT_CONFIG);
+        try
+        {
+            if(this.compression)
+            {
+                sshClient.useCompression();
+            }
+            sshClient.addHostKeyVerifier(this.sshServerFingerprint);
+            sshClient.connect(this.sshHost, this.portNo);
+            sshClient.authPublickey(this.username, this.keyProvider);
+            final SftpSession result = new SftpSession(sshClient, sshClient.newSFTPClient());
+            this.openSessions.add(result);
+            return result;
+        }
+        catch(final IOException | RuntimeException e)
+        {
+            sshClient.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Closes all of the SSH sessions.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.executor.shutdownNow();
+        
+        IOException failure = null;
+        for(final SftpSession nextSession : this.openSessions)
+        {
+            try
+            {
+                nextSession.close();
+            }
+            catch(final IOException e)
+            {
+                failure = e;
+            }
+        }
+        this.openSessions.clear();
+        this.idleSessions.clear();
+        
+        if(failure != null)
+        {
+            throw failure;
+        }
+    }
+    
+    /**
+     * Reads the given range of the local file, adding it to the digester and writing it to the
+     * remote file if they are given.
+     * 
+     * @return The number of bytes read.
+     */
+    private long copy(final FileChannel channel, final long start, final long end, final RemoteFile remoteFile,
+            final ExampleStreamingDigester digester) throws IOException
+    {
+        final ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(this.readBufferSize, Math.max(1, end - start)));
+        final byte[] bytes = buffer.array();
+        long position = start;
+        while(position < end)
+        {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), end - position));
+            if(channel.read(buffer, position) < 0)
+            {
+                throw new IOException("Local file was shorter than expected: " + position + " " + end);
+            }
+            final int read = buffer.position();
+            
+            if(digester != null)
+            {
+                digester.update(bytes, 0, read);
+            }
+            if(remoteFile == null)
+            {
+                position += read;
+            }
+            else
+            {
+                for(int offset = 0; offset < read;)
+                {
+                    final int length = Math.min(this.writeBufferSize, read - offset);
+                    remoteFile.write(position, bytes, offset, length);
+                    offset += length;
+                    position += length;
+                }
+            }
+        }
+        return position - start;
+    }
+    
+    /**
+     * Computes all of the digests for the given local file, without uploading it.
+     */
+    private Map<Algorithm, String> digestLocal(final Path localPath) throws IOException, PoddClientException
+    {
+        final ExampleStreamingDigester digester = this.newDigester();
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ);)
+        {
+            this.copy(channel, 0, channel.size(), null, digester);
+        }
+        return digester.getDigests();
+    }
+    
+    private void discardSession(final SftpSession session)
+    {
+        this.openSessions.remove(session);
+        try
+        {
+            session.close();
+        }
+        catch(final IOException e)
+        {
+            this.log.warn("Could not close SSH session", e);
+        }
+    }
+    
+    /**
+     * Gets the remote path that the given bag is uploaded to, which has the same path relative to
+     * the remote root path as the bag has relative to the local root path.
+     */
+    static Path getRemotePath(final Path bag, final Path localRootPath, final Path remoteRootPath)
+    {
+        final Path localPath = bag.toAbsolutePath();
+        // Take the local root path out to get the subpath to use on the remote
+        final Path remoteDirPath =
+                localPath.getNameCount() - 1 > localRootPath.getNameCount() ? remoteRootPath.resolve(localPath
+                        .subpath(localRootPath.getNameCount(), localPath.getNameCount() - 1)) : remoteRootPath;
+        return remoteDirPath.resolve(bag.getFileName());
+    }
+    
+    /**
+     * Creates the given directory and any missing parents, allowing for other sessions creating the
+     * same directories at the same time.
+     */
+    private void mkdirs(final SFTPClient sftp, final String remoteDirPath) throws IOException
+    {
+        this.log.info("About to make directories on remote: {}", remoteDirPath);
+        try
+        {
+            sftp.mkdirs(remoteDirPath);
+        }
+        catch(final IOException e)
+        {
+            if(sftp.statExistence(remoteDirPath) == null)
+            {
+                throw e;
+            }
+        }
+    }
+    
+    private ExampleStreamingDigester newDigester() throws PoddClientException
+    {
+        try
+        {
+            return new ExampleStreamingDigester(this.algorithms);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new PoddClientException("Could not create digests for bags", e);
+        }
+    }
+    
+    /**
+     * Checks whether the last bytes of a partial remote bag match the same range of the local bag,
+     * so that the remainder of the bag can be appended to it.
+     */
+    private boolean partialMatches(final SFTPClient sftp, final Path localPath, final String remotePath,
+            final long remoteSize) throws IOException
+    {
+        final int length = (int)Math.min(ExampleBagUploader.RESUME_CHECK_SIZE, remoteSize);
+        final long start = remoteSize - length;
+        
+        final byte[] remoteBytes = new byte[length];
+        try (final RemoteFile remoteFile = sftp.open(remotePath, EnumSet.of(OpenMode.READ));)
+        {
+            int total = 0;
+            while(total < length)
+            {
+                final int read = remoteFile.read(start + total, remoteBytes, total, length - total);
+                if(read < 0)
+                {
+                    return false;
+                }
+                total += read;
+            }
+        }
+        
+        final ByteBuffer localBytes = ByteBuffer.allocate(length);
+        try (final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ);)
+        {
+            while(localBytes.hasRemaining())
+            {
+                if(channel.read(localBytes, start + localBytes.position()) < 0)
+                {
+                    return false;
+                }
+            }
+        }
+        
+        return Arrays.equals(remoteBytes, localBytes.array());
+    }
+    
+    private void returnSession(final SftpSession session)
+    {
+        this.idleSessions.add(session);
+    }
+    
+    /**
+     * Sets whether SSH compression is used for sessions opened after this is called. SSH
+     * compression uses a single thread for each session, and does not reduce the size of bags
+     * which are already compressed.
+     * 
+     * @param compression
+     *            True to use SSH compression, which is the default.
+     */
+    public void setCompression(final boolean compression)
+    {
+        this.compression = compression;
+    }
+    
+    /**
+     * Sets the size of the buffer used to read each bag from disk. Larger buffers reduce the
+     * number of reads, at the cost of more memory for each session.
+     * 
+     * @param readBufferSize
+     *            The size of the buffer in bytes, defaulting to
+     *            {@link #DEFAULT_READ_BUFFER_SIZE}.
+     */
+    public void setReadBufferSize(final int readBufferSize)
+    {
+        if(readBufferSize < 1)
+        {
+            throw new IllegalArgumentException("Read buffer size must be positive: " + readBufferSize);
+        }
+        this.readBufferSize = readBufferSize;
+    }
+    
+    /**
+     * Sets the listener that is given the details of each bag as soon as it has been uploaded,
+     * before the remaining bags have finished uploading.
+     * 
+     * @param transferListener
+     *            The listener, or null to only return the transfers when all of the bags have been
+     *            uploaded, which is the default.
+     */
+    public void setTransferListener(final ExampleBagTransferListener transferListener)
+    {
+        this.transferListener = transferListener;
+    }
+    
+    /**
+     * Sets the size of each SFTP write request. This should not be larger than the packet size
+     * supported by the server.
+     * 
+     * @param writeBufferSize
+     *            The size of each write request in bytes, defaulting to
+     *            {@link #TRANSFER_BUFFER_SIZE}.
+     */
+    public void setWriteBufferSize(final int writeBufferSize)
+    {
+        if(writeBufferSize < 1)
+        {
+            throw new IllegalArgumentException("Write buffer size must be positive: " + writeBufferSize);
+        }
+        this.writeBufferSize = writeBufferSize;
+    }
+    
+    /**
+     * Sends the local file to the remote path, starting from the given offset.
+     * 
+     * @param digester
+     *            If not null, the digester to add the whole local file to, including any bytes
+     *            before the offset, which are read but not sent.
+     * @return The number of bytes sent.
+     */
+    private long transfer(final SFTPClient sftp, final Path localPath, final String remotePath, final long offset,
+            final ExampleStreamingDigester digester) throws IOException
+    {
+        final Set<OpenMode> modes =
+                offset == 0 ? EnumSet.of(OpenMode.WRITE, OpenMode.CREAT, OpenMode.TRUNC) : EnumSet
+                        .of(OpenMode.WRITE);
+        try (final RemoteFile remoteFile = sftp.open(remotePath, modes);
+                final FileChannel channel = FileChannel.open(localPath, StandardOpenOption.READ);)
+        {
+            final long size = channel.size();
+            if(digester != null && offset > 0)
+            {
+                this.copy(channel, 0, offset, null, digester);
+            }
+            return this.copy(channel, offset, size, remoteFile, digester);
+        }
+    }
+    
+    /**
+     * Uploads the given bags in parallel, along with a digest file for each of the digests of each
+     * bag, which are computed while the bags are uploaded.
+     * 
+     * @see #upload(List, Map, Path, Path)
+     */
+    public List<ExampleBagTransfer> upload(final List<Path> bagsToUpload, final Path localRootPath,
+            final Path remoteRootPath) throws PoddClientException
+    {
+        return this.upload(bagsToUpload, Collections.<Path, Map<Algorithm, String>> emptyMap(), localRootPath,
+                remoteRootPath);
+    }
+    
+    /**
+     * Uploads the given bags in parallel, along with a digest file for each of the digests of each
+     * bag.
+     * 
+     * @param bagsToUpload
+     *            The bags to upload, which must be files inside the local root path. Bag
+     *            directories must be archived using
+     *            {@link ExamplePoddClient#archiveBags(List, ExampleBagArchiver.Format, int)} first.
+     * @param digests
+     *            The digests for each bag. The digests of bags which are not in this map are
+     *            computed while the bags are uploaded.
+     * @param localRootPath
+     *            The local path containing the bags.
+     * @param remoteRootPath
+     *            The remote path to copy the bags to, using the same path relative to this path as
+     *            the bags have relative to the local root path.
+     * @return The details of the transfer for each bag, in the same order as the given bags.
+     * @throws PoddClientException
+     *             If a bag was a directory or was not inside the local root path, or could not be
+     *             uploaded.
+     */
+    public List<ExampleBagTransfer> upload(final List<Path> bagsToUpload,
+            final Map<Path, ? extends Map<Algorithm, String>> digests, final Path localRootPath,
+            final Path remoteRootPath) throws PoddClientException
+    {
+        // Check before connecting, as only single files can be uploaded and resumed
+        for(final Path nextBag : bagsToUpload)
+        {
+            if(Files.isDirectory(nextBag))
+            {
+                throw new PoddClientException("Bag directories must be archived before they are uploaded, "
+                        + "using ExamplePoddClient.archiveBags: " + nextBag);
+            }
+        }
+        
+        final ExampleBagTransferListener listener = this.transferListener;
+        final List<Future<ExampleBagTransfer>> futures = new ArrayList<>(bagsToUpload.size());
+        for(final Path nextBag : bagsToUpload)
+        {
+            futures.add(this.executor.submit(new Callable<ExampleBagTransfer>()
+                {
+                    @Override
+                    public ExampleBagTransfer call() throws Exception
+                    {
+                        final SftpSession session = ExampleBagUploader.this.borrowSession();
+                        final ExampleBagTransfer result;
+                        try
+                        {
+                            result =
+                                    ExampleBagUploader.this.uploadBag(session, nextBag, digests.get(nextBag),
+                                            localRootPath, remoteRootPath);
+                            ExampleBagUploader.this.returnSession(session);
+                        }
+                        catch(final IOException | PoddClientException | RuntimeException e)
+                        {
+                            // Do not reuse a session after an error, as the failure may have been in
+                            // the connection
+                            ExampleBagUploader.this.discardSession(session);
+                            throw e;
+                        }
+                        if(listener != null)
+                        {
+                            listener.transferred(result);
+                        }
+                        return result;
+                    }
+                }));
+        }
+        
+        final List<ExampleBagTransfer> results = new ArrayList<>(futures.size());
+        try
+        {
+            for(final Future<ExampleBagTransfer> nextFuture : futures)
+            {
+                results.add(nextFuture.get());
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new PoddClientException("Interrupted while uploading bags", e);
+        }
+        catch(final ExecutionException e)
+        {
+            for(final Future<ExampleBagTransfer> nextFuture : futures)
+            {
+                nextFuture.cancel(true);
+            }
+            if(e.getCause() instanceof PoddClientException)
+            {
+                throw (PoddClientException)e.getCause();
+            }
+            throw new PoddClientException("Could not copy a bag to the remote location", e.getCause());
+        }
+        return results;
+    }
+    
+    private ExampleBagTransfer uploadBag(final SftpSession session, final Path nextBag,
+            final Map<Algorithm, String> bagDigests, final Path localRootPath, final Path remoteRootPath)
+        throws IOException, PoddClientException
+    {
+        final SFTPClient sftp = session.sftp;
+        
+        // Check to make sure that the bag was under the local root path
+        final Path localPath = nextBag.toAbsolutePath();
+        if(!localPath.startsWith(localRootPath))
+        {
+            this.log.error("Local bag path was not a direct descendant of the local root path: {} {} {}",
+                    localRootPath, nextBag, localPath);
+            throw new PoddClientException("Local bag path was not a direct descendant of the local root path: "
+                    + localPath + " " + localRootPath);
+        }
+        
+        final Path remoteBagPath = ExampleBagUploader.getRemotePath(nextBag, localRootPath, remoteRootPath);
+        final Path remoteDirPath = remoteBagPath.getParent();
+        this.log.info("Remote dir path: {}", remoteDirPath);
+        this.log.info("Remote bag path: {}", remoteBagPath);
+        
+        final long localSize = Files.size(nextBag);
+        long remoteSize = -1;
+        try
+        {
+            // check details of a remote bag
+            final FileAttributes attribs = sftp.lstat(remoteBagPath.toAbsolutePath().toString());
+            remoteSize = attribs.getSize();
+        }
+        catch(final IOException e)
+        {
+            // lstat() throws an IOException if the file does not exist
+            // Ignore
+        }
+        
+        final ExampleBagTransfer result = new ExampleBagTransfer();
+        result.localPath = nextBag;
+        result.remotePath = remoteBagPath.toString();
+        result.size = localSize;
+        
+        Map<Algorithm, String> digests = bagDigests == null || bagDigests.isEmpty() ? null : bagDigests;
+        
+        // Compare bags with the same size using digests computed on the server, if it supports them
+        Boolean verified = null;
+        if(localSize > 0 && localSize == remoteSize)
+        {
+            if(digests == null)
+            {
+                // The bag will not be uploaded if it matches, so this is the only time it is read
+                digests = this.digestLocal(localPath);
+            }
+            verified = this.verifier.verifyRemoteBag(session.sshClient, result.remotePath, digests);
+        }
+        
+        if(localSize <= 0)
+        {
+            this.log.error("Local bag was empty: {}", nextBag);
+            this.mkdirs(sftp, remoteDirPath.toString());
+        }
+        else if(localSize == remoteSize && !Boolean.FALSE.equals(verified))
+        {
+            this.log.info("Not copying bag to remote as it exists and is the same size as local bag: {} {}",
+                    nextBag, remoteBagPath);
+            this.uploadDigests(sftp, localPath, digests, remoteDirPath, remoteBagPath);
+            result.offset = localSize;
+            result.digestVerified = Boolean.TRUE.equals(verified);
+            return result;
+        }
+        else if(remoteSize > 0 && remoteSize < localSize
+                && this.partialMatches(sftp, localPath, result.remotePath, remoteSize))
+        {
+            this.log.info("Resuming partial upload of bag to remote: {} {} offset={}", nextBag, remoteBagPath,
+                    remoteSize);
+            result.offset = remoteSize;
+        }
+        else if(remoteSize >= 0)
+        {
+            // This includes remote bags with the same size as the local bag, but different digests
+            // We always assume that a non-zero local file is correct
+            // The bags contain time-stamps that will be modified when they are
+            // regenerated, likely changing the file-size, and hopefully changing
+            // the digest checksums
+            this.log.error("Found remote bag but it did not match the local bag: {} {}", nextBag, remoteBagPath);
+            sftp.rm(result.remotePath);
+        }
+        else
+        {
+            this.mkdirs(sftp, remoteDirPath.toString());
+        }
+        
+        // Compute any missing digests from the same reads used to send the bag
+        final ExampleStreamingDigester digester = digests == null ? this.newDigester() : null;
+        
+        this.log.info("Copying bag to remote: {}", remoteBagPath);
+        final long start = System.nanoTime();
+        result.bytesTransferred = this.transfer(sftp, localPath, result.remotePath, result.offset, digester);
+        result.elapsedNanos = System.nanoTime() - start;
+        
+        if(digester != null)
+        {
+            digests = digester.getDigests();
+        }
+        this.uploadDigests(sftp, localPath, digests, remoteDirPath, remoteBagPath);
+        
+        verified = this.verifier.verifyRemoteBag(session.sshClient, result.remotePath, digests);
+        if(Boolean.FALSE.equals(verified) && result.offset > 0)
+        {
+            this.log.error("Resumed bag did not match local bag, copying whole bag again: {}", remoteBagPath);
+            final long restart = System.nanoTime();
+            result.offset = 0;
+            result.bytesTransferred = this.transfer(sftp, localPath, result.remotePath, 0, null);
+            result.elapsedNanos = System.nanoTime() - restart;
+            verified = this.verifier.verifyRemoteBag(session.sshClient, result.remotePath, digests);
+        }
+        if(Boolean.FALSE.equals(verified))
+        {
+            throw new PoddClientException("Digest of remote bag did not match local bag after copying: "
+                    + remoteBagPath);
+        }
+        result.digestVerified = Boolean.TRUE.equals(verified);
+        
+        this.log.info("Copied bag to remote: {} bytes={} seconds={} MB/s={}", remoteBagPath,
+                result.bytesTransferred, String.format("%.3f", result.elapsedNanos / 1000000000.0),
+                String.format("%.2f", result.getBytesPerSecond() / (1024 * 1024)));
+        
+        return result;
+    }
+    
+    private void uploadDigests(final SFTPClient sftp, final Path localPath, final Map<Algorithm, String> bagDigests,
+            final Path remoteDirPath, final Path remoteBagPath) throws IOException
+    {
+        for(final Entry<Algorithm, String> entry : bagDigests.entrySet())
+        {
+            final Path localDigestPath =
+                    localPath.resolveSibling(localPath.getFileName() + entry.getKey().getExtension());
+            // Create the local digest file, replacing any left from a previous upload
+            Files.write(localDigestPath, entry.getValue().getBytes(StandardCharsets.UTF_8));
+            final Path remoteDigestPath =
+                    remoteBagPath.resolveSibling(remoteBagPath.getFileName() + entry.getKey().getExtension());
+            // Only read the digest file, which is much smaller than the bag
+            final String remoteDigest = this.verifier.readRemoteDigest(sftp, remoteDigestPath.toString());
+            final boolean nextDigestFileFound = remoteDigest != null;
+            final boolean nextDigestCorrect =
+                    nextDigestFileFound && ExampleRemoteDigestVerifier.matches(entry.getValue(), remoteDigest);
+            if(nextDigestFileFound && nextDigestCorrect)
+            {
+                this.log.info("Not copying digest to remote as it exists and contains the same content as the local digest");
+            }
+            else if(nextDigestFileFound && !nextDigestCorrect)
+            {
+                this.log.error("Found remote digest but content was not correct: {} {}", localDigestPath,
+                        remoteDigestPath);
+                sftp.rm(remoteDigestPath.toString());
+                this.log.info("Copying digest to remote: {}", remoteDigestPath);
+                sftp.put(new FileSystemFile(localDigestPath.toString()), remoteDigestPath.toString());
+            }
+            else if(!nextDigestFileFound)
+            {
+                this.mkdirs(sftp, remoteDirPath.toString());
+                this.log.info("Copying digest to remote: {}", remoteDigestPath);
+                sftp.put(new FileSystemFile(localDigestPath.toString()), remoteDigestPath.toString());
+            }
+        }
+    }
+    
+    /**
+     * An SSH connection and the SFTP client using it.
+     */
+    private static final class SftpSession
+    {
+        private final SSHClient sshClient;
+        private final SFTPClient sftp;
+        
+        private SftpSession(final SSHClient sshClient, final SFTPClient sftp)
+        {
+            this.sshClient = sshClient;
+            this.sftp = sftp;
+        }
+        
+        private void close() throws IOException
+        {
+            try
+            {
+                this.sftp.close();
+            }
+            finally
+            {
+                this.sshClient.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Binds the fields in lines from a TrayScan list to {@link ExampleCSVLine} objects, using the
+ * column for each header, which is found once when the binder is created from the header line.
+ * Binding each line then only needs to walk the columns, without comparing any headers.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class ExampleCSVLineBinder
+{
+    /**
+     * The supported columns, with the header for each and the field of {@link ExampleCSVLine} that
+     * it is bound to.
+     */
+    private enum Column
+    {
+        YEAR(ExampleSpreadsheetConstants.CLIENT_YEAR)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.year = value;
+            }
+        },
+        
+        PROJECT_NUMBER(ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.projectNumber = value;
+            }
+        },
+        
+        PROJECT_ID(ExampleSpreadsheetConstants.CLIENT_PROJECT_ID)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.projectID = value;
+            }
+        },
+        
+        EXPERIMENT_NUMBER(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.experimentNumber = value;
+            }
+        },
+        
+        EXPERIMENT_ID(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_ID)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.experimentID = value;
+            }
+        },
+        
+        GENUS(ExampleSpreadsheetConstants.CLIENT_GENUS)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.genus = value;
+            }
+        },
+        
+        SPECIES(ExampleSpreadsheetConstants.CLIENT_SPECIES)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.species = value;
+            }
+        },
+        
+        POT_NUMBER(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.potNumber = value;
+            }
+        },
+        
+        TRAY_NUMBER(ExampleSpreadsheetConstants.CLIENT_TRAY_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.trayNumber = value;
+            }
+        },
+        
+        POT_NUMBER_TRAY(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER_TRAY)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.potNumberTray = value;
+            }
+        },
+        
+        COLUMN_NUMBER_TRAY(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_TRAY)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.columnNumberTray = value;
+            }
+        },
+        
+        COLUMN_LETTER(ExampleSpreadsheetConstants.CLIENT_COLUMN_LETTER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.columnLetter = value;
+            }
+        },
+        
+        ROW_NUMBER_TRAY(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_TRAY)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.rowNumberTray = value;
+            }
+        },
+        
+        ROW_NUMBER_REP(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_REP)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.rowNumberRep = value;
+            }
+        },
+        
+        COLUMN_NUMBER_REP(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_REP)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.columnNumberRep = value;
+            }
+        },
+        
+        COLUMN_NUMBER(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.columnNumber = value;
+            }
+        },
+        
+        TRAY_ID(ExampleSpreadsheetConstants.CLIENT_TRAY_ID)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.trayID = value;
+            }
+        },
+        
+        TRAY_NOTES(ExampleSpreadsheetConstants.CLIENT_TRAY_NOTES)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.trayNotes = value;
+            }
+        },
+        
+        TRAY_ROW_NUMBER(ExampleSpreadsheetConstants.CLIENT_TRAY_ROW_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.trayRowNumber = value;
+            }
+        },
+        
+        TRAY_TYPE_NAME(ExampleSpreadsheetConstants.CLIENT_TRAY_TYPE_NAME)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.trayTypeName = value;
+            }
+        },
+        
+        POSITION(ExampleSpreadsheetConstants.CLIENT_POSITION)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.position = value;
+            }
+        },
+        
+        PLANT_ID(ExampleSpreadsheetConstants.CLIENT_PLANT_ID)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.plantID = value;
+            }
+        },
+        
+        PLANT_LINE_NUMBER(ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.plantLineNumber = value;
+            }
+        },
+        
+        PLANT_NAME(ExampleSpreadsheetConstants.CLIENT_PLANT_NAME)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.plantName = value;
+            }
+        },
+        
+        PLANT_NOTES(ExampleSpreadsheetConstants.CLIENT_PLANT_NOTES)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.plantNotes = value;
+            }
+        },
+        
+        POT_TYPE(ExampleSpreadsheetConstants.CLIENT_POT_TYPE)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.potType = value;
+            }
+        },
+        
+        CONTROL(ExampleSpreadsheetConstants.CLIENT_CONTROL)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.control = value;
+            }
+        },
+        
+        REPLICATE_NUMBER(ExampleSpreadsheetConstants.CLIENT_REPLICATE_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.replicateNumber = value;
+            }
+        },
+        
+        POT_REPLICATE_NUMBER(ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER)
+        {
+            @Override
+            void set(final ExampleCSVLine line, final String value)
+            {
+                line.potReplicateNumber = value;
+            }
+        };
+        
+        private final String header;
+        
+        private Column(final String header)
+        {
+            this.header = header;
+        }
+        
+        abstract void set(ExampleCSVLine line, String value);
+    }
+    
+    private static final Map<String, Column> COLUMNS_BY_HEADER = new HashMap<>();
+    
+    static
+    {
+        for(final Column nextColumn : Column.values())
+        {
+            ExampleCSVLineBinder.COLUMNS_BY_HEADER.put(nextColumn.header, nextColumn);
+        }
+    }
+    
+    /**
+     * Creates a binder for lines with the given headers.
+     * <p>
+     * Unrecognised headers are reported when a line is bound, rather than here, so that a list with
+     * a header line but no other lines is still accepted.
+     * 
+     * @param headers
+     *            The header line.
+     * @return A binder for lines with the given headers.
+     */
+    public static ExampleCSVLineBinder compile(final List<String> headers)
+    {
+        final Column[] columns = new Column[headers.size()];
+        for(int i = 0; i < columns.length; i++)
+        {
+            columns[i] = ExampleCSVLineBinder.COLUMNS_BY_HEADER.get(headers.get(i).trim());
+        }
+        return new ExampleCSVLineBinder(headers, columns);
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final List<String> headers;
+    
+    /**
+     * The column for each header, or null if the header was not recognised.
+     */
+    private final Column[] columns;
+    
+    private ExampleCSVLineBinder(final List<String> headers, final Column[] columns)
+    {
+        this.headers = headers;
+        this.columns = columns;
+    }
+    
+    /**
+     * Binds the fields in a single line from the input file to an {@link ExampleCSVLine}.
+     * 
+     * @param nextLine
+     *            A list of values, in the same order as the headers for this binder.
+     * @return An {@link ExampleCSVLine} containing the values from the line.
+     * @throws PoddClientException
+     *             If the headers for this binder contained an unrecognised header.
+     */
+    public ExampleCSVLine bind(final List<String> nextLine) throws PoddClientException
+    {
+        final ExampleCSVLine result = new ExampleCSVLine();
+        
+        for(int i = 0; i < this.columns.length; i++)
+        {
+            final Column nextColumn = this.columns[i];
+            if(nextColumn == null)
+            {
+                final String nextHeader = this.headers.get(i);
+                this.log.error("Found unrecognised header: {} {}", nextHeader, nextLine.get(i));
+                throw new PoddClientException("TODO: Handle unrecognised header: " + nextHeader);
+            }
+            nextColumn.set(result, nextLine.get(i));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return The headers that this binder was created from.
+     */
+    public List<String> getHeaders()
+    {
+        return this.headers;
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed size pool of JDBC connections to the TrayScan database.
+ * <p>
+ * Connections are opened on demand up to the maximum size of the pool. Calling
+ * {@link Connection#close()} on a connection returned by {@link #getConnection()} returns it to
+ * the pool instead of closing it, so pooled connections can be used with try-with-resources in the
+ * same way as connections from {@link DriverManager}. Any uncommitted changes are rolled back when a
+ * connection is returned.
+ */
+public class ExampleConnectionPool implements AutoCloseable
+{
+    /**
+     * Time to wait when checking whether an idle connection is still usable.
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final String url;
+    private final String username;
+    private final String password;
+    
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+    private final Set<Connection> open = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+    
+    private volatile boolean closed = false;
+    
+    /**
+     * @param url
+     *            The JDBC URL for the database.
+     * @param username
+     *            The username to connect with.
+     * @param password
+     *            The password to connect with.
+     * @param maximumSize
+     *            The maximum number of connections that can be in use at any time.
+     */
+    public ExampleConnectionPool(final String url, final String username, final String password,
+            final int maximumSize)
+    {
+        if(maximumSize < 1)
+        {
+            throw new IllegalArgumentException("Maximum pool size must be positive: " + maximumSize);
+        }
+        
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.permits = new Semaphore(maximumSize, true);
+    }
+    
+    /**
+     * Closes all of the idle connections in the pool. Connections that are in use are closed when
+     * they are returned.
+     */
+    @Override
+    public void close() throws SQLException
+    {
+        this.closed = true;
+        
+        SQLException failure = null;
+        Connection nextConnection;
+        while((nextConnection = this.idle.poll()) != null)
+        {
+            try
+            {
+                this.discard(nextConnection);
+            }
+            catch(final SQLException e)
+            {
+                if(failure == null)
+                {
+                    failure = e;
+                }
+                else
+                {
+                    failure.setNextException(e);
+                }
+            }
+        }
+        
+        if(failure != null)
+        {
+            throw failure;
+        }
+    }
+    
+    private void discard(final Connection connection) throws SQLException
+    {
+        this.open.remove(connection);
+        connection.close();
+    }
+    
+    /**
+     * Gets a connection from the pool, waiting for another connection to be returned if the
+     * maximum number of connections are already in use.
+     * 
+     * @return A connection which is returned to the pool when it is closed.
+     * @throws SQLException
+     *             If the pool is closed, or a new connection could not be opened.
+     */
+    public Connection getConnection() throws SQLException
+    {
+        if(this.closed)
+        {
+            throw new SQLException("Connection pool has been closed");
+        }
+        
+        try
+        {
+            this.permits.acquire();
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        
+        try
+        {
+            Connection nextConnection = this.idle.poll();
+            while(nextConnection != null
+                    && !nextConnection.isValid(ExampleConnectionPool.VALIDATION_TIMEOUT_SECONDS))
+            {
+                this.log.debug("Discarding database connection that is no longer valid");
+                this.discard(nextConnection);
+                nextConnection = this.idle.poll();
+            }
+            
+            if(nextConnection == null)
+            {
+                this.log.debug("Opening new database connection: {}", this.url);
+                nextConnection = DriverManager.getConnection(this.url, this.username, this.password);
+                this.open.add(nextConnection);
+            }
+            
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new PooledConnection(nextConnection));
+        }
+        catch(final SQLException | RuntimeException e)
+        {
+            this.permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * @return The number of connections that are currently open, including those in use.
+     */
+    public int getOpenConnectionCount()
+    {
+        return this.open.size();
+    }
+    
+    private void release(final Connection connection) throws SQLException
+    {
+        try
+        {
+            if(!connection.getAutoCommit())
+            {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            
+            if(this.closed)
+            {
+                this.discard(connection);
+            }
+            else
+            {
+                this.idle.add(connection);
+            }
+        }
+        catch(final SQLException e)
+        {
+            this.discard(connection);
+            throw e;
+        }
+        finally
+        {
+            this.permits.release();
+        }
+    }
+    
+    /**
+     * Intercepts calls to {@link Connection#close()} to return the connection to the pool, and
+     * prevents further use of the connection after that.
+     */
+    private final class PooledConnection implements InvocationHandler
+    {
+        private final Connection connection;
+        
+        private boolean released = false;
+        
+        private PooledConnection(final Connection connection)
+        {
+            this.connection = connection;
+        }
+        
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+        {
+            final String name = method.getName();
+            if(name.equals("close"))
+            {
+                if(!this.released)
+                {
+                    this.released = true;
+                    ExampleConnectionPool.this.release(this.connection);
+                }
+                return null;
+            }
+            else if(name.equals("isClosed"))
+            {
+                return this.released || this.connection.isClosed();
+            }
+            else if(name.equals("equals"))
+            {
+                return proxy == args[0];
+            }
+            else if(name.equals("hashCode"))
+            {
+                return System.identityHashCode(proxy);
+            }
+            else if(name.equals("toString"))
+            {
+                return "Pooled " + this.connection;
+            }
+            else if(this.released)
+            {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            
+            try
+            {
+                return method.invoke(this.connection, args);
+            }
+            catch(final InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+}
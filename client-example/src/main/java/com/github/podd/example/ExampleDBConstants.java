@@ -7,6 +7,11 @@ public class ExampleDBConstants
     public static final String PROP_DB_NAME = "exampledatabase.dbname";
     public static final String PROP_DB_USERNAME = "exampledatabase.dbusername";
     public static final String PROP_DB_PASSWORD = "exampledatabase.dbpassword";
+    public static final String PROP_DB_POOL_SIZE = "exampledatabase.poolsize";
+    public static final String PROP_DB_BATCH_SIZE = "exampledatabase.batchsize";
+    
+    public static final int DEFAULT_DB_POOL_SIZE = 4;
+    public static final int DEFAULT_DB_BATCH_SIZE = 500;
     
     private ExampleDBConstants()
     {
@@ -0,0 +1,431 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates downscaled previews of images in parallel on a {@link ForkJoinPool}, so that images
+ * can be browsed without downloading them at full resolution.
+ * <p>
+ * Previews are cached on disk, using the SHA-256 digest of the content of the source image, the
+ * maximum dimension and the format as the key, so an image is only rendered again if its content
+ * changes, even if it is renamed or moved. Cached previews are written to a temporary file and
+ * then moved into place, so an interrupted run never leaves a partial preview in the cache, and
+ * several generators can share a cache directory.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class ExampleDerivativeGenerator implements AutoCloseable
+{
+    /**
+     * The default maximum width and height of previews, in pixels.
+     */
+    public static final int DEFAULT_MAX_DIMENSION = 512;
+    
+    /**
+     * The property used to set the directory that previews are cached in.
+     */
+    public static final String PROP_CACHE_DIRECTORY = "examplederivative.cachedirectory";
+    
+    /**
+     * The property used to set the number of images that are rendered in parallel, which defaults
+     * to the number of processors.
+     */
+    public static final String PROP_PARALLELISM = "examplederivative.parallelism";
+    
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Renders previews for a range of source images, splitting the range in half until it
+     * contains a single image.
+     */
+    private final class DerivativeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Path> sources;
+        private final Map<Path, String> digests;
+        private final ConcurrentMap<Path, Path> results;
+        
+        private DerivativeTask(final List<Path> sources, final Map<Path, String> digests,
+                final ConcurrentMap<Path, Path> results)
+        {
+            this.sources = sources;
+            this.digests = digests;
+            this.results = results;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            if(this.sources.size() > 1)
+            {
+                final int middle = this.sources.size() / 2;
+                ForkJoinTask.invokeAll(new DerivativeTask(this.sources.subList(0, middle), this.digests, this.results),
+                        new DerivativeTask(this.sources.subList(middle, this.sources.size()), this.digests,
+                                this.results));
+            }
+            else if(!this.sources.isEmpty())
+            {
+                final Path source = this.sources.get(0);
+                try
+                {
+                    this.results.put(source,
+                            ExampleDerivativeGenerator.this.generate(source, this.digests.get(source)));
+                }
+                catch(final IOException e)
+                {
+                    throw new DerivativeException(e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Carries a failure to render a preview out of the fork-join pool.
+     */
+    private static final class DerivativeException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private DerivativeException(final IOException cause)
+        {
+            super(cause);
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final Path cacheDirectory;
+    
+    private final String formatName;
+    
+    private final int maxDimension;
+    
+    private final ForkJoinPool pool;
+    
+    private final AtomicLong cacheHits = new AtomicLong();
+    
+    private final AtomicLong rendered = new AtomicLong();
+    
+    /**
+     * @param cacheDirectory
+     *            The directory to cache previews in.
+     * @param formatName
+     *            The format of the previews, which must be one of the formats returned by
+     *            {@link ExamplePoddClient#getImageFormatNames()}.
+     * @param maxDimension
+     *            The maximum width and height of the previews. Images which are already smaller
+     *            than this are not enlarged.
+     * @param parallelism
+     *            The number of images to render in parallel.
+     */
+    public ExampleDerivativeGenerator(final Path cacheDirectory, final String formatName, final int maxDimension,
+            final int parallelism)
+    {
+        if(!ImageIO.getImageWritersByFormatName(formatName).hasNext())
+        {
+            throw new IllegalArgumentException("Image format did not have a writer: " + formatName);
+        }
+        if(maxDimension < 1)
+        {
+            throw new IllegalArgumentException("Maximum dimension must be positive: " + maxDimension);
+        }
+        if(parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        
+        this.cacheDirectory = cacheDirectory;
+        this.formatName = formatName.toLowerCase(Locale.ENGLISH);
+        this.maxDimension = maxDimension;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+    
+    /**
+     * Checks whether there is an {@link ImageIO} reader for the given file, using its file name.
+     */
+    public static boolean canRead(final Path file)
+    {
+        final String fileName = file.getFileName().toString();
+        final int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && ImageIO.getImageReadersBySuffix(fileName.substring(dot + 1)).hasNext();
+    }
+    
+    /**
+     * Stops the pool used to render previews.
+     */
+    @Override
+    public void close()
+    {
+        this.pool.shutdownNow();
+    }
+    
+    /**
+     * Computes the digest of the content of the given file, which is used as the cache key.
+     */
+    private static String digest(final Path source) throws IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(ExampleDerivativeGenerator.DIGEST_ALGORITHM);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new IOException("Checksum algorithm was not supported: "
+                    + ExampleDerivativeGenerator.DIGEST_ALGORITHM, e);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(ExampleDerivativeGenerator.READ_BUFFER_SIZE);
+        try (final FileChannel input = FileChannel.open(source, StandardOpenOption.READ);)
+        {
+            while(input.read(buffer) >= 0)
+            {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return ExampleStreamingDigester.toHex(digest.digest());
+    }
+    
+    /**
+     * Returns the preview for the given image, rendering it if it is not already in the cache.
+     * 
+     * @param source
+     *            The image to preview.
+     * @return The location of the preview in the cache.
+     * @throws IOException
+     *             If the image could not be read, or the preview could not be written.
+     */
+    public Path generate(final Path source) throws IOException
+    {
+        return this.generate(source, null);
+    }
+    
+    /**
+     * Returns the preview for the given image, using the given digest to find it in the cache
+     * without reading the image, and rendering it if it is not already in the cache.
+     * 
+     * @param source
+     *            The image to preview.
+     * @param knownDigest
+     *            The hex encoded SHA-256 digest of the image, or null to compute it.
+     * @return The location of the preview in the cache.
+     * @throws IOException
+     *             If the image could not be read, or the preview could not be written.
+     */
+    public Path generate(final Path source, final String knownDigest) throws IOException
+    {
+        final String digest = knownDigest == null ? ExampleDerivativeGenerator.digest(source) : knownDigest;
+        final Path target =
+                this.cacheDirectory.resolve(digest.substring(0, 2)).resolve(
+                        digest + "-" + this.maxDimension + "." + this.formatName);
+        if(Files.exists(target))
+        {
+            this.cacheHits.incrementAndGet();
+            return target;
+        }
+        
+        final BufferedImage image = ImageIO.read(source.toFile());
+        if(image == null)
+        {
+            throw new IOException("Could not find a reader for image: " + source);
+        }
+        final BufferedImage preview = this.scale(image);
+        
+        Files.createDirectories(target.getParent());
+        final Path temporary = Files.createTempFile(target.getParent(), digest, ".tmp");
+        try
+        {
+            if(!ImageIO.write(preview, this.formatName, temporary.toFile()))
+            {
+                throw new IOException("Could not write preview for image in format: " + this.formatName + " "
+                        + source);
+            }
+            try
+            {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(final AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+        this.rendered.incrementAndGet();
+        this.log.debug("Rendered preview: {} {}x{} => {}", source, preview.getWidth(), preview.getHeight(), target);
+        return target;
+    }
+    
+    /**
+     * Returns the previews for all of the given images, rendering them in parallel.
+     * 
+     * @param sources
+     *            The images to preview.
+     * @return A map from each image to the location of its preview in the cache, in the same order
+     *         as the images.
+     * @throws IOException
+     *             If any of the images could not be read, or any of the previews could not be
+     *             written.
+     */
+    public Map<Path, Path> generateAll(final List<Path> sources) throws IOException
+    {
+        return this.generateAll(sources, Collections.<Path, String> emptyMap());
+    }
+    
+    /**
+     * Returns the previews for all of the given images, rendering them in parallel, and using the
+     * given digests to find images in the cache without reading them.
+     * 
+     * @param sources
+     *            The images to preview.
+     * @param knownDigests
+     *            The hex encoded SHA-256 digests of any of the images that are already known.
+     * @return A map from each image to the location of its preview in the cache, in the same order
+     *         as the images.
+     * @throws IOException
+     *             If any of the images could not be read, or any of the previews could not be
+     *             written.
+     */
+    public Map<Path, Path> generateAll(final List<Path> sources, final Map<Path, String> knownDigests)
+        throws IOException
+    {
+        final ConcurrentMap<Path, Path> previews = new ConcurrentHashMap<>();
+        try
+        {
+            this.pool.invoke(new DerivativeTask(new ArrayList<>(sources), knownDigests, previews));
+        }
+        catch(final RuntimeException e)
+        {
+            // The pool may rethrow a copy of the exception, which has the original as its cause
+            for(Throwable cause = e; cause != null; cause = cause.getCause())
+            {
+                if(cause instanceof DerivativeException)
+                {
+                    throw (IOException)cause.getCause();
+                }
+            }
+            throw e;
+        }
+        
+        final Map<Path, Path> results = new LinkedHashMap<>();
+        for(final Path nextSource : sources)
+        {
+            results.put(nextSource, previews.get(nextSource));
+        }
+        return results;
+    }
+    
+    /**
+     * @return The number of previews found in the cache instead of being rendered.
+     */
+    public long getCacheHits()
+    {
+        return this.cacheHits.get();
+    }
+    
+    /**
+     * @return The file name extension used for previews.
+     */
+    public String getFormatName()
+    {
+        return this.formatName;
+    }
+    
+    /**
+     * @return The number of previews that have been rendered.
+     */
+    public long getRendered()
+    {
+        return this.rendered.get();
+    }
+    
+    /**
+     * Scales the given image to fit within the maximum dimension, halving it in steps so that
+     * bilinear interpolation does not skip over source pixels.
+     */
+    private BufferedImage scale(final BufferedImage image)
+    {
+        final double factor = Math.min(1.0, (double)this.maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        final int targetWidth = Math.max(1, (int)Math.round(image.getWidth() * factor));
+        final int targetHeight = Math.max(1, (int)Math.round(image.getHeight() * factor));
+        // Only PNG previews keep transparency, as other formats may not have a writer for it
+        final int type =
+                image.getColorModel().hasAlpha() && this.formatName.equals("png") ? BufferedImage.TYPE_INT_ARGB
+                        : BufferedImage.TYPE_INT_RGB;
+        
+        BufferedImage result = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do
+        {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            final BufferedImage next = new BufferedImage(width, height, type);
+            final Graphics2D graphics = next.createGraphics();
+            try
+            {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                        RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(result, 0, 0, width, height, null);
+            }
+            finally
+            {
+                graphics.dispose();
+            }
+            result = next;
+        }
+        while(width != targetWidth || height != targetHeight);
+        return result;
+    }
+}
@@ -0,0 +1,609 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records what was written by the last dump of an experiment, so that the next dump only writes
+ * payload files which are new or have changed, and bags which have not changed since they were
+ * last uploaded are not uploaded again.
+ * <p>
+ * The manifest records the version IRI of the artifact that the trays and pots were read from,
+ * the size, modification time and digest of the source of each payload file, which are grouped by
+ * tray and pot through their payload paths, the digest of the payload manifest of each bag, the
+ * details of each bag archive when it was written, and the details of each bag when it was last
+ * uploaded. Source files are compared using their size and modification time, so unchanged images
+ * are not read again, and archives of unchanged bags are not written again unless the tag files
+ * of the bag or the compression level have changed.
+ * <p>
+ * The manifest is a tab separated text file, next to the bags in the output directory, which is
+ * replaced atomically when it is stored. Instances are not thread-safe.
+ */
+public class ExampleDumpManifest
+{
+    /**
+     * The extension of manifest files, which are named using the name of the dump.
+     */
+    public static final String FILE_EXTENSION = ".dump-manifest";
+    
+    /**
+     * Identifies the file format, and is changed whenever the format changes so that older files
+     * are discarded.
+     */
+    private static final String HEADER = "podd-example-dump-manifest\t1";
+    
+    /**
+     * Matches the name of a bag directory or archive written by {@link ExampleBagBuilder}, with
+     * the name of the bag in the first group and the name of the dump in the second group.
+     */
+    private static final Pattern BAG_NAME = Pattern.compile("^((.+)-\\d{4})(\\.[^-]*)?$");
+    
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    
+    /**
+     * The source of a payload file when it was last dumped.
+     */
+    private static final class PayloadRecord
+    {
+        private final long size;
+        private final long lastModified;
+        private final String digest;
+        
+        private PayloadRecord(final long size, final long lastModified, final String digest)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+    
+    /**
+     * A bag archive when it was written, along with the digest of the tag files of the bag and the
+     * compression level that it was written with.
+     */
+    private static final class ArchiveRecord
+    {
+        private final long size;
+        private final long lastModified;
+        private final String bagDigest;
+        private final int level;
+        private final String tagDigest;
+        
+        private ArchiveRecord(final long size, final long lastModified, final String bagDigest, final int level,
+                final String tagDigest)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.bagDigest = bagDigest;
+            this.level = level;
+            this.tagDigest = tagDigest;
+        }
+    }
+    
+    /**
+     * A bag file when it was last uploaded.
+     */
+    private static final class UploadRecord
+    {
+        private final long size;
+        private final long lastModified;
+        private final String bagDigest;
+        private final String remotePath;
+        
+        private UploadRecord(final long size, final long lastModified, final String bagDigest,
+                final String remotePath)
+        {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.bagDigest = bagDigest;
+            this.remotePath = remotePath;
+        }
+    }
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final Path file;
+    
+    private String artifactVersion;
+    
+    private String metadataPath;
+    
+    private final Map<String, PayloadRecord> payloads = new TreeMap<>();
+    
+    private final Map<String, String> bags = new TreeMap<>();
+    
+    private final Map<String, ArchiveRecord> archives = new TreeMap<>();
+    
+    private final Map<String, UploadRecord> uploads = new TreeMap<>();
+    
+    /**
+     * Creates an empty manifest, which is stored in the given file.
+     */
+    public ExampleDumpManifest(final Path file)
+    {
+        this.file = file;
+    }
+    
+    /**
+     * Computes the digest of the payload manifest of the given bag, which changes whenever the
+     * paths or contents of the payload files change, but not when the tag files are rewritten.
+     * 
+     * @param bagDirectory
+     *            The directory of a bag written by {@link ExampleBagBuilder}.
+     * @return The hex encoded digest.
+     * @throws IOException
+     *             If the payload manifest could not be read.
+     */
+    public static String digestBag(final Path bagDirectory) throws IOException
+    {
+        final MessageDigest digest = ExampleDumpManifest.newDigest();
+        return ExampleStreamingDigester.toHex(digest.digest(Files.readAllBytes(bagDirectory
+                .resolve(ExampleBagBuilder.getPayloadManifestName()))));
+    }
+    
+    /**
+     * Computes a digest of the names and contents of the tag files of the given bag, which are the
+     * files at the top of the bag directory, so that it changes whenever the tag files are
+     * rewritten with different contents, such as a new bagging date. Bags written by
+     * {@link ExampleBagBuilder} have no tag manifest, so this is used in place of a digest of the
+     * tag manifest.
+     * 
+     * @param bagDirectory
+     *            The directory of a bag written by {@link ExampleBagBuilder}.
+     * @return The hex encoded digest.
+     * @throws IOException
+     *             If the tag files could not be read.
+     */
+    public static String digestTagFiles(final Path bagDirectory) throws IOException
+    {
+        final List<Path> tagFiles = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(bagDirectory);)
+        {
+            for(final Path nextFile : stream)
+            {
+                if(Files.isRegularFile(nextFile))
+                {
+                    tagFiles.add(nextFile);
+                }
+            }
+        }
+        Collections.sort(tagFiles);
+        
+        final MessageDigest digest = ExampleDumpManifest.newDigest();
+        for(final Path nextFile : tagFiles)
+        {
+            final byte[] content = Files.readAllBytes(nextFile);
+            // Include the name and length of each file so that the boundaries between files are
+            // part of the digest
+            digest.update((nextFile.getFileName() + "\t" + content.length + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(content);
+        }
+        return ExampleStreamingDigester.toHex(digest.digest());
+    }
+    
+    /**
+     * Finds the manifest for the dump that the given bag directory or bag archive was written by.
+     * 
+     * @return The location of the manifest, which may not exist, or null if the name of the bag
+     *         was not in the format used by {@link ExampleBagBuilder}.
+     */
+    public static Path findForBag(final Path bag)
+    {
+        final Matcher matcher = ExampleDumpManifest.BAG_NAME.matcher(bag.getFileName().toString());
+        if(!matcher.matches())
+        {
+            return null;
+        }
+        return bag.toAbsolutePath().resolveSibling(matcher.group(2) + ExampleDumpManifest.FILE_EXTENSION);
+    }
+    
+    /**
+     * @return The version IRI of the artifact that the trays and pots were read from, or null if it
+     *         was not recorded.
+     */
+    public String getArtifactVersion()
+    {
+        return this.artifactVersion;
+    }
+    
+    /**
+     * @return The digest of the payload manifest of the given bag, or null if it was not recorded.
+     */
+    public String getBagDigest(final String bagName)
+    {
+        return this.bags.get(bagName);
+    }
+    
+    /**
+     * @return The file that the manifest is stored in.
+     */
+    public Path getFile()
+    {
+        return this.file;
+    }
+    
+    /**
+     * @return The location of the file containing the trays and pots, relative to the directory
+     *         containing the manifest, or null if it was not recorded.
+     */
+    public Path getMetadataPath()
+    {
+        return this.metadataPath == null ? null : this.file.resolveSibling(this.metadataPath);
+    }
+    
+    /**
+     * Gets the location of the manifest for the dump with the given name.
+     */
+    public static Path getManifestPath(final Path outputDirectory, final String name)
+    {
+        return outputDirectory.toAbsolutePath().resolve(name + ExampleDumpManifest.FILE_EXTENSION);
+    }
+    
+    /**
+     * Gets the digest of the given payload file, if its source has the same size and modification
+     * time as when it was recorded.
+     * 
+     * @return The digest of the payload file, or null if it was not recorded, or its source has
+     *         changed.
+     */
+    public String getPayloadDigest(final String payloadPath, final long size, final long lastModified)
+    {
+        final PayloadRecord record = this.payloads.get(payloadPath);
+        if(record == null || record.size != size || record.lastModified != lastModified)
+        {
+            return null;
+        }
+        return record.digest;
+    }
+    
+    /**
+     * @return The number of payload files recorded.
+     */
+    public int getPayloadCount()
+    {
+        return this.payloads.size();
+    }
+    
+    /**
+     * Checks whether the given archive was written from the bag that is recorded in this manifest,
+     * and has not changed since, using the size and modification time of the archive and the
+     * digest of the payload manifest recorded for the bag. The archive must also have been written
+     * with the same compression level, from tag files with the same digest.
+     * 
+     * @param archive
+     *            The archive.
+     * @param level
+     *            The compression level that the archive would be written with.
+     * @param tagDigest
+     *            The digest of the tag files of the bag, from {@link #digestTagFiles(Path)}.
+     * @throws IOException
+     *             If the attributes of the archive could not be read.
+     */
+    public boolean isArchived(final Path archive, final int level, final String tagDigest) throws IOException
+    {
+        final ArchiveRecord record = this.archives.get(archive.getFileName().toString());
+        if(record == null || !Files.exists(archive))
+        {
+            return false;
+        }
+        final String bagDigest = this.getBagDigestForFile(archive);
+        final BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+        return !bagDigest.isEmpty() && record.size == attributes.size()
+                && record.lastModified == attributes.lastModifiedTime().toMillis()
+                && record.bagDigest.equals(bagDigest) && record.level == level
+                && record.tagDigest.equals(tagDigest);
+    }
+    
+    /**
+     * Checks whether the given bag was uploaded to the given remote path, and has not changed
+     * since, using the size and modification time of the bag file and the digest of the payload
+     * manifest recorded for the bag.
+     * 
+     * @throws IOException
+     *             If the attributes of the bag file could not be read.
+     */
+    public boolean isUploaded(final Path bag, final String remotePath) throws IOException
+    {
+        final UploadRecord record = this.uploads.get(bag.getFileName().toString());
+        if(record == null || !record.remotePath.equals(remotePath))
+        {
+            return false;
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(bag, BasicFileAttributes.class);
+        return record.size == attributes.size() && record.lastModified == attributes.lastModifiedTime().toMillis()
+                && record.bagDigest.equals(this.getBagDigestForFile(bag));
+    }
+    
+    /**
+     * @return The recorded digest of the bag that the given bag directory or archive contains, or
+     *         an empty string if it was not recorded.
+     */
+    private String getBagDigestForFile(final Path bag)
+    {
+        final Matcher matcher = ExampleDumpManifest.BAG_NAME.matcher(bag.getFileName().toString());
+        final String result = matcher.matches() ? this.bags.get(matcher.group(1)) : null;
+        return result == null ? "" : result;
+    }
+    
+    /**
+     * Replaces the contents of the manifest with the contents of its file. The manifest is left
+     * empty if the file does not exist or has an unknown format.
+     * 
+     * @throws IOException
+     *             If the file could not be read.
+     */
+    public void load() throws IOException
+    {
+        this.artifactVersion = null;
+        this.metadataPath = null;
+        this.payloads.clear();
+        this.bags.clear();
+        this.archives.clear();
+        this.uploads.clear();
+        try (final BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8);)
+        {
+            if(!ExampleDumpManifest.HEADER.equals(reader.readLine()))
+            {
+                this.log.warn("Discarding dump manifest with an unknown format: {}", this.file);
+                return;
+            }
+            String nextLine;
+            while((nextLine = reader.readLine()) != null)
+            {
+                final String[] fields = nextLine.split("\t", -1);
+                try
+                {
+                    switch(fields[0])
+                    {
+                        case "version":
+                            this.artifactVersion = fields[1];
+                            break;
+                        case "metadata":
+                            this.metadataPath = fields[1];
+                            break;
+                        case "payload":
+                            this.payloads.put(fields[1], new PayloadRecord(Long.parseLong(fields[2]),
+                                    Long.parseLong(fields[3]), fields[4]));
+                            break;
+                        case "bag":
+                            this.bags.put(fields[1], fields[2]);
+                            break;
+                        case "archive":
+                            this.archives.put(fields[1], new ArchiveRecord(Long.parseLong(fields[2]),
+                                    Long.parseLong(fields[3]), fields[4], Integer.parseInt(fields[5]), fields[6]));
+                            break;
+                        case "upload":
+                            this.uploads.put(fields[1], new UploadRecord(Long.parseLong(fields[2]),
+                                    Long.parseLong(fields[3]), fields[4], fields[5]));
+                            break;
+                        default:
+                            this.log.warn("Ignoring unknown record in dump manifest: {} {}", this.file, fields[0]);
+                    }
+                }
+                catch(final ArrayIndexOutOfBoundsException | NumberFormatException e)
+                {
+                    this.log.warn("Ignoring invalid record in dump manifest: {} {}", this.file, nextLine);
+                }
+            }
+        }
+        catch(final NoSuchFileException e)
+        {
+            // There was no earlier dump
+        }
+    }
+    
+    /**
+     * Creates a digest using the algorithm for the digests in the manifest.
+     * 
+     * @throws IOException
+     *             If the algorithm was not supported.
+     */
+    private static MessageDigest newDigest() throws IOException
+    {
+        try
+        {
+            return MessageDigest.getInstance(ExampleDumpManifest.DIGEST_ALGORITHM);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new IOException("Checksum algorithm was not supported: " + ExampleDumpManifest.DIGEST_ALGORITHM,
+                    e);
+        }
+    }
+    
+    /**
+     * Records that the given archive was written from the bag recorded in this manifest.
+     * 
+     * @param archive
+     *            The archive.
+     * @param level
+     *            The compression level that the archive was written with.
+     * @param tagDigest
+     *            The digest of the tag files of the bag, from {@link #digestTagFiles(Path)}.
+     * @throws IOException
+     *             If the attributes of the archive could not be read.
+     */
+    public void putArchive(final Path archive, final int level, final String tagDigest) throws IOException
+    {
+        final BasicFileAttributes attributes = Files.readAttributes(archive, BasicFileAttributes.class);
+        this.archives.put(archive.getFileName().toString(), new ArchiveRecord(attributes.size(), attributes
+                .lastModifiedTime().toMillis(), this.getBagDigestForFile(archive), level, tagDigest));
+    }
+    
+    /**
+     * Records the digest of the payload manifest of the given bag.
+     */
+    public void putBag(final String bagName, final String digest)
+    {
+        this.bags.put(bagName, digest);
+    }
+    
+    /**
+     * Records the source of the given payload file.
+     */
+    public void putPayload(final String payloadPath, final long size, final long lastModified, final String digest)
+    {
+        this.payloads.put(payloadPath, new PayloadRecord(size, lastModified, digest));
+    }
+    
+    /**
+     * Records that the given bag was uploaded to the given remote path.
+     * 
+     * @throws IOException
+     *             If the attributes of the bag file could not be read.
+     */
+    public void recordUpload(final Path bag, final String remotePath) throws IOException
+    {
+        final BasicFileAttributes attributes = Files.readAttributes(bag, BasicFileAttributes.class);
+        this.uploads.put(bag.getFileName().toString(), new UploadRecord(attributes.size(), attributes
+                .lastModifiedTime().toMillis(), this.getBagDigestForFile(bag), remotePath));
+    }
+    
+    /**
+     * @param artifactVersion
+     *            The version IRI of the artifact that the trays and pots were read from.
+     */
+    public void setArtifactVersion(final String artifactVersion)
+    {
+        this.artifactVersion = artifactVersion;
+    }
+    
+    /**
+     * @param metadataFile
+     *            The file containing the trays and pots, which must be inside the directory
+     *            containing the manifest.
+     */
+    public void setMetadataPath(final Path metadataFile)
+    {
+        this.metadataPath =
+                this.file.toAbsolutePath().getParent().relativize(metadataFile.toAbsolutePath()).toString()
+                        .replace('\\', '/');
+    }
+    
+    /**
+     * Creates an empty manifest for a new dump, which is stored in the same file and keeps the
+     * records of the bags that have been archived and uploaded.
+     */
+    public ExampleDumpManifest startDump()
+    {
+        final ExampleDumpManifest result = new ExampleDumpManifest(this.file);
+        result.archives.putAll(this.archives);
+        result.uploads.putAll(this.uploads);
+        return result;
+    }
+    
+    /**
+     * Writes the manifest to a temporary file, and then replaces the manifest file with it.
+     * 
+     * @throws IOException
+     *             If the manifest could not be written.
+     */
+    public void store() throws IOException
+    {
+        final Path parent = this.file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temporary = Files.createTempFile(parent, this.file.getFileName().toString(), ".tmp");
+        try
+        {
+            try (final BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8);)
+            {
+                writer.write(ExampleDumpManifest.HEADER);
+                writer.newLine();
+                if(this.artifactVersion != null)
+                {
+                    ExampleDumpManifest.writeRecord(writer, "version", this.artifactVersion);
+                }
+                if(this.metadataPath != null)
+                {
+                    ExampleDumpManifest.writeRecord(writer, "metadata", this.metadataPath);
+                }
+                for(final Entry<String, PayloadRecord> nextPayload : this.payloads.entrySet())
+                {
+                    final PayloadRecord record = nextPayload.getValue();
+                    ExampleDumpManifest.writeRecord(writer, "payload", nextPayload.getKey(),
+                            Long.toString(record.size), Long.toString(record.lastModified), record.digest);
+                }
+                for(final Entry<String, String> nextBag : this.bags.entrySet())
+                {
+                    ExampleDumpManifest.writeRecord(writer, "bag", nextBag.getKey(), nextBag.getValue());
+                }
+                for(final Entry<String, ArchiveRecord> nextArchive : this.archives.entrySet())
+                {
+                    final ArchiveRecord record = nextArchive.getValue();
+                    ExampleDumpManifest.writeRecord(writer, "archive", nextArchive.getKey(),
+                            Long.toString(record.size), Long.toString(record.lastModified), record.bagDigest,
+                            Integer.toString(record.level), record.tagDigest);
+                }
+                for(final Entry<String, UploadRecord> nextUpload : this.uploads.entrySet())
+                {
+                    final UploadRecord record = nextUpload.getValue();
+                    ExampleDumpManifest.writeRecord(writer, "upload", nextUpload.getKey(),
+                            Long.toString(record.size), Long.toString(record.lastModified), record.bagDigest,
+                            record.remotePath);
+                }
+            }
+            try
+            {
+                Files.move(temporary, this.file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(final AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+    }
+    
+    private static void writeRecord(final BufferedWriter writer, final String type, final String... fields)
+        throws IOException
+    {
+        writer.write(type);
+        for(final String nextField : fields)
+        {
+            writer.write('\t');
+            writer.write(nextField);
+        }
+        writer.newLine();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Objects;
+
+import org.openrdf.model.URI;
+
+/**
+ * Key identifying a genotype by the project it is attached to and its genus, species and line, used
+ * to find existing genotypes without scanning every genotype in the project.
+ */
+public final class ExampleGenotypeKey
+{
+    private final URI projectUri;
+    private final String genus;
+    private final String species;
+    private final String line;
+    private final int hashCode;
+    
+    public ExampleGenotypeKey(final URI projectUri, final String genus, final String species, final String line)
+    {
+        this.projectUri = projectUri;
+        this.genus = genus;
+        this.species = species;
+        this.line = line;
+        this.hashCode = Objects.hash(projectUri, genus, species, line);
+    }
+    
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if(this == obj)
+        {
+            return true;
+        }
+        if(!(obj instanceof ExampleGenotypeKey))
+        {
+            return false;
+        }
+        final ExampleGenotypeKey other = (ExampleGenotypeKey)obj;
+        return this.hashCode == other.hashCode && Objects.equals(this.projectUri, other.projectUri)
+                && Objects.equals(this.genus, other.genus) && Objects.equals(this.species, other.species)
+                && Objects.equals(this.line, other.line);
+    }
+    
+    public String getGenus()
+    {
+        return this.genus;
+    }
+    
+    public String getLine()
+    {
+        return this.line;
+    }
+    
+    public URI getProjectUri()
+    {
+        return this.projectUri;
+    }
+    
+    public String getSpecies()
+    {
+        return this.species;
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "ExampleGenotypeKey [projectUri=" + this.projectUri + ", genus=" + this.genus + ", species="
+                + this.species + ", line=" + this.line + "]";
+    }
+    
+}
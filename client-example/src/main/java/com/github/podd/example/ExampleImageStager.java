@@ -0,0 +1,252 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stages image files into an output directory, reading each file through the Java heap only once.
+ * <p>
+ * Each file is read once into a heap buffer, to compute its digest and, for PNG files, to check
+ * the CRC of each chunk using {@link ExamplePngValidator}. The file is then copied to the target
+ * using {@link FileChannel#transferTo}, which lets the operating system copy the file from the
+ * page cache filled by the first read, without reading it into the heap again. If hard links are
+ * enabled using {@link #setHardLinks(boolean)}, the file is instead hard linked to the target when
+ * the target is on the same file store.
+ * <p>
+ * Instances are thread-safe.
+ */
+public class ExampleImageStager
+{
+    /**
+     * The default size of the buffer used to read each file.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    
+    /**
+     * The property used to enable hard links, which are disabled by default.
+     * <p>
+     * A hard link is the same file as its source, rather than a copy of it. Any later change to
+     * the source image, such as reprocessing it in place, also changes the file in the bag, so
+     * that it no longer matches the digest in the bag manifest, and deleting or changing the file
+     * in the bag also changes the source image. Only enable hard links if the source images are
+     * never modified after they are staged.
+     */
+    public static final String PROP_HARD_LINKS = "examplebag.hardlinks";
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final String digestAlgorithm;
+    
+    private volatile boolean hardLinks = false;
+    
+    private volatile boolean validatePngs = true;
+    
+    /**
+     * @param digestAlgorithm
+     *            The name of the {@link MessageDigest} algorithm used to checksum each file.
+     */
+    public ExampleImageStager(final String digestAlgorithm)
+    {
+        this.digestAlgorithm = digestAlgorithm;
+    }
+    
+    /**
+     * @return True if files are hard linked when possible.
+     */
+    public boolean isHardLinks()
+    {
+        return this.hardLinks;
+    }
+    
+    /**
+     * @return True if PNG files are checked before they are staged.
+     */
+    public boolean isValidatePngs()
+    {
+        return this.validatePngs;
+    }
+    
+    /**
+     * Checks whether the given file is a PNG file, using its file name.
+     */
+    static boolean isPng(final Path file)
+    {
+        return file.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".png");
+    }
+    
+    /**
+     * Attempts to create a hard link to the source file, if both files are on the same file store.
+     * 
+     * @return True if the link was created, or false if the file needs to be copied.
+     */
+    private boolean link(final Path source, final Path target)
+    {
+        try
+        {
+            if(!Files.getFileStore(source).equals(Files.getFileStore(target.getParent())))
+            {
+                return false;
+            }
+            Files.createLink(target, source);
+            return true;
+        }
+        catch(final IOException | UnsupportedOperationException | SecurityException e)
+        {
+            this.log.debug("Could not link {} to {}, copying instead: {}", target, source, e.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Reads the given file, computing its digest and checking it if it is a PNG file.
+     */
+    private ExampleStagedImage read(final Path source) throws IOException
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance(this.digestAlgorithm);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new IOException("Checksum algorithm was not supported: " + this.digestAlgorithm, e);
+        }
+        final ExamplePngValidator validator =
+                this.validatePngs && ExampleImageStager.isPng(source) ? new ExamplePngValidator() : null;
+        
+        final ExampleStagedImage result = new ExampleStagedImage();
+        result.source = source;
+        final ByteBuffer buffer = ByteBuffer.allocate(ExampleImageStager.DEFAULT_BUFFER_SIZE);
+        try (final FileChannel input = FileChannel.open(source, StandardOpenOption.READ);)
+        {
+            while(input.read(buffer) >= 0)
+            {
+                buffer.flip();
+                if(validator != null)
+                {
+                    try
+                    {
+                        validator.update(buffer);
+                    }
+                    catch(final IOException e)
+                    {
+                        throw new IOException("Image was not a valid PNG file: " + source, e);
+                    }
+                }
+                result.size += buffer.remaining();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        if(validator != null)
+        {
+            try
+            {
+                validator.finish();
+            }
+            catch(final IOException e)
+            {
+                throw new IOException("Image was not a valid PNG file: " + source, e);
+            }
+        }
+        result.digest = ExampleStreamingDigester.toHex(digest.digest());
+        return result;
+    }
+    
+    /**
+     * @param hardLinks
+     *            True to hard link files when possible, or false to always copy them, which is the
+     *            default. See {@link #PROP_HARD_LINKS} for the risks of using hard links.
+     */
+    public void setHardLinks(final boolean hardLinks)
+    {
+        this.hardLinks = hardLinks;
+    }
+    
+    /**
+     * @param validatePngs
+     *            True to check PNG files before they are staged, or false to stage them without
+     *            checking them.
+     */
+    public void setValidatePngs(final boolean validatePngs)
+    {
+        this.validatePngs = validatePngs;
+    }
+    
+    /**
+     * Stages the given file to the given target, replacing any existing file at the target.
+     * 
+     * @param source
+     *            The file to stage.
+     * @param target
+     *            The location to stage the file to.
+     * @return The details of the staged file.
+     * @throws IOException
+     *             If the file could not be read or staged, or was a PNG file with an invalid
+     *             structure.
+     */
+    public ExampleStagedImage stage(final Path source, final Path target) throws IOException
+    {
+        final ExampleStagedImage result = this.read(source);
+        result.target = target;
+        
+        Files.createDirectories(target.getParent());
+        // Existing files are removed rather than truncated, as they may be links to another file
+        Files.deleteIfExists(target);
+        result.linked = this.hardLinks && this.link(source, target);
+        if(!result.linked)
+        {
+            ExampleImageStager.transfer(source, target, result.size);
+        }
+        return result;
+    }
+    
+    /**
+     * Copies the given file using {@link FileChannel#transferTo}, which may transfer fewer bytes
+     * than requested on each call.
+     */
+    private static void transfer(final Path source, final Path target, final long size) throws IOException
+    {
+        try (final FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+                final FileChannel output =
+                        FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);)
+        {
+            long position = 0;
+            while(position < size)
+            {
+                final long transferred = input.transferTo(position, size - position, output);
+                if(transferred <= 0)
+                {
+                    throw new IOException("File changed size while it was being staged: " + source);
+                }
+                position += transferred;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+
+import com.github.podd.utils.InferredOWLOntologyID;
+
+/**
+ * Container for the caches shared by every line of a single TrayScan import, and the upload queue
+ * that the lines are added to.
+ * <p>
+ * Each of the maps is safe to use concurrently, so the same context can be shared by the workers
+ * in an {@link ExampleTrayScanPipeline}. A new context must be used for each import.
+ */
+public class ExampleImportContext
+{
+    /**
+     * Map starting at project name strings and ending with both the URI of the project and the
+     * artifact.
+     */
+    public final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap;
+    
+    /**
+     * Map starting at experiment name strings and ending with a mapping from the URI of the
+     * experiment to the URI of the project that contains the experiment.
+     * <p>
+     * NOTE: Unless lazy resolution is disabled, this is not prefilled, as the experiments in each
+     * project are found when a line first refers to an experiment in that project.
+     */
+    public final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap = new ConcurrentHashMap<>();
+    
+    /**
+     * The task that adds the experiments in each project to {@link #experimentUriMap}, mapped from
+     * the URI of the project, so that each project is only queried once. Lines for a project wait
+     * for its task to finish without holding up lines for other projects, and lines referring to
+     * an experiment that does not exist do not query the project again.
+     */
+    public final ConcurrentMap<URI, FutureTask<Void>> experimentProjects = new ConcurrentHashMap<>();
+    
+    /**
+     * Cache for tray name mappings, starting at tray barcodes and ending with a mapping from the
+     * URI of the tray to the URI of the experiment that contains the tray.
+     */
+    public final ConcurrentMap<String, ConcurrentMap<URI, URI>> trayUriMap = new ConcurrentHashMap<>();
+    
+    /**
+     * Cache for pot name mappings, starting at pot barcodes and ending with a mapping from the URI
+     * of the pot to the URI of the tray that contains the pot.
+     */
+    public final ConcurrentMap<String, ConcurrentMap<URI, URI>> potUriMap = new ConcurrentHashMap<>();
+    
+    /**
+     * Material mappings, starting at the URI of the pot and mapping to the URI of the material and
+     * the RDF Model containing the statements describing this material.
+     */
+    public final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap = new ConcurrentHashMap<>();
+    
+    /**
+     * Index from the pot URI and genotype URI of each material to the URI of the material, so that
+     * materials can be found without scanning each material in the pot.
+     */
+    public final ConcurrentMap<ExampleMaterialKey, URI> materialIndex = new ConcurrentHashMap<>();
+    
+    /**
+     * Genotype mappings, starting at the URI of the project and mapping to the URI of the genotype
+     * and the RDF Model containing the statements describing this genotype.
+     * <p>
+     * NOTE: Unless lazy resolution is disabled, this is not prefilled, as the genotypes in each
+     * project are found when a line first refers to that project.
+     */
+    public final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap = new ConcurrentHashMap<>();
+    
+    /**
+     * Index from the project URI, genus, species and line of each genotype to the URI of the
+     * genotype, so that genotypes can be found without scanning each genotype in the project.
+     */
+    public final ConcurrentMap<ExampleGenotypeKey, URI> genotypeIndex = new ConcurrentHashMap<>();
+    
+    /**
+     * The task that adds the genotypes in each project to {@link #genotypeUriMap} and
+     * {@link #genotypeIndex}, mapped from the URI of the project. Lines for a project wait for its
+     * task to finish, so that they do not create duplicates of genotypes that are still being
+     * indexed, without holding up lines for other projects.
+     */
+    public final ConcurrentMap<URI, FutureTask<Void>> genotypeProjects = new ConcurrentHashMap<>();
+    
+    /**
+     * Queue containing the changes for each artifact, so that each artifact only needs to be
+     * updated once for the import to succeed.
+     */
+    public final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue =
+            new ConcurrentHashMap<>();
+    
+    /**
+     * True if lookups using this context are recorded in the import metrics of the client, and
+     * false for lookups that are not part of an import, such as dumping an experiment.
+     */
+    public final boolean recordMetrics;
+    
+    /**
+     * Creates a context with empty caches.
+     */
+    public ExampleImportContext()
+    {
+        this(new ConcurrentHashMap<String, ConcurrentMap<URI, InferredOWLOntologyID>>());
+    }
+    
+    /**
+     * Creates a context using the given project map, with all of the other caches empty.
+     * 
+     * @param projectUriMap
+     *            A map of relevant project URIs and their artifact identifiers using their
+     *            standardised labels.
+     */
+    public ExampleImportContext(final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap)
+    {
+        this(projectUriMap, true);
+    }
+    
+    /**
+     * Creates a context using the given project map, with all of the other caches empty.
+     * 
+     * @param projectUriMap
+     *            A map of relevant project URIs and their artifact identifiers using their
+     *            standardised labels.
+     * @param recordMetrics
+     *            True to record lookups in the import metrics of the client, or false if the
+     *            lookups are not part of an import.
+     */
+    public ExampleImportContext(final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap,
+            final boolean recordMetrics)
+    {
+        this.projectUriMap = projectUriMap;
+        this.recordMetrics = recordMetrics;
+    }
+}
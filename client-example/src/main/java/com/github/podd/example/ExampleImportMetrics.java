@@ -0,0 +1,181 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and timers for each stage of a TrayScan import, which can be read while the import is
+ * running, using JMX, and as an {@link ExampleImportSummary} when it is complete.
+ * <p>
+ * Hits and misses are counted for each line that is resolved, after any barcodes in the line have
+ * been prefetched, so the number of queries sent for each cache shows the cost of the misses.
+ * Statements are serialised while they are sent, so the serialisation time for each append
+ * attempt is also included in its append latency.
+ * <p>
+ * Recording does not allocate any objects or take any locks. This class is thread-safe.
+ */
+public class ExampleImportMetrics implements ExampleImportMetricsMXBean
+{
+    /**
+     * The caches used to resolve the URIs in each line.
+     */
+    public enum Cache
+    {
+        EXPERIMENT, GENOTYPE, POT, PROJECT, TRAY
+    }
+    
+    private final AtomicLong rows = new AtomicLong();
+    
+    private volatile long startNanos = System.nanoTime();
+    
+    private volatile long lastRowNanos = this.startNanos;
+    
+    private final AtomicLongArray queries = new AtomicLongArray(Cache.values().length);
+    
+    private final AtomicLongArray hits = new AtomicLongArray(Cache.values().length);
+    
+    private final AtomicLongArray misses = new AtomicLongArray(Cache.values().length);
+    
+    private final ExampleLatencyHistogram mySQLBatches = new ExampleLatencyHistogram();
+    
+    private final ExampleLatencyHistogram serialization = new ExampleLatencyHistogram();
+    
+    private final ExampleLatencyHistogram appends = new ExampleLatencyHistogram();
+    
+    @Override
+    public long getRowCount()
+    {
+        return this.rows.get();
+    }
+    
+    @Override
+    public double getRowsPerSecond()
+    {
+        final long elapsedNanos = this.lastRowNanos - this.startNanos;
+        if(elapsedNanos <= 0)
+        {
+            return 0;
+        }
+        return this.rows.get() * 1000000000.0 / elapsedNanos;
+    }
+    
+    @Override
+    public ExampleImportSummary getSummary()
+    {
+        return new ExampleImportSummary(this.getRowCount(), this.getRowsPerSecond(), this.toMap(this.queries),
+                this.toMap(this.hits), this.toMap(this.misses), this.mySQLBatches.getSummary(),
+                this.serialization.getSummary(), this.appends.getSummary());
+    }
+    
+    /**
+     * Records the time taken by a single attempt to append statements to an artifact.
+     */
+    public void recordAppend(final long nanos)
+    {
+        this.appends.record(nanos);
+    }
+    
+    /**
+     * Records a lookup that was found in the given cache.
+     */
+    public void recordHit(final Cache cache)
+    {
+        this.hits.incrementAndGet(cache.ordinal());
+    }
+    
+    /**
+     * Records a lookup that was not found in the given cache.
+     */
+    public void recordMiss(final Cache cache)
+    {
+        this.misses.incrementAndGet(cache.ordinal());
+    }
+    
+    /**
+     * Records the time taken to write a single batch of lines to the TrayScan database.
+     */
+    public void recordMySQLBatch(final long nanos)
+    {
+        this.mySQLBatches.record(nanos);
+    }
+    
+    /**
+     * Records a query sent to the server to fill the given cache.
+     */
+    public void recordQuery(final Cache cache)
+    {
+        this.queries.incrementAndGet(cache.ordinal());
+    }
+    
+    /**
+     * Records that RDF was generated for a single row.
+     */
+    public void recordRow()
+    {
+        this.rows.incrementAndGet();
+        this.lastRowNanos = System.nanoTime();
+    }
+    
+    /**
+     * Records the time taken to serialise the statements for a single append attempt.
+     */
+    public void recordSerialization(final long nanos)
+    {
+        this.serialization.record(nanos);
+    }
+    
+    @Override
+    public void reset()
+    {
+        this.rows.set(0);
+        for(int i = 0; i < Cache.values().length; i++)
+        {
+            this.queries.set(i, 0);
+            this.hits.set(i, 0);
+            this.misses.set(i, 0);
+        }
+        this.mySQLBatches.reset();
+        this.serialization.reset();
+        this.appends.reset();
+        this.startNanos = System.nanoTime();
+        this.lastRowNanos = this.startNanos;
+    }
+    
+    private Map<String, Long> toMap(final AtomicLongArray counts)
+    {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for(final Cache nextCache : Cache.values())
+        {
+            final long nextCount = counts.get(nextCache.ordinal());
+            if(nextCount > 0)
+            {
+                result.put(nextCache.name(), nextCount);
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return this.getSummary().toString();
+    }
+}
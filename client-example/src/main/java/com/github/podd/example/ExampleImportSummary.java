@@ -0,0 +1,157 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.beans.ConstructorProperties;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable summary of the {@link ExampleImportMetrics} for a TrayScan import.
+ * <p>
+ * The query, hit and miss counts are keyed by the name of the {@link ExampleImportMetrics.Cache}
+ * they were recorded for. Summaries can be read over JMX as composite data.
+ */
+public class ExampleImportSummary
+{
+    private final long rowCount;
+    
+    private final double rowsPerSecond;
+    
+    private final Map<String, Long> queryCounts;
+    
+    private final Map<String, Long> hitCounts;
+    
+    private final Map<String, Long> missCounts;
+    
+    private final ExampleLatencySummary mySQLBatchLatency;
+    
+    private final ExampleLatencySummary serializationLatency;
+    
+    private final ExampleLatencySummary appendLatency;
+    
+    /**
+     * @param rowCount
+     *            The number of rows that RDF was generated for.
+     * @param rowsPerSecond
+     *            The number of rows per second, from the start of the import until the last row.
+     * @param queryCounts
+     *            The number of queries sent to the server for each cache.
+     * @param hitCounts
+     *            The number of lookups that were found in each cache.
+     * @param missCounts
+     *            The number of lookups that were not found in each cache.
+     * @param mySQLBatchLatency
+     *            The time taken to write each batch of lines to the TrayScan database.
+     * @param serializationLatency
+     *            The time taken to serialise the statements for each append attempt.
+     * @param appendLatency
+     *            The time taken by each append attempt, including serialisation.
+     */
+    @ConstructorProperties({ "rowCount", "rowsPerSecond", "queryCounts", "hitCounts", "missCounts",
+            "mySQLBatchLatency", "serializationLatency", "appendLatency" })
+    public ExampleImportSummary(final long rowCount, final double rowsPerSecond,
+            final Map<String, Long> queryCounts, final Map<String, Long> hitCounts,
+            final Map<String, Long> missCounts, final ExampleLatencySummary mySQLBatchLatency,
+            final ExampleLatencySummary serializationLatency, final ExampleLatencySummary appendLatency)
+    {
+        this.rowCount = rowCount;
+        this.rowsPerSecond = rowsPerSecond;
+        this.queryCounts = Collections.unmodifiableMap(new LinkedHashMap<>(queryCounts));
+        this.hitCounts = Collections.unmodifiableMap(new LinkedHashMap<>(hitCounts));
+        this.missCounts = Collections.unmodifiableMap(new LinkedHashMap<>(missCounts));
+        this.mySQLBatchLatency = mySQLBatchLatency;
+        this.serializationLatency = serializationLatency;
+        this.appendLatency = appendLatency;
+    }
+    
+    public ExampleLatencySummary getAppendLatency()
+    {
+        return this.appendLatency;
+    }
+    
+    public Map<String, Long> getHitCounts()
+    {
+        return this.hitCounts;
+    }
+    
+    /**
+     * @return The proportion of lookups that were found in each cache that was used, including
+     *         caches which only had misses.
+     */
+    public Map<String, Double> getHitRatios()
+    {
+        final Set<String> caches = new LinkedHashSet<>(this.hitCounts.keySet());
+        caches.addAll(this.missCounts.keySet());
+        
+        final Map<String, Double> result = new LinkedHashMap<>();
+        for(final String nextCache : caches)
+        {
+            final Long hits = this.hitCounts.get(nextCache);
+            final Long misses = this.missCounts.get(nextCache);
+            final long hitCount = hits == null ? 0 : hits;
+            final long lookups = hitCount + (misses == null ? 0 : misses);
+            if(lookups > 0)
+            {
+                result.put(nextCache, (double)hitCount / lookups);
+            }
+        }
+        return result;
+    }
+    
+    public Map<String, Long> getMissCounts()
+    {
+        return this.missCounts;
+    }
+    
+    public ExampleLatencySummary getMySQLBatchLatency()
+    {
+        return this.mySQLBatchLatency;
+    }
+    
+    public Map<String, Long> getQueryCounts()
+    {
+        return this.queryCounts;
+    }
+    
+    public long getRowCount()
+    {
+        return this.rowCount;
+    }
+    
+    public double getRowsPerSecond()
+    {
+        return this.rowsPerSecond;
+    }
+    
+    public ExampleLatencySummary getSerializationLatency()
+    {
+        return this.serializationLatency;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "rows=" + this.rowCount + " rowsPerSecond=" + String.format("%.1f", this.rowsPerSecond)
+                + " queries=" + this.queryCounts + " hitRatios=" + this.getHitRatios() + " mySQLBatch=["
+                + this.mySQLBatchLatency + "] serialization=[" + this.serializationLatency + "] append=["
+                + this.appendLatency + "]";
+    }
+}
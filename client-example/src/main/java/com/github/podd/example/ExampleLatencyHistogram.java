@@ -0,0 +1,144 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records latencies in buckets whose bounds are powers of two microseconds, so that percentiles
+ * can be estimated without keeping each latency.
+ * <p>
+ * Recording a latency does not allocate any objects or take any locks. This class is thread-safe,
+ * although a summary taken while latencies are being recorded may not include all of the
+ * latencies recorded before it was taken.
+ */
+public class ExampleLatencyHistogram
+{
+    /**
+     * The number of buckets, which is enough for latencies of more than a week.
+     */
+    private static final int BUCKET_COUNT = 40;
+    
+    /**
+     * The number of latencies in each bucket, where bucket i contains the latencies of at least
+     * 2^(i-1) and less than 2^i microseconds, and bucket zero contains latencies of less than one
+     * microsecond.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(ExampleLatencyHistogram.BUCKET_COUNT);
+    
+    private final AtomicLong count = new AtomicLong();
+    
+    private final AtomicLong totalNanos = new AtomicLong();
+    
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount()
+    {
+        return this.count.get();
+    }
+    
+    /**
+     * Estimates the given percentile, using the upper bound of the bucket it is in.
+     */
+    private long getPercentileMicros(final long[] counts, final long total, final double percentile,
+            final long maxMicros)
+    {
+        final long target = Math.max(1, (long)Math.ceil(total * percentile));
+        long seen = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if(seen >= target)
+            {
+                return i == 0 ? 0 : Math.min((1L << i) - 1, maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+    
+    /**
+     * @return A summary of the latencies recorded so far.
+     */
+    public ExampleLatencySummary getSummary()
+    {
+        final long[] counts = new long[ExampleLatencyHistogram.BUCKET_COUNT];
+        long total = 0;
+        for(int i = 0; i < counts.length; i++)
+        {
+            counts[i] = this.buckets.get(i);
+            total += counts[i];
+        }
+        
+        if(total == 0)
+        {
+            return new ExampleLatencySummary(0, 0, 0, 0, 0, 0, 0);
+        }
+        
+        final long maxMicros = TimeUnit.NANOSECONDS.toMicros(this.maxNanos.get());
+        return new ExampleLatencySummary(total, TimeUnit.NANOSECONDS.toMillis(this.totalNanos.get()),
+                TimeUnit.NANOSECONDS.toMicros(this.totalNanos.get() / total), this.getPercentileMicros(counts,
+                        total, 0.5, maxMicros), this.getPercentileMicros(counts, total, 0.9, maxMicros),
+                this.getPercentileMicros(counts, total, 0.99, maxMicros), maxMicros);
+    }
+    
+    /**
+     * Records a single latency.
+     * 
+     * @param nanos
+     *            The latency in nanoseconds, where negative latencies are recorded as zero.
+     */
+    public void record(final long nanos)
+    {
+        final long latency = Math.max(0, nanos);
+        final long micros = TimeUnit.NANOSECONDS.toMicros(latency);
+        final int bucket = Math.min(ExampleLatencyHistogram.BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        this.buckets.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(latency);
+        
+        long max = this.maxNanos.get();
+        while(latency > max && !this.maxNanos.compareAndSet(max, latency))
+        {
+            max = this.maxNanos.get();
+        }
+    }
+    
+    /**
+     * Removes all of the recorded latencies.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < ExampleLatencyHistogram.BUCKET_COUNT; i++)
+        {
+            this.buckets.set(i, 0);
+        }
+        this.count.set(0);
+        this.totalNanos.set(0);
+        this.maxNanos.set(0);
+    }
+    
+    @Override
+    public String toString()
+    {
+        return this.getSummary().toString();
+    }
+}
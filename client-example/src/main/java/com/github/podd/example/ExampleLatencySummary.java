@@ -0,0 +1,115 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable summary of the latencies recorded by an {@link ExampleLatencyHistogram}. The
+ * percentiles are estimates, which are at most twice the actual percentile.
+ * <p>
+ * Summaries can be read over JMX as composite data.
+ */
+public class ExampleLatencySummary
+{
+    private final long count;
+    
+    private final long totalMillis;
+    
+    private final long meanMicros;
+    
+    private final long medianMicros;
+    
+    private final long p90Micros;
+    
+    private final long p99Micros;
+    
+    private final long maxMicros;
+    
+    /**
+     * @param count
+     *            The number of latencies recorded.
+     * @param totalMillis
+     *            The sum of the latencies, in milliseconds.
+     * @param meanMicros
+     *            The mean latency, in microseconds.
+     * @param medianMicros
+     *            The estimated median latency, in microseconds.
+     * @param p90Micros
+     *            The estimated 90th percentile latency, in microseconds.
+     * @param p99Micros
+     *            The estimated 99th percentile latency, in microseconds.
+     * @param maxMicros
+     *            The maximum latency, in microseconds.
+     */
+    @ConstructorProperties({ "count", "totalMillis", "meanMicros", "medianMicros", "p90Micros", "p99Micros",
+            "maxMicros" })
+    public ExampleLatencySummary(final long count, final long totalMillis, final long meanMicros,
+            final long medianMicros, final long p90Micros, final long p99Micros, final long maxMicros)
+    {
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.meanMicros = meanMicros;
+        this.medianMicros = medianMicros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+    
+    public long getCount()
+    {
+        return this.count;
+    }
+    
+    public long getMaxMicros()
+    {
+        return this.maxMicros;
+    }
+    
+    public long getMeanMicros()
+    {
+        return this.meanMicros;
+    }
+    
+    public long getMedianMicros()
+    {
+        return this.medianMicros;
+    }
+    
+    public long getP90Micros()
+    {
+        return this.p90Micros;
+    }
+    
+    public long getP99Micros()
+    {
+        return this.p99Micros;
+    }
+    
+    public long getTotalMillis()
+    {
+        return this.totalMillis;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "count=" + this.count + " totalMillis=" + this.totalMillis + " meanMicros=" + this.meanMicros
+                + " medianMicros=" + this.medianMicros + " p90Micros=" + this.p90Micros + " p99Micros="
+                + this.p99Micros + " maxMicros=" + this.maxMicros;
+    }
+}
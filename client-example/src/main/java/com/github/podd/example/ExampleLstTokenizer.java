@@ -0,0 +1,168 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits lines from LST files into fields separated by whitespace, without using regular
+ * expressions.
+ * <p>
+ * The positions of the fields in the line are recorded instead of creating a string for each
+ * field, so fields can be written out directly from the line. Fields are separated by the same
+ * whitespace characters as the regular expression <code>\s</code>, and leading and trailing
+ * whitespace is ignored.
+ * <p>
+ * Instances are reused for each line, and are not thread-safe.
+ */
+public final class ExampleLstTokenizer
+{
+    private String line = "";
+    
+    /**
+     * The start and end of each field in the current line, with the start of field i at 2i and the
+     * end at 2i+1.
+     */
+    private int[] offsets = new int[32];
+    
+    private int count = 0;
+    
+    /**
+     * @param c
+     *            The character to check.
+     * @return True if the character separates fields, and false otherwise.
+     */
+    static boolean isSeparator(final char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+    
+    private void checkIndex(final int index)
+    {
+        if(index < 0 || index >= this.count)
+        {
+            throw new IndexOutOfBoundsException("Field index " + index + " was not valid for line with " + this.count
+                    + " fields");
+        }
+    }
+    
+    /**
+     * @return The number of fields in the current line.
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+    
+    /**
+     * @param index
+     *            The index of the field.
+     * @return The index in the current line after the last character of the field.
+     */
+    public int getEnd(final int index)
+    {
+        this.checkIndex(index);
+        return this.offsets[2 * index + 1];
+    }
+    
+    /**
+     * @return The line that was last tokenized.
+     */
+    public String getLine()
+    {
+        return this.line;
+    }
+    
+    /**
+     * @param index
+     *            The index of the field.
+     * @return The index in the current line of the first character of the field.
+     */
+    public int getStart(final int index)
+    {
+        this.checkIndex(index);
+        return this.offsets[2 * index];
+    }
+    
+    /**
+     * @param index
+     *            The index of the field.
+     * @return A new string containing the field.
+     */
+    public String getToken(final int index)
+    {
+        return this.line.substring(this.getStart(index), this.getEnd(index));
+    }
+    
+    /**
+     * @return A new list containing each of the fields in the current line.
+     */
+    public List<String> getTokens()
+    {
+        final List<String> result = new ArrayList<>(this.count);
+        for(int i = 0; i < this.count; i++)
+        {
+            result.add(this.getToken(i));
+        }
+        return result;
+    }
+    
+    /**
+     * Finds the fields in the given line, replacing the fields from the previous line.
+     * 
+     * @param nextLine
+     *            The line to split into fields.
+     * @return The number of fields in the line.
+     */
+    public int tokenize(final String nextLine)
+    {
+        this.line = nextLine;
+        this.count = 0;
+        
+        final int length = nextLine.length();
+        int i = 0;
+        while(i < length)
+        {
+            while(i < length && ExampleLstTokenizer.isSeparator(nextLine.charAt(i)))
+            {
+                i++;
+            }
+            if(i == length)
+            {
+                break;
+            }
+            
+            final int start = i;
+            while(i < length && !ExampleLstTokenizer.isSeparator(nextLine.charAt(i)))
+            {
+                i++;
+            }
+            
+            if(2 * this.count + 1 >= this.offsets.length)
+            {
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+            }
+            this.offsets[2 * this.count] = start;
+            this.offsets[2 * this.count + 1] = i;
+            this.count++;
+        }
+        
+        return this.count;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Objects;
+
+import org.openrdf.model.URI;
+
+/**
+ * Key identifying a material by the pot it is in and the genotype it refers to, used to find
+ * existing materials without scanning every material in the pot.
+ */
+public final class ExampleMaterialKey
+{
+    private final URI potUri;
+    private final URI genotypeUri;
+    private final int hashCode;
+    
+    public ExampleMaterialKey(final URI potUri, final URI genotypeUri)
+    {
+        this.potUri = potUri;
+        this.genotypeUri = genotypeUri;
+        this.hashCode = Objects.hash(potUri, genotypeUri);
+    }
+    
+    @Override
+    public boolean equals(final Object obj)
+    {
+        if(this == obj)
+        {
+            return true;
+        }
+        if(!(obj instanceof ExampleMaterialKey))
+        {
+            return false;
+        }
+        final ExampleMaterialKey other = (ExampleMaterialKey)obj;
+        return this.hashCode == other.hashCode && Objects.equals(this.potUri, other.potUri)
+                && Objects.equals(this.genotypeUri, other.genotypeUri);
+    }
+    
+    public URI getGenotypeUri()
+    {
+        return this.genotypeUri;
+    }
+    
+    public URI getPotUri()
+    {
+        return this.potUri;
+    }
+    
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "ExampleMaterialKey [potUri=" + this.potUri + ", genotypeUri=" + this.genotypeUri + "]";
+    }
+    
+}
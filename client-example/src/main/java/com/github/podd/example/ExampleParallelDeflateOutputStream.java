@@ -0,0 +1,414 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import com.jcraft.jzlib.Deflater;
+import com.jcraft.jzlib.JZlib;
+
+/**
+ * Compresses a stream into a single raw deflate stream, splitting it into blocks which are
+ * compressed in parallel using jzlib, in the same way as pigz.
+ * <p>
+ * Each block is compressed by its own {@link Deflater}, using the end of the previous block as a
+ * preset dictionary so that matches across block boundaries are not lost, and is ended with a
+ * sync flush so that the compressed blocks can be joined in order into one stream that any
+ * inflater can read. The last block is ended with a final block instead. The CRC-32 of the
+ * uncompressed data is computed as it is written, for the gzip trailer or zip entry that the
+ * stream is written into.
+ * <p>
+ * The number of blocks waiting to be written is limited, so memory use does not depend on the
+ * size of the stream. Instances are not thread-safe, and do not close the underlying stream
+ * until they are closed.
+ */
+public class ExampleParallelDeflateOutputStream extends OutputStream
+{
+    /**
+     * The default number of uncompressed bytes in each block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    
+    /**
+     * The size of the deflate window, which is the most of the previous block that can be used as
+     * a dictionary.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    
+    private final OutputStream out;
+    
+    private final ExecutorService executor;
+    
+    private final int level;
+    
+    private final int blockSize;
+    
+    private final int maxPendingBlocks;
+    
+    private final Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+    
+    private final CRC32 crc = new CRC32();
+    
+    private byte[] block;
+    
+    private int blockLength;
+    
+    private byte[] previousBlock;
+    
+    private int previousBlockLength;
+    
+    private long bytesIn;
+    
+    private long bytesOut;
+    
+    private boolean finished;
+    
+    /**
+     * @param out
+     *            The stream to write the compressed data to.
+     * @param executor
+     *            The executor used to compress blocks, which is not shut down by this stream.
+     * @param level
+     *            The compression level, from {@link JZlib#Z_NO_COMPRESSION} to
+     *            {@link JZlib#Z_BEST_COMPRESSION}, or {@link JZlib#Z_DEFAULT_COMPRESSION}.
+     * @param blockSize
+     *            The number of uncompressed bytes in each block, which must be at least the size
+     *            of the deflate window so that each block has a full dictionary.
+     * @param maxPendingBlocks
+     *            The number of blocks that can be compressing or waiting to be written at a time,
+     *            which should be more than the number of threads used by the executor.
+     */
+    public ExampleParallelDeflateOutputStream(final OutputStream out, final ExecutorService executor,
+            final int level, final int blockSize, final int maxPendingBlocks)
+    {
+        if(level < JZlib.Z_DEFAULT_COMPRESSION || level > JZlib.Z_BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Compression level was not valid: " + level);
+        }
+        if(blockSize < ExampleParallelDeflateOutputStream.DICTIONARY_SIZE)
+        {
+            throw new IllegalArgumentException("Block size must be at least "
+                    + ExampleParallelDeflateOutputStream.DICTIONARY_SIZE + ": " + blockSize);
+        }
+        if(maxPendingBlocks < 1)
+        {
+            throw new IllegalArgumentException("Maximum pending blocks must be positive: " + maxPendingBlocks);
+        }
+        
+        this.out = out;
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.block = new byte[blockSize];
+    }
+    
+    /**
+     * Finishes the stream if necessary, and then closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            if(!this.finished)
+            {
+                this.finish();
+            }
+        }
+        finally
+        {
+            this.out.close();
+        }
+    }
+    
+    /**
+     * Compresses a block into a new buffer, which is sized so that it rarely needs to grow.
+     */
+    private static ByteBuffer compress(final int level, final byte[] input, final int inputLength,
+            final byte[] dictionary, final int dictionaryLength, final boolean last) throws IOException
+    {
+        final Deflater deflater = new Deflater(level, true);
+        try
+        {
+            if(dictionaryLength > 0)
+            {
+                final int dictionarySize =
+                        Math.min(dictionaryLength, ExampleParallelDeflateOutputStream.DICTIONARY_SIZE);
+                final byte[] window = new byte[dictionarySize];
+                System.arraycopy(dictionary, dictionaryLength - dictionarySize, window, 0, dictionarySize);
+                final int result = deflater.setDictionary(window, dictionarySize);
+                if(result != JZlib.Z_OK)
+                {
+                    throw new IOException("Could not set the deflate dictionary: " + result);
+                }
+            }
+            deflater.setInput(input, 0, inputLength, false);
+            
+            final int flush = last ? JZlib.Z_FINISH : JZlib.Z_SYNC_FLUSH;
+            byte[] output = new byte[inputLength + (inputLength >>> 8) + 64];
+            int outputLength = 0;
+            while(true)
+            {
+                if(outputLength == output.length)
+                {
+                    final byte[] larger = new byte[output.length + (output.length >>> 1)];
+                    System.arraycopy(output, 0, larger, 0, outputLength);
+                    output = larger;
+                }
+                deflater.setOutput(output, outputLength, output.length - outputLength);
+                final int result = deflater.deflate(flush);
+                outputLength = deflater.getNextOutIndex();
+                if(result == JZlib.Z_STREAM_END)
+                {
+                    break;
+                }
+                if(result != JZlib.Z_OK && result != JZlib.Z_BUF_ERROR)
+                {
+                    throw new IOException("Deflate failed: " + result);
+                }
+                // Space is only left in the output once a sync flush is complete
+                if(deflater.getAvailOut() > 0)
+                {
+                    if(!last)
+                    {
+                        break;
+                    }
+                    if(result == JZlib.Z_BUF_ERROR)
+                    {
+                        throw new IOException("Deflate could not finish the stream: " + result);
+                    }
+                }
+            }
+            return ByteBuffer.wrap(output, 0, outputLength);
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Writes all of the remaining data, compressing the last block with a final deflate block.
+     * The underlying stream is flushed but not closed, so more data can be written after the
+     * compressed data. No more data can be written to this stream.
+     * 
+     * @throws IOException
+     *             If a block could not be compressed or written.
+     */
+    public void finish() throws IOException
+    {
+        if(this.finished)
+        {
+            return;
+        }
+        this.finished = true;
+        this.submitBlock(true);
+        while(!this.pending.isEmpty())
+        {
+            this.writeNextBlock();
+        }
+        this.out.flush();
+    }
+    
+    /**
+     * Flushes the underlying stream. Blocks which have not been filled are not compressed until
+     * they are filled or the stream is finished, as each sync flush adds to the compressed size.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        this.out.flush();
+    }
+    
+    /**
+     * @return The number of uncompressed bytes written so far.
+     */
+    public long getBytesIn()
+    {
+        return this.bytesIn;
+    }
+    
+    /**
+     * @return The number of compressed bytes written to the underlying stream so far.
+     */
+    public long getBytesOut()
+    {
+        return this.bytesOut;
+    }
+    
+    /**
+     * @return The CRC-32 of the uncompressed bytes written so far.
+     */
+    public long getCrc()
+    {
+        return this.crc.getValue();
+    }
+    
+    private void checkNotFinished() throws IOException
+    {
+        if(this.finished)
+        {
+            throw new IOException("Deflate stream was already finished");
+        }
+    }
+    
+    /**
+     * Submits the current block to be compressed, and starts a new block, writing compressed blocks
+     * until the number of pending blocks is within the limit.
+     */
+    private void submitBlock(final boolean last) throws IOException
+    {
+        final byte[] input = this.block;
+        final int inputLength = this.blockLength;
+        final byte[] dictionary = this.previousBlock;
+        final int dictionaryLength = this.previousBlockLength;
+        final int compressionLevel = this.level;
+        this.pending.add(this.executor.submit(new Callable<ByteBuffer>()
+            {
+                @Override
+                public ByteBuffer call() throws IOException
+                {
+                    return ExampleParallelDeflateOutputStream.compress(compressionLevel, input, inputLength,
+                            dictionary, dictionaryLength, last);
+                }
+            }));
+        
+        this.previousBlock = input;
+        this.previousBlockLength = inputLength;
+        this.block = last ? null : new byte[this.blockSize];
+        this.blockLength = 0;
+        
+        while(this.pending.size() > this.maxPendingBlocks)
+        {
+            this.writeNextBlock();
+        }
+    }
+    
+    /**
+     * Reads from the given channel until the end of the channel, straight into the blocks to be
+     * compressed.
+     * 
+     * @return The number of bytes read.
+     * @throws IOException
+     *             If the channel could not be read, or a block could not be compressed or written.
+     */
+    public long transferFrom(final ReadableByteChannel channel) throws IOException
+    {
+        this.checkNotFinished();
+        long result = 0;
+        while(true)
+        {
+            final int read =
+                    channel.read(ByteBuffer.wrap(this.block, this.blockLength, this.blockSize - this.blockLength));
+            if(read < 0)
+            {
+                return result;
+            }
+            this.crc.update(this.block, this.blockLength, read);
+            this.blockLength += read;
+            this.bytesIn += read;
+            result += read;
+            if(this.blockLength == this.blockSize)
+            {
+                this.submitBlock(false);
+            }
+        }
+    }
+    
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException
+    {
+        this.checkNotFinished();
+        if(off < 0 || len < 0 || off > b.length - len)
+        {
+            throw new IndexOutOfBoundsException();
+        }
+        this.crc.update(b, off, len);
+        this.bytesIn += len;
+        int offset = off;
+        int remaining = len;
+        while(remaining > 0)
+        {
+            final int length = Math.min(remaining, this.blockSize - this.blockLength);
+            System.arraycopy(b, offset, this.block, this.blockLength, length);
+            this.blockLength += length;
+            offset += length;
+            remaining -= length;
+            if(this.blockLength == this.blockSize)
+            {
+                this.submitBlock(false);
+            }
+        }
+    }
+    
+    @Override
+    public void write(final int b) throws IOException
+    {
+        this.write(new byte[] { (byte)b }, 0, 1);
+    }
+    
+    /**
+     * Waits for the oldest pending block to be compressed, and writes it to the underlying stream.
+     */
+    private void writeNextBlock() throws IOException
+    {
+        final Future<ByteBuffer> next = this.pending.poll();
+        final ByteBuffer compressed;
+        try
+        {
+            compressed = next.get();
+        }
+        catch(final InterruptedException e)
+        {
+            this.cancelPendingBlocks();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing a block");
+        }
+        catch(final ExecutionException e)
+        {
+            this.cancelPendingBlocks();
+            if(e.getCause() instanceof IOException)
+            {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Could not compress a block", e.getCause());
+        }
+        this.out.write(compressed.array(), compressed.arrayOffset() + compressed.position(), compressed.remaining());
+        this.bytesOut += compressed.remaining();
+    }
+    
+    private void cancelPendingBlocks()
+    {
+        for(final Future<ByteBuffer> nextFuture : this.pending)
+        {
+            nextFuture.cancel(true);
+        }
+        this.pending.clear();
+    }
+}
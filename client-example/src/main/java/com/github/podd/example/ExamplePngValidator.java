@@ -0,0 +1,247 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Checks the structure of a PNG file as it is read, without decoding the image.
+ * <p>
+ * The signature, the length and CRC of each chunk, and the order of the IHDR and IEND chunks are
+ * checked, which finds files that are truncated or corrupted, but not images whose compressed data
+ * is invalid despite having the correct CRCs. Bytes are given to the validator in blocks of any
+ * size, so it can be used in the same pass as other processing, such as computing digests.
+ * <p>
+ * Instances are not thread-safe, and are intended to be used for a single file.
+ */
+public class ExamplePngValidator
+{
+    private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    
+    private static final int SCRATCH_SIZE = 8192;
+    
+    private enum State
+    {
+        SIGNATURE, LENGTH, TYPE, DATA, CRC, END
+    }
+    
+    private final CRC32 crc = new CRC32();
+    
+    private final byte[] chunkType = new byte[4];
+    
+    private byte[] scratch;
+    
+    private State state = State.SIGNATURE;
+    
+    private int fieldBytes;
+    
+    private long fieldValue;
+    
+    private long remaining;
+    
+    private long offset;
+    
+    private long chunkOffset;
+    
+    private int chunkCount;
+    
+    /**
+     * Checks the given PNG file in a single streaming pass.
+     * 
+     * @param file
+     *            The file to check.
+     * @throws IOException
+     *             If the file could not be read, or was not a valid PNG file.
+     */
+    public static void validate(final Path file) throws IOException
+    {
+        final ExamplePngValidator validator = new ExamplePngValidator();
+        final ByteBuffer buffer = ByteBuffer.allocate(ExampleImageStager.DEFAULT_BUFFER_SIZE);
+        try (final FileChannel input = FileChannel.open(file, StandardOpenOption.READ);)
+        {
+            while(input.read(buffer) >= 0)
+            {
+                buffer.flip();
+                validator.update(buffer);
+                buffer.clear();
+            }
+        }
+        validator.finish();
+    }
+    
+    /**
+     * Checks that the file ended with an IEND chunk.
+     * 
+     * @throws IOException
+     *             If the file was truncated.
+     */
+    public void finish() throws IOException
+    {
+        if(this.state != State.END)
+        {
+            throw new IOException("PNG file was truncated in " + this.state + " after " + this.offset + " bytes");
+        }
+    }
+    
+    /**
+     * @return The number of complete chunks that have been checked.
+     */
+    public int getChunkCount()
+    {
+        return this.chunkCount;
+    }
+    
+    private String getChunkType()
+    {
+        return new String(this.chunkType, StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Checks the remaining bytes in the given buffer, without changing the position of the buffer.
+     * 
+     * @param buffer
+     *            The next bytes of the file, which may be a direct buffer.
+     * @throws IOException
+     *             If the bytes so far are not a valid PNG file.
+     */
+    public void update(final ByteBuffer buffer) throws IOException
+    {
+        final ByteBuffer bytes = buffer.duplicate();
+        while(bytes.hasRemaining())
+        {
+            switch(this.state)
+            {
+                case SIGNATURE:
+                    if(bytes.get() != ExamplePngValidator.SIGNATURE[this.fieldBytes])
+                    {
+                        throw new IOException("File did not start with the PNG signature");
+                    }
+                    this.offset++;
+                    if(++this.fieldBytes == ExamplePngValidator.SIGNATURE.length)
+                    {
+                        this.startField(State.LENGTH);
+                    }
+                    break;
+                case LENGTH:
+                    if(this.fieldBytes == 0)
+                    {
+                        this.chunkOffset = this.offset;
+                    }
+                    this.readFieldByte(bytes);
+                    if(this.fieldBytes == 4)
+                    {
+                        if(this.fieldValue > Integer.MAX_VALUE)
+                        {
+                            throw new IOException("PNG chunk length was too large at offset " + this.chunkOffset);
+                        }
+                        this.remaining = this.fieldValue;
+                        this.crc.reset();
+                        this.startField(State.TYPE);
+                    }
+                    break;
+                case TYPE:
+                    final byte nextByte = bytes.get();
+                    this.offset++;
+                    this.crc.update(nextByte);
+                    this.chunkType[this.fieldBytes++] = nextByte;
+                    if(this.fieldBytes == 4)
+                    {
+                        final boolean header = this.getChunkType().equals("IHDR");
+                        if(header != (this.chunkCount == 0))
+                        {
+                            throw new IOException("PNG IHDR chunk was not the first chunk: " + this.getChunkType()
+                                    + " at offset " + this.chunkOffset);
+                        }
+                        this.startField(this.remaining == 0 ? State.CRC : State.DATA);
+                    }
+                    break;
+                case DATA:
+                    this.updateData(bytes);
+                    if(this.remaining == 0)
+                    {
+                        this.startField(State.CRC);
+                    }
+                    break;
+                case CRC:
+                    this.readFieldByte(bytes);
+                    if(this.fieldBytes == 4)
+                    {
+                        if(this.fieldValue != this.crc.getValue())
+                        {
+                            throw new IOException("PNG chunk CRC did not match: " + this.getChunkType()
+                                    + " at offset " + this.chunkOffset);
+                        }
+                        this.chunkCount++;
+                        this.startField(this.getChunkType().equals("IEND") ? State.END : State.LENGTH);
+                    }
+                    break;
+                default:
+                    throw new IOException("PNG file had data after the IEND chunk at offset " + this.offset);
+            }
+        }
+    }
+    
+    private void readFieldByte(final ByteBuffer bytes)
+    {
+        this.fieldValue = (this.fieldValue << 8) | (bytes.get() & 0xFF);
+        this.fieldBytes++;
+        this.offset++;
+    }
+    
+    private void startField(final State nextState)
+    {
+        this.state = nextState;
+        this.fieldBytes = 0;
+        this.fieldValue = 0;
+    }
+    
+    /**
+     * Adds as much of the data for the current chunk as is available to the CRC.
+     */
+    private void updateData(final ByteBuffer bytes)
+    {
+        final int length = (int)Math.min(this.remaining, bytes.remaining());
+        if(bytes.hasArray())
+        {
+            this.crc.update(bytes.array(), bytes.arrayOffset() + bytes.position(), length);
+            bytes.position(bytes.position() + length);
+        }
+        else
+        {
+            if(this.scratch == null)
+            {
+                this.scratch = new byte[ExamplePngValidator.SCRATCH_SIZE];
+            }
+            int left = length;
+            while(left > 0)
+            {
+                final int next = Math.min(left, this.scratch.length);
+                bytes.get(this.scratch, 0, next);
+                this.crc.update(this.scratch, 0, next);
+                left -= next;
+            }
+        }
+        this.remaining -= length;
+        this.offset += length;
+    }
+}
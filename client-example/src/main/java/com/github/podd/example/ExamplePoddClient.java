@@ -16,58 +16,66 @@
  */
 package com.github.podd.example;
 
-import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
-import java.nio.charset.Charset;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
-import java.sql.CallableStatement;
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 
 import javax.imageio.ImageIO;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
-import net.schmizz.sshj.DefaultConfig;
-import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.common.SecurityUtils;
-import net.schmizz.sshj.sftp.FileAttributes;
-import net.schmizz.sshj.sftp.SFTPClient;
-import net.schmizz.sshj.sftp.SFTPFileTransfer;
 import net.schmizz.sshj.userauth.keyprovider.FileKeyProvider;
 import net.schmizz.sshj.userauth.keyprovider.PKCS8KeyFile;
 import net.schmizz.sshj.userauth.password.PasswordFinder;
-import net.schmizz.sshj.xfer.FileSystemFile;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.ReaderInputStream;
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Model;
 import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.impl.LinkedHashModel;
@@ -88,8 +96,6 @@ import com.github.podd.client.impl.restlet.RestletPoddClientImpl;
 import com.github.podd.utils.InferredOWLOntologyID;
 import com.github.podd.utils.OntologyUtils;
 import com.github.podd.utils.PODD;
-import com.github.podd.utils.PoddDigestUtils;
-import com.github.podd.utils.PoddDigestUtils.Algorithm;
 
 /**
  * Provides operations helping to create and update projects in PODD.
@@ -99,9 +105,94 @@ import com.github.podd.utils.PoddDigestUtils.Algorithm;
 public class ExamplePoddClient extends RestletPoddClientImpl
 {
     /**
-     * Default configuration for SSHJ, to avoid recreating it for each client.
+     * The maximum number of barcodes to resolve in a single SPARQL query.
      */
-    private static final DefaultConfig DEFAULT_CONFIG = new DefaultConfig();
+    public static final int BARCODE_QUERY_CHUNK_SIZE = 200;
+    
+    /**
+     * The default number of artifacts appended to at the same time by
+     * {@link #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy, RDFFormat)}.
+     */
+    public static final int DEFAULT_ARTIFACT_UPLOAD_PARALLELISM = 4;
+    
+    /**
+     * The default number of artifacts queried at the same time to prefill the experiment and
+     * genotype maps before importing a TrayScan list, if lazy resolution is disabled using
+     * {@link #PROP_LAZY_RESOLUTION}.
+     */
+    public static final int DEFAULT_WARM_UP_PARALLELISM = 4;
+    
+    /**
+     * The payload file containing the trays and pots in an experiment dumped by
+     * {@link #dumpTrayScanExperiment(String, Path, boolean)}.
+     */
+    public static final String DUMP_METADATA_FILE = "experiment.ttl";
+    
+    /**
+     * The payload directory containing the previews of the images in an experiment dumped by
+     * {@link #dumpTrayScanExperiment(String, Path, boolean, String, int, boolean)}.
+     */
+    public static final String DUMP_PREVIEW_DIRECTORY = "previews";
+    
+    /**
+     * The property used to set the MIME type of the format used to send models to the server in
+     * {@link #uploadArtifacts(ConcurrentMap)} and
+     * {@link #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy)}, such as
+     * "application/rdf+json" for servers that do not accept {@link #DEFAULT_ARTIFACT_UPLOAD_FORMAT}.
+     */
+    public static final String PROP_ARTIFACT_UPLOAD_FORMAT = "exampletrayscan.uploadformat";
+    
+    /**
+     * The property used to set the directory containing the TrayScan images, with a directory for
+     * each tray named using its barcode.
+     */
+    public static final String PROP_DUMP_IMAGE_DIRECTORY = "exampledump.imagedirectory";
+    
+    /**
+     * The property used to choose whether the experiments and genotypes for each project are only
+     * found when a TrayScan list first refers to the project, which is the default, or are found
+     * for all projects before the list is imported.
+     */
+    public static final String PROP_LAZY_RESOLUTION = "exampletrayscan.lazyresolution";
+    
+    /**
+     * The property used to set the number of artifacts queried at the same time to prefill the
+     * experiment and genotype maps before importing a TrayScan list.
+     */
+    public static final String PROP_WARM_UP_PARALLELISM = "exampletrayscan.warmupparallelism";
+    
+    /**
+     * The default format used to send models to the server in
+     * {@link #uploadArtifacts(ConcurrentMap)} and
+     * {@link #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy)}, if it is not set using
+     * {@link #PROP_ARTIFACT_UPLOAD_FORMAT}. N-Triples is written one statement at a time, so the
+     * request body is never held in memory, and is accepted by every PODD server.
+     */
+    public static final RDFFormat DEFAULT_ARTIFACT_UPLOAD_FORMAT = RDFFormat.NTRIPLES;
+    
+    /**
+     * Pool of connections to the TrayScan database, created when it is first needed.
+     */
+    private ExampleConnectionPool connectionPool;
+    
+    /**
+     * Counters and timers for the current or most recent TrayScan import.
+     */
+    private final ExampleImportMetrics importMetrics = new ExampleImportMetrics();
+    
+    /**
+     * Persistent cache of the project, experiment and genotype queries used to prefill the URI
+     * maps for TrayScan imports, opened when it is first needed if it is configured using
+     * {@link ExampleUriResolutionCache#PROP_DIRECTORY}.
+     */
+    private ExampleUriResolutionCache uriResolutionCache;
+    
+    /**
+     * Shares the literals that are repeated on many lines when importing a TrayScan list. This is
+     * cleared at the start of each list.
+     */
+    private final ExampleValueCache valueCache = new ExampleValueCache(RestletPoddClientImpl.vf,
+            ExampleValueCache.DEFAULT_MAXIMUM_SIZE);
     
     public ExamplePoddClient()
     {
@@ -113,137 +204,740 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         super(poddServerUrl);
     }
     
-    private void checkTrayScanServerDetails()
+    /**
+     * Writes each of the given bag directories into a compressed archive next to it, using an
+     * {@link ExampleBagArchiver} with the number of threads given by
+     * {@link ExampleBagArchiver#PROP_THREAD_COUNT}, so that the archives can be uploaded in place
+     * of the bags.
+     * <p>
+     * Archives of bags written by
+     * {@link #dumpTrayScanExperiment(String, Path, boolean, String, int, boolean)} are recorded in
+     * the {@link ExampleDumpManifest} for the dump, and are not written again if the bag, its tag
+     * files and the compression level have not changed since, so that they are also not uploaded
+     * again. The manifests are stored even if a later bag could not be archived, so that the
+     * archives that were written are not written again.
+     * 
+     * @param bags
+     *            The directories of the bags to archive.
+     * @param format
+     *            The format to write the archives in.
+     * @param level
+     *            The compression level, from 0 for no compression to 9 for the best compression.
+     * @return A map from each of the bags to its archive, in the same order as the given bags.
+     * @throws PoddClientException
+     *             If the thread count property was not valid.
+     * @throws IOException
+     *             If a bag could not be read or an archive could not be written.
+     */
+    public Map<Path, Path> archiveBags(final List<Path> bags, final ExampleBagArchiver.Format format,
+            final int level) throws PoddClientException, IOException
+    {
+        final Map<Path, Path> results = new LinkedHashMap<>();
+        final Map<Path, ExampleDumpManifest> manifests = new HashMap<>();
+        try (final ExampleBagArchiver archiver =
+                new ExampleBagArchiver(format, level, this.getIntProperty(ExampleBagArchiver.PROP_THREAD_COUNT,
+                        Runtime.getRuntime().availableProcessors()));)
+        {
+            for(final Path nextBag : bags)
+            {
+                final ExampleDumpManifest manifest = ExamplePoddClient.getDumpManifest(manifests, nextBag);
+                final Path archive = ExampleBagArchiver.getArchivePath(nextBag, format);
+                final String tagDigest = manifest == null ? null : ExampleDumpManifest.digestTagFiles(nextBag);
+                if(manifest != null && manifest.isArchived(archive, level, tagDigest))
+                {
+                    this.log.info("Not archiving bag as it has not changed since it was archived: {}", archive);
+                }
+                else
+                {
+                    archiver.archive(nextBag);
+                    if(manifest != null)
+                    {
+                        manifest.putArchive(archive, level, tagDigest);
+                    }
+                }
+                results.put(nextBag, archive);
+            }
+        }
+        finally
+        {
+            for(final ExampleDumpManifest nextManifest : manifests.values())
+            {
+                if(nextManifest != null)
+                {
+                    nextManifest.store();
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Caches the URI for the given barcode, unless another line has already cached a URI for it,
+     * in which case that URI is returned instead so that each barcode only maps to a single
+     * object.
+     * 
+     * @param uriMap
+     *            The cache, mapping from barcodes to the URI for the barcode and the URI of the
+     *            parent object that contains it.
+     * @param barcode
+     *            The barcode.
+     * @param nextUri
+     *            The URI to cache for the barcode.
+     * @param parentUri
+     *            The URI of the parent object.
+     * @return The URI that is cached for the barcode.
+     */
+    private URI cacheBarcodeUri(final ConcurrentMap<String, ConcurrentMap<URI, URI>> uriMap, final String barcode,
+            final URI nextUri, final URI parentUri)
     {
-        throw new UnsupportedOperationException("TODO: Implement checkTrayScanServerDetails");
+        final ConcurrentMap<URI, URI> nextUriMap = new ConcurrentHashMap<>();
+        nextUriMap.put(nextUri, parentUri);
+        final ConcurrentMap<URI, URI> putIfAbsent = uriMap.putIfAbsent(barcode, nextUriMap);
+        if(putIfAbsent != null)
+        {
+            // Another line resolved this barcode concurrently, so use the URI it assigned to avoid
+            // creating two objects for the same barcode
+            return putIfAbsent.keySet().iterator().next();
+        }
+        return nextUri;
+    }
+    
+    private void checkTrayScanServerDetails() throws PoddClientException
+    {
+        if(this.getProps().get(ExampleDBConstants.PROP_DB_SERVER_URL, "").trim().isEmpty())
+        {
+            throw new PoddClientException("TrayScan database server was not configured using property: "
+                    + ExampleDBConstants.PROP_DB_SERVER_URL);
+        }
     }
     
     /**
-     * Verify that the Java {@link ImageIO} methods can be used to read the PNG.
+     * Closes the pool of connections to the TrayScan database, if it was created.
+     * 
+     * @throws SQLException
+     *             If there was an error closing the connections.
+     */
+    public synchronized void closeMySQLConnections() throws SQLException
+    {
+        if(this.connectionPool != null)
+        {
+            try
+            {
+                this.connectionPool.close();
+            }
+            finally
+            {
+                this.connectionPool = null;
+            }
+        }
+    }
+    
+    /**
+     * Closes the URI resolution cache, if it was opened.
+     * 
+     * @throws IOException
+     *             If there was an error closing the cache.
+     */
+    public synchronized void closeUriResolutionCache() throws IOException
+    {
+        if(this.uriResolutionCache != null)
+        {
+            try
+            {
+                this.uriResolutionCache.close();
+            }
+            finally
+            {
+                this.uriResolutionCache = null;
+            }
+        }
+    }
+    
+    /**
+     * Creates a new temporary URI, which will be replaced by the PODD server when the artifact is
+     * updated.
+     * 
+     * @param type
+     *            A short name for the type of object, including a trailing colon.
+     * @return A new temporary URI.
+     */
+    private URI createTemporaryUri(final String type)
+    {
+        return RestletPoddClientImpl.vf.createURI(RestletPoddClientImpl.TEMP_UUID_PREFIX + type
+                + UUID.randomUUID().toString());
+    }
+    
+    /**
+     * Verify that the chunks in the PNG are not corrupted, in a streaming pass without decoding
+     * the image, and then copy it to the given debug file.
      * 
      * @param rgbImage
      * @param debugPngOutputFile
      * @throws IOException
      * @throws PoddClientException
+     *             If the image could not be read, or was not a valid PNG file.
      */
     private void debugPng(final Path rgbImage, final Path debugPngOutputFile) throws IOException, PoddClientException
     {
-        Files.createFile(debugPngOutputFile);
-        try (final InputStream input = Files.newInputStream(rgbImage);
-                final OutputStream output = Files.newOutputStream(debugPngOutputFile);)
+        try
+        {
+            ExamplePngValidator.validate(rgbImage);
+        }
+        catch(final IOException e)
+        {
+            throw new PoddClientException("Could not verify the image correctness: " + rgbImage, e);
+        }
+        Files.copy(rgbImage, debugPngOutputFile);
+    }
+    
+    /**
+     * Performs the given SPARQL query against a single artifact, using the URI resolution cache if
+     * it is configured. Failures reading or writing the cache are logged and the query is sent to
+     * the server instead.
+     * 
+     * @param query
+     *            The SPARQL query.
+     * @param artifactId
+     *            The artifact to query.
+     * @param queryCache
+     *            The cache that the results are used to fill, which queries sent to the server are
+     *            recorded against in the import metrics, or null if the query is not part of an
+     *            import and is not recorded.
+     * @return The results of the query.
+     * @throws PoddClientException
+     *             If the query failed.
+     */
+    private Model doCachedSPARQL(final String query, final InferredOWLOntologyID artifactId,
+            final ExampleImportMetrics.Cache queryCache) throws PoddClientException
+    {
+        // Results are only cached for artifacts with a version, as the version identifies when the
+        // results are out of date
+        final ExampleUriResolutionCache cache =
+                artifactId.getVersionIRI() == null ? null : this.getUriResolutionCache();
+        if(cache != null)
+        {
+            try
+            {
+                final Model cached = cache.get(artifactId.getVersionIRI().toString(), query);
+                if(cached != null)
+                {
+                    return cached;
+                }
+            }
+            catch(final IOException e)
+            {
+                this.log.warn("Could not read from URI resolution cache: {}", artifactId, e);
+            }
+        }
+        
+        if(queryCache != null)
+        {
+            this.importMetrics.recordQuery(queryCache);
+        }
+        final Model result = this.doSPARQL(query, Arrays.asList(artifactId));
+        if(cache != null)
+        {
+            try
+            {
+                cache.put(artifactId.getVersionIRI().toString(), query, result);
+            }
+            catch(final IOException e)
+            {
+                this.log.warn("Could not write to URI resolution cache: {}", artifactId, e);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Dumps the trays, pots and images for the given TrayScan experiment into the given directory,
+     * streaming the images into BagIt bags using an {@link ExampleBagBuilder}.
+     * <p>
+     * The trays and pots are written to {@link #DUMP_METADATA_FILE} in the payload of the first
+     * bag. Images are found in the directory given by {@link #PROP_DUMP_IMAGE_DIRECTORY}, which
+     * contains a directory for each tray. Images with names that start with the barcode of a pot
+     * in the tray are written to a directory for the pot inside the directory for the tray, and
+     * other images are written to the directory for the tray. Bags are split at the size given by
+     * {@link ExampleBagBuilder#PROP_MAX_BAG_BYTES}, and images are checksummed and staged using
+     * the number of workers given by {@link ExampleBagBuilder#PROP_THREAD_COUNT}. PNG images are
+     * checked for corrupted chunks while they are checksummed. Images are copied into the bags,
+     * or hard linked when they are on the same file store if
+     * {@link ExampleImageStager#PROP_HARD_LINKS} is true.
+     * 
+     * @param experimentBarcode
+     *            The barcode of the experiment, such as Project#2013-0015_Experiment#0001.
+     * @param outputDirectory
+     *            The directory to write the bags to.
+     * @param dumpBags
+     *            True to write bags, or false to write the payload files to a single directory
+     *            without splitting them or adding tag files.
+     * @return A map from the name of each bag, prefixed with "bag:", or of the single directory,
+     *         prefixed with "directory:", to its path.
+     * @throws PoddClientException
+     *             If the experiment could not be found.
+     * @throws IOException
+     *             If the images could not be read or the bags could not be written.
+     */
+    public Map<String, Path> dumpTrayScanExperiment(final String experimentBarcode, final Path outputDirectory,
+            final boolean dumpBags) throws PoddClientException, IOException
+    {
+        return this.dumpTrayScanExperiment(experimentBarcode, outputDirectory, dumpBags, null,
+                ExampleDerivativeGenerator.DEFAULT_MAX_DIMENSION, false);
+    }
+    
+    /**
+     * Dumps the trays, pots and images for the given TrayScan experiment into the given directory,
+     * as for {@link #dumpTrayScanExperiment(String, Path, boolean)}, adding a downscaled preview
+     * of each image to {@link #DUMP_PREVIEW_DIRECTORY} in the payload if a preview format is
+     * given.
+     * <p>
+     * Previews are rendered in parallel by an {@link ExampleDerivativeGenerator}, using the number
+     * of threads given by {@link ExampleDerivativeGenerator#PROP_PARALLELISM}, and are cached in the
+     * directory given by {@link ExampleDerivativeGenerator#PROP_CACHE_DIRECTORY}, which defaults to
+     * a directory inside the output directory, so images which have not changed since an earlier
+     * dump are not rendered again. Files in the image directory which cannot be read by ImageIO
+     * are dumped without a preview.
+     * <p>
+     * Each dump records what it wrote in an {@link ExampleDumpManifest} next to the bags. If the
+     * dump is incremental, images whose size and modification time have not changed since the
+     * last dump, and which are still in place in the same bag, are not read or written again, and
+     * the trays and pots from the last dump are reused if the version of the artifact has not
+     * changed. Payload files which are no longer part of a bag are removed, and the tag files of
+     * every bag are rewritten.
+     * 
+     * @param experimentBarcode
+     *            The barcode of the experiment, such as Project#2013-0015_Experiment#0001.
+     * @param outputDirectory
+     *            The directory to write the bags to.
+     * @param dumpBags
+     *            True to write bags, or false to write the payload files to a single directory
+     *            without splitting them or adding tag files.
+     * @param previewFormat
+     *            One of the formats from {@link #getImageFormatNames()} to write previews in, or
+     *            null to dump the images without previews.
+     * @param previewSize
+     *            The maximum width and height of the previews, in pixels.
+     * @param incremental
+     *            True to only write the payload files which have changed since the last dump to the
+     *            same output directory.
+     * @return A map from the name of each bag, prefixed with "bag:", or of the single directory,
+     *         prefixed with "directory:", to its path.
+     * @throws PoddClientException
+     *             If the experiment could not be found, or the preview format was not supported.
+     * @throws IOException
+     *             If the images could not be read or the bags could not be written.
+     */
+    public Map<String, Path> dumpTrayScanExperiment(final String experimentBarcode, final Path outputDirectory,
+            final boolean dumpBags, final String previewFormat, final int previewSize, final boolean incremental)
+        throws PoddClientException, IOException
+    {
+        if(previewFormat != null && !this.getImageFormatNames().contains(previewFormat.toLowerCase()))
+        {
+            throw new PoddClientException("Preview format was not supported: " + previewFormat + " "
+                    + this.getImageFormatNames());
+        }
+        
+        final Matcher matcher = ExampleSpreadsheetConstants.REGEX_EXPERIMENT.matcher(experimentBarcode);
+        if(!matcher.matches())
+        {
+            throw new PoddClientException("Experiment barcode did not match the expected format: "
+                    + experimentBarcode);
+        }
+        final int projectYear = Integer.parseInt(matcher.group(1));
+        final int projectNumber = Integer.parseInt(matcher.group(2));
+        final String projectName =
+                String.format(ExampleSpreadsheetConstants.TEMPLATE_PROJECT, projectYear, projectNumber);
+        final String experimentName =
+                String.format(ExampleSpreadsheetConstants.TEMPLATE_EXPERIMENT, projectYear, projectNumber,
+                        Integer.parseInt(matcher.group(3)));
+        
+        final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap =
+                new ConcurrentHashMap<>();
+        this.populateProjectUriMap(this.listArtifacts(true, true), projectUriMap);
+        final Map<URI, InferredOWLOntologyID> projectDetails = this.getProjectDetails(projectUriMap, projectName);
+        final URI projectUri = projectDetails.keySet().iterator().next();
+        final InferredOWLOntologyID artifactId = projectDetails.get(projectUri);
+        final URI experimentUri =
+                this.getExperimentDetails(new ExampleImportContext(projectUriMap, false), projectName, projectUri,
+                        artifactId, experimentName).keySet().iterator().next();
+        
+        final String dumpName = ExamplePoddClient.toPathSegment(experimentName);
+        final ExampleDumpManifest previous =
+                new ExampleDumpManifest(ExampleDumpManifest.getManifestPath(outputDirectory, dumpName));
+        previous.load();
+        final ExampleDumpManifest manifest = previous.startDump();
+        manifest.setArtifactVersion(artifactId.getVersionIRI() == null ? null : artifactId.getVersionIRI()
+                .toString());
+        
+        byte[] metadata = incremental ? this.readDumpMetadata(previous, manifest.getArtifactVersion()) : null;
+        Model trays = null;
+        if(metadata != null)
+        {
+            try
+            {
+                trays = Rio.parse(new ByteArrayInputStream(metadata), "", RDFFormat.TURTLE);
+            }
+            catch(final OpenRDFException | IOException e)
+            {
+                this.log.warn("Could not read trays and pots from the last dump: {}", previous.getMetadataPath(), e);
+            }
+        }
+        if(trays == null)
+        {
+            trays =
+                    this.doSPARQL(String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_TRAYS_AND_POTS,
+                            RenderUtils.getSPARQLQueryString(experimentUri),
+                            RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_HAS_TRAY),
+                            RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_HAS_POT)), Arrays.asList(artifactId));
+            final ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try
+            {
+                Rio.write(trays, output, RDFFormat.TURTLE);
+            }
+            catch(final RDFHandlerException e)
+            {
+                throw new PoddClientException("Could not serialise trays and pots for experiment: " + experimentName,
+                        e);
+            }
+            metadata = output.toByteArray();
+        }
+        final Map<String, List<String>> trayBarcodes = this.getTrayBarcodes(trays, experimentUri);
+        this.log.info("Dumping experiment: {} {} trays={} incremental={}", experimentName, experimentUri,
+                trayBarcodes.size(), incremental);
+        
+        final String imageDirectory = this.getProps().get(ExamplePoddClient.PROP_DUMP_IMAGE_DIRECTORY, "").trim();
+        if(imageDirectory.isEmpty())
+        {
+            this.log.warn("Image directory was not configured, only dumping trays and pots: {}",
+                    ExamplePoddClient.PROP_DUMP_IMAGE_DIRECTORY);
+        }
+        
+        final Map<String, Path> results = new LinkedHashMap<>();
+        try (final ExampleBagBuilder builder =
+                new ExampleBagBuilder(outputDirectory, dumpName,
+                        this.getLongProperty(ExampleBagBuilder.PROP_MAX_BAG_BYTES,
+                                ExampleBagBuilder.DEFAULT_MAX_BAG_BYTES), this.getIntProperty(
+                                ExampleBagBuilder.PROP_THREAD_COUNT, ExampleBagBuilder.DEFAULT_THREAD_COUNT),
+                        dumpBags);)
+        {
+            builder.getImageStager().setHardLinks(
+                    Boolean.parseBoolean(this.getProps().get(ExampleImageStager.PROP_HARD_LINKS, "false").trim()));
+            builder.addPayload(metadata, ExamplePoddClient.DUMP_METADATA_FILE);
+            final ExampleDumpManifest unchanged = incremental ? previous : null;
+            final Map<Path, String> images = new LinkedHashMap<>();
+            if(!imageDirectory.isEmpty())
+            {
+                for(final Entry<String, List<String>> nextTray : trayBarcodes.entrySet())
+                {
+                    this.dumpTrayImages(builder, Paths.get(imageDirectory), nextTray.getKey(), nextTray.getValue(),
+                            unchanged, images);
+                }
+            }
+            if(previewFormat != null && !images.isEmpty())
+            {
+                this.dumpPreviews(builder, outputDirectory, images, previewFormat, previewSize, unchanged);
+            }
+            
+            final List<Path> bags = builder.finish();
+            int reused = 0;
+            for(final ExampleStagedImage nextFile : builder.getStagedFiles())
+            {
+                if(nextFile.source != null)
+                {
+                    manifest.putPayload(nextFile.payloadPath, nextFile.size, nextFile.lastModified, nextFile.digest);
+                }
+                else if(ExamplePoddClient.DUMP_METADATA_FILE.equals(nextFile.payloadPath))
+                {
+                    manifest.setMetadataPath(nextFile.target);
+                }
+                if(nextFile.reused)
+                {
+                    reused++;
+                }
+            }
+            for(final Path nextPath : bags)
+            {
+                results.put((dumpBags ? "bag:" : "directory:") + nextPath.getFileName(), nextPath);
+                if(dumpBags)
+                {
+                    manifest.putBag(nextPath.getFileName().toString(), ExampleDumpManifest.digestBag(nextPath));
+                }
+            }
+            manifest.store();
+            this.log.info("Dumped experiment: {} files={} unchanged={}", experimentName, manifest.getPayloadCount(),
+                    reused);
+        }
+        return results;
+    }
+    
+    /**
+     * Renders previews of the given images in parallel, and adds them to the given builder in the
+     * preview directory, using the payload path of each image followed by the preview format.
+     */
+    private void dumpPreviews(final ExampleBagBuilder builder, final Path outputDirectory,
+            final Map<Path, String> images, final String previewFormat, final int previewSize,
+            final ExampleDumpManifest unchanged) throws PoddClientException, IOException
+    {
+        final List<Path> readableImages = new ArrayList<>(images.size());
+        // The digests of unchanged images are used to find their previews without reading them
+        final Map<Path, String> knownDigests = new HashMap<>();
+        for(final Path nextImage : images.keySet())
         {
-            final BufferedImage bufferedImage = ImageIO.read(input);
-            final boolean write = ImageIO.write(bufferedImage, "png", output);
-            if(!write)
+            if(ExampleDerivativeGenerator.canRead(nextImage))
             {
-                throw new PoddClientException("Could not find PNG writer to test the image correctness");
+                readableImages.add(nextImage);
+                final String knownDigest =
+                        ExamplePoddClient.getKnownDigest(unchanged, nextImage, images.get(nextImage));
+                if(knownDigest != null)
+                {
+                    knownDigests.put(nextImage, knownDigest);
+                }
             }
         }
+        
+        final String cacheDirectory = this.getProps().get(ExampleDerivativeGenerator.PROP_CACHE_DIRECTORY, "").trim();
+        try (final ExampleDerivativeGenerator generator =
+                new ExampleDerivativeGenerator(cacheDirectory.isEmpty() ? outputDirectory.resolve("preview-cache")
+                        : Paths.get(cacheDirectory), previewFormat, previewSize, this.getIntProperty(
+                        ExampleDerivativeGenerator.PROP_PARALLELISM, Runtime.getRuntime().availableProcessors()));)
+        {
+            for(final Entry<Path, Path> nextPreview : generator.generateAll(readableImages, knownDigests).entrySet())
+            {
+                final String payloadPath =
+                        ExamplePoddClient.DUMP_PREVIEW_DIRECTORY + "/" + images.get(nextPreview.getKey()) + "."
+                                + generator.getFormatName();
+                builder.addPayload(nextPreview.getValue(), payloadPath,
+                        ExamplePoddClient.getKnownDigest(unchanged, nextPreview.getValue(), payloadPath));
+            }
+            this.log.info("Dumped previews: rendered={} cached={} skipped={}", generator.getRendered(),
+                    generator.getCacheHits(), images.size() - readableImages.size());
+        }
+    }
+    
+    /**
+     * Adds the images for the given tray to the given builder, using the pot barcodes to group
+     * the images for each pot, and records the payload path of each image in the given map. Images
+     * which are unchanged since the last dump are not staged again.
+     */
+    private void dumpTrayImages(final ExampleBagBuilder builder, final Path imageDirectory, final String trayBarcode,
+            final List<String> potBarcodes, final ExampleDumpManifest unchanged, final Map<Path, String> dumpedImages)
+        throws IOException
+    {
+        final String trayPath = ExamplePoddClient.toPathSegment(trayBarcode);
+        final Path trayDirectory = imageDirectory.resolve(trayPath);
+        if(!Files.isDirectory(trayDirectory))
+        {
+            this.log.warn("Did not find any images for tray: {} {}", trayBarcode, trayDirectory);
+            return;
+        }
+        
+        final List<Path> images = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(trayDirectory);)
+        {
+            for(final Path nextImage : stream)
+            {
+                if(Files.isRegularFile(nextImage))
+                {
+                    images.add(nextImage);
+                }
+            }
+        }
+        Collections.sort(images);
+        
+        for(final Path nextImage : images)
+        {
+            final String fileName = ExamplePoddClient.toPathSegment(nextImage.getFileName().toString());
+            // Use the longest matching barcode, in case one pot barcode is a prefix of another
+            String potPath = null;
+            for(final String nextPot : potBarcodes)
+            {
+                final String nextPotPath = ExamplePoddClient.toPathSegment(nextPot);
+                if(fileName.startsWith(nextPotPath) && (potPath == null || nextPotPath.length() > potPath.length()))
+                {
+                    potPath = nextPotPath;
+                }
+            }
+            final String payloadPath =
+                    potPath == null ? trayPath + "/" + fileName : trayPath + "/" + potPath + "/" + fileName;
+            builder.addPayload(nextImage, payloadPath,
+                    ExamplePoddClient.getKnownDigest(unchanged, nextImage, payloadPath));
+            dumpedImages.put(nextImage, payloadPath);
+        }
+    }
+    
+    /**
+     * Finds the existing objects of the given type whose labels start with each of the given
+     * barcodes, using one SPARQL query for each chunk of barcodes in each artifact.
+     * 
+     * @param barcodes
+     *            The barcodes to find, grouped by the artifact that they must be found in.
+     * @param type
+     *            The type of the objects.
+     * @param queryCache
+     *            The cache that the results are used to fill, which the queries are recorded
+     *            against in the import metrics.
+     * @return A map from each barcode that was found to the URI of the object it identifies.
+     * @throws PoddClientException
+     *             If there is a PODD Client exception.
+     * @throws GraphUtilException
+     *             If more than one object was found for a barcode.
+     */
+    private Map<String, URI> findUrisByBarcode(final Map<InferredOWLOntologyID, Set<String>> barcodes,
+            final URI type, final ExampleImportMetrics.Cache queryCache) throws PoddClientException,
+        GraphUtilException
+    {
+        final Map<String, URI> result = new HashMap<>();
+        final String typeString = RenderUtils.getSPARQLQueryString(type);
+        
+        for(final Entry<InferredOWLOntologyID, Set<String>> nextEntry : barcodes.entrySet())
+        {
+            final List<String> nextBarcodes = new ArrayList<>(nextEntry.getValue());
+            for(int i = 0; i < nextBarcodes.size(); i += ExamplePoddClient.BARCODE_QUERY_CHUNK_SIZE)
+            {
+                final List<String> nextChunk =
+                        nextBarcodes.subList(i,
+                                Math.min(nextBarcodes.size(), i + ExamplePoddClient.BARCODE_QUERY_CHUNK_SIZE));
+                
+                final StringBuilder values = new StringBuilder();
+                for(final String nextBarcode : nextChunk)
+                {
+                    values.append("( ").append(typeString).append(" \"").append(RenderUtils.escape(nextBarcode))
+                            .append("\" ) ");
+                }
+                
+                this.importMetrics.recordQuery(queryCache);
+                final Model nextSparqlResults =
+                        this.doSPARQL(String.format(
+                                ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE_LABEL_STRSTARTS_VALUES, values),
+                                Arrays.asList(nextEntry.getKey()));
+                
+                // Sort the labels so that the objects for each barcode can be found using a prefix
+                // range instead of scanning all of the results for every barcode
+                final NavigableMap<String, Set<Resource>> labels = new TreeMap<>();
+                for(final Statement nextLabel : nextSparqlResults.filter(null, RDFS.LABEL, null))
+                {
+                    if(nextSparqlResults.contains(nextLabel.getSubject(), RDF.TYPE, type))
+                    {
+                        Set<Resource> nextSubjects = labels.get(nextLabel.getObject().stringValue());
+                        if(nextSubjects == null)
+                        {
+                            nextSubjects = new HashSet<>();
+                            labels.put(nextLabel.getObject().stringValue(), nextSubjects);
+                        }
+                        nextSubjects.add(nextLabel.getSubject());
+                    }
+                }
+                
+                for(final String nextBarcode : nextChunk)
+                {
+                    final Model matches = new LinkedHashModel();
+                    for(final Set<Resource> nextSubjects : labels.subMap(nextBarcode, true,
+                            nextBarcode + Character.MAX_VALUE, false).values())
+                    {
+                        for(final Resource nextSubject : nextSubjects)
+                        {
+                            matches.add(nextSubject, RDF.TYPE, type);
+                        }
+                    }
+                    
+                    if(!matches.isEmpty())
+                    {
+                        result.put(nextBarcode, GraphUtil.getUniqueSubjectURI(matches, RDF.TYPE, type));
+                    }
+                }
+            }
+        }
+        
+        return result;
     }
     
     /**
      * Generates the RDF triples necessary for the given TrayScan parameters and adds the details to
      * the relevant model in the upload queue.
      * 
-     * @param projectUriMap
-     *            A map of relevant project URIs and their artifact identifiers using their
-     *            standardised labels.
-     * @param experimentUriMap
-     *            A map of relevant experiment URIs and their project URIs using their standardised
-     *            labels.
-     * @param trayUriMap
-     *            A map of relevant tray URIs and their experiment URIs using their standardised
-     *            labels.
-     * @param potUriMap
-     *            A map of relevant pot URIs and their tray URIs using their standardised labels.
-     * @param uploadQueue
-     *            The upload queue containing all of the models to be uploaded.
-     * @param projectYear
-     *            The TrayScan parameter detailing the project year for the next tray.
-     * @param projectNumber
-     *            The TrayScan parameter detailing the project number for the next tray.
-     * @param experimentNumber
-     *            The TrayScan parameter detailing the experiment number for the next tray.
-     * @param plantName
-     *            The name of this plant
-     * @param plantNotes
-     *            Specific notes about this plant
-     * @param species
-     *            The species for the current line.
-     * @param genus
-     *            The genus for the current line.
+     * @param context
+     *            The caches for the import, including the upload queue containing the statements
+     *            to be uploaded for each artifact.
+     * @param nextLine
+     *            The TrayScan line, containing the project year, project number and experiment
+     *            number for the tray, along with the tray and pot barcodes and the details of the
+     *            plant in the pot.
      * @throws PoddClientException
      *             If there is a PODD Client exception.
      * @throws GraphUtilException
      *             If there was an illformed graph.
      */
-    public void generateTrayRDF(final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> trayUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> potUriMap,
-            final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap,
-            final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap,
-            final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue, final ExampleCSVLine nextLine)
+    public void generateTrayRDF(final ExampleImportContext context, final ExampleCSVLine nextLine)
         throws PoddClientException, GraphUtilException
     {
-        Objects.requireNonNull(nextLine, "Line was null");
-        Objects.requireNonNull(nextLine.projectID, "ProjectID in line was null");
-        
-        final Map<URI, InferredOWLOntologyID> projectDetails =
-                this.getProjectDetails(projectUriMap, nextLine.projectID);
-        
-        final URI nextProjectUri = projectDetails.keySet().iterator().next();
-        final InferredOWLOntologyID nextProjectID = projectDetails.get(nextProjectUri);
-        
-        this.log.debug("Found PODD Project name to URI mapping: {} {}", nextLine.projectID, projectDetails);
-        
-        final Map<URI, URI> experimentDetails = this.getExperimentDetails(nextLine.experimentID);
+        final ExampleTrayScanUris nextUris = this.resolveTrayScanUris(context, nextLine);
         
-        final URI nextExperimentUri = experimentDetails.keySet().iterator().next();
+        this.generateTrayRDF(nextUris, context, nextLine);
+    }
+    
+    /**
+     * Generates the RDF triples for a line whose project, experiment, tray and pot URIs have
+     * already been resolved, and adds the details to the relevant model in the upload queue.
+     * 
+     * @param nextUris
+     *            The URIs resolved for this line using
+     *            {@link #resolveTrayScanUris(ExampleImportContext, ExampleCSVLine)}.
+     * @param context
+     *            The caches for the import, including the upload queue containing the statements
+     *            to be uploaded for each artifact.
+     * @param nextLine
+     *            The line to generate RDF triples for.
+     */
+    void generateTrayRDF(final ExampleTrayScanUris nextUris, final ExampleImportContext context,
+            final ExampleCSVLine nextLine)
+    {
+        final URI nextProjectUri = nextUris.projectUri;
+        final InferredOWLOntologyID nextProjectID = nextUris.projectID;
+        final URI nextExperimentUri = nextUris.experimentUri;
+        final URI nextTrayUri = nextUris.trayUri;
+        final URI nextPotUri = nextUris.potUri;
         
-        // Create or find an existing model for the necessary modifications to this
+        // Create or find an existing buffer for the necessary modifications to this
         // project/artifact
-        Model nextResult = new LinkedHashModel();
-        final Model putIfAbsent = uploadQueue.putIfAbsent(nextProjectID, nextResult);
-        if(putIfAbsent != null)
+        ExampleStatementBuffer nextResult = context.uploadQueue.get(nextProjectID);
+        if(nextResult == null)
         {
-            nextResult = putIfAbsent;
+            nextResult = new ExampleStatementBuffer(RestletPoddClientImpl.vf);
+            final ExampleStatementBuffer putIfAbsent = context.uploadQueue.putIfAbsent(nextProjectID, nextResult);
+            if(putIfAbsent != null)
+            {
+                nextResult = putIfAbsent;
+            }
         }
         
-        final URI nextTrayUri = this.getTrayUri(trayUriMap, nextLine.trayID, nextProjectID, nextExperimentUri);
-        
-        // Check whether plantId already has an assigned URI
-        final URI nextPotUri = this.getPotUri(potUriMap, nextLine.plantID, nextProjectID, nextTrayUri);
-        
         // Check whether genus/specieis/plantName already has an assigned URI (and automatically
         // assign a temporary URI if it does not)
         final URI nextGenotypeUri =
-                this.getGenotypeUri(genotypeUriMap, nextLine.genus, nextLine.species, nextLine.plantName,
-                        nextLine.plantLineNumber, nextLine.control, nextProjectID, nextProjectUri);
+                this.getGenotypeUri(context.genotypeUriMap, context.genotypeIndex, nextLine.genus, nextLine.species,
+                        nextLine.plantName, nextLine.plantLineNumber, nextLine.control, nextProjectID, nextProjectUri);
         
         // // Check whether the material for the given genotype for the given pot already has an
         // assigned URI (and automatically
         // // assign a temporary URI if it does not)
         final URI nextMaterialUri =
-                this.getMaterialUri(materialUriMap, nextGenotypeUri, nextProjectID, nextPotUri, nextLine.potNumber,
-                        nextLine.plantLineNumber, nextLine.control);
+                this.getMaterialUri(context.materialUriMap, context.materialIndex, nextGenotypeUri, nextProjectID,
+                        nextPotUri, nextLine.potNumber, nextLine.plantLineNumber, nextLine.control);
         
         // Add new poddScience:Container for tray
         nextResult.add(nextTrayUri, RDF.TYPE, PODD.PODD_SCIENCE_TRAY);
         // Link tray to experiment
         nextResult.add(nextExperimentUri, PODD.PODD_SCIENCE_HAS_TRAY, nextTrayUri);
         // TrayID => Add poddScience:hasBarcode to tray
-        nextResult.add(nextTrayUri, PODD.PODD_SCIENCE_HAS_BARCODE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.trayID));
+        nextResult.add(nextTrayUri, PODD.PODD_SCIENCE_HAS_BARCODE, this.valueCache.createLiteral(nextLine.trayID));
         // TrayNotes => Add rdfs:label to tray
-        nextResult.add(nextTrayUri, RDFS.LABEL, RestletPoddClientImpl.vf.createLiteral(nextLine.trayNotes));
+        nextResult.add(nextTrayUri, RDFS.LABEL, this.valueCache.createLiteral(nextLine.trayNotes));
         // TrayTypeName => Add poddScience:hasTrayType to tray
         nextResult.add(nextTrayUri, PODD.PODD_SCIENCE_HAS_TRAY_TYPE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.trayTypeName));
+                this.valueCache.createLiteral(nextLine.trayTypeName));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_TRAY_NUMBER,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.trayNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.trayNumber, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_TRAY_ROW_NUMBER,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.trayRowNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.trayRowNumber, XMLSchema.STRING));
         
         // Add new poddScience:Container for pot
         nextResult.add(nextPotUri, RDF.TYPE, PODD.PODD_SCIENCE_POT);
@@ -257,42 +951,42 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                 RestletPoddClientImpl.vf.createLiteral(nextLine.plantID));
         
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_NUMBER,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.potNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.potNumber, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_TYPE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.potType, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.potType, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_COLUMN_NUMBER_OVERALL,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.columnNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.columnNumber, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_COLUMN_NUMBER_REPLICATE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.columnNumberRep, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.columnNumberRep, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_COLUMN_NUMBER_TRAY,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.columnNumberTray, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.columnNumberTray, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_COLUMN_LETTER_TRAY,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.columnLetter));
+                this.valueCache.createLiteral(nextLine.columnLetter));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_POSITION_TRAY,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.position));
+                this.valueCache.createLiteral(nextLine.position));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_NUMBER_TRAY,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.potNumberTray, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.potNumberTray, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_NUMBER_REPLICATE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.potReplicateNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.potReplicateNumber, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_REPLICATE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.replicateNumber, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.replicateNumber, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_ROW_NUMBER_REPLICATE,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.rowNumberRep, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.rowNumberRep, XMLSchema.STRING));
         nextResult.add(nextPotUri, PODD.PODD_SCIENCE_HAS_POT_ROW_NUMBER_TRAY,
-                RestletPoddClientImpl.vf.createLiteral(nextLine.rowNumberTray, XMLSchema.STRING));
+                this.valueCache.createLiteral(nextLine.rowNumberTray, XMLSchema.STRING));
         
         if(nextGenotypeUri.stringValue().startsWith(RestletPoddClientImpl.TEMP_UUID_PREFIX))
         {
             // Add all of the statements for the genotype to the update to make sure that temporary
             // descriptions are added
-            nextResult.addAll(genotypeUriMap.get(nextProjectUri).get(nextGenotypeUri));
+            nextResult.addAll(context.genotypeUriMap.get(nextProjectUri).get(nextGenotypeUri));
         }
         
         if(nextMaterialUri.stringValue().startsWith(RestletPoddClientImpl.TEMP_UUID_PREFIX))
         {
             // Add all of the statements for the genotype to the update to make sure that temporary
             // descriptions are added
-            nextResult.addAll(materialUriMap.get(nextPotUri).get(nextMaterialUri));
+            nextResult.addAll(context.materialUriMap.get(nextPotUri).get(nextMaterialUri));
         }
         
         String potLabel;
@@ -307,24 +1001,194 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         }
         nextResult.add(nextPotUri, RDFS.LABEL, RestletPoddClientImpl.vf.createLiteral(potLabel));
         
+        this.importMetrics.recordRow();
+    }
+    
+    /**
+     * Gets the format used to send models to the server, from the MIME type in the
+     * {@link #PROP_ARTIFACT_UPLOAD_FORMAT} property.
+     * 
+     * @return The format, which is {@link #DEFAULT_ARTIFACT_UPLOAD_FORMAT} if the property was not
+     *         set.
+     * @throws PoddClientException
+     *             If there was no RDF writer for the MIME type.
+     */
+    RDFFormat getArtifactUploadFormat() throws PoddClientException
+    {
+        final String mimeType =
+                this.getProps()
+                        .get(ExamplePoddClient.PROP_ARTIFACT_UPLOAD_FORMAT,
+                                ExamplePoddClient.DEFAULT_ARTIFACT_UPLOAD_FORMAT.getDefaultMIMEType()).trim();
+        final RDFFormat result = Rio.getWriterFormatForMIMEType(mimeType);
+        if(result == null)
+        {
+            throw new PoddClientException("Upload format was not supported: "
+                    + ExamplePoddClient.PROP_ARTIFACT_UPLOAD_FORMAT + "=" + mimeType);
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the pool of connections to the TrayScan database, creating it using the
+     * {@link ExampleDBConstants} properties if necessary.
+     * <p>
+     * If the server URL property is a JDBC URL it is used directly, otherwise it is used as the
+     * host for a MySQL URL together with the database name property.
+     * 
+     * @return The pool of connections to the TrayScan database.
+     * @throws PoddClientException
+     *             If the TrayScan database properties were not valid.
+     */
+    private synchronized ExampleConnectionPool getConnectionPool() throws PoddClientException
+    {
+        if(this.connectionPool == null)
+        {
+            this.checkTrayScanServerDetails();
+            
+            String url = this.getProps().get(ExampleDBConstants.PROP_DB_SERVER_URL, "").trim();
+            if(!url.startsWith("jdbc:"))
+            {
+                url = "jdbc:mysql://" + url + "/" + this.getProps().get(ExampleDBConstants.PROP_DB_NAME, "");
+            }
+            
+            this.connectionPool =
+                    new ExampleConnectionPool(url, this.getProps().get(ExampleDBConstants.PROP_DB_USERNAME, ""),
+                            this.getProps().get(ExampleDBConstants.PROP_DB_PASSWORD, ""), this.getIntProperty(
+                                    ExampleDBConstants.PROP_DB_POOL_SIZE, ExampleDBConstants.DEFAULT_DB_POOL_SIZE));
+        }
+        return this.connectionPool;
+    }
+    
+    /**
+     * Opens the URI resolution cache in the directory given by the
+     * {@link ExampleUriResolutionCache#PROP_DIRECTORY} property, if it has not already been opened.
+     * 
+     * @return The URI resolution cache, or null if the property was not set.
+     * @throws PoddClientException
+     *             If the cache could not be opened.
+     */
+    private synchronized ExampleUriResolutionCache getUriResolutionCache() throws PoddClientException
+    {
+        if(this.uriResolutionCache == null)
+        {
+            final String directory = this.getProps().get(ExampleUriResolutionCache.PROP_DIRECTORY, "").trim();
+            if(!directory.isEmpty())
+            {
+                try
+                {
+                    this.uriResolutionCache = new ExampleUriResolutionCache(Paths.get(directory));
+                }
+                catch(final IOException e)
+                {
+                    throw new PoddClientException("Could not open URI resolution cache in: " + directory, e);
+                }
+            }
+        }
+        return this.uriResolutionCache;
+    }
+    
+    /**
+     * Gets the manifest of the dump that the given bag was written by, reading it the first time
+     * it is needed.
+     * 
+     * @return The manifest, or null if the bag was not written by a dump with a manifest.
+     */
+    private static ExampleDumpManifest getDumpManifest(final Map<Path, ExampleDumpManifest> manifests,
+            final Path bag) throws IOException
+    {
+        final Path manifestPath = ExampleDumpManifest.findForBag(bag);
+        if(manifestPath == null)
+        {
+            return null;
+        }
+        if(!manifests.containsKey(manifestPath))
+        {
+            ExampleDumpManifest manifest = null;
+            if(Files.exists(manifestPath))
+            {
+                manifest = new ExampleDumpManifest(manifestPath);
+                manifest.load();
+            }
+            manifests.put(manifestPath, manifest);
+        }
+        return manifests.get(manifestPath);
     }
     
     /**
-     * @param experimentUriMap
+     * Finds the experiment with the given name, querying the given project for its experiments if
+     * the experiment has not been found yet and the project has not already been queried.
+     * <p>
+     * This method is safe to call concurrently for different lines that share the same caches.
+     * 
+     * @param context
+     *            The caches for the import, which experiments found in the project are added to.
+     * @param baseProjectName
+     *            The name of the project that the experiment is expected to be in.
+     * @param projectUri
+     *            The URI of the project.
+     * @param artifactId
+     *            The artifact containing the project.
      * @param baseExperimentName
-     * @return
+     *            The standardised name of the experiment.
+     * @return A map from the URI of the experiment to the URI of the project containing it.
      * @throws PoddClientException
+     *             If the experiment could not be found.
+     */
+    Map<URI, URI> getExperimentDetails(final ExampleImportContext context, final String baseProjectName,
+            final URI projectUri, final InferredOWLOntologyID artifactId, final String baseExperimentName)
+        throws PoddClientException
+    {
+        Objects.requireNonNull(baseExperimentName, "ExperimentID in line was null");
+        
+        final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap = context.experimentUriMap;
+        Map<URI, URI> result = experimentUriMap.get(baseExperimentName);
+        if(result != null)
+        {
+            if(context.recordMetrics)
+            {
+                this.importMetrics.recordHit(ExampleImportMetrics.Cache.EXPERIMENT);
+            }
+        }
+        else
+        {
+            if(context.recordMetrics)
+            {
+                this.importMetrics.recordMiss(ExampleImportMetrics.Cache.EXPERIMENT);
+            }
+            
+            // Projects that have already been queried do not contain the experiment, so are not
+            // queried again for each line that refers to it
+            this.resolveProjectExperiments(context, baseProjectName, projectUri, artifactId);
+            result = experimentUriMap.get(baseExperimentName);
+        }
+        
+        if(result == null)
+        {
+            this.log.error("Did not find an existing experiment for a line in the CSV file: {} {}", baseProjectName,
+                    baseExperimentName);
+            
+            throw new PoddClientException("Did not find an existing experiment for a line in the CSV file: "
+                    + baseExperimentName);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return The counters and timers for the current or most recent TrayScan import, which are
+     *         reset when each TrayScan list is processed.
      */
-    private Map<URI, URI> getExperimentDetails(final String baseExperimentName) throws PoddClientException
+    public ExampleImportMetrics getImportMetrics()
     {
-        throw new UnsupportedOperationException("TODO: Implement getExperimentDetails");
+        return this.importMetrics;
     }
     
     /**
      * Gets a genotype URI matching the given genus, species, and plantName (line) from the given
-     * cache, creating a new entry if necessary and giving it a temporary URI.
+     * index, creating a new entry if necessary and giving it a temporary URI.
      * 
      * @param genotypeUriMap
+     * @param genotypeIndex
      * @param genus
      * @param species
      * @param plantName
@@ -333,56 +1197,23 @@ public class ExamplePoddClient extends RestletPoddClientImpl
      * @param nextProjectUri
      * @return
      */
-    private URI getGenotypeUri(final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap, final String genus,
-            final String species, final String plantName, final String plantLineNumber, final String control,
+    private URI getGenotypeUri(final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap,
+            final ConcurrentMap<ExampleGenotypeKey, URI> genotypeIndex, final String genus, final String species,
+            final String plantName, final String plantLineNumber, final String control,
             final InferredOWLOntologyID nextProjectID, final URI nextProjectUri)
     {
-        URI nextGenotypeURI = null;
-        if(genotypeUriMap.containsKey(nextProjectUri))
-        {
-            final ConcurrentMap<URI, Model> nextProjectGenotypeMap = genotypeUriMap.get(nextProjectUri);
-            
-            for(final URI existingGenotypeURI : nextProjectGenotypeMap.keySet())
-            {
-                final Model nextModel = nextProjectGenotypeMap.get(existingGenotypeURI);
-                
-                if(nextModel.contains(existingGenotypeURI, PODD.PODD_SCIENCE_HAS_GENUS,
-                        RestletPoddClientImpl.vf.createLiteral(genus)))
-                {
-                    if(nextModel.contains(existingGenotypeURI, PODD.PODD_SCIENCE_HAS_SPECIES,
-                            RestletPoddClientImpl.vf.createLiteral(species)))
-                    {
-                        if(nextModel.contains(existingGenotypeURI, PODD.PODD_SCIENCE_HAS_LINE,
-                                RestletPoddClientImpl.vf.createLiteral(plantName)))
-                        {
-                            nextGenotypeURI = existingGenotypeURI;
-                            break;
-                        }
-                        else
-                        {
-                            this.log.debug(
-                                    "Did not find any genotypes with the given genus and species and line in this project: {} {} {} {}",
-                                    nextProjectUri, genus, species, plantName);
-                        }
-                    }
-                    else
-                    {
-                        this.log.debug(
-                                "Did not find any genotypes with the given genus and species in this project: {} {} {}",
-                                nextProjectUri, genus, species);
-                    }
-                }
-                else
-                {
-                    this.log.debug("Did not find any genotypes with the given genus in this project: {} {}",
-                            nextProjectUri, genus);
-                }
-            }
-        }
+        final ExampleGenotypeKey genotypeKey = new ExampleGenotypeKey(nextProjectUri, genus, species, plantName);
+        URI nextGenotypeURI = genotypeIndex.get(genotypeKey);
         
         // If no genotype was found, then create a new description and assign it a temporary URI
-        if(nextGenotypeURI == null)
+        if(nextGenotypeURI != null)
+        {
+            this.importMetrics.recordHit(ExampleImportMetrics.Cache.GENOTYPE);
+        }
+        else
         {
+            this.importMetrics.recordMiss(ExampleImportMetrics.Cache.GENOTYPE);
+            
             this.log.debug(
                     "Could not find an existing genotype for description provided, assigning a temporary URI: {} {} {} {}",
                     nextProjectID, genus, species, plantName);
@@ -401,12 +1232,11 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                     RDFS.COMMENT,
                     RestletPoddClientImpl.vf.createLiteral("Plant line in : " + genus + " " + species + " named, "
                             + plantName + " : labelled as number " + plantLineNumber));
-            newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_GENUS, RestletPoddClientImpl.vf.createLiteral(genus));
-            newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_SPECIES,
-                    RestletPoddClientImpl.vf.createLiteral(species));
+            newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_GENUS, this.valueCache.createLiteral(genus));
+            newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_SPECIES, this.valueCache.createLiteral(species));
             newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_LINE, RestletPoddClientImpl.vf.createLiteral(plantName));
             newModel.add(nextGenotypeURI, PODD.PODD_SCIENCE_HAS_LINE_NUMBER,
-                    RestletPoddClientImpl.vf.createLiteral(plantLineNumber));
+                    this.valueCache.createLiteral(plantLineNumber));
             
             ConcurrentMap<URI, Model> nextGenotypeUriMap = new ConcurrentHashMap<>();
             final ConcurrentMap<URI, Model> putIfAbsent =
@@ -421,6 +1251,15 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                 this.log.error("ERROR: Generated two temporary Genotype URIs that were identical! : {} {}",
                         nextProjectUri, nextGenotypeURI);
             }
+            
+            // Publish the new genotype in the index after its description is available
+            final URI existingGenotypeURI = genotypeIndex.putIfAbsent(genotypeKey, nextGenotypeURI);
+            if(existingGenotypeURI != null)
+            {
+                // Another line created the same genotype concurrently, so discard this one
+                nextGenotypeUriMap.remove(nextGenotypeURI);
+                nextGenotypeURI = existingGenotypeURI;
+            }
         }
         return nextGenotypeURI;
         
@@ -440,39 +1279,89 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         return result;
     }
     
+    /**
+     * Gets an integer property, using the default value if the property was not set.
+     * 
+     * @param key
+     *            The property key.
+     * @param defaultValue
+     *            The value to use if the property was not set.
+     * @return The value of the property.
+     * @throws PoddClientException
+     *             If the property was set to a value that is not an integer.
+     */
+    private int getIntProperty(final String key, final int defaultValue) throws PoddClientException
+    {
+        final String value = this.getProps().get(key, Integer.toString(defaultValue)).trim();
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch(final NumberFormatException e)
+        {
+            throw new PoddClientException("Property was not an integer: " + key + "=" + value, e);
+        }
+    }
+    
+    /**
+     * Gets the digest of the given source file from the manifest of the last dump, if the file has
+     * the same size and modification time as it had then.
+     * 
+     * @return The digest, or null if the manifest is null or the file has changed.
+     */
+    private static String getKnownDigest(final ExampleDumpManifest unchanged, final Path source,
+            final String payloadPath) throws IOException
+    {
+        if(unchanged == null)
+        {
+            return null;
+        }
+        final BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return unchanged.getPayloadDigest(payloadPath, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+    
+    /**
+     * Gets a long integer property, using the default value if the property was not set.
+     * 
+     * @param key
+     *            The property key.
+     * @param defaultValue
+     *            The value to use if the property was not set.
+     * @return The value of the property.
+     * @throws PoddClientException
+     *             If the property was set to a value that is not an integer.
+     */
+    private long getLongProperty(final String key, final long defaultValue) throws PoddClientException
+    {
+        final String value = this.getProps().get(key, Long.toString(defaultValue)).trim();
+        try
+        {
+            return Long.parseLong(value);
+        }
+        catch(final NumberFormatException e)
+        {
+            throw new PoddClientException("Property was not an integer: " + key + "=" + value, e);
+        }
+    }
+    
     /**
      * Gets a material URI matching the given pot and genotype URIs, creating a new entry if
      * necessary and giving it a temporary URI.
      * 
      * @param materialUriMap
+     * @param materialIndex
+     * @param nextGenotypeUri
      * @param nextProjectID
      * @param nextPotUri
      * @return
      */
-    private URI getMaterialUri(final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap,
-            final URI nextGenotypeUri, final InferredOWLOntologyID nextProjectID, final URI nextPotUri,
-            final String potNumber, final String lineNumber, final String control)
+    URI getMaterialUri(final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap,
+            final ConcurrentMap<ExampleMaterialKey, URI> materialIndex, final URI nextGenotypeUri,
+            final InferredOWLOntologyID nextProjectID, final URI nextPotUri, final String potNumber,
+            final String lineNumber, final String control)
     {
-        URI nextMaterialURI = null;
-        if(materialUriMap.containsKey(nextPotUri))
-        {
-            final ConcurrentMap<URI, Model> nextPotMaterialMap = materialUriMap.get(nextPotUri);
-            
-            for(final URI existingMaterialURI : nextPotMaterialMap.keySet())
-            {
-                final Model nextModel = nextPotMaterialMap.get(existingMaterialURI);
-                
-                if(nextModel.contains(existingMaterialURI, PODD.PODD_SCIENCE_REFERS_TO_GENOTYPE, nextGenotypeUri))
-                {
-                    nextMaterialURI = existingMaterialURI;
-                }
-                else
-                {
-                    this.log.debug("Did not find any materials with the given genotype in this pot: {} {}", nextPotUri,
-                            nextGenotypeUri);
-                }
-            }
-        }
+        final ExampleMaterialKey materialKey = new ExampleMaterialKey(nextPotUri, nextGenotypeUri);
+        URI nextMaterialURI = materialIndex.get(materialKey);
         
         // If no material was found, then create a new description and assign it a temporary URI
         if(nextMaterialURI == null)
@@ -521,6 +1410,15 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                 this.log.error("ERROR: Generated two temporary Material URIs that were identical! : {} {}", nextPotUri,
                         nextMaterialURI);
             }
+            
+            // Publish the new material in the index after its description is available
+            final URI existingMaterialURI = materialIndex.putIfAbsent(materialKey, nextMaterialURI);
+            if(existingMaterialURI != null)
+            {
+                // Another line created the same material concurrently, so discard this one
+                nextGenotypeUriMap.remove(nextMaterialURI);
+                nextMaterialURI = existingMaterialURI;
+            }
         }
         return nextMaterialURI;
         
@@ -534,10 +1432,14 @@ public class ExamplePoddClient extends RestletPoddClientImpl
      */
     public Connection getMySQLConnection() throws SQLException
     {
-        throw new UnsupportedOperationException("TODO: Implement getMySQLConnection");
-        // return DriverManager.getConnection("jdbc:mysql://" + this.getTrayScanHost() + "/" +
-        // this.getTrayScanDbName(),
-        // this.getTrayScanUsername(), this.getTrayScanPassword());
+        try
+        {
+            return this.getConnectionPool().getConnection();
+        }
+        catch(final PoddClientException e)
+        {
+            throw new SQLException(e.getMessage(), e);
+        }
     }
     
     /**
@@ -556,10 +1458,13 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         URI nextPotURI;
         if(potUriMap.containsKey(plantId))
         {
+            this.importMetrics.recordHit(ExampleImportMetrics.Cache.POT);
             nextPotURI = potUriMap.get(plantId).keySet().iterator().next();
         }
         else
         {
+            this.importMetrics.recordMiss(ExampleImportMetrics.Cache.POT);
+            this.importMetrics.recordQuery(ExampleImportMetrics.Cache.POT);
             final Model plantIdSparqlResults =
                     this.doSPARQL(String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE_LABEL_STRSTARTS,
                             RenderUtils.escape(plantId), RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_POT)),
@@ -571,24 +1476,47 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                         "Could not find an existing container for pot barcode, assigning a temporary URI: {} {}",
                         plantId, nextProjectID);
                 
-                nextPotURI =
-                        RestletPoddClientImpl.vf.createURI(RestletPoddClientImpl.TEMP_UUID_PREFIX + "pot:"
-                                + UUID.randomUUID().toString());
+                nextPotURI = this.createTemporaryUri("pot:");
             }
             else
             {
                 nextPotURI = GraphUtil.getUniqueSubjectURI(plantIdSparqlResults, RDF.TYPE, PODD.PODD_SCIENCE_POT);
             }
             
-            ConcurrentMap<URI, URI> nextPotUriMap = new ConcurrentHashMap<>();
-            final ConcurrentMap<URI, URI> putIfAbsent2 = potUriMap.putIfAbsent(plantId, nextPotUriMap);
-            if(putIfAbsent2 != null)
+            nextPotURI = this.cacheBarcodeUri(potUriMap, plantId, nextPotURI, nextTrayURI);
+        }
+        return nextPotURI;
+    }
+    
+    /**
+     * @return A map from the barcode of each tray in the given experiment to the barcodes of the
+     *         pots in the tray, sorted by tray barcode.
+     */
+    private Map<String, List<String>> getTrayBarcodes(final Model trays, final URI experimentUri)
+    {
+        final Map<String, List<String>> result = new TreeMap<>();
+        for(final Value nextTray : trays.filter(experimentUri, PODD.PODD_SCIENCE_HAS_TRAY, null).objects())
+        {
+            final Set<Value> trayBarcode =
+                    trays.filter((Resource)nextTray, PODD.PODD_SCIENCE_HAS_BARCODE, null).objects();
+            if(trayBarcode.isEmpty())
+            {
+                this.log.warn("Tray did not have a barcode, not dumping its images: {}", nextTray);
+                continue;
+            }
+            
+            final List<String> potBarcodes = new ArrayList<>();
+            for(final Value nextPot : trays.filter((Resource)nextTray, PODD.PODD_SCIENCE_HAS_POT, null).objects())
             {
-                nextPotUriMap = putIfAbsent2;
+                for(final Value nextPotBarcode : trays.filter((Resource)nextPot, PODD.PODD_SCIENCE_HAS_BARCODE, null)
+                        .objects())
+                {
+                    potBarcodes.add(nextPotBarcode.stringValue());
+                }
             }
-            nextPotUriMap.put(nextPotURI, nextTrayURI);
+            result.put(trayBarcode.iterator().next().stringValue(), potBarcodes);
         }
-        return nextPotURI;
+        return result;
     }
     
     /**
@@ -640,10 +1568,13 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         URI nextTrayURI;
         if(trayUriMap.containsKey(trayId))
         {
+            this.importMetrics.recordHit(ExampleImportMetrics.Cache.TRAY);
             nextTrayURI = trayUriMap.get(trayId).keySet().iterator().next();
         }
         else
         {
+            this.importMetrics.recordMiss(ExampleImportMetrics.Cache.TRAY);
+            this.importMetrics.recordQuery(ExampleImportMetrics.Cache.TRAY);
             final Model trayIdSparqlResults =
                     this.doSPARQL(String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE_LABEL_STRSTARTS,
                             RenderUtils.escape(trayId), RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_TRAY)),
@@ -655,181 +1586,212 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                         "Could not find an existing container for tray barcode, assigning a temporary URI: {} {}",
                         trayId, nextProjectID);
                 
-                nextTrayURI =
-                        RestletPoddClientImpl.vf.createURI(RestletPoddClientImpl.TEMP_UUID_PREFIX + "tray:"
-                                + UUID.randomUUID().toString());
+                nextTrayURI = this.createTemporaryUri("tray:");
             }
             else
             {
                 nextTrayURI = GraphUtil.getUniqueSubjectURI(trayIdSparqlResults, RDF.TYPE, PODD.PODD_SCIENCE_TRAY);
             }
             
-            ConcurrentMap<URI, URI> nextTrayUriMap = new ConcurrentHashMap<>();
-            final ConcurrentMap<URI, URI> putIfAbsent2 = trayUriMap.putIfAbsent(trayId, nextTrayUriMap);
-            if(putIfAbsent2 != null)
-            {
-                nextTrayUriMap = putIfAbsent2;
-            }
-            nextTrayUriMap.put(nextTrayURI, nextExperimentUri);
+            nextTrayURI = this.cacheBarcodeUri(trayUriMap, trayId, nextTrayURI, nextExperimentUri);
         }
         return nextTrayURI;
     }
     
     /**
-     * Inserts the given line into the TrayScan database.
+     * Creates a writer for the TrayScan database, which writes lines in transactions of the size
+     * given by the {@link ExampleDBConstants#PROP_DB_BATCH_SIZE} property, and records the time
+     * taken to write each batch in the import metrics.
      * 
-     * @param nextLine
-     * @throws SQLException
+     * @return A new writer. {@link ExampleTrayScanWriter#flush()} must be called to write the final
+     *         batch of lines before the writer is closed, as closing it discards any lines that
+     *         have not been flushed.
      * @throws PoddClientException
+     *             If the TrayScan database properties were not valid.
      */
-    private void insertTrayScanToMySQL(final ExampleCSVLine nextLine) throws SQLException, PoddClientException
+    public ExampleTrayScanWriter getTrayScanWriter() throws PoddClientException
     {
-        this.checkTrayScanServerDetails();
-        
-        try (final Connection connection = this.getMySQLConnection();)
+        return new ExampleTrayScanWriter(this.getConnectionPool(), this.getIntProperty(
+                ExampleDBConstants.PROP_DB_BATCH_SIZE, ExampleDBConstants.DEFAULT_DB_BATCH_SIZE), this.importMetrics);
+    }
+    
+    /**
+     * @return The cache of values shared between lines when importing the current or most recent
+     *         TrayScan list, including statistics about how often values were found in the cache.
+     */
+    public ExampleValueCache getValueCache()
+    {
+        return this.valueCache;
+    }
+    
+    /**
+     * Processes the given TrayScan list as for
+     * {@link #processTrayScanList(InputStream, int, int)}, and returns the changes together with a
+     * summary of the import metrics.
+     * 
+     * @param in
+     *            An {@link InputStream} containing the TrayScan CSV file.
+     * @param workerCount
+     *            The number of concurrent workers to use to resolve URIs, or 0 to process each line
+     *            serially on the calling thread.
+     * @param queueCapacity
+     *            The maximum number of batches of lines that can be in the pipeline at any time.
+     *            Ignored if workerCount is 0.
+     * @return The upload queue and the metrics for processing the list. The metrics for uploading
+     *         the changes are available from {@link #getImportMetrics()} after they are uploaded.
+     */
+    public ExampleTrayScanImport importTrayScanList(final InputStream in, final int workerCount,
+            final int queueCapacity) throws IOException, PoddClientException, OpenRDFException, SQLException
+    {
+        final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue =
+                this.processTrayScanList(in, workerCount, queueCapacity);
+        return new ExampleTrayScanImport(uploadQueue, this.importMetrics.getSummary());
+    }
+    
+    /**
+     * Adds the given genotype to the index using each combination of the genus, species and line
+     * literals in its description.
+     * <p>
+     * Lines are matched against plain literals created from their genus, species and line, so only
+     * plain literals are indexed. Literals with a datatype or a language tag are not indexed, as
+     * they would not be equal to the literals for any line, and keying them by their labels would
+     * merge genotypes that only differ by datatype or language.
+     * 
+     * @param genotypeIndex
+     *            An index from the project, genus, species and line of each genotype to its URI.
+     * @param projectUri
+     *            The URI of the project containing the genotype.
+     * @param genotypeUri
+     *            The URI of the genotype.
+     * @param description
+     *            A model containing the description of the genotype.
+     */
+    void indexGenotype(final ConcurrentMap<ExampleGenotypeKey, URI> genotypeIndex, final URI projectUri,
+            final URI genotypeUri, final Model description)
+    {
+        for(final Value nextGenus : description.filter(genotypeUri, PODD.PODD_SCIENCE_HAS_GENUS, null).objects())
         {
-            connection.setAutoCommit(false);
-            
-            final String trayQueryString = "SELECT * FROM tab_tray WHERE tray_textId = ?;";
-            try (final PreparedStatement prepareStatement =
-                    connection.prepareStatement(trayQueryString, ResultSet.TYPE_FORWARD_ONLY,
-                            ResultSet.CONCUR_READ_ONLY);)
-            {
-                prepareStatement.setString(1, nextLine.trayID);
-                try (final ResultSet resultSet = prepareStatement.executeQuery())
-                {
-                    // If the tray did not exist, then store it
-                    if(!resultSet.next())
-                    {
-                        final ResultSetMetaData metaData = resultSet.getMetaData();
-                        try (final CallableStatement cs = connection.prepareCall("{call StoreTray(?, ?, ?)}");)
-                        {
-                            cs.setString(1, nextLine.trayID);
-                            cs.setString(2, nextLine.trayTypeName);
-                            cs.setString(3, nextLine.trayNotes);
-                            try (final ResultSet updateSet = cs.executeQuery();)
-                            {
-                                // TODO: Check to make sure call succeeded
-                            }
-                        }
-                    }
-                }
-            }
-            
-            final String plantQueryString = "SELECT * FROM tab_plant WHERE plant_textId = ?;";
-            try (final PreparedStatement prepareStatement =
-                    connection.prepareStatement(plantQueryString, ResultSet.TYPE_FORWARD_ONLY,
-                            ResultSet.CONCUR_READ_ONLY);)
+            for(final Value nextSpecies : description.filter(genotypeUri, PODD.PODD_SCIENCE_HAS_SPECIES, null)
+                    .objects())
             {
-                prepareStatement.setString(1, nextLine.plantID);
-                try (final ResultSet resultSet = prepareStatement.executeQuery())
+                for(final Value nextLine : description.filter(genotypeUri, PODD.PODD_SCIENCE_HAS_LINE, null)
+                        .objects())
                 {
-                    // If the plant did not exist, then store it
-                    if(!resultSet.next())
+                    if(ExamplePoddClient.isPlainLiteral(nextGenus) && ExamplePoddClient.isPlainLiteral(nextSpecies)
+                            && ExamplePoddClient.isPlainLiteral(nextLine))
                     {
-                        final ResultSetMetaData metaData = resultSet.getMetaData();
-                        try (final CallableStatement cs = connection.prepareCall("{call StorePlant(?, ?, ?, ?)}");)
-                        {
-                            cs.setString(1, nextLine.plantID);
-                            cs.setString(2, nextLine.potType);
-                            cs.setString(3, nextLine.plantName);
-                            cs.setString(4, nextLine.plantNotes);
-                            try (final ResultSet updateSet = cs.executeQuery();)
-                            {
-                                // TODO: Check to make sure call succeeded
-                            }
-                        }
-                        // If the plant did not already exist, also link it to its tray
-                        // TODO: Check for current assignments and call this if necessary
-                        try (final CallableStatement cs = connection.prepareCall("{call StoreAssign(?, ?, ?)}");)
+                        final ExampleGenotypeKey nextKey =
+                                new ExampleGenotypeKey(projectUri, nextGenus.stringValue(),
+                                        nextSpecies.stringValue(), nextLine.stringValue());
+                        final URI existingGenotype = genotypeIndex.putIfAbsent(nextKey, genotypeUri);
+                        if(existingGenotype != null && !existingGenotype.equals(genotypeUri))
                         {
-                            cs.setString(1, nextLine.trayID);
-                            cs.setString(2, nextLine.plantID);
-                            cs.setString(3, nextLine.position);
-                            try (final ResultSet updateSet = cs.executeQuery();)
-                            {
-                                // TODO: Check to make sure call succeeded
-                            }
+                            this.log.warn("Found multiple genotypes with the same genus, species and line: {} {} {}",
+                                    nextKey, existingGenotype, genotypeUri);
                         }
-                        
                     }
                 }
             }
-            
-            connection.commit();
         }
     }
     
+    /**
+     * @return True if the given value is a literal without a datatype or a language tag.
+     */
+    private static boolean isPlainLiteral(final Value value)
+    {
+        return value instanceof Literal && ((Literal)value).getDatatype() == null
+                && ((Literal)value).getLanguage() == null;
+    }
+    
     /**
      * Parses an LST file generated for the randomisation process and returns a CSV file that can be
      * imported into Excel.
+     * <p>
+     * The file is converted one line at a time, so the memory used does not depend on the size of
+     * the file. The output is buffered if it is not already a {@link BufferedWriter}, and is flushed,
+     * but not closed, before returning.
      * 
      * @param in
+     * @param output
      * @throws IOException
      * @throws PoddClientException
+     *             If the headers were not valid, or a line did not contain a value for each header.
      */
     public void parseLstFile(final InputStream in, final Writer output) throws IOException, PoddClientException
     {
-        List<String> headers = null;
-        String parsedString;
-        try (final InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8);)
-        {
-            parsedString = IOUtils.toString(reader);
-        }
-        
-        final String[] lines = parsedString.split("\r?\n");
-        
-        final List<List<String>> splitLines = new ArrayList<>();
-        
-        for(final String nextLineFull : lines)
-        {
-            splitLines.add(Arrays.asList(nextLineFull.trim().split("\\s+")));
-        }
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        final Writer bufferedOutput = output instanceof BufferedWriter ? output : new BufferedWriter(output);
         
-        for(final List<String> nextLine : splitLines)
+        List<String> headers = null;
+        long lineNumber = 0;
+        try (final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));)
         {
-            if(headers == null)
+            String nextLine;
+            while((nextLine = reader.readLine()) != null)
             {
-                // header line is mandatory in LST file
-                headers = nextLine;
-                try
-                {
-                    this.verifyLstHeaders(headers);
-                }
-                catch(final IllegalArgumentException e)
+                lineNumber++;
+                final int fieldCount = tokenizer.tokenize(nextLine);
+                if(fieldCount == 0)
                 {
-                    this.log.error("Could not verify headers for LST file: {}", e.getMessage());
-                    throw new PoddClientException("Could not verify headers for LST file", e);
+                    // Ignore blank lines, including those at the end of the file
+                    continue;
                 }
                 
-                for(int i = 0; i < headers.size(); i++)
+                if(headers == null)
                 {
-                    if(i > 0)
+                    // header line is mandatory in LST file
+                    headers = tokenizer.getTokens();
+                    try
                     {
-                        output.write(", ");
+                        this.verifyLstHeaders(headers);
                     }
-                    output.write(headers.get(i));
-                }
-                output.write("\r\n");
-            }
-            else
-            {
-                if(nextLine.size() != headers.size())
-                {
-                    this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
+                    catch(final IllegalArgumentException e)
+                    {
+                        this.log.error("Could not verify headers for LST file: {}", e.getMessage());
+                        throw new PoddClientException("Could not verify headers for LST file", e);
+                    }
+                    
+                    for(int i = 0; i < headers.size(); i++)
+                    {
+                        if(i > 0)
+                        {
+                            bufferedOutput.write(", ");
+                        }
+                        bufferedOutput.write(headers.get(i));
+                    }
+                    bufferedOutput.write("\r\n");
                 }
-                
-                for(int i = 0; i < headers.size(); i++)
+                else
                 {
-                    if(i > 0)
+                    if(fieldCount != headers.size())
+                    {
+                        this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
+                        if(fieldCount < headers.size())
+                        {
+                            throw new PoddClientException("Line " + lineNumber
+                                    + " in LST file did not contain a value for each header");
+                        }
+                    }
+                    
+                    for(int i = 0; i < headers.size(); i++)
                     {
-                        output.write(", ");
+                        if(i > 0)
+                        {
+                            bufferedOutput.write(", ");
+                        }
+                        final int start = tokenizer.getStart(i);
+                        bufferedOutput.write(nextLine, start, tokenizer.getEnd(i) - start);
                     }
-                    output.write(nextLine.get(i));
+                    bufferedOutput.write("\r\n");
                 }
-                output.write("\r\n");
             }
         }
+        finally
+        {
+            bufferedOutput.flush();
+        }
         
         if(headers == null)
         {
@@ -837,166 +1799,188 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         }
     }
     
-    private void populateExperimentUriMap(
-            final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap) throws PoddClientException
+    /**
+     * Adds the experiments in the given project to the experiment map. This is safe to call
+     * concurrently for different projects.
+     */
+    private void populateExperimentUriMap(final String nextProjectName, final URI projectUri,
+            final InferredOWLOntologyID artifactId, final ExampleImportContext context) throws PoddClientException
     {
-        for(final String nextProjectName : projectUriMap.keySet())
+        final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap = context.experimentUriMap;
+        final Model nextSparqlResults =
+                this.doCachedSPARQL(String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE,
+                        RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_EXPERIMENT)), artifactId,
+                        context.recordMetrics ? ExampleImportMetrics.Cache.EXPERIMENT : null);
+        
+        if(nextSparqlResults.isEmpty())
         {
-            final ConcurrentMap<URI, InferredOWLOntologyID> nextProjectNameMapping = projectUriMap.get(nextProjectName);
-            for(final URI projectUri : nextProjectNameMapping.keySet())
+            this.log.info("Could not find any existing experiments for project: {} {}", nextProjectName, projectUri);
+        }
+        
+        for(final Resource nextExperiment : nextSparqlResults.filter(null, RDF.TYPE,
+                PODD.PODD_SCIENCE_EXPERIMENT).subjects())
+        {
+            if(!(nextExperiment instanceof URI))
             {
-                final InferredOWLOntologyID artifactId = nextProjectNameMapping.get(projectUri);
-                final Model nextSparqlResults =
-                        this.doSPARQL(
-                                String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE,
-                                        RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_EXPERIMENT)),
-                                Arrays.asList(artifactId));
+                this.log.error("Found experiment that was not assigned a URI: {} artifact={}", nextExperiment,
+                        artifactId);
+            }
+            else
+            {
+                final Model label = nextSparqlResults.filter(nextExperiment, RDFS.LABEL, null);
+                
+                // DebugUtils.printContents(label);
                 
-                if(nextSparqlResults.isEmpty())
+                if(label.isEmpty())
                 {
-                    this.log.info("Could not find any existing experiments for project: {} {}", nextProjectName,
-                            projectUri);
+                    this.log.error("Experiment did not have a label: {} {}", artifactId, nextExperiment);
                 }
-                
-                for(final Resource nextExperiment : nextSparqlResults.filter(null, RDF.TYPE,
-                        PODD.PODD_SCIENCE_EXPERIMENT).subjects())
+                else
                 {
-                    if(!(nextExperiment instanceof URI))
-                    {
-                        this.log.error("Found experiment that was not assigned a URI: {} artifact={}", nextExperiment,
-                                artifactId);
-                    }
-                    else
+                    for(final Value nextLabel : label.objects())
                     {
-                        final Model label = nextSparqlResults.filter(nextExperiment, RDFS.LABEL, null);
-                        
-                        // DebugUtils.printContents(label);
-                        
-                        if(label.isEmpty())
+                        if(!(nextLabel instanceof Literal))
                         {
-                            this.log.error("Experiment did not have a label: {} {}", artifactId, nextExperiment);
+                            this.log.error("Project had a non-literal label: {} {} {}", artifactId,
+                                    nextExperiment, nextLabel);
                         }
                         else
                         {
-                            for(final Value nextLabel : label.objects())
+                            String nextLabelString = nextLabel.stringValue();
+                            
+                            // take off any descriptions and leave the
+                            // project number behind
+                            nextLabelString = nextLabelString.split(" ")[0];
+                            
+                            final Matcher matcher =
+                                    ExampleSpreadsheetConstants.REGEX_EXPERIMENT.matcher(nextLabelString);
+                            
+                            if(!matcher.matches())
+                            {
+                                this.log.error(
+                                        "Found experiment label that did not start with expected format: {}",
+                                        nextLabel);
+                            }
+                            else
                             {
-                                if(!(nextLabel instanceof Literal))
+                                this.log.debug(
+                                        "Found experiment label with the expected format: '{}' original=<{}>",
+                                        nextLabelString, nextLabel);
+                                
+                                final int nextProjectYear = Integer.parseInt(matcher.group(1));
+                                final int nextProjectNumber = Integer.parseInt(matcher.group(2));
+                                final int nextExperimentNumber = Integer.parseInt(matcher.group(3));
+                                
+                                nextLabelString =
+                                        String.format(ExampleSpreadsheetConstants.TEMPLATE_EXPERIMENT,
+                                                nextProjectYear, nextProjectNumber, nextExperimentNumber);
+                                
+                                this.log.debug("Reformatted experiment label to: '{}' original=<{}>",
+                                        nextLabelString, nextLabel);
+                                
+                                ConcurrentMap<URI, URI> labelMap = new ConcurrentHashMap<>();
+                                final ConcurrentMap<URI, URI> putIfAbsent =
+                                        experimentUriMap.putIfAbsent(nextLabelString, labelMap);
+                                if(putIfAbsent != null)
                                 {
-                                    this.log.error("Project had a non-literal label: {} {} {}", artifactId,
-                                            nextExperiment, nextLabel);
+                                    this.log.error(
+                                            "Found duplicate experiment name, inconsistent results may follow: {} {} {}",
+                                            artifactId, nextExperiment, nextLabel);
+                                    // Overwrite our reference with the one that already
+                                    // existed
+                                    labelMap = putIfAbsent;
                                 }
-                                else
+                                final URI existingProject =
+                                        labelMap.putIfAbsent((URI)nextExperiment, projectUri);
+                                // Check for the case where project name maps to different
+                                // artifacts
+                                if(existingProject != null && !existingProject.equals(projectUri))
                                 {
-                                    String nextLabelString = nextLabel.stringValue();
-                                    
-                                    // take off any descriptions and leave the
-                                    // project number behind
-                                    nextLabelString = nextLabelString.split(" ")[0];
-                                    
-                                    final Matcher matcher =
-                                            ExampleSpreadsheetConstants.REGEX_EXPERIMENT.matcher(nextLabelString);
-                                    
-                                    if(!matcher.matches())
-                                    {
-                                        this.log.error(
-                                                "Found experiment label that did not start with expected format: {}",
-                                                nextLabel);
-                                    }
-                                    else
-                                    {
-                                        this.log.debug(
-                                                "Found experiment label with the expected format: '{}' original=<{}>",
-                                                nextLabelString, nextLabel);
-                                        
-                                        final int nextProjectYear = Integer.parseInt(matcher.group(1));
-                                        final int nextProjectNumber = Integer.parseInt(matcher.group(2));
-                                        final int nextExperimentNumber = Integer.parseInt(matcher.group(3));
-                                        
-                                        nextLabelString =
-                                                String.format(ExampleSpreadsheetConstants.TEMPLATE_EXPERIMENT,
-                                                        nextProjectYear, nextProjectNumber, nextExperimentNumber);
-                                        
-                                        this.log.debug("Reformatted experiment label to: '{}' original=<{}>",
-                                                nextLabelString, nextLabel);
-                                        
-                                        ConcurrentMap<URI, URI> labelMap = new ConcurrentHashMap<>();
-                                        final ConcurrentMap<URI, URI> putIfAbsent =
-                                                experimentUriMap.putIfAbsent(nextLabelString, labelMap);
-                                        if(putIfAbsent != null)
-                                        {
-                                            this.log.error(
-                                                    "Found duplicate experiment name, inconsistent results may follow: {} {} {}",
-                                                    artifactId, nextExperiment, nextLabel);
-                                            // Overwrite our reference with the one that already
-                                            // existed
-                                            labelMap = putIfAbsent;
-                                        }
-                                        final URI existingProject =
-                                                labelMap.putIfAbsent((URI)nextExperiment, projectUri);
-                                        // Check for the case where project name maps to different
-                                        // artifacts
-                                        if(existingProject != null && !existingProject.equals(projectUri))
-                                        {
-                                            this.log.error(
-                                                    "Found duplicate experiment name across different projects, inconsistent results may follow: {} {} {} {}",
-                                                    artifactId, existingProject, projectUri, nextLabel);
-                                        }
-                                    }
+                                    this.log.error(
+                                            "Found duplicate experiment name across different projects, inconsistent results may follow: {} {} {} {}",
+                                            artifactId, existingProject, projectUri, nextLabel);
                                 }
                             }
                         }
-                        
                     }
                 }
+                
             }
         }
     }
     
-    private void populateGenotypeUriMap(
-            final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap,
-            final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap) throws PoddClientException
+    /**
+     * Partitions the given statements by subject in a single pass, so that each subject is mapped
+     * to a model containing only the statements that describe it.
+     * 
+     * @param statements
+     *            The statements to partition.
+     * @return A map from each subject to the statements with that subject.
+     */
+    static Map<Resource, Model> partitionBySubject(final Model statements)
     {
-        for(final String nextProjectName : projectUriMap.keySet())
+        final Map<Resource, Model> result = new HashMap<>();
+        for(final Statement nextStatement : statements)
         {
-            final ConcurrentMap<URI, InferredOWLOntologyID> nextProjectNameMapping = projectUriMap.get(nextProjectName);
-            for(final URI projectUri : nextProjectNameMapping.keySet())
+            Model nextPartition = result.get(nextStatement.getSubject());
+            if(nextPartition == null)
             {
-                final InferredOWLOntologyID artifactId = nextProjectNameMapping.get(projectUri);
-                final Model nextSparqlResults =
-                        this.doSPARQL(String.format(ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE_ALL_PROPERTIES,
-                                RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_GENOTYPE)), Arrays
-                                .asList(artifactId));
-                if(nextSparqlResults.isEmpty())
+                nextPartition = new LinkedHashModel();
+                result.put(nextStatement.getSubject(), nextPartition);
+            }
+            nextPartition.add(nextStatement);
+        }
+        return result;
+    }
+    
+    /**
+     * Adds the genotypes in the given project to the genotype map and index. This is safe to call
+     * concurrently for different projects.
+     */
+    private void populateGenotypeUriMap(final String nextProjectName, final URI projectUri,
+            final InferredOWLOntologyID artifactId, final ExampleImportContext context) throws PoddClientException
+    {
+        final Model nextSparqlResults =
+                this.doCachedSPARQL(String.format(
+                        ExampleSpreadsheetConstants.TEMPLATE_SPARQL_BY_TYPE_ALL_PROPERTIES,
+                        RenderUtils.getSPARQLQueryString(PODD.PODD_SCIENCE_GENOTYPE)), artifactId,
+                        context.recordMetrics ? ExampleImportMetrics.Cache.GENOTYPE : null);
+        if(nextSparqlResults.isEmpty())
+        {
+            this.log.debug("Could not find any existing genotypes for project: {} {}", nextProjectName,
+                    projectUri);
+        }
+        
+        ConcurrentMap<URI, Model> nextGenotypeMap = new ConcurrentHashMap<>();
+        final ConcurrentMap<URI, Model> putIfAbsent =
+                context.genotypeUriMap.putIfAbsent(projectUri, nextGenotypeMap);
+        if(putIfAbsent != null)
+        {
+            nextGenotypeMap = putIfAbsent;
+        }
+        
+        // The CONSTRUCT query only returns statements about genotypes, so partitioning by subject
+        // gives each genotype its own description
+        final Map<Resource, Model> descriptions = ExamplePoddClient.partitionBySubject(nextSparqlResults);
+        for(final Resource nextGenotype : nextSparqlResults.filter(null, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE)
+                .subjects())
+        {
+            if(!(nextGenotype instanceof URI))
+            {
+                this.log.error("Found genotype that was not assigned a URI: {} artifact={}", nextGenotype,
+                        artifactId);
+            }
+            else
+            {
+                final Model nextDescription = descriptions.get(nextGenotype);
+                final Model putIfAbsent2 = nextGenotypeMap.putIfAbsent((URI)nextGenotype, nextDescription);
+                if(putIfAbsent2 != null)
                 {
-                    this.log.debug("Could not find any existing genotypes for project: {} {}", nextProjectName,
-                            projectUri);
+                    this.log.info("Found existing description for genotype URI within the same project: {} {}",
+                            projectUri, nextGenotype);
                 }
                 
-                for(final Resource nextGenotype : nextSparqlResults.filter(null, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE)
-                        .subjects())
-                {
-                    if(!(nextGenotype instanceof URI))
-                    {
-                        this.log.error("Found genotype that was not assigned a URI: {} artifact={}", nextGenotype,
-                                artifactId);
-                    }
-                    else
-                    {
-                        ConcurrentMap<URI, Model> nextGenotypeMap = new ConcurrentHashMap<>();
-                        final ConcurrentMap<URI, Model> putIfAbsent = genotypeUriMap.put(projectUri, nextGenotypeMap);
-                        if(putIfAbsent != null)
-                        {
-                            nextGenotypeMap = putIfAbsent;
-                        }
-                        final Model putIfAbsent2 = nextGenotypeMap.putIfAbsent((URI)nextGenotype, nextSparqlResults);
-                        if(putIfAbsent2 != null)
-                        {
-                            this.log.info("Found existing description for genotype URI within the same project: {} {}",
-                                    projectUri, nextGenotype);
-                        }
-                    }
-                }
+                this.indexGenotype(context.genotypeIndex, projectUri, (URI)nextGenotype, nextDescription);
             }
         }
     }
@@ -1120,33 +2104,418 @@ public class ExamplePoddClient extends RestletPoddClientImpl
     }
     
     /**
-     * Parses the mapping of line numbers to the line names used to identify lines in the
-     * randomisation process.
+     * Resolves the tray and pot barcodes for the given lines that are not already cached, using
+     * one SPARQL query for each chunk of barcodes instead of one query for each barcode, and
+     * caches the results. Barcodes that do not exist in PODD yet are assigned temporary URIs.
+     * <p>
+     * This method is safe to call concurrently for different lines that share the same caches.
+     * 
+     * @param context
+     *            The caches for the import, which the tray and pot URIs are added to.
+     * @param lines
+     *            The lines to resolve barcodes for.
+     * @throws PoddClientException
+     *             If there is a PODD Client exception.
+     * @throws GraphUtilException
+     *             If more than one object was found for a barcode.
+     */
+    void prefetchTrayScanUris(final ExampleImportContext context, final List<ExampleCSVLine> lines)
+        throws PoddClientException, GraphUtilException
+    {
+        final ConcurrentMap<String, ConcurrentMap<URI, URI>> trayUriMap = context.trayUriMap;
+        final ConcurrentMap<String, ConcurrentMap<URI, URI>> potUriMap = context.potUriMap;
+        
+        // Collect the distinct barcodes that have not been cached, grouped by the artifact that
+        // they must be found in
+        final Map<InferredOWLOntologyID, Set<String>> trayIds = new LinkedHashMap<>();
+        final Map<InferredOWLOntologyID, Set<String>> plantIds = new LinkedHashMap<>();
+        for(final ExampleCSVLine nextLine : lines)
+        {
+            Objects.requireNonNull(nextLine.projectID, "ProjectID in line was null");
+            
+            final Map<URI, InferredOWLOntologyID> projectDetails =
+                    this.getProjectDetails(context.projectUriMap, nextLine.projectID);
+            final InferredOWLOntologyID nextProjectID = projectDetails.get(projectDetails.keySet().iterator().next());
+            
+            if(!trayUriMap.containsKey(nextLine.trayID))
+            {
+                Set<String> nextTrayIds = trayIds.get(nextProjectID);
+                if(nextTrayIds == null)
+                {
+                    nextTrayIds = new LinkedHashSet<>();
+                    trayIds.put(nextProjectID, nextTrayIds);
+                }
+                nextTrayIds.add(nextLine.trayID);
+            }
+            
+            if(!potUriMap.containsKey(nextLine.plantID))
+            {
+                Set<String> nextPlantIds = plantIds.get(nextProjectID);
+                if(nextPlantIds == null)
+                {
+                    nextPlantIds = new LinkedHashSet<>();
+                    plantIds.put(nextProjectID, nextPlantIds);
+                }
+                nextPlantIds.add(nextLine.plantID);
+            }
+        }
+        
+        if(trayIds.isEmpty() && plantIds.isEmpty())
+        {
+            return;
+        }
+        
+        final Map<String, URI> existingTrays = this.findUrisByBarcode(trayIds, PODD.PODD_SCIENCE_TRAY,
+                ExampleImportMetrics.Cache.TRAY);
+        final Map<String, URI> existingPots = this.findUrisByBarcode(plantIds, PODD.PODD_SCIENCE_POT,
+                ExampleImportMetrics.Cache.POT);
+        
+        // Cache the results in the order of the lines, so that the tray for each pot is the tray
+        // on the first line that the pot appears on
+        for(final ExampleCSVLine nextLine : lines)
+        {
+            if(!trayUriMap.containsKey(nextLine.trayID))
+            {
+                URI nextTrayURI = existingTrays.get(nextLine.trayID);
+                if(nextTrayURI == null)
+                {
+                    this.log.debug(
+                            "Could not find an existing container for tray barcode, assigning a temporary URI: {}",
+                            nextLine.trayID);
+                    nextTrayURI = this.createTemporaryUri("tray:");
+                }
+                final Map<URI, InferredOWLOntologyID> projectDetails =
+                        this.getProjectDetails(context.projectUriMap, nextLine.projectID);
+                final URI nextProjectUri = projectDetails.keySet().iterator().next();
+                final URI nextExperimentUri =
+                        this.getExperimentDetails(context, nextLine.projectID, nextProjectUri,
+                                projectDetails.get(nextProjectUri), nextLine.experimentID).keySet().iterator().next();
+                this.cacheBarcodeUri(trayUriMap, nextLine.trayID, nextTrayURI, nextExperimentUri);
+            }
+            
+            if(!potUriMap.containsKey(nextLine.plantID))
+            {
+                URI nextPotURI = existingPots.get(nextLine.plantID);
+                if(nextPotURI == null)
+                {
+                    this.log.debug(
+                            "Could not find an existing container for pot barcode, assigning a temporary URI: {}",
+                            nextLine.plantID);
+                    nextPotURI = this.createTemporaryUri("pot:");
+                }
+                final URI nextTrayURI = trayUriMap.get(nextLine.trayID).keySet().iterator().next();
+                this.cacheBarcodeUri(potUriMap, nextLine.plantID, nextPotURI, nextTrayURI);
+            }
+        }
+    }
+    
+    /**
+     * Parses the mapping of line numbers to the line names used to identify lines in the
+     * randomisation process.
+     * 
+     * @param in
+     *            An {@link InputStream} containing the CSV file with the mapping of line numbers to
+     *            line names
+     * @return A map from line numbers to line names.
+     * @throws IOException
+     *             If there is an {@link IOException}.
+     * @throws PoddClientException
+     *             If there is a problem communicating with the PODD server.
+     */
+    public ConcurrentMap<String, String> processLineNameMappingList(final InputStream in) throws IOException,
+        PoddClientException
+    {
+        // -----------------------------------------------------------------------------------------
+        // Now process the CSV file line by line using the caches to reduce multiple queries to the
+        // server where possible
+        // -----------------------------------------------------------------------------------------
+        
+        List<String> headers = null;
+        final ConcurrentMap<String, String> result = new ConcurrentHashMap<>();
+        // Supressing try-with-resources warning generated erroneously by Eclipse:
+        // https://bugs.eclipse.org/bugs/show_bug.cgi?id=371614
+        try (@SuppressWarnings("resource")
+        final InputStreamReader inputStreamReader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                final CSVReader reader = new CSVReader(inputStreamReader);)
+        {
+            String[] nextLine;
+            while((nextLine = reader.readNext()) != null)
+            {
+                if(headers == null)
+                {
+                    // header line is mandatory in PODD CSV
+                    headers = Arrays.asList(nextLine);
+                    try
+                    {
+                        if(headers.size() != 2)
+                        {
+                            throw new IllegalArgumentException("Did not find required number of headers");
+                        }
+                        
+                        if(!headers.get(0).equals(ExampleLineMappingConstants.RAND_LINE_NUMBER))
+                        {
+                            throw new IllegalArgumentException("Missing "
+                                    + ExampleLineMappingConstants.RAND_LINE_NUMBER + " header");
+                        }
+                        
+                        if(!headers.get(1).equals(ExampleLineMappingConstants.RAND_CLIENT_LINE_NAME))
+                        {
+                            throw new IllegalArgumentException("Missing "
+                                    + ExampleLineMappingConstants.RAND_CLIENT_LINE_NAME + " header");
+                        }
+                    }
+                    catch(final IllegalArgumentException e)
+                    {
+                        this.log.error("Could not verify headers for line name mappings file: {}", e.getMessage());
+                        throw new PoddClientException("Could not verify headers for line name mappings file", e);
+                    }
+                }
+                else
+                {
+                    if(nextLine.length != headers.size())
+                    {
+                        this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
+                    }
+                    
+                    final String putIfAbsent = result.putIfAbsent(nextLine[0], nextLine[1]);
+                    if(putIfAbsent != null)
+                    {
+                        this.log.error(
+                                "Found multiple mappings for line name and number: linenumber={} duplicate={} original={}",
+                                nextLine[0], nextLine[1], putIfAbsent);
+                    }
+                }
+            }
+        }
+        
+        if(headers == null)
+        {
+            this.log.error("Document did not contain a valid header line");
+        }
+        
+        if(result.isEmpty())
+        {
+            this.log.error("Document did not contain any valid rows");
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Processes a batch of lines from a TrayScan list, resolving the trays and pots in the batch up
+     * front instead of using one query for each new barcode as it is found, and then clears the
+     * batch.
+     */
+    private void processTrayScanBatch(final List<List<String>> lines, final List<ExampleCSVLine> boundLines,
+            final ExampleImportContext context, final ExampleTrayScanWriter writer) throws PoddClientException,
+        OpenRDFException, SQLException
+    {
+        if(lines.isEmpty())
+        {
+            return;
+        }
+        
+        this.prefetchTrayScanUris(context, boundLines);
+        
+        for(int i = 0; i < lines.size(); i++)
+        {
+            // Process the next line and add it to the upload queue
+            this.processTrayScanLine(lines.get(i), boundLines.get(i), context, writer);
+        }
+        
+        lines.clear();
+        boundLines.clear();
+    }
+    
+    /**
+     * Process a single line from the input file, after it has been bound using the headers.
+     * 
+     * @param nextLine
+     *            The list of values in the line, used for logging
+     * @param boundLine
+     *            The values from the line bound to their headers
+     * @param context
+     *            The caches for the import, including the map from artifact identifiers to buffers
+     *            containing all of the necessary changes to the artifact.
+     * @param writer
+     *            The writer used to push the line into the TrayScan database.
+     * 
+     * @throws PoddClientException
+     *             If there was a problem communicating with PODD or the line was not valid.
+     * @throws SQLException
+     *             If there is an issue with the MySQL connection to TrayScanDB
+     */
+    void processTrayScanLine(final List<String> nextLine, final ExampleCSVLine boundLine,
+            final ExampleImportContext context, final ExampleTrayScanWriter writer)
+        throws PoddClientException, OpenRDFException, SQLException
+    {
+        this.log.debug("About to process line: {}", nextLine);
+        
+        this.generateTrayRDF(context, boundLine);
+        
+        // Push the line into MySQL, which may be deferred until the writer has a full batch
+        writer.add(boundLine);
+    }
+    
+    /**
+     * Removes results from the URI resolution cache, if it is configured, for all artifacts except
+     * the current versions of the given artifacts.
+     */
+    private void retainCurrentUriResolutions(final Model currentArtifacts) throws PoddClientException
+    {
+        final ExampleUriResolutionCache cache = this.getUriResolutionCache();
+        if(cache != null)
+        {
+            final List<String> currentVersions = new ArrayList<>();
+            for(final InferredOWLOntologyID nextArtifact : OntologyUtils.modelToOntologyIDs(currentArtifacts, true,
+                    false))
+            {
+                if(nextArtifact.getVersionIRI() != null)
+                {
+                    currentVersions.add(nextArtifact.getVersionIRI().toString());
+                }
+            }
+            try
+            {
+                final int removed = cache.retainVersions(currentVersions);
+                this.log.info("URI resolution cache: {} results, removed {} outdated artifact versions",
+                        cache.size(), removed);
+            }
+            catch(final IOException e)
+            {
+                this.log.warn("Could not remove outdated results from URI resolution cache", e);
+            }
+        }
+    }
+    
+    /**
+     * Parses the given TrayScan project/experiment/tray/pot list and inserts the items into PODD
+     * where they do not exist.
+     * 
+     * TODO: Should this process create new projects where they do not already exist? Ideally they
+     * should be created and roles assigned before this process, but could be fine to do that in
+     * here
+     */
+    public ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> processTrayScanList(final InputStream in)
+        throws IOException, PoddClientException, OpenRDFException, SQLException
+    {
+        return this.processTrayScanList(in, 0, ExampleTrayScanPipeline.DEFAULT_QUEUE_CAPACITY);
+    }
+    
+    /**
+     * Parses the given TrayScan project/experiment/tray/pot list and inserts the items into PODD
+     * where they do not exist, optionally using an {@link ExampleTrayScanPipeline} to overlap
+     * parsing, URI resolution, RDF generation and database writes.
      * 
      * @param in
-     *            An {@link InputStream} containing the CSV file with the mapping of line numbers to
-     *            line names
-     * @return A map from line numbers to line names.
-     * @throws IOException
-     *             If there is an {@link IOException}.
-     * @throws PoddClientException
-     *             If there is a problem communicating with the PODD server.
+     *            An {@link InputStream} containing the TrayScan CSV file.
+     * @param workerCount
+     *            The number of concurrent workers to use to resolve URIs, or 0 to process each line
+     *            serially on the calling thread.
+     * @param queueCapacity
+     *            The maximum number of batches of lines that can be in the pipeline at any time.
+     *            Ignored if workerCount is 0.
+     * @return A map from artifact identifiers to buffers containing all of the necessary changes to
+     *         the artifact, which can be passed to
+     *         {@link #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy, RDFFormat)}.
      */
-    public ConcurrentMap<String, String> processLineNameMappingList(final InputStream in) throws IOException,
-        PoddClientException
+    public ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> processTrayScanList(final InputStream in,
+            final int workerCount, final int queueCapacity) throws IOException, PoddClientException,
+        OpenRDFException, SQLException
     {
+        // Keep the caches for this import together, along with the queue so that we only need to
+        // update each project once for this operation to succeed
+        final ExampleImportContext context = new ExampleImportContext();
+        final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue = context.uploadQueue;
+        
+        // -----------------------------------------------------------------------------------------
+        // Now cache URIs for all unpublished projects that the current user can access, and
+        // optionally their experiments and genotypes
+        // -----------------------------------------------------------------------------------------
+        
+        this.importMetrics.reset();
+        // Only keep the values repeated within this list, so that values from earlier lists do
+        // not fill the cache or stay in memory for the life of the client
+        this.valueCache.clear();
+        final long projectStart = System.nanoTime();
+        
+        // Only select the unpublished artifacts, as we cannot edit published artifacts
+        this.importMetrics.recordQuery(ExampleImportMetrics.Cache.PROJECT);
+        final Model currentUnpublishedArtifacts = this.listArtifacts(false, true);
+        
+        // Map known project names to their URIs, as the URIs are needed to
+        // create statements internally
+        this.populateProjectUriMap(currentUnpublishedArtifacts, context.projectUriMap);
+        
+        // Remove cached results for versions of artifacts that have since been updated, as they
+        // will never be used again
+        this.retainCurrentUriResolutions(currentUnpublishedArtifacts);
+        
+        this.log.info("Found {} project names in {} ms", context.projectUriMap.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - projectStart));
+        
+        if(!Boolean.parseBoolean(this.getProps().get(ExamplePoddClient.PROP_LAZY_RESOLUTION, "true").trim()))
+        {
+            this.warmUpUriMaps(context, this.getIntProperty(ExamplePoddClient.PROP_WARM_UP_PARALLELISM,
+                            ExamplePoddClient.DEFAULT_WARM_UP_PARALLELISM));
+        }
+        
         // -----------------------------------------------------------------------------------------
         // Now process the CSV file line by line using the caches to reduce multiple queries to the
         // server where possible
         // -----------------------------------------------------------------------------------------
         
+        if(workerCount > 0)
+        {
+            final ExampleTrayScanPipeline pipeline =
+                    new ExampleTrayScanPipeline(this, workerCount, ExampleTrayScanPipeline.DEFAULT_BATCH_SIZE,
+                            queueCapacity, context);
+            pipeline.process(in);
+        }
+        else
+        {
+            this.processTrayScanLines(in, context);
+        }
+        
+        if(uploadQueue.isEmpty())
+        {
+            this.log.error("Document did not contain any valid rows");
+        }
+        
+        this.log.info("Value cache after processing TrayScan list: {}", this.valueCache);
+        this.log.info("Import metrics after processing TrayScan list: {}", this.importMetrics);
+        for(final Entry<InferredOWLOntologyID, ExampleStatementBuffer> entry : uploadQueue.entrySet())
+        {
+            final ExampleStatementBuffer nextBuffer = entry.getValue();
+            final int statementCount = nextBuffer.flush();
+            this.log.info("Statements to upload: {} statements={} terms={} bytes={} bytesPerMillionStatements={}",
+                    entry.getKey(), statementCount, nextBuffer.getTermCount(), nextBuffer.getEstimatedBytes(),
+                    statementCount == 0 ? 0 : nextBuffer.getEstimatedBytes() * 1000000 / statementCount);
+        }
+        
+        return uploadQueue;
+    }
+    
+    /**
+     * Processes each line of the given TrayScan list serially on the calling thread, as the list is
+     * read. Lines are read in batches of {@link ExampleTrayScanPipeline#DEFAULT_BATCH_SIZE}, and the
+     * tray and pot barcodes in each batch are resolved using
+     * {@link #prefetchTrayScanUris(ExampleImportContext, List)} before the lines in the batch are
+     * processed, so that only one batch of lines is held in memory at a time.
+     */
+    private void processTrayScanLines(final InputStream in, final ExampleImportContext context)
+        throws IOException, PoddClientException, OpenRDFException, SQLException
+    {
         List<String> headers = null;
-        final ConcurrentMap<String, String> result = new ConcurrentHashMap<>();
+        ExampleCSVLineBinder binder = null;
+        final List<List<String>> lines = new ArrayList<>(ExampleTrayScanPipeline.DEFAULT_BATCH_SIZE);
+        final List<ExampleCSVLine> boundLines = new ArrayList<>(ExampleTrayScanPipeline.DEFAULT_BATCH_SIZE);
         // Supressing try-with-resources warning generated erroneously by Eclipse:
         // https://bugs.eclipse.org/bugs/show_bug.cgi?id=371614
         try (@SuppressWarnings("resource")
         final InputStreamReader inputStreamReader = new InputStreamReader(in, StandardCharsets.UTF_8);
-                final CSVReader reader = new CSVReader(inputStreamReader);)
+                final CSVReader reader = new CSVReader(inputStreamReader);
+                final ExampleTrayScanWriter writer = this.getTrayScanWriter();)
         {
             String[] nextLine;
             while((nextLine = reader.readNext()) != null)
@@ -1155,30 +2524,7 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                 {
                     // header line is mandatory in PODD CSV
                     headers = Arrays.asList(nextLine);
-                    try
-                    {
-                        if(headers.size() != 2)
-                        {
-                            throw new IllegalArgumentException("Did not find required number of headers");
-                        }
-                        
-                        if(!headers.get(0).equals(ExampleLineMappingConstants.RAND_LINE_NUMBER))
-                        {
-                            throw new IllegalArgumentException("Missing "
-                                    + ExampleLineMappingConstants.RAND_LINE_NUMBER + " header");
-                        }
-                        
-                        if(!headers.get(1).equals(ExampleLineMappingConstants.RAND_CLIENT_LINE_NAME))
-                        {
-                            throw new IllegalArgumentException("Missing "
-                                    + ExampleLineMappingConstants.RAND_CLIENT_LINE_NAME + " header");
-                        }
-                    }
-                    catch(final IllegalArgumentException e)
-                    {
-                        this.log.error("Could not verify headers for line name mappings file: {}", e.getMessage());
-                        throw new PoddClientException("Could not verify headers for line name mappings file", e);
-                    }
+                    binder = this.verifyTrayScanListHeadersOrFail(headers);
                 }
                 else
                 {
@@ -1187,565 +2533,681 @@ public class ExamplePoddClient extends RestletPoddClientImpl
                         this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
                     }
                     
-                    final String putIfAbsent = result.putIfAbsent(nextLine[0], nextLine[1]);
-                    if(putIfAbsent != null)
+                    lines.add(Arrays.asList(nextLine));
+                    boundLines.add(binder.bind(lines.get(lines.size() - 1)));
+                    
+                    if(lines.size() >= ExampleTrayScanPipeline.DEFAULT_BATCH_SIZE)
                     {
-                        this.log.error(
-                                "Found multiple mappings for line name and number: linenumber={} duplicate={} original={}",
-                                nextLine[0], nextLine[1], putIfAbsent);
+                        this.processTrayScanBatch(lines, boundLines, context, writer);
                     }
                 }
             }
+            
+            this.processTrayScanBatch(lines, boundLines, context, writer);
+            
+            // Only write the last batch once every line has been processed
+            writer.flush();
         }
         
         if(headers == null)
         {
             this.log.error("Document did not contain a valid header line");
         }
-        
-        if(result.isEmpty())
+    }
+    
+    /**
+     * Reads the trays and pots written by the last dump, if they were read from the given version
+     * of the artifact.
+     * 
+     * @return The serialised trays and pots, or null if the version has changed or they could not
+     *         be read.
+     */
+    private byte[] readDumpMetadata(final ExampleDumpManifest previous, final String artifactVersion)
+    {
+        final Path metadataPath = previous.getMetadataPath();
+        if(artifactVersion == null || !artifactVersion.equals(previous.getArtifactVersion()) || metadataPath == null)
         {
-            this.log.error("Document did not contain any valid rows");
+            return null;
+        }
+        try
+        {
+            return Files.readAllBytes(metadataPath);
+        }
+        catch(final IOException e)
+        {
+            this.log.warn("Could not read trays and pots from the last dump: {}", metadataPath, e);
+            return null;
         }
-        
-        return result;
     }
     
     /**
-     * Process a single line from the input file, using the given headers as the definitions for the
-     * line.
+     * Registers the import metrics with the platform MBean server, so that they can be monitored
+     * using JMX while lists are being imported.
      * 
-     * @param headers
-     *            The list of headers
-     * @param nextLine
-     *            A list of values which can be matched against the list of headers
-     * @param projectUriMap
-     *            A map from the normalised project names to their URIs and the overall artifact
-     *            identifiers.
-     * @param experimentUriMap
-     *            A map from normalised experiment names to their URIs and the projects that they
-     *            are located in.
-     * @param trayUriMap
-     *            A map from normalised tray names (barcodes) to their URIs and the experiments that
-     *            they are located in.
-     * @param potUriMap
-     *            A map from normalised pot names (barcodes) to their URIs and the experiments that
-     *            they are located in.
-     * @param uploadQueue
-     *            A map from artifact identifiers to Model objects containing all of the necessary
-     *            changes to the artifact.
+     * @param name
+     *            The name used to distinguish the metrics for this client from any other clients.
+     * @return The name that the metrics were registered with, which can be used to unregister them.
+     * @throws PoddClientException
+     *             If the metrics could not be registered.
+     */
+    public ObjectName registerImportMetrics(final String name) throws PoddClientException
+    {
+        try
+        {
+            final ObjectName objectName =
+                    new ObjectName("com.github.podd.example:type=ImportMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this.importMetrics, objectName);
+            return objectName;
+        }
+        catch(final JMException e)
+        {
+            throw new PoddClientException("Could not register import metrics: " + name, e);
+        }
+    }
+    
+    /**
+     * Resolves the project, experiment, tray and pot URIs for the given TrayScan line, using the
+     * caches where possible and assigning temporary URIs to trays and pots that do not exist yet.
+     * The experiments and genotypes in the project are found the first time that a line refers to
+     * the project.
+     * <p>
+     * This method is safe to call concurrently for different lines that share the same caches.
      * 
+     * @param context
+     *            The caches for the import.
+     * @param nextLine
+     *            The line to resolve URIs for.
+     * @return The URIs for the objects referenced by the given line.
      * @throws PoddClientException
-     *             If there was a problem communicating with PODD or the line was not valid.
-     * @throws SQLException
-     *             If there is an issue with the MySQL connection to TrayScanDB
+     *             If there is a PODD Client exception.
+     * @throws GraphUtilException
+     *             If there was an illformed graph.
      */
-    private void processTrayScanLine(final List<String> headers, final List<String> nextLine,
-            final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> trayUriMap,
-            final ConcurrentMap<String, ConcurrentMap<URI, URI>> potUriMap,
-            final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap,
-            final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap,
-            final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue) throws PoddClientException,
-        OpenRDFException, SQLException
+    ExampleTrayScanUris resolveTrayScanUris(final ExampleImportContext context, final ExampleCSVLine nextLine)
+        throws PoddClientException, GraphUtilException
     {
-        this.log.info("About to process line: {}", nextLine);
-        final ExampleCSVLine result = new ExampleCSVLine();
+        Objects.requireNonNull(nextLine, "Line was null");
+        Objects.requireNonNull(nextLine.projectID, "ProjectID in line was null");
         
-        for(int i = 0; i < headers.size(); i++)
-        {
-            final String nextHeader = headers.get(i);
-            final String nextField = nextLine.get(i);
-            
-            if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_YEAR))
-            {
-                result.year = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER))
-            {
-                result.projectNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PROJECT_ID))
-            {
-                result.projectID = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_NUMBER))
-            {
-                result.experimentNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_ID))
-            {
-                result.experimentID = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_GENUS))
-            {
-                result.genus = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_SPECIES))
-            {
-                result.species = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER))
-            {
-                result.potNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_NUMBER))
-            {
-                result.trayNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER_TRAY))
-            {
-                result.potNumberTray = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_TRAY))
-            {
-                result.columnNumberTray = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_LETTER))
-            {
-                result.columnLetter = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_TRAY))
-            {
-                result.rowNumberTray = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_REP))
-            {
-                result.rowNumberRep = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_REP))
-            {
-                result.columnNumberRep = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER))
-            {
-                result.columnNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_ID))
-            {
-                result.trayID = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_NOTES))
-            {
-                result.trayNotes = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_ROW_NUMBER))
-            {
-                result.trayRowNumber = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_TYPE_NAME))
+        final ExampleTrayScanUris result = new ExampleTrayScanUris();
+        
+        final Map<URI, InferredOWLOntologyID> projectDetails =
+                this.getProjectDetails(context.projectUriMap, nextLine.projectID);
+        
+        result.projectUri = projectDetails.keySet().iterator().next();
+        result.projectID = projectDetails.get(result.projectUri);
+        
+        this.log.debug("Found PODD Project name to URI mapping: {} {}", nextLine.projectID, projectDetails);
+        
+        final Map<URI, URI> experimentDetails =
+                this.getExperimentDetails(context, nextLine.projectID, result.projectUri, result.projectID,
+                        nextLine.experimentID);
+        
+        this.resolveProjectGenotypes(context, nextLine.projectID, result.projectUri, result.projectID);
+        
+        result.experimentUri = experimentDetails.keySet().iterator().next();
+        
+        result.trayUri = this.getTrayUri(context.trayUriMap, nextLine.trayID, result.projectID, result.experimentUri);
+        
+        // Check whether plantId already has an assigned URI
+        result.potUri = this.getPotUri(context.potUriMap, nextLine.plantID, result.projectID, result.trayUri);
+        
+        return result;
+    }
+    
+    /**
+     * Finds the experiments in the given project, if they have not already been found.
+     * <p>
+     * This method is safe to call concurrently for different lines that share the same caches.
+     */
+    private void resolveProjectExperiments(final ExampleImportContext context, final String baseProjectName,
+            final URI projectUri, final InferredOWLOntologyID artifactId) throws PoddClientException
+    {
+        ExamplePoddClient.resolveProjectOnce(context.experimentProjects, projectUri, new Callable<Void>()
             {
-                result.trayTypeName = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POSITION))
+                @Override
+                public Void call() throws PoddClientException
+                {
+                    ExamplePoddClient.this.populateExperimentUriMap(baseProjectName, projectUri, artifactId,
+                            context);
+                    return null;
+                }
+            });
+    }
+    
+    /**
+     * Finds the genotypes in the given project, if they have not already been found, so that lines
+     * reuse existing genotypes instead of creating new ones.
+     * <p>
+     * This method is safe to call concurrently for different lines that share the same caches.
+     */
+    private void resolveProjectGenotypes(final ExampleImportContext context, final String baseProjectName,
+            final URI projectUri, final InferredOWLOntologyID artifactId) throws PoddClientException
+    {
+        // The genotype map may already contain the project before all of its genotypes are
+        // indexed, so wait for the task for the project instead
+        ExamplePoddClient.resolveProjectOnce(context.genotypeProjects, projectUri, new Callable<Void>()
             {
-                result.position = nextField;
-            }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_ID))
+                @Override
+                public Void call() throws PoddClientException
+                {
+                    ExamplePoddClient.this.populateGenotypeUriMap(baseProjectName, projectUri, artifactId, context);
+                    return null;
+                }
+            });
+    }
+    
+    /**
+     * Runs the given task for the given project, unless a task has already been started for it, and
+     * then waits for the task for the project to finish. Only callers for the same project wait for
+     * each other. If the task fails, it is removed so that the next caller tries again.
+     * 
+     * @param tasks
+     *            The tasks that have been started, mapped from the URI of their project.
+     * @param projectUri
+     *            The URI of the project.
+     * @param task
+     *            The task to run if none has been started for the project.
+     * @throws PoddClientException
+     *             If the task for the project failed.
+     */
+    private static void resolveProjectOnce(final ConcurrentMap<URI, FutureTask<Void>> tasks, final URI projectUri,
+            final Callable<Void> task) throws PoddClientException
+    {
+        FutureTask<Void> future = tasks.get(projectUri);
+        if(future == null)
+        {
+            final FutureTask<Void> newFuture = new FutureTask<>(task);
+            future = tasks.putIfAbsent(projectUri, newFuture);
+            if(future == null)
             {
-                result.plantID = nextField;
+                future = newFuture;
+                future.run();
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER))
+        }
+        try
+        {
+            future.get();
+        }
+        catch(final ExecutionException e)
+        {
+            tasks.remove(projectUri, future);
+            if(e.getCause() instanceof PoddClientException)
             {
-                result.plantLineNumber = nextField;
+                throw (PoddClientException)e.getCause();
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_NAME))
+            throw new PoddClientException("Could not resolve project: " + projectUri, e.getCause());
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new PoddClientException("Interrupted while waiting to resolve project: " + projectUri, e);
+        }
+    }
+    
+    /**
+     * Uploads the given bags and their digests to an SSH server, using
+     * {@link ExampleBagUploader#DEFAULT_SESSION_COUNT} sessions in parallel.
+     * 
+     * @see #uploadToStorage(List, String, String, int, String, Path, Path, Path, PasswordFinder, int)
+     */
+    public Map<Path, String> uploadToStorage(final List<Path> bagsToUpload, final String sshServerFingerprint,
+            final String sshHost, final int portNo, final String username, final Path pathToPublicKey,
+            final Path localRootPath, final Path remoteRootPath, final PasswordFinder keyExtractor)
+        throws PoddClientException, NoSuchAlgorithmException, IOException
+    {
+        return this.uploadToStorage(bagsToUpload, sshServerFingerprint, sshHost, portNo, username, pathToPublicKey,
+                localRootPath, remoteRootPath, keyExtractor, ExampleBagUploader.DEFAULT_SESSION_COUNT);
+    }
+    
+    /**
+     * Uploads the given bags and their digests to an SSH server, using up to the given number of
+     * sessions to upload bags in parallel. Partial copies of bags on the server are resumed where
+     * possible. The digests are computed while the bags are uploaded, with the buffer sizes given by
+     * the {@link ExampleBagUploader#PROP_READ_BUFFER_SIZE} and
+     * {@link ExampleBagUploader#PROP_WRITE_BUFFER_SIZE} properties.
+     * <p>
+     * Bags written by {@link #dumpTrayScanExperiment(String, Path, boolean, String, int, boolean)}
+     * are recorded in the {@link ExampleDumpManifest} for the dump as soon as they are uploaded,
+     * even if other bags fail, and are skipped without connecting to the server if they have not
+     * changed since they were uploaded to the same remote path. Bag directories must be archived
+     * using {@link #archiveBags(List, ExampleBagArchiver.Format, int)} before they are uploaded.
+     * <p>
+     * SSH compression is only used if some of the bags are not archives written by
+     * {@link #archiveBags(List, ExampleBagArchiver.Format, int)}, unless it is set using the
+     * {@link ExampleBagUploader#PROP_COMPRESSION} property.
+     * 
+     * @return A map from each of the bags to the path it was uploaded to on the server.
+     */
+    public Map<Path, String> uploadToStorage(final List<Path> bagsToUpload, final String sshServerFingerprint,
+            final String sshHost, final int portNo, final String username, final Path pathToPublicKey,
+            final Path localRootPath, final Path remoteRootPath, final PasswordFinder keyExtractor,
+            final int sessionCount) throws PoddClientException, NoSuchAlgorithmException, IOException
+    {
+        final Map<Path, String> results = new ConcurrentHashMap<>();
+        
+        final Map<Path, ExampleDumpManifest> manifests = new HashMap<>();
+        final List<Path> changedBags = new ArrayList<>(bagsToUpload.size());
+        for(final Path nextBag : bagsToUpload)
+        {
+            final ExampleDumpManifest manifest = ExamplePoddClient.getDumpManifest(manifests, nextBag);
+            final String remotePath =
+                    ExampleBagUploader.getRemotePath(nextBag, localRootPath, remoteRootPath).toString();
+            if(manifest != null && manifest.isUploaded(nextBag, remotePath))
             {
-                result.plantName = nextField;
+                this.log.info("Not copying bag to remote as it has not changed since it was uploaded: {} {}",
+                        nextBag, remotePath);
+                results.put(nextBag, remotePath);
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_NOTES))
+            else
             {
-                result.plantNotes = nextField;
+                changedBags.add(nextBag);
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_TYPE))
+        }
+        if(changedBags.isEmpty())
+        {
+            return results;
+        }
+        boolean archivesOnly = true;
+        for(final Path nextBag : changedBags)
+        {
+            archivesOnly &= ExampleBagArchiver.isArchive(nextBag);
+        }
+        
+        if(!Files.exists(pathToPublicKey))
+        {
+            throw new PoddClientException("Could not find public key: " + pathToPublicKey);
+        }
+        if(!SecurityUtils.isBouncyCastleRegistered())
+        {
+            throw new PoddClientException("Bouncy castle needed");
+        }
+        final FileKeyProvider rsa = new PKCS8KeyFile();
+        rsa.init(pathToPublicKey.toFile(), keyExtractor);
+        
+        try (final ExampleBagUploader uploader =
+                new ExampleBagUploader(sshServerFingerprint, sshHost, portNo, username, rsa, sessionCount);)
+        {
+            uploader.setReadBufferSize(this.getIntProperty(ExampleBagUploader.PROP_READ_BUFFER_SIZE,
+                    ExampleBagUploader.DEFAULT_READ_BUFFER_SIZE));
+            uploader.setWriteBufferSize(this.getIntProperty(ExampleBagUploader.PROP_WRITE_BUFFER_SIZE,
+                    ExampleBagUploader.TRANSFER_BUFFER_SIZE));
+            // Archives are already compressed, so compressing them again only uses more CPU
+            uploader.setCompression(Boolean.parseBoolean(this.getProps()
+                    .get(ExampleBagUploader.PROP_COMPRESSION, Boolean.toString(!archivesOnly)).trim()));
+            // Record each bag as soon as it is uploaded, so that it is not uploaded again if a later
+            // bag fails
+            uploader.setTransferListener(new ExampleBagTransferListener()
+                {
+                    @Override
+                    public void transferred(final ExampleBagTransfer transfer) throws IOException
+                    {
+                        results.put(transfer.localPath, transfer.remotePath);
+                        // The manifests are shared by all of the upload sessions
+                        synchronized(manifests)
+                        {
+                            final ExampleDumpManifest manifest =
+                                    ExamplePoddClient.getDumpManifest(manifests, transfer.localPath);
+                            if(manifest != null)
+                            {
+                                manifest.recordUpload(transfer.localPath, transfer.remotePath);
+                            }
+                        }
+                    }
+                });
+            uploader.upload(changedBags, localRootPath, remoteRootPath);
+        }
+        finally
+        {
+            synchronized(manifests)
             {
-                result.potType = nextField;
+                for(final ExampleDumpManifest nextManifest : manifests.values())
+                {
+                    if(nextManifest != null)
+                    {
+                        nextManifest.store();
+                    }
+                }
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_CONTROL))
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Replaces any characters in the given barcode or file name that are not safe to use in a
+     * bag path with underscores.
+     */
+    private static String toPathSegment(final String name)
+    {
+        return name.replaceAll("[^A-Za-z0-9#._-]", "_");
+    }
+    
+    /**
+     * Appends the given model to the given artifact, retrying according to the given policy if the
+     * append fails before the server processed it. Appends are not idempotent, so other failures
+     * are not retried, as the server may already have added the statements to a new version of the
+     * artifact.
+     * 
+     * @return The new version of the artifact, or null if it was not updated.
+     * @throws PoddClientException
+     *             If the append failed, or the model could not be serialised.
+     */
+    private InferredOWLOntologyID uploadArtifact(final InferredOWLOntologyID nextUpload,
+            final Iterable<Statement> model, final ExampleRetryPolicy retryPolicy, final RDFFormat format)
+        throws PoddClientException
+    {
+        InferredOWLOntologyID newID;
+        int failedAttempts = 0;
+        while(true)
+        {
+            // Serialise the model again for each attempt, as it is written to the request as it is
+            // sent, rather than being held in memory
+            try (final ExampleRdfInputStream body = new ExampleRdfInputStream(model, format);)
             {
-                result.control = nextField;
+                final long appendStart = System.nanoTime();
+                try
+                {
+                    newID = this.appendArtifact(nextUpload, body, format);
+                }
+                finally
+                {
+                    this.importMetrics.recordAppend(System.nanoTime() - appendStart);
+                    this.importMetrics.recordSerialization(body.getSerializationNanos());
+                }
+                break;
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_REPLICATE_NUMBER))
+            catch(final IOException e)
             {
-                result.replicateNumber = nextField;
+                throw new PoddClientException("Could not generate upload body for artifact: " + nextUpload, e);
             }
-            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER))
+            catch(final PoddClientException e)
             {
-                result.potReplicateNumber = nextField;
+                failedAttempts++;
+                if(!retryPolicy.shouldRetry(failedAttempts) || !ExampleRetryPolicy.isNotProcessed(e))
+                {
+                    throw e;
+                }
+                final long backoff = retryPolicy.getBackoffMillis(failedAttempts);
+                this.log.warn("Append artifact failed, retrying in {} ms: {} attempt={} {}", backoff, nextUpload,
+                        failedAttempts, e.getMessage());
+                try
+                {
+                    Thread.sleep(backoff);
+                }
+                catch(final InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new PoddClientException("Interrupted while waiting to retry append artifact", e);
+                }
             }
-            else
+        }
+        
+        if(newID == null)
+        {
+            this.log.error("Did not find a valid result from append artifact: {}", nextUpload);
+            return null;
+        }
+        else if(nextUpload.equals(newID))
+        {
+            this.log.error("Result from append artifact was not changed, as expected. {} {}", nextUpload, newID);
+            return null;
+        }
+        return newID;
+    }
+    
+    /**
+     * Appends each of the models in the given queue to its artifact, one artifact at a time,
+     * without retrying, and stopping at the first append that fails. The models are sent in the
+     * format given by {@link #PROP_ARTIFACT_UPLOAD_FORMAT}.
+     * 
+     * @return A map from each artifact that was updated to its new version.
+     * @throws PoddClientException
+     *             If an append failed, in which case the remaining artifacts are not appended to.
+     * @see #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy, RDFFormat)
+     */
+    public ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> uploadArtifacts(
+            final ConcurrentMap<InferredOWLOntologyID, ? extends Iterable<Statement>> uploadQueue)
+        throws PoddClientException
+    {
+        final RDFFormat format = this.getArtifactUploadFormat();
+        final ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> resultMap = new ConcurrentHashMap<>();
+        for(final Entry<InferredOWLOntologyID, ? extends Iterable<Statement>> nextUpload : uploadQueue.entrySet())
+        {
+            final InferredOWLOntologyID newID =
+                    this.uploadArtifact(nextUpload.getKey(), nextUpload.getValue(), ExampleRetryPolicy.NO_RETRY,
+                            format);
+            if(newID != null)
             {
-                this.log.error("Found unrecognised header: {} {}", nextHeader, nextField);
-                throw new PoddClientException("TODO: Handle unrecognised header: " + nextHeader);
+                resultMap.putIfAbsent(nextUpload.getKey(), newID);
             }
         }
-        
-        this.generateTrayRDF(projectUriMap, experimentUriMap, trayUriMap, potUriMap, materialUriMap, genotypeUriMap,
-                uploadQueue, result);
-        
-        // Push the line into MySQL
-        this.insertTrayScanToMySQL(result);
+        return resultMap;
     }
     
     /**
-     * Parses the given TrayScan project/experiment/tray/pot list and inserts the items into PODD
-     * where they do not exist.
+     * Appends each of the models in the given queue to its artifact, sending them in the format
+     * given by {@link #PROP_ARTIFACT_UPLOAD_FORMAT}, which defaults to
+     * {@link #DEFAULT_ARTIFACT_UPLOAD_FORMAT}.
      * 
-     * TODO: Should this process create new projects where they do not already exist? Ideally they
-     * should be created and roles assigned before this process, but could be fine to do that in
-     * here
+     * @see #uploadArtifacts(ConcurrentMap, int, ExampleRetryPolicy, RDFFormat)
      */
-    public ConcurrentMap<InferredOWLOntologyID, Model> processTrayScanList(final InputStream in) throws IOException,
-        PoddClientException, OpenRDFException, SQLException
+    public ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> uploadArtifacts(
+            final ConcurrentMap<InferredOWLOntologyID, ? extends Iterable<Statement>> uploadQueue,
+            final int parallelism, final ExampleRetryPolicy retryPolicy) throws PoddClientException
     {
-        // Keep a queue so that we only need to update each project once for
-        // this operation to succeed
-        final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue = new ConcurrentHashMap<>();
-        
-        // Map starting at project name strings and ending with both the URI of
-        // the project and the artifact
-        final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> projectUriMap =
-                new ConcurrentHashMap<>();
-        
-        // Map starting at experiment name strings and ending with a mapping from the URI of
-        // the experiment to the URI of the project that contains the experiment
-        // TODO: This could be converted to not be prefilled in future, but currently it contains
-        // all experiments in all unpublished projects in PODD that are accessible to the current
-        // user
-        final ConcurrentMap<String, ConcurrentMap<URI, URI>> experimentUriMap = new ConcurrentHashMap<>();
-        
-        // Material mappings, starting at the URI of the experiment and mapping to the URI of the
-        // material and the RDF Model containing the statements describing this material
-        final ConcurrentMap<URI, ConcurrentMap<URI, Model>> materialUriMap = new ConcurrentHashMap<>();
-        
-        // Genotype mappings, starting at the URI of the project and mapping to the URI of the
-        // genotype and the RDF Model containing the statements describing this genotype
-        final ConcurrentMap<URI, ConcurrentMap<URI, Model>> genotypeUriMap = new ConcurrentHashMap<>();
-        
-        // Cache for tray name mappings, starting at tray barcodes and ending with a mapping from
-        // the URI of the tray to the URI of the experiment that contains the tray
-        // NOTE: This is not prefilled, as it is populated on demand during processing of lines to
-        // only contain the necessary elements
-        final ConcurrentMap<String, ConcurrentMap<URI, URI>> trayUriMap = new ConcurrentHashMap<>();
-        
-        // Cache for pot name mappings, starting at pot barcodes and ending with a mapping from
-        // the URI of the pot to the URI of the tray that contains the pot
-        // NOTE: This is not prefilled, as it is populated on demand during processing of lines to
-        // only contain the necessary elements
-        final ConcurrentMap<String, ConcurrentMap<URI, URI>> potUriMap = new ConcurrentHashMap<>();
-        
-        // -----------------------------------------------------------------------------------------
-        // Now cache URIs for projects, experiments, and genotypes for all unpublished projects that
-        // the current user can access
-        // -----------------------------------------------------------------------------------------
-        
-        // Only select the unpublished artifacts, as we cannot edit published artifacts
-        final Model currentUnpublishedArtifacts = this.listArtifacts(false, true);
-        
-        // Map known project names to their URIs, as the URIs are needed to
-        // create statements internally
-        this.populateProjectUriMap(currentUnpublishedArtifacts, projectUriMap);
-        
-        this.populateExperimentUriMap(projectUriMap, experimentUriMap);
-        
-        this.populateGenotypeUriMap(projectUriMap, genotypeUriMap);
+        return this.uploadArtifacts(uploadQueue, parallelism, retryPolicy, this.getArtifactUploadFormat());
+    }
+    
+    /**
+     * Appends each of the models in the given queue to its artifact, with up to the given number of
+     * artifacts being appended to at the same time, so that a slow artifact does not hold up the
+     * others. Each append that fails before the server processed it is retried according to the
+     * given policy.
+     * <p>
+     * Each model is serialised as it is sent to the server using {@link ExampleRdfInputStream}, so
+     * no copies of the request body are held in memory when using a format such as
+     * {@link RDFFormat#NTRIPLES} or {@link RDFFormat#BINARY}.
+     * <p>
+     * The results are collected on the calling thread in the order of the queue, after all of the
+     * appends have finished, so they do not depend on the order the appends completed in.
+     * 
+     * @param uploadQueue
+     *            The statements to append, such as a {@link Model} or an
+     *            {@link ExampleStatementBuffer}, mapped from the artifact they are appended to.
+     * @param parallelism
+     *            The maximum number of appends in progress at the same time.
+     * @param retryPolicy
+     *            The policy for retrying each append that fails.
+     * @param format
+     *            The format used to send the models to the server.
+     * @return A map from each artifact that was updated to its new version.
+     * @throws PoddClientException
+     *             If any append still failed after retrying, after the other appends have
+     *             finished.
+     */
+    public ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> uploadArtifacts(
+            final ConcurrentMap<InferredOWLOntologyID, ? extends Iterable<Statement>> uploadQueue,
+            final int parallelism, final ExampleRetryPolicy retryPolicy, final RDFFormat format)
+        throws PoddClientException
+    {
+        if(parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
         
-        // -----------------------------------------------------------------------------------------
-        // Now process the CSV file line by line using the caches to reduce multiple queries to the
-        // server where possible
-        // -----------------------------------------------------------------------------------------
+        final ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> resultMap = new ConcurrentHashMap<>();
+        final List<InferredOWLOntologyID> uploads = new ArrayList<>(uploadQueue.keySet());
+        if(uploads.isEmpty())
+        {
+            return resultMap;
+        }
         
-        List<String> headers = null;
-        // Supressing try-with-resources warning generated erroneously by Eclipse:
-        // https://bugs.eclipse.org/bugs/show_bug.cgi?id=371614
-        try (@SuppressWarnings("resource")
-        final InputStreamReader inputStreamReader = new InputStreamReader(in, StandardCharsets.UTF_8);
-                final CSVReader reader = new CSVReader(inputStreamReader);)
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, uploads.size()));
+        try
         {
-            String[] nextLine;
-            while((nextLine = reader.readNext()) != null)
+            final List<Future<InferredOWLOntologyID>> futures = new ArrayList<>(uploads.size());
+            for(final InferredOWLOntologyID nextUpload : uploads)
             {
-                if(headers == null)
-                {
-                    // header line is mandatory in PODD CSV
-                    headers = Arrays.asList(nextLine);
-                    try
+                final Iterable<Statement> nextModel = uploadQueue.get(nextUpload);
+                futures.add(executor.submit(new Callable<InferredOWLOntologyID>()
                     {
-                        this.verifyTrayScanListHeaders(headers);
-                    }
-                    catch(final IllegalArgumentException e)
+                        @Override
+                        public InferredOWLOntologyID call() throws PoddClientException
+                        {
+                            return ExamplePoddClient.this.uploadArtifact(nextUpload, nextModel, retryPolicy,
+                                    format);
+                        }
+                    }));
+            }
+            
+            PoddClientException failure = null;
+            for(int i = 0; i < uploads.size(); i++)
+            {
+                try
+                {
+                    final InferredOWLOntologyID newID = futures.get(i).get();
+                    if(newID != null)
                     {
-                        this.log.error("Could not verify headers for project list: {}", e.getMessage());
-                        throw new PoddClientException("Could not verify headers for project list", e);
+                        resultMap.putIfAbsent(uploads.get(i), newID);
                     }
                 }
-                else
+                catch(final ExecutionException e)
                 {
-                    if(nextLine.length != headers.size())
+                    final PoddClientException nextFailure =
+                            e.getCause() instanceof PoddClientException ? (PoddClientException)e.getCause()
+                                    : new PoddClientException("Could not append to artifact: " + uploads.get(i),
+                                            e.getCause());
+                    if(failure == null)
                     {
-                        this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
+                        failure = nextFailure;
+                    }
+                    else
+                    {
+                        failure.addSuppressed(nextFailure);
                     }
-                    
-                    // Process the next line and add it to the upload queue
-                    this.processTrayScanLine(headers, Arrays.asList(nextLine), projectUriMap, experimentUriMap,
-                            trayUriMap, potUriMap, materialUriMap, genotypeUriMap, uploadQueue);
                 }
             }
+            
+            if(failure != null)
+            {
+                throw failure;
+            }
         }
-        
-        if(headers == null)
+        catch(final InterruptedException e)
         {
-            this.log.error("Document did not contain a valid header line");
+            Thread.currentThread().interrupt();
+            throw new PoddClientException("Interrupted while appending to artifacts", e);
         }
-        
-        if(uploadQueue.isEmpty())
+        finally
         {
-            this.log.error("Document did not contain any valid rows");
+            executor.shutdownNow();
         }
-        
-        return uploadQueue;
+        return resultMap;
     }
     
-    public Map<Path, String> uploadToStorage(final List<Path> bagsToUpload, final String sshServerFingerprint,
-            final String sshHost, final int portNo, final String username, final Path pathToPublicKey,
-            final Path localRootPath, final Path remoteRootPath, final PasswordFinder keyExtractor)
-        throws PoddClientException, NoSuchAlgorithmException, IOException
+    /**
+     * Prefills the experiment and genotype maps for every project in the project map, querying up
+     * to the given number of artifacts at the same time, as each artifact needs separate queries
+     * for its experiments and its genotypes.
+     * 
+     * @param context
+     *            The caches for the import, containing the projects to find experiments and
+     *            genotypes for, which the experiments and genotypes are added to.
+     * @param parallelism
+     *            The maximum number of artifacts to query at the same time.
+     * @throws PoddClientException
+     *             If any of the queries failed, after the other queries have finished.
+     */
+    private void warmUpUriMaps(final ExampleImportContext context, final int parallelism)
+        throws PoddClientException
     {
-        final Map<Path, String> results = new ConcurrentHashMap<>();
-        
-        final ConcurrentMap<Path, ConcurrentMap<PoddDigestUtils.Algorithm, String>> digests =
-                PoddDigestUtils.getDigests(bagsToUpload);
+        if(parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
         
-        try (SSHClient sshClient = new SSHClient(ExamplePoddClient.DEFAULT_CONFIG);)
+        final long start = System.nanoTime();
+        final AtomicLong experimentNanos = new AtomicLong();
+        final AtomicLong genotypeNanos = new AtomicLong();
+        final List<Callable<Void>> tasks = new ArrayList<>();
+        for(final Entry<String, ConcurrentMap<URI, InferredOWLOntologyID>> nextProjectName : context.projectUriMap
+                .entrySet())
         {
-            sshClient.useCompression();
-            sshClient.addHostKeyVerifier(sshServerFingerprint);
-            sshClient.connect(sshHost, portNo);
-            if(!Files.exists(pathToPublicKey))
-            {
-                throw new PoddClientException("Could not find public key: " + pathToPublicKey);
-            }
-            if(!SecurityUtils.isBouncyCastleRegistered())
-            {
-                throw new PoddClientException("Bouncy castle needed");
-            }
-            final FileKeyProvider rsa = new PKCS8KeyFile();
-            rsa.init(pathToPublicKey.toFile(), keyExtractor);
-            sshClient.authPublickey(username, rsa);
-            // Session session = sshClient.startSession();
-            try (SFTPClient sftp = sshClient.newSFTPClient();)
+            for(final Entry<URI, InferredOWLOntologyID> nextProject : nextProjectName.getValue().entrySet())
             {
-                for(final Path nextBag : bagsToUpload)
-                {
-                    // Check to make sure that the bag was under the local root path
-                    final Path localPath = nextBag.toAbsolutePath();
-                    if(!localPath.startsWith(localRootPath))
-                    {
-                        this.log.error("Local bag path was not a direct descendant of the local root path: {} {} {}",
-                                localRootPath, nextBag, localPath);
-                        throw new PoddClientException(
-                                "Local bag path was not a direct descendant of the local root path: " + localPath + " "
-                                        + localRootPath);
-                    }
-                    
-                    // Take the local root path out to get the subpath to use on the remote
-                    final Path remoteSubPath =
-                            localPath.subpath(localRootPath.getNameCount(), nextBag.getNameCount() - 1);
-                    
-                    this.log.info("Remote sub path: {}", remoteSubPath);
-                    
-                    final Path remoteDirPath = remoteRootPath.resolve(remoteSubPath);
-                    this.log.info("Remote dir path: {}", remoteDirPath);
-                    
-                    final Path remoteBagPath = remoteDirPath.resolve(nextBag.getFileName());
-                    
-                    this.log.info("Remote bag path: {}", remoteBagPath);
-                    
-                    boolean fileFound = false;
-                    boolean sizeCorrect = false;
-                    try
-                    {
-                        // check details of a remote bag
-                        final FileAttributes attribs = sftp.lstat(remoteBagPath.toAbsolutePath().toString());
-                        final long localSize = Files.size(nextBag);
-                        final long remoteSize = attribs.getSize();
-                        
-                        if(localSize <= 0)
-                        {
-                            this.log.error("Local bag was empty: {}", nextBag);
-                            sizeCorrect = false;
-                            fileFound = false;
-                        }
-                        else if(remoteSize <= 0)
-                        {
-                            this.log.warn("Remote bag was empty: {} {}", nextBag, attribs);
-                            sizeCorrect = false;
-                            fileFound = false;
-                        }
-                        else if(localSize == remoteSize)
-                        {
-                            this.log.info("Found file on remote already with same size as local: {} {}", nextBag,
-                                    remoteBagPath);
-                            sizeCorrect = true;
-                            fileFound = true;
-                        }
-                        else
-                        {
-                            sizeCorrect = false;
-                            fileFound = true;
-                            // We always assume that a non-zero local file is correct
-                            // The bags contain time-stamps that will be modified when they are
-                            // regenerated, likely changing the file-size, and hopefully changing
-                            // the digest checksums
-                            // throw new PoddClientException(
-                            // "Could not automatically compare file sizes (need manual intervention to delete one) : "
-                            // + nextBag + " " + remoteBagPath + " localSize=" + localSize
-                            // + " remoteSize=" + remoteSize);
-                        }
-                    }
-                    catch(final IOException e)
-                    {
-                        // lstat() throws an IOException if the file does not exist
-                        // Ignore
-                        sizeCorrect = false;
-                        fileFound = false;
-                    }
-                    
-                    final ConcurrentMap<Algorithm, String> bagDigests = digests.get(nextBag);
-                    if(bagDigests.isEmpty())
+                tasks.add(new Callable<Void>()
                     {
-                        this.log.error("No bag digests were generated for bag: {}", nextBag);
-                    }
-                    for(final Entry<Algorithm, String> entry : bagDigests.entrySet())
-                    {
-                        final Path localDigestPath =
-                                localPath.resolveSibling(localPath.getFileName() + entry.getKey().getExtension());
-                        // Create the local digest file
-                        Files.copy(new ReaderInputStream(new StringReader(entry.getValue()), StandardCharsets.UTF_8),
-                                localDigestPath);
-                        final Path remoteDigestPath =
-                                remoteBagPath.resolveSibling(remoteBagPath.getFileName()
-                                        + entry.getKey().getExtension());
-                        boolean nextDigestFileFound = false;
-                        boolean nextDigestCorrect = false;
-                        try
-                        {
-                            final Path tempFile = Files.createTempFile("podd-digest-", entry.getKey().getExtension());
-                            final SFTPFileTransfer sftpFileTransfer = new SFTPFileTransfer(sftp.getSFTPEngine());
-                            sftpFileTransfer.download(remoteBagPath.toAbsolutePath().toString(), tempFile
-                                    .toAbsolutePath().toString());
-                            nextDigestFileFound = true;
-                            
-                            final List<String> allLines = Files.readAllLines(tempFile, StandardCharsets.UTF_8);
-                            if(allLines.isEmpty())
-                            {
-                                nextDigestCorrect = false;
-                            }
-                            else if(allLines.size() > 1)
-                            {
-                                nextDigestCorrect = false;
-                            }
-                            // Check if the digests match exactly
-                            else if(allLines.get(0).equals(entry.getValue()))
-                            {
-                                nextDigestCorrect = true;
-                            }
-                            else
-                            {
-                                nextDigestCorrect = false;
-                            }
-                        }
-                        catch(final IOException e)
-                        {
-                            nextDigestFileFound = false;
-                            nextDigestCorrect = false;
-                        }
-                        if(nextDigestFileFound && nextDigestCorrect)
-                        {
-                            this.log.info("Not copying digest to remote as it exists and contains the same content as the local digest");
-                        }
-                        else if(nextDigestFileFound && !nextDigestCorrect)
-                        {
-                            this.log.error("Found remote digest but content was not correct: {} {}", localDigestPath,
-                                    remoteDigestPath);
-                            sftp.rm(remoteDigestPath.toString());
-                            this.log.info("Copying digest to remote: {}", remoteDigestPath);
-                            sftp.put(new FileSystemFile(localDigestPath.toString()), remoteDigestPath.toString());
-                        }
-                        else if(!nextDigestFileFound)
+                        @Override
+                        public Void call() throws PoddClientException
                         {
-                            this.log.info("About to make directories on remote: {}", remoteDirPath);
-                            sftp.mkdirs(remoteDirPath.toString());
-                            this.log.info("Copying digest to remote: {}", remoteDigestPath);
-                            sftp.put(new FileSystemFile(localDigestPath.toString()), remoteDigestPath.toString());
+                            final long experimentStart = System.nanoTime();
+                            ExamplePoddClient.this.resolveProjectExperiments(context, nextProjectName.getKey(),
+                                    nextProject.getKey(), nextProject.getValue());
+                            final long genotypeStart = System.nanoTime();
+                            experimentNanos.addAndGet(genotypeStart - experimentStart);
+                            ExamplePoddClient.this.resolveProjectGenotypes(context, nextProjectName.getKey(),
+                                    nextProject.getKey(), nextProject.getValue());
+                            genotypeNanos.addAndGet(System.nanoTime() - genotypeStart);
+                            return null;
                         }
-                    }
-                    
-                    if(fileFound && sizeCorrect)
-                    {
-                        this.log.info("Not copying bag to remote as it exists and is the same size as local bag");
-                    }
-                    else if(fileFound && !sizeCorrect)
-                    {
-                        this.log.error("Found remote bag but size was not correct: {} {}", nextBag, remoteBagPath);
-                        sftp.rm(remoteBagPath.toString());
-                        this.log.info("Copying bag to remote: {}", remoteBagPath);
-                        sftp.put(new FileSystemFile(localPath.toString()), remoteBagPath.toString());
-                    }
-                    else if(!fileFound)
-                    {
-                        this.log.info("About to make directories on remote: {}", remoteDirPath);
-                        sftp.mkdirs(remoteDirPath.toString());
-                        this.log.info("Copying bag to remote: {}", remoteBagPath);
-                        sftp.put(new FileSystemFile(localPath.toString()), remoteBagPath.toString());
-                    }
-                    
-                }
+                    });
             }
         }
-        catch(final IOException e)
+        if(tasks.isEmpty())
         {
-            throw new PoddClientException("Could not copy a bag to the remote location", e);
+            return;
         }
         
-        return results;
-    }
-    
-    public ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> uploadArtifacts(
-            final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue) throws PoddClientException
-    {
-        final ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> resultMap = new ConcurrentHashMap<>();
-        for(final InferredOWLOntologyID nextUpload : uploadQueue.keySet())
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try
         {
-            try
+            PoddClientException failure = null;
+            for(final Future<Void> nextFuture : executor.invokeAll(tasks))
             {
-                final StringWriter writer = new StringWriter(4096);
-                Rio.write(uploadQueue.get(nextUpload), writer, RDFFormat.RDFJSON);
-                final InferredOWLOntologyID newID =
-                        this.appendArtifact(nextUpload,
-                                new ByteArrayInputStream(writer.toString().getBytes(Charset.forName("UTF-8"))),
-                                RDFFormat.RDFJSON);
-                
-                if(newID == null)
-                {
-                    this.log.error("Did not find a valid result from append artifact: {}", nextUpload);
-                }
-                else if(nextUpload.equals(newID))
+                try
                 {
-                    this.log.error("Result from append artifact was not changed, as expected. {} {}", nextUpload, newID);
+                    nextFuture.get();
                 }
-                else
+                catch(final ExecutionException e)
                 {
-                    resultMap.putIfAbsent(nextUpload, newID);
+                    final PoddClientException nextFailure =
+                            e.getCause() instanceof PoddClientException ? (PoddClientException)e.getCause()
+                                    : new PoddClientException("Could not find experiments and genotypes",
+                                            e.getCause());
+                    if(failure == null)
+                    {
+                        failure = nextFailure;
+                    }
+                    else
+                    {
+                        failure.addSuppressed(nextFailure);
+                    }
                 }
             }
-            catch(final RDFHandlerException e)
+            
+            if(failure != null)
             {
-                this.log.error("Found exception generating upload body: ", e);
+                throw failure;
             }
         }
-        return resultMap;
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new PoddClientException("Interrupted while finding experiments and genotypes", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        
+        // The experiment and genotype times are summed across all of the threads, so they can be
+        // compared with the elapsed time to see how much the queries overlapped
+        this.log.info("Found {} experiment names and {} genotypes for {} artifacts in {} ms "
+                + "(experiments={} ms genotypes={} ms parallelism={})", context.experimentUriMap.size(),
+                context.genotypeIndex.size(), tasks.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                TimeUnit.NANOSECONDS.toMillis(experimentNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(genotypeNanos.get()), Math.min(parallelism, tasks.size()));
     }
     
     private void verifyLstHeaders(final List<String> headers)
@@ -1854,4 +3316,26 @@ public class ExamplePoddClient extends RestletPoddClientImpl
         }
     }
     
+    /**
+     * Verifies the headers for a TrayScan list, converting any verification failures to a
+     * {@link PoddClientException}.
+     * 
+     * @return A binder for the lines following the headers.
+     * @throws PoddClientException
+     *             If the headers are not verified correctly.
+     */
+    ExampleCSVLineBinder verifyTrayScanListHeadersOrFail(final List<String> headers) throws PoddClientException
+    {
+        try
+        {
+            this.verifyTrayScanListHeaders(headers);
+        }
+        catch(final IllegalArgumentException e)
+        {
+            this.log.error("Could not verify headers for project list: {}", e.getMessage());
+            throw new PoddClientException("Could not verify headers for project list", e);
+        }
+        return ExampleCSVLineBinder.compile(headers);
+    }
+    
 }
\ No newline at end of file
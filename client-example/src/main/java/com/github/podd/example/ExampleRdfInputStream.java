@@ -0,0 +1,193 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFWriter;
+import org.openrdf.rio.Rio;
+
+/**
+ * An input stream containing statements serialised in an RDF format, which are written a few
+ * statements at a time as the stream is read, rather than serialising the whole model into memory
+ * first.
+ * <p>
+ * This stream only holds a small buffer in addition to the model, for formats such as
+ * {@link RDFFormat#NTRIPLES} and {@link RDFFormat#BINARY} whose writers output each statement as it
+ * is given to them. Formats which need the whole model before writing anything, such as
+ * {@link RDFFormat#RDFJSON}, are still buffered in full by their writers.
+ * <p>
+ * The model must not be modified while the stream is being read.
+ */
+public class ExampleRdfInputStream extends InputStream
+{
+    /**
+     * The number of bytes to buffer before returning them to the reader.
+     */
+    static final int CHUNK_SIZE = 8192;
+    
+    /**
+     * A {@link ByteArrayOutputStream} which allows the buffered bytes to be read without copying
+     * them.
+     */
+    private static final class ChunkBuffer extends ByteArrayOutputStream
+    {
+        private int position;
+        
+        private ChunkBuffer()
+        {
+            super(ExampleRdfInputStream.CHUNK_SIZE * 2);
+        }
+        
+        private int available()
+        {
+            return this.count - this.position;
+        }
+        
+        private int read(final byte[] b, final int off, final int len)
+        {
+            final int length = Math.min(len, this.available());
+            System.arraycopy(this.buf, this.position, b, off, length);
+            this.position += length;
+            if(this.position == this.count)
+            {
+                this.position = 0;
+                this.count = 0;
+            }
+            return length;
+        }
+    }
+    
+    private final ChunkBuffer buffer = new ChunkBuffer();
+    
+    private final Iterator<Statement> statements;
+    
+    private final RDFWriter writer;
+    
+    private boolean finished;
+    
+    private long serializationNanos;
+    
+    /**
+     * @param model
+     *            The statements to serialise, which may be a {@link Model}, in which case its
+     *            namespaces are also written.
+     * @param format
+     *            The format to serialise the statements in.
+     * @throws IOException
+     *             If the writer could not be started.
+     */
+    public ExampleRdfInputStream(final Iterable<Statement> model, final RDFFormat format) throws IOException
+    {
+        this.statements = model.iterator();
+        this.writer = Rio.createWriter(format, this.buffer);
+        try
+        {
+            this.writer.startRDF();
+            if(model instanceof Model)
+            {
+                for(final Namespace nextNamespace : ((Model)model).getNamespaces())
+                {
+                    this.writer.handleNamespace(nextNamespace.getPrefix(), nextNamespace.getName());
+                }
+            }
+        }
+        catch(final RDFHandlerException e)
+        {
+            throw new IOException("Could not start writing RDF", e);
+        }
+    }
+    
+    @Override
+    public int available() throws IOException
+    {
+        return this.buffer.available();
+    }
+    
+    /**
+     * Writes statements to the buffer until it has at least one chunk of bytes, or the model has
+     * been completely written.
+     */
+    private void fill() throws IOException
+    {
+        final long start = System.nanoTime();
+        try
+        {
+            while(!this.finished && this.buffer.available() < ExampleRdfInputStream.CHUNK_SIZE)
+            {
+                if(this.statements.hasNext())
+                {
+                    this.writer.handleStatement(this.statements.next());
+                }
+                else
+                {
+                    this.writer.endRDF();
+                    this.finished = true;
+                }
+            }
+        }
+        catch(final RDFHandlerException e)
+        {
+            throw new IOException("Could not write RDF", e);
+        }
+        finally
+        {
+            this.serializationNanos += System.nanoTime() - start;
+        }
+    }
+    
+    /**
+     * @return The total time spent writing statements to the buffer so far, in nanoseconds.
+     */
+    public long getSerializationNanos()
+    {
+        return this.serializationNanos;
+    }
+    
+    @Override
+    public int read() throws IOException
+    {
+        final byte[] single = new byte[1];
+        return this.read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+    
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if(len == 0)
+        {
+            return 0;
+        }
+        if(this.buffer.available() == 0)
+        {
+            this.fill();
+            if(this.buffer.available() == 0)
+            {
+                return -1;
+            }
+        }
+        return this.buffer.read(b, off, len);
+    }
+}
@@ -0,0 +1,279 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.common.IOUtils;
+import net.schmizz.sshj.connection.ConnectionException;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.sftp.OpenMode;
+import net.schmizz.sshj.sftp.RemoteFile;
+import net.schmizz.sshj.sftp.SFTPClient;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.podd.utils.PoddDigestUtils.Algorithm;
+
+/**
+ * Checks digests of bags on a remote SSH server without downloading the bags.
+ * <p>
+ * Digest files next to the bags are read directly over SFTP, up to a small maximum size. The
+ * digests of the bags themselves are computed on the server, using the <code>md5sum</code> style
+ * command for each algorithm over an exec channel, when the server allows it. If the server
+ * reports that a command does not exist, it is not tried again for the lifetime of the verifier.
+ * Any other failure only means that the digest is unknown for that bag. Bags without any digests
+ * computed on the server are only compared by size.
+ */
+public class ExampleRemoteDigestVerifier
+{
+    /**
+     * The maximum number of bytes read from a remote digest file, which only needs to hold a single
+     * digest.
+     */
+    static final int MAX_DIGEST_FILE_SIZE = 4096;
+    
+    /**
+     * The maximum time to wait for the server to compute the digest of a bag.
+     */
+    private static final int COMMAND_TIMEOUT_MINUTES = 30;
+    
+    /**
+     * The exit status used by POSIX shells when a command could not be found.
+     */
+    static final int COMMAND_NOT_FOUND_EXIT_STATUS = 127;
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final boolean useRemoteCommands;
+    
+    private final ConcurrentMap<Algorithm, Boolean> unsupportedCommands = new ConcurrentHashMap<>();
+    
+    /**
+     * @param useRemoteCommands
+     *            True to compute digests of remote bags using commands on the server, and false to
+     *            only use the digest files.
+     */
+    public ExampleRemoteDigestVerifier(final boolean useRemoteCommands)
+    {
+        this.useRemoteCommands = useRemoteCommands;
+    }
+    
+    /**
+     * @param algorithm
+     *            The digest algorithm.
+     * @return The name of the command used to compute the digest on the server, such as
+     *         <code>sha1sum</code>.
+     */
+    static String getCommandName(final Algorithm algorithm)
+    {
+        return algorithm.name().toLowerCase(Locale.ENGLISH).replace("_", "").replace("-", "") + "sum";
+    }
+    
+    /**
+     * @param value
+     *            A digest, optionally followed by whitespace and a file name.
+     * @return The digest, without any file name.
+     */
+    static String getDigestValue(final String value)
+    {
+        final String trimmed = value.trim();
+        for(int i = 0; i < trimmed.length(); i++)
+        {
+            if(Character.isWhitespace(trimmed.charAt(i)))
+            {
+                return trimmed.substring(0, i);
+            }
+        }
+        return trimmed;
+    }
+    
+    /**
+     * @param exitStatus
+     *            The exit status of the command, which may be null.
+     * @param error
+     *            The standard error output of the command.
+     * @return True if the command failed because it does not exist on the server.
+     */
+    static boolean isCommandNotFound(final Integer exitStatus, final String error)
+    {
+        return (exitStatus != null && exitStatus == ExampleRemoteDigestVerifier.COMMAND_NOT_FOUND_EXIT_STATUS)
+                || error.toLowerCase(Locale.ENGLISH).contains("not found");
+    }
+    
+    /**
+     * @param expected
+     *            The expected digest.
+     * @param actual
+     *            The digest that was found, which may be null.
+     * @return True if the digests match, ignoring case and any file names after them.
+     */
+    static boolean matches(final String expected, final String actual)
+    {
+        return actual != null
+                && ExampleRemoteDigestVerifier.getDigestValue(expected).equalsIgnoreCase(
+                        ExampleRemoteDigestVerifier.getDigestValue(actual));
+    }
+    
+    /**
+     * Surrounds the given path with single quotes for use in a POSIX shell command.
+     */
+    static String quote(final String path)
+    {
+        return "'" + path.replace("'", "'\\''") + "'";
+    }
+    
+    /**
+     * Computes a digest of the given remote file on the server. If the command does not exist on
+     * the server, it is not used again. If the command does not finish within
+     * {@link #COMMAND_TIMEOUT_MINUTES}, its channel is closed and the digest is unknown.
+     * 
+     * @return The digest, or null if the server could not compute it.
+     */
+    private String computeRemoteDigest(final SSHClient sshClient, final Algorithm algorithm, final String remotePath)
+    {
+        final String command =
+                ExampleRemoteDigestVerifier.getCommandName(algorithm) + " -b "
+                        + ExampleRemoteDigestVerifier.quote(remotePath);
+        try (final Session session = sshClient.startSession();)
+        {
+            final Session.Command exec = session.exec(command);
+            try
+            {
+                // Wait for the command before reading its output, which is small enough to be held
+                // by the channel, so that a command which hangs cannot block the reads below
+                exec.join(ExampleRemoteDigestVerifier.COMMAND_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+            }
+            catch(final ConnectionException e)
+            {
+                this.log.warn("Remote digest command did not finish for this bag: {} {}", command, e.getMessage());
+                exec.close();
+                return null;
+            }
+            final String output = IOUtils.readFully(exec.getInputStream()).toString(StandardCharsets.UTF_8.name());
+            final String error = IOUtils.readFully(exec.getErrorStream()).toString(StandardCharsets.UTF_8.name());
+            
+            final Integer exitStatus = exec.getExitStatus();
+            if(ExampleRemoteDigestVerifier.isCommandNotFound(exitStatus, error))
+            {
+                this.log.warn("Remote digest command was not found, will not use it again: {} exitStatus={} {}",
+                        command, exitStatus, error.trim());
+                this.unsupportedCommands.put(algorithm, Boolean.TRUE);
+                return null;
+            }
+            if(exitStatus == null || exitStatus != 0 || output.trim().isEmpty())
+            {
+                this.log.warn("Remote digest command failed for this bag: {} exitStatus={} {}", command, exitStatus,
+                        error.trim());
+                return null;
+            }
+            return ExampleRemoteDigestVerifier.getDigestValue(output);
+        }
+        catch(final IOException e)
+        {
+            this.log.warn("Could not run remote digest command for this bag: {} {}", command, e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the digest from a remote digest file.
+     * 
+     * @param sftp
+     *            The SFTP client to read the file with.
+     * @param remoteDigestPath
+     *            The path of the digest file on the server.
+     * @return The first line of the digest file, or null if it does not exist or could not be read.
+     */
+    public String readRemoteDigest(final SFTPClient sftp, final String remoteDigestPath)
+    {
+        try (final RemoteFile remoteFile = sftp.open(remoteDigestPath, EnumSet.of(OpenMode.READ));)
+        {
+            final byte[] buffer = new byte[ExampleRemoteDigestVerifier.MAX_DIGEST_FILE_SIZE];
+            int total = 0;
+            int read;
+            while(total < buffer.length && (read = remoteFile.read(total, buffer, total, buffer.length - total)) > 0)
+            {
+                total += read;
+            }
+            
+            final String content = new String(buffer, 0, total, StandardCharsets.UTF_8);
+            final int endOfLine = content.indexOf('\n');
+            return (endOfLine < 0 ? content : content.substring(0, endOfLine)).trim();
+        }
+        catch(final IOException e)
+        {
+            // open() throws an IOException if the file does not exist
+            return null;
+        }
+    }
+    
+    /**
+     * Compares the digests of a remote bag, computed on the server, with the given digests. The
+     * algorithms are tried in order until the server computes one of the digests, as one matching
+     * digest is enough to verify the bag.
+     * 
+     * @param sshClient
+     *            The SSH connection to run commands on.
+     * @param remoteBagPath
+     *            The path of the bag on the server.
+     * @param bagDigests
+     *            The expected digests of the bag.
+     * @return {@link Boolean#TRUE} if the first digest that the server computed matched,
+     *         {@link Boolean#FALSE} if it did not match, or null if the server could not compute any
+     *         of the digests.
+     */
+    public Boolean verifyRemoteBag(final SSHClient sshClient, final String remoteBagPath,
+            final Map<Algorithm, String> bagDigests)
+    {
+        if(!this.useRemoteCommands || bagDigests == null)
+        {
+            return null;
+        }
+        
+        for(final Entry<Algorithm, String> entry : bagDigests.entrySet())
+        {
+            if(this.unsupportedCommands.containsKey(entry.getKey()))
+            {
+                continue;
+            }
+            
+            final String remoteDigest = this.computeRemoteDigest(sshClient, entry.getKey(), remoteBagPath);
+            if(remoteDigest != null)
+            {
+                if(!ExampleRemoteDigestVerifier.matches(entry.getValue(), remoteDigest))
+                {
+                    this.log.warn("Remote bag digest did not match: {} {} local={} remote={}", remoteBagPath,
+                            entry.getKey(), entry.getValue(), remoteDigest);
+                    return Boolean.FALSE;
+                }
+                return Boolean.TRUE;
+            }
+        }
+        return null;
+    }
+}
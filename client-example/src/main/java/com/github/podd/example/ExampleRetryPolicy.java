@@ -0,0 +1,139 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.net.ConnectException;
+
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+
+/**
+ * The number of times to attempt an operation against the PODD server, and how long to wait
+ * between the attempts. The wait starts at the initial backoff, and doubles after each failed
+ * attempt, up to the maximum backoff.
+ * <p>
+ * Operations which change an artifact are not idempotent, so they should only be retried after a
+ * failure that {@link #isNotProcessed(Throwable)} shows the server did not act on.
+ */
+public final class ExampleRetryPolicy
+{
+    /**
+     * A policy which makes a single attempt, without retrying.
+     */
+    public static final ExampleRetryPolicy NO_RETRY = new ExampleRetryPolicy(1, 0, 0);
+    
+    /**
+     * A policy which makes up to 4 attempts, waiting 1, 2, and then 4 seconds between them.
+     */
+    public static final ExampleRetryPolicy DEFAULT = new ExampleRetryPolicy(4, 1000, 30000);
+    
+    private final int maxAttempts;
+    
+    private final long initialBackoffMillis;
+    
+    private final long maxBackoffMillis;
+    
+    /**
+     * @param maxAttempts
+     *            The maximum number of attempts, including the first attempt.
+     * @param initialBackoffMillis
+     *            The number of milliseconds to wait after the first failed attempt.
+     * @param maxBackoffMillis
+     *            The maximum number of milliseconds to wait between any two attempts.
+     */
+    public ExampleRetryPolicy(final int maxAttempts, final long initialBackoffMillis, final long maxBackoffMillis)
+    {
+        if(maxAttempts < 1)
+        {
+            throw new IllegalArgumentException("Maximum attempts must be positive: " + maxAttempts);
+        }
+        if(initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis)
+        {
+            throw new IllegalArgumentException("Backoff must be non-negative and not more than the maximum: "
+                    + initialBackoffMillis + " " + maxBackoffMillis);
+        }
+        
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+    
+    /**
+     * @param failedAttempts
+     *            The number of attempts that have failed so far, starting at 1.
+     * @return The number of milliseconds to wait before the next attempt.
+     */
+    public long getBackoffMillis(final int failedAttempts)
+    {
+        long result = this.initialBackoffMillis;
+        for(int i = 1; i < failedAttempts && result < this.maxBackoffMillis; i++)
+        {
+            result *= 2;
+        }
+        return Math.min(result, this.maxBackoffMillis);
+    }
+    
+    /**
+     * @return The maximum number of attempts, including the first attempt.
+     */
+    public int getMaxAttempts()
+    {
+        return this.maxAttempts;
+    }
+    
+    /**
+     * Checks whether the given failure shows that a request was never processed by the server, so
+     * that it is safe to send it again even if it changes an artifact. This is the case if the
+     * connection was refused, or if the server replied that it was unavailable. Other failures,
+     * such as timeouts or connections reset while waiting for a response, may have happened after
+     * the server committed the change.
+     * 
+     * @param failure
+     *            The failure, which is checked along with each of its causes.
+     * @return True if the failure shows that the request was not processed.
+     */
+    public static boolean isNotProcessed(final Throwable failure)
+    {
+        for(Throwable next = failure; next != null; next = next.getCause())
+        {
+            if(next instanceof ConnectException)
+            {
+                return true;
+            }
+            if(next instanceof ResourceException && ((ResourceException)next).getStatus() != null)
+            {
+                final int code = ((ResourceException)next).getStatus().getCode();
+                if(code == Status.CONNECTOR_ERROR_CONNECTION.getCode()
+                        || code == Status.SERVER_ERROR_SERVICE_UNAVAILABLE.getCode())
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param failedAttempts
+     *            The number of attempts that have failed so far.
+     * @return True if another attempt should be made.
+     */
+    public boolean shouldRetry(final int failedAttempts)
+    {
+        return failedAttempts < this.maxAttempts;
+    }
+}
@@ -98,6 +98,18 @@ public final class ExampleSpreadsheetConstants
             "CONSTRUCT { ?object a ?type . ?object ?predicate ?value . } WHERE { ?object a ?type . ?object ?predicate ?value . } VALUES (?type) { ( %s ) }";
     public static final String TEMPLATE_SPARQL_BY_TYPE_LABEL_STRSTARTS =
             "CONSTRUCT { ?object a ?type . ?object <http://www.w3.org/2000/01/rdf-schema#label> ?label . } WHERE { ?object a ?type . ?object <http://www.w3.org/2000/01/rdf-schema#label> ?label . FILTER(STRSTARTS(?label, \"%s\")) } VALUES (?type) { ( %s ) }";
+    /**
+     * Matches objects of a type with labels starting with any of a list of barcodes, given as
+     * VALUES rows of the form <code>( &lt;type&gt; "barcode" )</code>.
+     */
+    public static final String TEMPLATE_SPARQL_BY_TYPE_LABEL_STRSTARTS_VALUES =
+            "CONSTRUCT { ?object a ?type . ?object <http://www.w3.org/2000/01/rdf-schema#label> ?label . } WHERE { ?object a ?type . ?object <http://www.w3.org/2000/01/rdf-schema#label> ?label . FILTER(STRSTARTS(?label, ?barcode)) } VALUES (?type ?barcode) { %s }";
+    /**
+     * Finds all of the properties of the trays in an experiment and the pots in those trays, given
+     * the experiment, the tray predicate and the pot predicate, in that order.
+     */
+    public static final String TEMPLATE_SPARQL_TRAYS_AND_POTS =
+            "CONSTRUCT { %1$s %2$s ?tray . ?object ?predicate ?value . } WHERE { %1$s %2$s ?tray . { ?tray ?predicate ?value . BIND(?tray AS ?object) } UNION { ?tray %3$s ?object . ?object ?predicate ?value . } }";
     public static final String LABEL_POT = "Pot";
     
 }
@@ -0,0 +1,63 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.nio.file.Path;
+
+/**
+ * Container for the details of a file staged by {@link ExampleImageStager}, or written to a bag
+ * by {@link ExampleBagBuilder}.
+ */
+public class ExampleStagedImage
+{
+    /**
+     * The file that was staged, or null if the content was given in memory.
+     */
+    public Path source;
+    public Path target;
+    
+    /**
+     * The path of the file inside the payload directory, if it was written to a bag.
+     */
+    public String payloadPath;
+    
+    /**
+     * The modification time of the source when it was added to a bag, in milliseconds.
+     */
+    public long lastModified;
+    
+    /**
+     * The size of the file.
+     */
+    public long size;
+    
+    /**
+     * The hex encoded digest of the file.
+     */
+    public String digest;
+    
+    /**
+     * True if the target is a hard link to the source, or false if the file was copied.
+     */
+    public boolean linked;
+    
+    /**
+     * True if the target was already in place from an earlier run, and was not staged again.
+     */
+    public boolean reused;
+    
+}
@@ -0,0 +1,317 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * An append-only buffer of statements for a single artifact, used in place of a {@link org.openrdf.model.Model} to
+ * collect the changes from a large TrayScan import with much less memory.
+ * <p>
+ * Each distinct term is stored once in a dictionary, and each statement is stored as four integer
+ * term identifiers in a single array, without any per-statement objects or indexes. Duplicate
+ * statements are kept when they are added, and removed when the buffer is flushed, which happens
+ * automatically before the statements are iterated over. The order that statements were first
+ * added in is preserved.
+ * <p>
+ * Adding statements is thread-safe, but the buffer must not be modified while it is being
+ * iterated over.
+ */
+public class ExampleStatementBuffer implements Iterable<Statement>
+{
+    /**
+     * The number of integers used to store each statement.
+     */
+    private static final int STATEMENT_WIDTH = 4;
+    
+    /**
+     * The identifier used in place of a context for statements without a context.
+     */
+    private static final int NO_CONTEXT = -1;
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    /**
+     * An estimate of the memory used for each term in the dictionary, for the hash map entry, the
+     * boxed identifier and the list slot, not including the term itself.
+     */
+    private static final int ESTIMATED_BYTES_PER_TERM = 64;
+    
+    private final ValueFactory vf;
+    
+    private final Map<Value, Integer> termIds = new HashMap<>();
+    
+    private final List<Value> terms = new ArrayList<>();
+    
+    private int[] statements = new int[ExampleStatementBuffer.INITIAL_CAPACITY
+            * ExampleStatementBuffer.STATEMENT_WIDTH];
+    
+    private int count;
+    
+    private boolean flushed = true;
+    
+    /**
+     * @param vf
+     *            The factory used to create statements when iterating over the buffer.
+     */
+    public ExampleStatementBuffer(final ValueFactory vf)
+    {
+        this.vf = vf;
+    }
+    
+    /**
+     * Adds a statement to the buffer, once for each of the given contexts, or once without a
+     * context if no contexts are given.
+     */
+    public synchronized void add(final Resource subject, final URI predicate, final Value object,
+            final Resource... contexts)
+    {
+        final int subjectId = this.getTermId(Objects.requireNonNull(subject, "Subject was null"));
+        final int predicateId = this.getTermId(Objects.requireNonNull(predicate, "Predicate was null"));
+        final int objectId = this.getTermId(Objects.requireNonNull(object, "Object was null"));
+        if(contexts.length == 0)
+        {
+            this.append(subjectId, predicateId, objectId, ExampleStatementBuffer.NO_CONTEXT);
+        }
+        for(final Resource nextContext : contexts)
+        {
+            this.append(subjectId, predicateId, objectId, nextContext == null ? ExampleStatementBuffer.NO_CONTEXT
+                    : this.getTermId(nextContext));
+        }
+    }
+    
+    /**
+     * Adds all of the given statements to the buffer.
+     */
+    public synchronized void addAll(final Iterable<? extends Statement> statementsToAdd)
+    {
+        for(final Statement nextStatement : statementsToAdd)
+        {
+            if(nextStatement.getContext() == null)
+            {
+                this.add(nextStatement.getSubject(), nextStatement.getPredicate(), nextStatement.getObject());
+            }
+            else
+            {
+                this.add(nextStatement.getSubject(), nextStatement.getPredicate(), nextStatement.getObject(),
+                        nextStatement.getContext());
+            }
+        }
+    }
+    
+    private void append(final int subjectId, final int predicateId, final int objectId, final int contextId)
+    {
+        final int offset = this.count * ExampleStatementBuffer.STATEMENT_WIDTH;
+        if(offset == this.statements.length)
+        {
+            this.statements = Arrays.copyOf(this.statements, this.statements.length + (this.statements.length >> 1));
+        }
+        this.statements[offset] = subjectId;
+        this.statements[offset + 1] = predicateId;
+        this.statements[offset + 2] = objectId;
+        this.statements[offset + 3] = contextId;
+        this.count++;
+        this.flushed = false;
+    }
+    
+    /**
+     * Removes duplicate statements from the buffer, keeping the first copy of each statement.
+     * 
+     * @return The number of distinct statements in the buffer.
+     */
+    public synchronized int flush()
+    {
+        if(this.flushed)
+        {
+            return this.count;
+        }
+        
+        // Open addressing hash table of the positions of the distinct statements found so far,
+        // with at most half of the slots used
+        final int[] table = new int[Integer.highestOneBit(Math.max(1, this.count) * 4)];
+        Arrays.fill(table, -1);
+        final int mask = table.length - 1;
+        
+        int distinct = 0;
+        for(int i = 0; i < this.count; i++)
+        {
+            int slot = this.hash(i) & mask;
+            boolean duplicate = false;
+            while(table[slot] >= 0)
+            {
+                if(this.sameStatement(table[slot], i))
+                {
+                    duplicate = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            
+            if(!duplicate)
+            {
+                // Distinct statements are moved down over any duplicates before them, which have
+                // already been compared, so the statement at i is never overwritten before this
+                if(distinct != i)
+                {
+                    System.arraycopy(this.statements, i * ExampleStatementBuffer.STATEMENT_WIDTH, this.statements,
+                            distinct * ExampleStatementBuffer.STATEMENT_WIDTH, ExampleStatementBuffer.STATEMENT_WIDTH);
+                }
+                table[slot] = distinct;
+                distinct++;
+            }
+        }
+        
+        this.count = distinct;
+        this.flushed = true;
+        return distinct;
+    }
+    
+    /**
+     * @return An estimate of the number of bytes used by this buffer, not including the terms
+     *         themselves, which are generally shared with other objects.
+     */
+    public synchronized long getEstimatedBytes()
+    {
+        return (long)this.statements.length * 4 + (long)this.terms.size()
+                * ExampleStatementBuffer.ESTIMATED_BYTES_PER_TERM;
+    }
+    
+    /**
+     * @return The number of distinct terms in the buffer.
+     */
+    public synchronized int getTermCount()
+    {
+        return this.terms.size();
+    }
+    
+    private int getTermId(final Value term)
+    {
+        Integer result = this.termIds.get(term);
+        if(result == null)
+        {
+            result = this.terms.size();
+            this.terms.add(term);
+            this.termIds.put(term, result);
+        }
+        return result;
+    }
+    
+    private int hash(final int index)
+    {
+        final int offset = index * ExampleStatementBuffer.STATEMENT_WIDTH;
+        int result = this.statements[offset];
+        result = 31 * result + this.statements[offset + 1];
+        result = 31 * result + this.statements[offset + 2];
+        result = 31 * result + this.statements[offset + 3];
+        return result ^ (result >>> 16);
+    }
+    
+    /**
+     * @return True if no statements have been added.
+     */
+    public synchronized boolean isEmpty()
+    {
+        return this.count == 0;
+    }
+    
+    /**
+     * Flushes the buffer, and then iterates over the distinct statements in the order they were
+     * first added.
+     */
+    @Override
+    public Iterator<Statement> iterator()
+    {
+        final int size = this.flush();
+        return new Iterator<Statement>()
+            {
+                private int next = 0;
+                
+                @Override
+                public boolean hasNext()
+                {
+                    return this.next < size;
+                }
+                
+                @Override
+                public Statement next()
+                {
+                    if(!this.hasNext())
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    return ExampleStatementBuffer.this.getStatement(this.next++);
+                }
+                
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException("Statement buffers are append-only");
+                }
+            };
+    }
+    
+    private synchronized Statement getStatement(final int index)
+    {
+        final int offset = index * ExampleStatementBuffer.STATEMENT_WIDTH;
+        final Resource subject = (Resource)this.terms.get(this.statements[offset]);
+        final URI predicate = (URI)this.terms.get(this.statements[offset + 1]);
+        final Value object = this.terms.get(this.statements[offset + 2]);
+        final int contextId = this.statements[offset + 3];
+        if(contextId == ExampleStatementBuffer.NO_CONTEXT)
+        {
+            return this.vf.createStatement(subject, predicate, object);
+        }
+        return this.vf.createStatement(subject, predicate, object, (Resource)this.terms.get(contextId));
+    }
+    
+    private boolean sameStatement(final int first, final int second)
+    {
+        final int firstOffset = first * ExampleStatementBuffer.STATEMENT_WIDTH;
+        final int secondOffset = second * ExampleStatementBuffer.STATEMENT_WIDTH;
+        for(int i = 0; i < ExampleStatementBuffer.STATEMENT_WIDTH; i++)
+        {
+            if(this.statements[firstOffset + i] != this.statements[secondOffset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Flushes the buffer if necessary.
+     * 
+     * @return The number of distinct statements in the buffer.
+     */
+    public int size()
+    {
+        return this.flush();
+    }
+}
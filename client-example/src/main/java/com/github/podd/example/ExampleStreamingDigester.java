@@ -0,0 +1,136 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.github.podd.utils.PoddDigestUtils.Algorithm;
+
+/**
+ * Computes digests for several algorithms at once from blocks of bytes as they are read, so that a
+ * file only needs to be read once to both upload it and compute all of its digests.
+ * <p>
+ * Instances are not thread-safe, and are intended to be used for a single file.
+ */
+public class ExampleStreamingDigester
+{
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    private final Map<Algorithm, MessageDigest> messageDigests = new EnumMap<>(Algorithm.class);
+    
+    private long bytesDigested;
+    
+    /**
+     * @param algorithms
+     *            The algorithms to compute digests for.
+     * @throws NoSuchAlgorithmException
+     *             If any of the algorithms are not supported by the JVM.
+     */
+    public ExampleStreamingDigester(final Set<Algorithm> algorithms) throws NoSuchAlgorithmException
+    {
+        for(final Algorithm nextAlgorithm : algorithms)
+        {
+            this.messageDigests.put(nextAlgorithm, ExampleStreamingDigester.getMessageDigest(nextAlgorithm));
+        }
+    }
+    
+    /**
+     * Creates a {@link MessageDigest} for the given algorithm, using the name of the algorithm, or if
+     * that is not recognised, the name with a hyphen before the first digit, such as
+     * <code>SHA-1</code>.
+     */
+    static MessageDigest getMessageDigest(final Algorithm algorithm) throws NoSuchAlgorithmException
+    {
+        final String name = algorithm.name().replace('_', '-');
+        try
+        {
+            return MessageDigest.getInstance(name);
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            for(int i = 1; i < name.length(); i++)
+            {
+                if(Character.isDigit(name.charAt(i)) && name.charAt(i - 1) != '-')
+                {
+                    return MessageDigest.getInstance(name.substring(0, i) + "-" + name.substring(i));
+                }
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * @return The number of bytes that have been digested.
+     */
+    public long getBytesDigested()
+    {
+        return this.bytesDigested;
+    }
+    
+    /**
+     * Completes the digests. The digester must not be used after this method is called.
+     * 
+     * @return The digest for each algorithm, encoded as lower case hexadecimal.
+     */
+    public Map<Algorithm, String> getDigests()
+    {
+        final Map<Algorithm, String> result = new EnumMap<>(Algorithm.class);
+        for(final Entry<Algorithm, MessageDigest> entry : this.messageDigests.entrySet())
+        {
+            result.put(entry.getKey(), ExampleStreamingDigester.toHex(entry.getValue().digest()));
+        }
+        return result;
+    }
+    
+    /**
+     * @return The given digest encoded as lower case hexadecimal.
+     */
+    static String toHex(final byte[] digest)
+    {
+        final char[] hex = new char[digest.length * 2];
+        for(int i = 0; i < digest.length; i++)
+        {
+            hex[i * 2] = ExampleStreamingDigester.HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = ExampleStreamingDigester.HEX_DIGITS[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+    
+    /**
+     * Adds the given range of bytes to each of the digests.
+     * 
+     * @param bytes
+     *            The array containing the next bytes of the file.
+     * @param offset
+     *            The offset of the first byte in the array.
+     * @param length
+     *            The number of bytes to add.
+     */
+    public void update(final byte[] bytes, final int offset, final int length)
+    {
+        for(final MessageDigest nextDigest : this.messageDigests.values())
+        {
+            nextDigest.update(bytes, offset, length);
+        }
+        this.bytesDigested += length;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.podd.utils.InferredOWLOntologyID;
+
+/**
+ * Container for the results of {@link ExamplePoddClient#importTrayScanList}.
+ */
+public class ExampleTrayScanImport
+{
+    /**
+     * A map from artifact identifiers to buffers containing all of the necessary changes to the
+     * artifact.
+     */
+    public final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue;
+    
+    /**
+     * The metrics for processing the list, which do not include uploading the changes.
+     */
+    public final ExampleImportSummary summary;
+    
+    public ExampleTrayScanImport(final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue,
+            final ExampleImportSummary summary)
+    {
+        this.uploadQueue = uploadQueue;
+        this.summary = summary;
+    }
+}
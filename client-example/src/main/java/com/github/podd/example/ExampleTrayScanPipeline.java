@@ -0,0 +1,501 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openrdf.OpenRDFException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Imports a TrayScan list using separate stages for parsing, URI resolution, RDF generation and
+ * TrayScan database writes, connected by bounded queues.
+ * <p>
+ * Lines are parsed on the calling thread and grouped into batches. URI resolution, which is
+ * dominated by SPARQL round-trips to the PODD server, runs on a configurable number of workers.
+ * RDF generation and database writes each run on a single thread and consume batches strictly in
+ * the order they were parsed, so the upload queue and the TrayScan database receive the same
+ * sequence of changes as the serial import regardless of the number of workers.
+ * <p>
+ * Each instance can only be used for a single import.
+ */
+public class ExampleTrayScanPipeline
+{
+    /**
+     * The default number of lines in each batch passed between stages.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    
+    /**
+     * The default maximum number of batches that can be in the pipeline at any time.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+    
+    /**
+     * Time to wait between checks for a failure in another stage while blocked on a queue.
+     */
+    private static final long POLL_MILLISECONDS = 100;
+    
+    /**
+     * Marker used to signal the end of the input to the next stage.
+     */
+    private static final Batch END_OF_INPUT = new Batch(-1);
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final ExamplePoddClient client;
+    private final int workerCount;
+    private final int batchSize;
+    
+    private final ExampleImportContext context;
+    
+    /**
+     * Parsed batches waiting for URI resolution.
+     */
+    private final BlockingQueue<Batch> parsedQueue;
+    
+    /**
+     * Resolved batches waiting for RDF generation, which may arrive out of order. The size of
+     * this queue is bounded by {@link #inFlight}.
+     */
+    private final BlockingQueue<Batch> resolvedQueue = new LinkedBlockingQueue<>();
+    
+    /**
+     * Generated batches waiting to be written to the TrayScan database.
+     */
+    private final BlockingQueue<Batch> generatedQueue;
+    
+    /**
+     * Permits for each batch between parsing and RDF generation, to stop a slow batch from
+     * letting an unbounded number of later batches build up behind it.
+     */
+    private final Semaphore inFlight;
+    
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    
+    /**
+     * 
+     * @param client
+     *            The client used to resolve URIs, generate RDF and write to the TrayScan database.
+     * @param workerCount
+     *            The number of workers resolving URIs concurrently.
+     * @param batchSize
+     *            The number of lines in each batch passed between stages.
+     * @param queueCapacity
+     *            The maximum number of batches that can be in the pipeline at any time.
+     * @param context
+     *            The caches for the import, including the upload queue containing the statements
+     *            to be uploaded for each artifact.
+     */
+    public ExampleTrayScanPipeline(final ExamplePoddClient client, final int workerCount, final int batchSize,
+            final int queueCapacity, final ExampleImportContext context)
+    {
+        if(workerCount < 1)
+        {
+            throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+        }
+        if(batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if(queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        
+        this.client = client;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.context = context;
+        
+        this.parsedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.generatedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlight = new Semaphore(queueCapacity);
+    }
+    
+    /**
+     * Imports the TrayScan list from the given stream, returning when every line has been added
+     * to the upload queue and written to the TrayScan database.
+     * 
+     * @param in
+     *            An {@link InputStream} containing the TrayScan CSV file.
+     * @throws PoddClientException
+     *             If there was a problem communicating with PODD or a line was not valid.
+     * @throws SQLException
+     *             If there is an issue with the MySQL connection to TrayScanDB
+     */
+    public void process(final InputStream in) throws IOException, PoddClientException, OpenRDFException,
+        SQLException
+    {
+        // One thread per resolution worker, plus one each for RDF generation and database writes
+        final ExecutorService executor = Executors.newFixedThreadPool(this.workerCount + 2);
+        try
+        {
+            for(int i = 0; i < this.workerCount; i++)
+            {
+                executor.submit(new ResolveStage());
+            }
+            executor.submit(new GenerateStage());
+            executor.submit(new DatabaseStage());
+            
+            this.parse(in);
+            
+            executor.shutdown();
+            while(!executor.awaitTermination(ExampleTrayScanPipeline.POLL_MILLISECONDS, TimeUnit.MILLISECONDS))
+            {
+                if(this.failure.get() != null)
+                {
+                    executor.shutdownNow();
+                }
+            }
+        }
+        catch(final InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            this.fail(e);
+        }
+        catch(final IOException | PoddClientException | RuntimeException e)
+        {
+            this.fail(e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        
+        this.rethrowFailure();
+    }
+    
+    /**
+     * Parses the CSV file on the calling thread, passing batches of lines to the resolution
+     * workers.
+     */
+    private void parse(final InputStream in) throws IOException, PoddClientException, InterruptedException
+    {
+        List<String> headers = null;
+        ExampleCSVLineBinder binder = null;
+        long nextSequence = 0;
+        Batch nextBatch = new Batch(nextSequence);
+        
+        // Supressing try-with-resources warning generated erroneously by Eclipse:
+        // https://bugs.eclipse.org/bugs/show_bug.cgi?id=371614
+        try (@SuppressWarnings("resource")
+        final InputStreamReader inputStreamReader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                final CSVReader reader = new CSVReader(inputStreamReader);)
+        {
+            String[] nextLine;
+            while((nextLine = reader.readNext()) != null && this.failure.get() == null)
+            {
+                if(headers == null)
+                {
+                    // header line is mandatory in PODD CSV
+                    headers = Arrays.asList(nextLine);
+                    binder = this.client.verifyTrayScanListHeadersOrFail(headers);
+                }
+                else
+                {
+                    if(nextLine.length != headers.size())
+                    {
+                        this.log.error("Line and header sizes were different: {} {}", headers, nextLine);
+                    }
+                    
+                    nextBatch.lines.add(binder.bind(Arrays.asList(nextLine)));
+                    
+                    if(nextBatch.lines.size() >= this.batchSize)
+                    {
+                        this.submitBatch(nextBatch);
+                        nextSequence++;
+                        nextBatch = new Batch(nextSequence);
+                    }
+                }
+            }
+        }
+        
+        if(!nextBatch.lines.isEmpty())
+        {
+            this.submitBatch(nextBatch);
+        }
+        
+        if(headers == null)
+        {
+            this.log.error("Document did not contain a valid header line");
+        }
+        
+        for(int i = 0; i < this.workerCount; i++)
+        {
+            this.offer(this.parsedQueue, ExampleTrayScanPipeline.END_OF_INPUT);
+        }
+    }
+    
+    private void submitBatch(final Batch nextBatch) throws InterruptedException
+    {
+        while(!this.inFlight.tryAcquire(ExampleTrayScanPipeline.POLL_MILLISECONDS, TimeUnit.MILLISECONDS))
+        {
+            if(this.failure.get() != null)
+            {
+                return;
+            }
+        }
+        this.log.debug("Parsed batch: {} ({} lines)", nextBatch.sequence, nextBatch.lines.size());
+        this.offer(this.parsedQueue, nextBatch);
+    }
+    
+    /**
+     * Offers the given batch to a bounded queue, giving up if another stage fails while waiting
+     * for space.
+     */
+    private void offer(final BlockingQueue<Batch> queue, final Batch nextBatch) throws InterruptedException
+    {
+        while(!queue.offer(nextBatch, ExampleTrayScanPipeline.POLL_MILLISECONDS, TimeUnit.MILLISECONDS))
+        {
+            if(this.failure.get() != null)
+            {
+                return;
+            }
+        }
+    }
+    
+    private void fail(final Throwable e)
+    {
+        if(this.failure.compareAndSet(null, e))
+        {
+            this.log.error("TrayScan import pipeline failed: ", e);
+        }
+    }
+    
+    private void rethrowFailure() throws IOException, PoddClientException, OpenRDFException, SQLException
+    {
+        final Throwable e = this.failure.get();
+        if(e == null)
+        {
+            return;
+        }
+        else if(e instanceof IOException)
+        {
+            throw (IOException)e;
+        }
+        else if(e instanceof PoddClientException)
+        {
+            throw (PoddClientException)e;
+        }
+        else if(e instanceof OpenRDFException)
+        {
+            throw (OpenRDFException)e;
+        }
+        else if(e instanceof SQLException)
+        {
+            throw (SQLException)e;
+        }
+        else if(e instanceof RuntimeException)
+        {
+            throw (RuntimeException)e;
+        }
+        else if(e instanceof Error)
+        {
+            throw (Error)e;
+        }
+        else
+        {
+            throw new PoddClientException("TrayScan import pipeline failed", e);
+        }
+    }
+    
+    /**
+     * A group of consecutive lines from the TrayScan list.
+     */
+    private static final class Batch
+    {
+        private final long sequence;
+        private final List<ExampleCSVLine> lines = new ArrayList<>();
+        private final List<ExampleTrayScanUris> uris = new ArrayList<>();
+        
+        Batch(final long sequence)
+        {
+            this.sequence = sequence;
+        }
+    }
+    
+    /**
+     * Base class for stages running on the executor, recording the first failure so that every
+     * other stage can stop.
+     */
+    private abstract class Stage implements Callable<Void>
+    {
+        @Override
+        public final Void call()
+        {
+            try
+            {
+                this.run();
+            }
+            catch(final InterruptedException e)
+            {
+                // Interrupted after another stage failed, or the import was cancelled
+                if(ExampleTrayScanPipeline.this.failure.get() == null)
+                {
+                    ExampleTrayScanPipeline.this.fail(e);
+                }
+            }
+            catch(final Throwable e)
+            {
+                ExampleTrayScanPipeline.this.fail(e);
+            }
+            return null;
+        }
+        
+        protected abstract void run() throws Exception;
+    }
+    
+    /**
+     * Resolves the project, experiment, tray and pot URIs for each line in a batch, querying for
+     * the new tray and pot barcodes in the batch in chunks.
+     */
+    private final class ResolveStage extends Stage
+    {
+        @Override
+        protected void run() throws Exception
+        {
+            final ExampleTrayScanPipeline pipeline = ExampleTrayScanPipeline.this;
+            
+            while(true)
+            {
+                final Batch nextBatch = pipeline.parsedQueue.take();
+                if(nextBatch == ExampleTrayScanPipeline.END_OF_INPUT)
+                {
+                    pipeline.resolvedQueue.put(ExampleTrayScanPipeline.END_OF_INPUT);
+                    return;
+                }
+                
+                // Resolve all of the new tray and pot barcodes in the batch together
+                pipeline.client.prefetchTrayScanUris(pipeline.context, nextBatch.lines);
+                
+                for(final ExampleCSVLine nextLine : nextBatch.lines)
+                {
+                    nextBatch.uris.add(pipeline.client.resolveTrayScanUris(pipeline.context, nextLine));
+                }
+                
+                pipeline.resolvedQueue.put(nextBatch);
+            }
+        }
+    }
+    
+    /**
+     * Generates RDF for each batch in the order that the batches were parsed, so that genotypes
+     * and materials are created by the same lines as in the serial import.
+     */
+    private final class GenerateStage extends Stage
+    {
+        @Override
+        protected void run() throws Exception
+        {
+            final ExampleTrayScanPipeline pipeline = ExampleTrayScanPipeline.this;
+            
+            final Map<Long, Batch> pending = new HashMap<>();
+            long nextSequence = 0;
+            int finishedWorkers = 0;
+            
+            while(finishedWorkers < pipeline.workerCount)
+            {
+                final Batch resolvedBatch = pipeline.resolvedQueue.take();
+                if(resolvedBatch == ExampleTrayScanPipeline.END_OF_INPUT)
+                {
+                    finishedWorkers++;
+                    continue;
+                }
+                
+                pending.put(resolvedBatch.sequence, resolvedBatch);
+                
+                Batch nextBatch;
+                while((nextBatch = pending.remove(nextSequence)) != null)
+                {
+                    for(int i = 0; i < nextBatch.lines.size(); i++)
+                    {
+                        pipeline.client.generateTrayRDF(nextBatch.uris.get(i), pipeline.context,
+                                nextBatch.lines.get(i));
+                    }
+                    pipeline.log.debug("Generated RDF for batch: {}", nextBatch.sequence);
+                    
+                    pipeline.generatedQueue.put(nextBatch);
+                    pipeline.inFlight.release();
+                    nextSequence++;
+                }
+            }
+            
+            if(!pending.isEmpty())
+            {
+                throw new IllegalStateException("Batches were missing from the pipeline: expected=" + nextSequence
+                        + " pending=" + pending.keySet());
+            }
+            
+            pipeline.generatedQueue.put(ExampleTrayScanPipeline.END_OF_INPUT);
+        }
+    }
+    
+    /**
+     * Writes each line to the TrayScan database in the order that the lines were parsed.
+     */
+    private final class DatabaseStage extends Stage
+    {
+        @Override
+        protected void run() throws Exception
+        {
+            final ExampleTrayScanPipeline pipeline = ExampleTrayScanPipeline.this;
+            
+            try (final ExampleTrayScanWriter writer = pipeline.client.getTrayScanWriter();)
+            {
+                while(true)
+                {
+                    final Batch nextBatch = pipeline.generatedQueue.take();
+                    if(nextBatch == ExampleTrayScanPipeline.END_OF_INPUT)
+                    {
+                        // Only write the last batch once every line has been processed
+                        writer.flush();
+                        return;
+                    }
+                    
+                    for(final ExampleCSVLine nextLine : nextBatch.lines)
+                    {
+                        writer.add(nextLine);
+                    }
+                }
+            }
+        }
+    }
+}
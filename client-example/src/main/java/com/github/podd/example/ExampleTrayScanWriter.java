@@ -0,0 +1,284 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes TrayScan lines to the TrayScan database in batches, using a single transaction for each
+ * batch.
+ * <p>
+ * For each batch, the existing trays and plants are found using one query each, and the
+ * StoreTray, StorePlant and StoreAssign procedures are called using JDBC batches for the trays and
+ * plants that did not already exist. As with a single line, a plant is only assigned to its tray
+ * when the plant is first stored. Lines are written when the batch is full and when
+ * {@link #flush()} is called.
+ * <p>
+ * Closing the writer discards any lines that have not been written, so that an import that fails
+ * part way through does not commit a partial batch. Callers must call {@link #flush()} after the
+ * last line has been added successfully, before closing the writer.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class ExampleTrayScanWriter implements AutoCloseable
+{
+    private static final String TRAY_QUERY_PREFIX = "SELECT tray_textId FROM tab_tray WHERE tray_textId IN (";
+    
+    private static final String PLANT_QUERY_PREFIX = "SELECT plant_textId FROM tab_plant WHERE plant_textId IN (";
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final ExampleConnectionPool connectionPool;
+    
+    private final int batchSize;
+    
+    private final List<ExampleCSVLine> pending;
+    
+    private final ExampleImportMetrics metrics;
+    
+    /**
+     * @param connectionPool
+     *            The pool to get connections to the TrayScan database from.
+     * @param batchSize
+     *            The maximum number of lines to write in each transaction.
+     */
+    public ExampleTrayScanWriter(final ExampleConnectionPool connectionPool, final int batchSize)
+    {
+        this(connectionPool, batchSize, null);
+    }
+    
+    /**
+     * @param connectionPool
+     *            The pool to get connections to the TrayScan database from.
+     * @param batchSize
+     *            The maximum number of lines to write in each transaction.
+     * @param metrics
+     *            The metrics to record the time taken to write each batch in, or null to not
+     *            record it.
+     */
+    public ExampleTrayScanWriter(final ExampleConnectionPool connectionPool, final int batchSize,
+            final ExampleImportMetrics metrics)
+    {
+        if(batchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        
+        this.connectionPool = connectionPool;
+        this.batchSize = batchSize;
+        this.pending = new ArrayList<>(batchSize);
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Adds the given line to the current batch, writing the batch if it is full.
+     * 
+     * @param nextLine
+     *            The line to write.
+     * @throws SQLException
+     *             If the batch was written and there was an error writing it.
+     */
+    public void add(final ExampleCSVLine nextLine) throws SQLException
+    {
+        this.pending.add(nextLine);
+        if(this.pending.size() >= this.batchSize)
+        {
+            this.flush();
+        }
+    }
+    
+    /**
+     * Discards any lines that have not been written by {@link #flush()}.
+     */
+    @Override
+    public void close()
+    {
+        if(!this.pending.isEmpty())
+        {
+            this.log.warn("Discarding {} TrayScan lines that were not flushed", this.pending.size());
+            this.pending.clear();
+        }
+    }
+    
+    /**
+     * Finds which of the given identifiers already exist using a single query.
+     * 
+     * @param connection
+     *            The connection to use.
+     * @param queryPrefix
+     *            The query, up to the start of the IN list.
+     * @param identifiers
+     *            The identifiers to check.
+     * @return The identifiers that already exist.
+     * @throws SQLException
+     *             If there was an error running the query.
+     */
+    private Set<String> findExisting(final Connection connection, final String queryPrefix,
+            final Set<String> identifiers) throws SQLException
+    {
+        final StringBuilder query = new StringBuilder(queryPrefix);
+        for(int i = 0; i < identifiers.size(); i++)
+        {
+            if(i > 0)
+            {
+                query.append(", ");
+            }
+            query.append("?");
+        }
+        query.append(");");
+        
+        final Set<String> result = new HashSet<>();
+        try (final PreparedStatement prepareStatement =
+                connection.prepareStatement(query.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY);)
+        {
+            int index = 1;
+            for(final String nextIdentifier : identifiers)
+            {
+                prepareStatement.setString(index++, nextIdentifier);
+            }
+            try (final ResultSet resultSet = prepareStatement.executeQuery())
+            {
+                while(resultSet.next())
+                {
+                    result.add(resultSet.getString(1));
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Writes all of the lines in the current batch in a single transaction.
+     * 
+     * @throws SQLException
+     *             If there was an error writing the batch, in which case none of the lines in the
+     *             batch are written.
+     */
+    public void flush() throws SQLException
+    {
+        if(this.pending.isEmpty())
+        {
+            return;
+        }
+        
+        // Use the first line for each tray and plant, as the procedures are only called once for
+        // each of them
+        final Map<String, ExampleCSVLine> newTrays = new LinkedHashMap<>();
+        final Map<String, ExampleCSVLine> newPlants = new LinkedHashMap<>();
+        for(final ExampleCSVLine nextLine : this.pending)
+        {
+            if(!newTrays.containsKey(nextLine.trayID))
+            {
+                newTrays.put(nextLine.trayID, nextLine);
+            }
+            if(!newPlants.containsKey(nextLine.plantID))
+            {
+                newPlants.put(nextLine.plantID, nextLine);
+            }
+        }
+        
+        final long start = System.nanoTime();
+        try (final Connection connection = this.connectionPool.getConnection();)
+        {
+            connection.setAutoCommit(false);
+            
+            try
+            {
+                newTrays.keySet().removeAll(
+                        this.findExisting(connection, ExampleTrayScanWriter.TRAY_QUERY_PREFIX, newTrays.keySet()));
+                newPlants.keySet().removeAll(
+                        this.findExisting(connection, ExampleTrayScanWriter.PLANT_QUERY_PREFIX, newPlants.keySet()));
+                
+                if(!newTrays.isEmpty())
+                {
+                    try (final CallableStatement cs = connection.prepareCall("{call StoreTray(?, ?, ?)}");)
+                    {
+                        for(final ExampleCSVLine nextLine : newTrays.values())
+                        {
+                            cs.setString(1, nextLine.trayID);
+                            cs.setString(2, nextLine.trayTypeName);
+                            cs.setString(3, nextLine.trayNotes);
+                            cs.addBatch();
+                        }
+                        cs.executeBatch();
+                    }
+                }
+                
+                if(!newPlants.isEmpty())
+                {
+                    try (final CallableStatement cs = connection.prepareCall("{call StorePlant(?, ?, ?, ?)}");)
+                    {
+                        for(final ExampleCSVLine nextLine : newPlants.values())
+                        {
+                            cs.setString(1, nextLine.plantID);
+                            cs.setString(2, nextLine.potType);
+                            cs.setString(3, nextLine.plantName);
+                            cs.setString(4, nextLine.plantNotes);
+                            cs.addBatch();
+                        }
+                        cs.executeBatch();
+                    }
+                    
+                    // If the plant did not already exist, also link it to its tray
+                    try (final CallableStatement cs = connection.prepareCall("{call StoreAssign(?, ?, ?)}");)
+                    {
+                        for(final ExampleCSVLine nextLine : newPlants.values())
+                        {
+                            cs.setString(1, nextLine.trayID);
+                            cs.setString(2, nextLine.plantID);
+                            cs.setString(3, nextLine.position);
+                            cs.addBatch();
+                        }
+                        cs.executeBatch();
+                    }
+                }
+                
+                connection.commit();
+            }
+            catch(final SQLException | RuntimeException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            
+            this.log.debug("Wrote batch of {} lines: {} new trays, {} new plants", this.pending.size(),
+                    newTrays.size(), newPlants.size());
+        }
+        finally
+        {
+            this.pending.clear();
+            if(this.metrics != null)
+            {
+                this.metrics.recordMySQLBatch(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,534 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.OpenRDFException;
+import org.openrdf.model.Model;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+import org.openrdf.rio.UnsupportedRDFormatException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent cache of the results of queries against artifacts, kept in a single file so that
+ * the URIs for projects, experiments and genotypes do not need to be fetched from the server again
+ * on the next TrayScan import.
+ * <p>
+ * Results are keyed by the version IRI of the artifact they were fetched from, so a result is
+ * never returned for a different version of the artifact. Results for versions that are no longer
+ * current are removed by {@link #retainVersions(Collection)}.
+ * <p>
+ * The file is a header followed by a sequence of records, which are appended as results are added,
+ * and is memory mapped when it is opened or compacted. Records appended since then are read from
+ * the file directly. A partially written record at the end of the file, from an interrupted import,
+ * is discarded when the file is opened.
+ * <p>
+ * An exclusive lock is held on a separate lock file in the same directory while the cache is open,
+ * so that two imports cannot append to or compact the same file at the same time.
+ */
+public class ExampleUriResolutionCache implements Closeable
+{
+    /**
+     * The property used to set the directory containing the cache. The cache is not used if this
+     * property is not set.
+     */
+    public static final String PROP_DIRECTORY = "exampleuricache.directory";
+    
+    /**
+     * The name of the cache file within the cache directory.
+     */
+    public static final String FILE_NAME = "uri-resolution-cache.bin";
+    
+    /**
+     * The name of the file within the cache directory that is locked while the cache is open.
+     */
+    public static final String LOCK_FILE_NAME = "uri-resolution-cache.lock";
+    
+    /**
+     * Identifies the file format, and is changed whenever the format changes so that older files
+     * are discarded.
+     */
+    private static final long MAGIC = 0x504f444455524931L;
+    
+    private static final int HEADER_SIZE = 8;
+    
+    private static final RDFFormat FORMAT = RDFFormat.BINARY;
+    
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    
+    private final Path file;
+    
+    private final FileChannel lockChannel;
+    
+    private final FileLock lock;
+    
+    private FileChannel channel;
+    
+    /**
+     * The file as it was when it was last opened or compacted.
+     */
+    private MappedByteBuffer mapped;
+    
+    /**
+     * The length of the file, up to the end of the last record.
+     */
+    private long length;
+    
+    /**
+     * The position and length of each record, by version IRI and then by query.
+     */
+    private final Map<String, Map<String, Record>> index = new HashMap<>();
+    
+    /**
+     * Opens the cache in the given directory, creating the directory and the cache file if they do
+     * not exist.
+     * 
+     * @param directory
+     *            The directory containing the cache file.
+     * @throws IOException
+     *             If the cache file could not be opened, or is already open in this or another
+     *             process.
+     */
+    public ExampleUriResolutionCache(final Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(ExampleUriResolutionCache.FILE_NAME);
+        
+        final Path lockFile = directory.resolve(ExampleUriResolutionCache.LOCK_FILE_NAME);
+        this.lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try
+        {
+            this.lock = this.lockChannel.tryLock();
+            if(this.lock == null)
+            {
+                throw new IOException("URI resolution cache is in use by another process: " + lockFile);
+            }
+            this.open();
+        }
+        catch(final OverlappingFileLockException e)
+        {
+            this.lockChannel.close();
+            throw new IOException("URI resolution cache is already open in this process: " + lockFile, e);
+        }
+        catch(final IOException e)
+        {
+            this.lockChannel.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException
+    {
+        try
+        {
+            this.closeFile();
+        }
+        finally
+        {
+            // Closing the channel also releases the lock
+            this.lockChannel.close();
+        }
+    }
+    
+    /**
+     * Closes the cache file, without releasing the lock.
+     */
+    private void closeFile() throws IOException
+    {
+        this.index.clear();
+        this.mapped = null;
+        if(this.channel != null)
+        {
+            try
+            {
+                this.channel.close();
+            }
+            finally
+            {
+                this.channel = null;
+            }
+        }
+    }
+    
+    /**
+     * Gets the cached result of the given query against the given version of an artifact.
+     * 
+     * @param version
+     *            The version IRI of the artifact that was queried.
+     * @param query
+     *            The query.
+     * @return The cached result, or null if the query has not been cached for this version of the
+     *         artifact.
+     * @throws IOException
+     *             If the cached result could not be read.
+     */
+    public synchronized Model get(final String version, final String query) throws IOException
+    {
+        final Map<String, Record> queries = this.index.get(version);
+        if(queries == null)
+        {
+            return null;
+        }
+        final Record record = queries.get(query);
+        if(record == null)
+        {
+            return null;
+        }
+        
+        final byte[] value = new byte[record.valueLength];
+        this.read(record.valuePosition, record.valueLength).get(value);
+        try
+        {
+            return Rio.parse(new ByteArrayInputStream(value), "", ExampleUriResolutionCache.FORMAT);
+        }
+        catch(final OpenRDFException | UnsupportedRDFormatException e)
+        {
+            throw new IOException("Could not read cached result for: " + version, e);
+        }
+    }
+    
+    /**
+     * @return The file containing the cache.
+     */
+    public Path getFile()
+    {
+        return this.file;
+    }
+    
+    /**
+     * Maps the file and builds the index of the records in it, discarding the file if it is not a
+     * cache file and discarding any partial record at the end of it.
+     */
+    private void open() throws IOException
+    {
+        this.channel =
+                FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+        this.index.clear();
+        
+        final long size = this.channel.size();
+        this.length = size;
+        if(size > Integer.MAX_VALUE)
+        {
+            this.log.warn("Discarding URI resolution cache that is too large to map: {} {}", this.file, size);
+            this.reset();
+            return;
+        }
+        if(size < ExampleUriResolutionCache.HEADER_SIZE)
+        {
+            this.reset();
+            return;
+        }
+        
+        this.mapped = this.channel.map(MapMode.READ_ONLY, 0, size);
+        if(this.mapped.getLong(0) != ExampleUriResolutionCache.MAGIC)
+        {
+            this.log.warn("Discarding URI resolution cache with an unknown format: {}", this.file);
+            this.reset();
+            return;
+        }
+        
+        int position = ExampleUriResolutionCache.HEADER_SIZE;
+        while(position < size)
+        {
+            final Record record = this.readRecord(position, (int)size);
+            if(record == null)
+            {
+                this.log.warn("Discarding partial record at the end of URI resolution cache: {} {}", this.file,
+                        position);
+                this.channel.truncate(position);
+                this.mapped = this.channel.map(MapMode.READ_ONLY, 0, position);
+                this.length = position;
+                break;
+            }
+            this.putRecord(record);
+            position = record.end;
+        }
+    }
+    
+    /**
+     * Caches the result of the given query against the given version of an artifact.
+     * 
+     * @param version
+     *            The version IRI of the artifact that was queried.
+     * @param query
+     *            The query.
+     * @param result
+     *            The result of the query.
+     * @throws IOException
+     *             If the result could not be written to the cache file.
+     */
+    public synchronized void put(final String version, final String query, final Model result) throws IOException
+    {
+        final ByteArrayOutputStream value = new ByteArrayOutputStream();
+        try
+        {
+            Rio.write(result, value, ExampleUriResolutionCache.FORMAT);
+        }
+        catch(final OpenRDFException | UnsupportedRDFormatException e)
+        {
+            throw new IOException("Could not write result to cache for: " + version, e);
+        }
+        
+        final byte[] versionBytes = version.getBytes(StandardCharsets.UTF_8);
+        final byte[] queryBytes = query.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(12 + versionBytes.length + queryBytes.length + value.size());
+        record.putInt(versionBytes.length).put(versionBytes);
+        record.putInt(queryBytes.length).put(queryBytes);
+        record.putInt(value.size()).put(value.toByteArray());
+        record.flip();
+        
+        final long start = this.length;
+        if(start + record.remaining() > Integer.MAX_VALUE)
+        {
+            this.log.warn("URI resolution cache is full, not caching result for: {}", version);
+            return;
+        }
+        // Append the record without remapping the file, as the record is indexed from the values
+        // that were written, and is read from the channel until the file is next mapped
+        long position = start;
+        while(record.hasRemaining())
+        {
+            position += this.channel.write(record, position);
+        }
+        this.length = position;
+        this.putRecord(new Record(version, query, (int)start, (int)start + 12 + versionBytes.length
+                + queryBytes.length, value.size()));
+    }
+    
+    /**
+     * Reads the given range of the file, from the mapped buffer if the range was in the file when
+     * it was mapped, or otherwise from the channel.
+     * 
+     * @return A buffer containing the bytes in the range, from its position to its limit.
+     */
+    private ByteBuffer read(final int position, final int length) throws IOException
+    {
+        if(position + length <= this.mapped.limit())
+        {
+            final ByteBuffer result = this.mapped.duplicate();
+            result.limit(position + length);
+            result.position(position);
+            return result;
+        }
+        
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        while(result.hasRemaining())
+        {
+            if(this.channel.read(result, position + result.position()) < 0)
+            {
+                throw new EOFException("URI resolution cache file was shorter than expected: " + this.file);
+            }
+        }
+        result.flip();
+        return result;
+    }
+    
+    private void putRecord(final Record record)
+    {
+        Map<String, Record> queries = this.index.get(record.version);
+        if(queries == null)
+        {
+            queries = new HashMap<>();
+            this.index.put(record.version, queries);
+        }
+        queries.put(record.query, record);
+    }
+    
+    /**
+     * @return The record starting at the given position, or null if the record does not fit
+     *         before the limit.
+     */
+    private Record readRecord(final int position, final int limit)
+    {
+        int next = position;
+        final String[] strings = new String[2];
+        for(int i = 0; i < strings.length; i++)
+        {
+            if(limit - next < 4)
+            {
+                return null;
+            }
+            final int length = this.mapped.getInt(next);
+            next += 4;
+            if(length < 0 || limit - next < length)
+            {
+                return null;
+            }
+            final byte[] bytes = new byte[length];
+            final ByteBuffer buffer = this.mapped.duplicate();
+            buffer.position(next);
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            next += length;
+        }
+        if(limit - next < 4)
+        {
+            return null;
+        }
+        final int valueLength = this.mapped.getInt(next);
+        next += 4;
+        if(valueLength < 0 || limit - next < valueLength)
+        {
+            return null;
+        }
+        return new Record(strings[0], strings[1], position, next, valueLength);
+    }
+    
+    /**
+     * Truncates the file to an empty cache.
+     */
+    private void reset() throws IOException
+    {
+        this.channel.truncate(0);
+        final ByteBuffer header = ByteBuffer.allocate(ExampleUriResolutionCache.HEADER_SIZE);
+        header.putLong(ExampleUriResolutionCache.MAGIC).flip();
+        while(header.hasRemaining())
+        {
+            this.channel.write(header, header.position());
+        }
+        this.mapped = this.channel.map(MapMode.READ_ONLY, 0, ExampleUriResolutionCache.HEADER_SIZE);
+        this.length = ExampleUriResolutionCache.HEADER_SIZE;
+        this.index.clear();
+    }
+    
+    /**
+     * Removes the results for all versions of artifacts except the given versions, so that stale
+     * results are removed from the file as artifacts are updated.
+     * 
+     * @param currentVersions
+     *            The version IRIs of the current versions of each artifact.
+     * @return The number of versions that were removed.
+     * @throws IOException
+     *             If the cache file could not be rewritten.
+     */
+    public synchronized int retainVersions(final Collection<String> currentVersions) throws IOException
+    {
+        final Set<String> current = new HashSet<>(currentVersions);
+        
+        int removed = 0;
+        for(final Iterator<String> iterator = this.index.keySet().iterator(); iterator.hasNext();)
+        {
+            if(!current.contains(iterator.next()))
+            {
+                iterator.remove();
+                removed++;
+            }
+        }
+        if(removed == 0)
+        {
+            return 0;
+        }
+        
+        // Copy the remaining records into a new file, and replace the old file with it
+        final Path tempFile = this.file.resolveSibling(ExampleUriResolutionCache.FILE_NAME + ".tmp");
+        try (final FileChannel output =
+                FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);)
+        {
+            final ByteBuffer header = ByteBuffer.allocate(ExampleUriResolutionCache.HEADER_SIZE);
+            header.putLong(ExampleUriResolutionCache.MAGIC).flip();
+            while(header.hasRemaining())
+            {
+                output.write(header);
+            }
+            for(final Map<String, Record> nextQueries : this.index.values())
+            {
+                for(final Record nextRecord : nextQueries.values())
+                {
+                    final ByteBuffer buffer = this.read(nextRecord.start, nextRecord.end - nextRecord.start);
+                    while(buffer.hasRemaining())
+                    {
+                        output.write(buffer);
+                    }
+                }
+            }
+            output.force(true);
+        }
+        this.closeFile();
+        Files.move(tempFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.open();
+        return removed;
+    }
+    
+    /**
+     * @return The number of cached results.
+     */
+    public synchronized int size()
+    {
+        int result = 0;
+        for(final Map<String, Record> nextQueries : this.index.values())
+        {
+            result += nextQueries.size();
+        }
+        return result;
+    }
+    
+    /**
+     * The location of a single cached result in the file.
+     */
+    private static final class Record
+    {
+        private final String version;
+        
+        private final String query;
+        
+        private final int start;
+        
+        private final int valuePosition;
+        
+        private final int valueLength;
+        
+        private final int end;
+        
+        private Record(final String version, final String query, final int start, final int valuePosition,
+                final int valueLength)
+        {
+            this.version = version;
+            this.query = query;
+            this.start = start;
+            this.valuePosition = valuePosition;
+            this.valueLength = valueLength;
+            this.end = valuePosition + valueLength;
+        }
+    }
+}
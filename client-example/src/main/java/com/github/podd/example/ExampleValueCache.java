@@ -0,0 +1,201 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+
+/**
+ * Interns the {@link Literal} values created while importing TrayScan lists, so that values which
+ * are repeated on many lines, such as tray types, pot types, column letters and small numbers,
+ * share a single object instead of creating a new object for every line.
+ * <p>
+ * The cache holds up to a fixed number of values. Once it is full, values which are not already
+ * in the cache are created without being cached, so the values that are cached are generally the
+ * ones found first, which are also the ones most likely to be repeated.
+ * <p>
+ * Lookups do not allocate any objects when the value is found in the cache. This class is
+ * thread-safe.
+ */
+public class ExampleValueCache
+{
+    /**
+     * The default maximum number of values to cache.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    
+    private final ValueFactory vf;
+    
+    private final int maximumSize;
+    
+    private final AtomicInteger size = new AtomicInteger();
+    
+    private final AtomicLong hits = new AtomicLong();
+    
+    private final AtomicLong misses = new AtomicLong();
+    
+    private final ConcurrentMap<String, Literal> plainLiterals = new ConcurrentHashMap<>();
+    
+    private final ConcurrentMap<URI, ConcurrentMap<String, Literal>> typedLiterals = new ConcurrentHashMap<>();
+    
+    /**
+     * @param vf
+     *            The factory used to create values which are not in the cache.
+     * @param maximumSize
+     *            The maximum number of values to cache.
+     */
+    public ExampleValueCache(final ValueFactory vf, final int maximumSize)
+    {
+        if(maximumSize < 0)
+        {
+            throw new IllegalArgumentException("Maximum size must not be negative: " + maximumSize);
+        }
+        
+        this.vf = vf;
+        this.maximumSize = maximumSize;
+    }
+    
+    /**
+     * Removes all of the values from the cache, and resets the statistics.
+     */
+    public void clear()
+    {
+        this.plainLiterals.clear();
+        this.typedLiterals.clear();
+        this.size.set(0);
+        this.hits.set(0);
+        this.misses.set(0);
+    }
+    
+    /**
+     * @param label
+     *            The label of the literal.
+     * @return A plain literal with the given label.
+     */
+    public Literal createLiteral(final String label)
+    {
+        if(label == null)
+        {
+            return this.vf.createLiteral(label);
+        }
+        
+        final Literal result = this.plainLiterals.get(label);
+        if(result != null)
+        {
+            this.hits.incrementAndGet();
+            return result;
+        }
+        return this.putIfAbsent(this.plainLiterals, label, this.vf.createLiteral(label));
+    }
+    
+    /**
+     * @param label
+     *            The label of the literal.
+     * @param datatype
+     *            The datatype of the literal.
+     * @return A literal with the given label and datatype.
+     */
+    public Literal createLiteral(final String label, final URI datatype)
+    {
+        if(label == null || datatype == null)
+        {
+            return this.vf.createLiteral(label, datatype);
+        }
+        
+        ConcurrentMap<String, Literal> literals = this.typedLiterals.get(datatype);
+        if(literals == null)
+        {
+            literals = new ConcurrentHashMap<>();
+            final ConcurrentMap<String, Literal> existing = this.typedLiterals.putIfAbsent(datatype, literals);
+            if(existing != null)
+            {
+                literals = existing;
+            }
+        }
+        
+        final Literal result = literals.get(label);
+        if(result != null)
+        {
+            this.hits.incrementAndGet();
+            return result;
+        }
+        return this.putIfAbsent(literals, label, this.vf.createLiteral(label, datatype));
+    }
+    
+    /**
+     * @return The number of values that were found in the cache.
+     */
+    public long getHitCount()
+    {
+        return this.hits.get();
+    }
+    
+    /**
+     * @return The number of values that were not found in the cache, including values that were
+     *         not cached because the cache was full.
+     */
+    public long getMissCount()
+    {
+        return this.misses.get();
+    }
+    
+    /**
+     * @return The number of values in the cache.
+     */
+    public int getSize()
+    {
+        return this.size.get();
+    }
+    
+    /**
+     * Adds the given value to the given map if there is room in the cache and another thread has
+     * not already added a value for the same key.
+     * 
+     * @return The value to use for the key.
+     */
+    private <V> V putIfAbsent(final ConcurrentMap<String, V> map, final String key, final V value)
+    {
+        this.misses.incrementAndGet();
+        
+        // Reserve a place in the cache before adding the value, so the size is never exceeded
+        if(this.size.incrementAndGet() > this.maximumSize)
+        {
+            this.size.decrementAndGet();
+            return value;
+        }
+        
+        final V existing = map.putIfAbsent(key, value);
+        if(existing != null)
+        {
+            this.size.decrementAndGet();
+            return existing;
+        }
+        return value;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "size=" + this.getSize() + " hits=" + this.getHitCount() + " misses=" + this.getMissCount();
+    }
+}
@@ -6,8 +6,9 @@ package podd;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -19,6 +20,9 @@ import joptsimple.OptionSpec;
 import net.schmizz.sshj.userauth.password.PasswordFinder;
 
 import com.github.ansell.propertyutil.PropertyUtil;
+import com.github.podd.example.ExampleBagArchiver;
+import com.github.podd.example.ExampleBagUploader;
+import com.github.podd.example.ExampleDerivativeGenerator;
 import com.github.podd.example.ExamplePoddClient;
 
 /**
@@ -49,6 +53,22 @@ public class ExampleCLI
         final OptionSpec<Boolean> dumpBags =
                 parser.accepts("dump-bags").withRequiredArg().ofType(Boolean.class).defaultsTo(Boolean.TRUE)
                         .describedAs("Whether to dump bags");
+        final OptionSpec<String> previewFormat =
+                parser.accepts("preview-format").withRequiredArg().ofType(String.class)
+                        .describedAs("Image format for previews added to the dump. E.g. jpeg");
+        final OptionSpec<Integer> previewSize =
+                parser.accepts("preview-size").withRequiredArg().ofType(Integer.class)
+                        .defaultsTo(ExampleDerivativeGenerator.DEFAULT_MAX_DIMENSION)
+                        .describedAs("Maximum width and height of previews in pixels");
+        final OptionSpec<Boolean> incremental =
+                parser.accepts("incremental").withRequiredArg().ofType(Boolean.class).defaultsTo(Boolean.FALSE)
+                        .describedAs("Whether to only write images that changed since the last dump");
+        final OptionSpec<String> archiveFormat =
+                parser.accepts("archive-format").withRequiredArg().ofType(String.class)
+                        .describedAs("Format to archive dumped bags in. E.g. tar.gz or zip");
+        final OptionSpec<Integer> archiveLevel =
+                parser.accepts("archive-level").withRequiredArg().ofType(Integer.class)
+                        .describedAs("Compression level for bag archives, from 0 to 9");
         final OptionSpec<String> poddClientPropertiesFile =
                 parser.accepts("podd-client-properties").withRequiredArg().ofType(String.class)
                         .describedAs("PODD Client properties file (e.g., 'poddclient' to use poddclient.properties)");
@@ -82,64 +102,140 @@ public class ExampleCLI
         final ExamplePoddClient client = new ExamplePoddClient();
         client.setProps(props);
         
-        if(options.has(help))
-        {
-            parser.printHelpOn(System.out);
-        }
-        else if(options.has(experimentBarcode))
+        try
         {
-            if(options.has(outputDir))
+            if(options.has(help))
+            {
+                parser.printHelpOn(System.out);
+            }
+            else if(options.has(experimentBarcode))
             {
-                final Path outputDirPath = outputDir.value(options).toPath();
-                if(!Files.exists(outputDirPath))
+                if(options.has(outputDir))
                 {
-                    Files.createDirectories(outputDirPath);
-                }
-                // TODO: Implement this to contain real results
-                final Map<String, Path> dumpTrayscanExperiment = new HashMap<>();
+                    final Path outputDirPath = outputDir.value(options).toPath();
+                    if(!Files.exists(outputDirPath))
+                    {
+                        Files.createDirectories(outputDirPath);
+                    }
+                    final Map<String, Path> dumpTrayscanExperiment =
+                            client.dumpTrayScanExperiment(experimentBarcode.value(options), outputDirPath,
+                                    dumpBags.value(options), previewFormat.value(options), previewSize.value(options),
+                                    incremental.value(options));
                 
-                if(!dumpTrayscanExperiment.isEmpty())
-                {
-                    final char[] passphrase =
-                            System.console().readPassword("[%s]", "Enter passphrase to unlock private key: ");
+                    final List<Path> bags = new ArrayList<>();
+                    for(final Entry<String, Path> nextEntry : dumpTrayscanExperiment.entrySet())
+                    {
+                        System.out.println("Dumped: " + nextEntry.getKey() + " => " + nextEntry.getValue());
+                        if(nextEntry.getKey().startsWith("bag"))
+                        {
+                            bags.add(nextEntry.getValue());
+                        }
+                    }
                     
-                    final PasswordFinder keyExtractor = new PasswordFinder()
+                    final String host = props.get(ExampleBagUploader.PROP_HOST, "").trim();
+                    String format =
+                            options.has(archiveFormat) ? archiveFormat.value(options) : props.get(
+                                    ExampleBagArchiver.PROP_FORMAT, "").trim();
+                    if(format.isEmpty() && !host.isEmpty())
+                    {
+                        // Bag directories can only be uploaded as archives
+                        format = ExampleBagArchiver.DEFAULT_FORMAT.toString();
+                    }
+                    final List<Path> toUpload = new ArrayList<>(bags);
+                    if(!format.isEmpty())
+                    {
+                        final int level =
+                                options.has(archiveLevel) ? archiveLevel.value(options) : Integer.parseInt(props
+                                        .get(ExampleBagArchiver.PROP_LEVEL,
+                                                Integer.toString(ExampleBagArchiver.DEFAULT_LEVEL)).trim());
+                        // Upload the archives in place of the bags they were written from
+                        toUpload.clear();
+                        for(final Entry<Path, Path> nextArchive : client.archiveBags(bags,
+                                ExampleBagArchiver.Format.fromName(format), level).entrySet())
                         {
-                            @Override
-                            public boolean shouldRetry(final net.schmizz.sshj.userauth.password.Resource<?> resource)
+                            System.out.println("Archived: " + nextArchive.getKey() + " => " + nextArchive.getValue());
+                            toUpload.add(nextArchive.getValue());
+                        }
+                    }
+                    
+                    if(toUpload.isEmpty())
+                    {
+                        System.out.println("No bags to upload");
+                    }
+                    else if(host.isEmpty())
+                    {
+                        System.out.println("Not uploading bags as no host was set using: "
+                                + ExampleBagUploader.PROP_HOST);
+                    }
+                    else
+                    {
+                        final char[] passphrase =
+                                System.console().readPassword("[%s]", "Enter passphrase to unlock private key: ");
+                        
+                        final PasswordFinder keyExtractor = new PasswordFinder()
                             {
-                                return false;
-                            }
-                            
-                            @Override
-                            public char[] reqPassword(final net.schmizz.sshj.userauth.password.Resource<?> resource)
+                                @Override
+                                public boolean shouldRetry(
+                                        final net.schmizz.sshj.userauth.password.Resource<?> resource)
+                                {
+                                    return false;
+                                }
+                                
+                                @Override
+                                public char[] reqPassword(final net.schmizz.sshj.userauth.password.Resource<?> resource)
+                                {
+                                    return passphrase;
+                                }
+                            };
+                        
+                        try
+                        {
+                            final Map<Path, String> uploaded =
+                                    client.uploadToStorage(toUpload,
+                                            props.get(ExampleBagUploader.PROP_FINGERPRINT, "").trim(), host,
+                                            Integer.parseInt(props.get(ExampleBagUploader.PROP_PORT,
+                                                    Integer.toString(ExampleBagUploader.DEFAULT_PORT)).trim()),
+                                            props.get(ExampleBagUploader.PROP_USERNAME, "").trim(),
+                                            Paths.get(props.get(ExampleBagUploader.PROP_KEY_FILE, "").trim()),
+                                            outputDirPath,
+                                            Paths.get(props.get(ExampleBagUploader.PROP_REMOTE_PATH, "").trim()),
+                                            keyExtractor, Integer.parseInt(props.get(
+                                                    ExampleBagUploader.PROP_SESSION_COUNT,
+                                                    Integer.toString(ExampleBagUploader.DEFAULT_SESSION_COUNT))
+                                                    .trim()));
+                            for(final Entry<Path, String> nextUpload : uploaded.entrySet())
                             {
-                                return passphrase;
+                                System.out.println("Uploaded: " + nextUpload.getKey() + " => "
+                                        + nextUpload.getValue());
                             }
-                        };
-                    
-                    for(final Entry<String, Path> nextEntry : dumpTrayscanExperiment.entrySet())
-                    {
-                        System.out.println("Dumped: " + nextEntry.getKey() + " => " + nextEntry.getValue());
-                        if(nextEntry.getKey().startsWith("bag"))
+                        }
+                        finally
                         {
-                            // TODO: Support the new method
-                            // client.uploadToCherax(Arrays.asList(nextEntry.getValue()),
-                            // outputDirPath, keyExtractor);
+                            // Clear out passphrase from memory at this point
+                            Arrays.fill(passphrase, ' ');
                         }
                     }
-                    // Clear out passphrase from memory at this point
-                    Arrays.fill(passphrase, ' ');
+                }
+                else
+                {
+                    System.err.println("No output-dir specified for experiment dump");
                 }
             }
             else
             {
-                System.err.println("No output-dir specified for experiment dump");
+                parser.printHelpOn(System.out);
             }
         }
-        else
+        finally
         {
-            parser.printHelpOn(System.out);
+            try
+            {
+                client.closeUriResolutionCache();
+            }
+            finally
+            {
+                client.closeMySQLConnections();
+            }
         }
     }
 }
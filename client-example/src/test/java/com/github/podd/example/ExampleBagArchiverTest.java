@@ -0,0 +1,244 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ExampleBagArchiver}, reading the archives back using the JDK.
+ */
+public class ExampleBagArchiverTest
+{
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private Path bag;
+    
+    private final Map<String, byte[]> expected = new LinkedHashMap<>();
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        this.bag = this.tempDir.newFolder("experiment-0001").toPath();
+        
+        // Random data spans several blocks, and repeated text checks matches across blocks
+        final byte[] random = new byte[3 * ExampleParallelDeflateOutputStream.DEFAULT_BLOCK_SIZE + 17];
+        new Random(42).nextBytes(random);
+        final StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 50000; i++)
+        {
+            text.append("pot ").append(i % 97).append('\n');
+        }
+        
+        this.expected.put("bagit.txt", "BagIt-Version: 0.97\n".getBytes(StandardCharsets.UTF_8));
+        this.expected.put("data/empty.txt", new byte[0]);
+        this.expected.put("data/pots.txt", text.toString().getBytes(StandardCharsets.UTF_8));
+        // Longer than the 100 bytes that fit in a ustar header
+        this.expected.put("data/Tray_0000000000000000000000000000001/"
+                + "Pot_0000000000000000000000000000000001/image.png", random);
+        for(final Map.Entry<String, byte[]> nextFile : this.expected.entrySet())
+        {
+            final Path file = this.bag.resolve(nextFile.getKey());
+            Files.createDirectories(file.getParent());
+            Files.write(file, nextFile.getValue());
+        }
+    }
+    
+    @Test
+    public void testTarGz() throws Exception
+    {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (final ExampleBagArchiver archiver = new ExampleBagArchiver(ExampleBagArchiver.Format.TAR_GZ, 6, 4);)
+        {
+            final Path archive = archiver.archive(this.bag);
+            Assert.assertEquals("experiment-0001.tar.gz", archive.getFileName().toString());
+            Assert.assertTrue(ExampleBagArchiver.isArchive(archive));
+            try (final DataInputStream input = new DataInputStream(new GZIPInputStream(Files.newInputStream(archive)));)
+            {
+                String paxPath = null;
+                final byte[] header = new byte[512];
+                while(true)
+                {
+                    input.readFully(header);
+                    if(header[0] == 0)
+                    {
+                        break;
+                    }
+                    final byte[] content = new byte[(int)Long.parseLong(this.readString(header, 124, 11), 8)];
+                    input.readFully(content);
+                    input.readFully(new byte[(512 - content.length % 512) % 512]);
+                    if(header[156] == 'x')
+                    {
+                        final String record = new String(content, StandardCharsets.UTF_8);
+                        paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                    }
+                    else
+                    {
+                        entries.put(paxPath != null ? paxPath : this.readString(header, 0, 100), content);
+                        paxPath = null;
+                    }
+                }
+                // The rest of the archive is padding
+                Assert.assertEquals("", this.readRemaining(input).replace("\0", ""));
+            }
+        }
+        this.assertEntries(entries);
+    }
+    
+    @Test
+    public void testTarGzClampsModificationTime() throws Exception
+    {
+        for(final String nextPath : this.expected.keySet())
+        {
+            Files.setLastModifiedTime(this.bag.resolve(nextPath), FileTime.fromMillis(-86400000L));
+        }
+        try (final ExampleBagArchiver archiver = new ExampleBagArchiver(ExampleBagArchiver.Format.TAR_GZ, 6, 4);)
+        {
+            final Path archive = archiver.archive(this.bag);
+            try (final DataInputStream input = new DataInputStream(new GZIPInputStream(Files.newInputStream(archive)));)
+            {
+                final byte[] header = new byte[512];
+                input.readFully(header);
+                Assert.assertEquals("00000000000", this.readString(header, 136, 11));
+            }
+        }
+    }
+    
+    @Test
+    public void testWriteOctal() throws Exception
+    {
+        final byte[] header = new byte[512];
+        ExampleBagArchiver.writeOctal(header, 100, 8, 0644);
+        Assert.assertEquals("0000644", this.readString(header, 100, 8));
+        Assert.assertEquals(0, header[107]);
+        ExampleBagArchiver.writeOctal(header, 100, 8, 07777777);
+        Assert.assertEquals("7777777", this.readString(header, 100, 8));
+        
+        for(final long nextValue : new long[] { -1, 010000000 })
+        {
+            try
+            {
+                ExampleBagArchiver.writeOctal(header, 100, 8, nextValue);
+                Assert.fail("Did not find expected exception");
+            }
+            catch(final IllegalArgumentException e)
+            {
+                Assert.assertTrue(e.getMessage().contains(Long.toString(nextValue)));
+            }
+        }
+    }
+    
+    @Test
+    public void testZip() throws Exception
+    {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (final ExampleBagArchiver archiver = new ExampleBagArchiver(ExampleBagArchiver.Format.ZIP, 9, 2);)
+        {
+            final Path archive = archiver.archive(this.bag);
+            Assert.assertEquals("experiment-0001.zip", archive.getFileName().toString());
+            try (final ZipFile zipFile = new ZipFile(archive.toFile());)
+            {
+                final Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                while(zipEntries.hasMoreElements())
+                {
+                    final ZipEntry nextEntry = zipEntries.nextElement();
+                    try (final InputStream input = zipFile.getInputStream(nextEntry);)
+                    {
+                        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                        final byte[] buffer = new byte[8192];
+                        int read;
+                        while((read = input.read(buffer)) >= 0)
+                        {
+                            content.write(buffer, 0, read);
+                        }
+                        entries.put(nextEntry.getName(), content.toByteArray());
+                    }
+                }
+            }
+        }
+        this.assertEntries(entries);
+    }
+    
+    @Test
+    public void testFormatFromName() throws Exception
+    {
+        Assert.assertEquals(ExampleBagArchiver.Format.TAR_GZ, ExampleBagArchiver.Format.fromName("tar.gz"));
+        Assert.assertEquals(ExampleBagArchiver.Format.ZIP, ExampleBagArchiver.Format.fromName("ZIP"));
+        try
+        {
+            ExampleBagArchiver.Format.fromName("rar");
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final IllegalArgumentException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("rar"));
+        }
+    }
+    
+    private void assertEntries(final Map<String, byte[]> entries)
+    {
+        Assert.assertEquals(this.expected.size(), entries.size());
+        for(final Map.Entry<String, byte[]> nextFile : this.expected.entrySet())
+        {
+            final byte[] content = entries.get("experiment-0001/" + nextFile.getKey());
+            Assert.assertNotNull(nextFile.getKey(), content);
+            Assert.assertTrue(nextFile.getKey(), Arrays.equals(nextFile.getValue(), content));
+        }
+    }
+    
+    private String readRemaining(final InputStream input) throws IOException
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int read;
+        while((read = input.read()) >= 0)
+        {
+            result.write(read);
+        }
+        return result.toString(StandardCharsets.US_ASCII.name());
+    }
+    
+    private String readString(final byte[] header, final int offset, final int length)
+    {
+        int end = offset;
+        while(end < offset + length && header[end] != 0)
+        {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
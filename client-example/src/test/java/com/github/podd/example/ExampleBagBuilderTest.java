@@ -0,0 +1,179 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ExampleBagBuilder}.
+ */
+public class ExampleBagBuilderTest
+{
+    /**
+     * The SHA-256 digest of "abcdef".
+     */
+    private static final String ABCDEF_SHA256 = "bef57ec7f53a6d40beb640a780a639c83bc29ac8a9816f1fc6c5c6dcd93c4721";
+    
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private Path outputDirectory;
+    
+    private Path source;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        this.outputDirectory = this.tempDir.newFolder("bags").toPath();
+        this.source = this.tempDir.newFile("source.dat").toPath();
+        Files.write(this.source, "abcdef".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testBagsSplitAtMaximumSize() throws Exception
+    {
+        final List<Path> bags;
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 2, true);)
+        {
+            builder.addPayload(this.source, "tray1/pot1/a.png");
+            builder.addPayload(this.source, "tray1/pot2/b.png");
+            builder.addPayload("abcdef".getBytes(StandardCharsets.UTF_8), "tray2/c.png");
+            bags = builder.finish();
+        }
+        
+        Assert.assertEquals(3, bags.size());
+        Assert.assertEquals(this.outputDirectory.resolve("experiment-0001"), bags.get(0));
+        Assert.assertTrue(Files.exists(bags.get(1).resolve("data/tray1/pot2/b.png")));
+        Assert.assertTrue(Files.exists(bags.get(2).resolve("data/tray2/c.png")));
+        
+        final String manifest =
+                new String(Files.readAllBytes(bags.get(0).resolve("manifest-sha256.txt")), StandardCharsets.UTF_8);
+        Assert.assertTrue(manifest, manifest.contains(ExampleBagBuilderTest.ABCDEF_SHA256));
+        Assert.assertTrue(manifest, manifest.contains("data/tray1/pot1/a.png"));
+        Assert.assertFalse(manifest, manifest.contains("b.png"));
+        Assert.assertTrue(Files.exists(bags.get(0).resolve("bagit.txt")));
+    }
+    
+    @Test
+    public void testFilesLargerThanMaximumSizeHaveTheirOwnBag() throws Exception
+    {
+        final List<Path> bags;
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 4, 1, true);)
+        {
+            builder.addPayload(this.source, "a.png");
+            builder.addPayload(new byte[1], "b.png");
+            builder.addPayload(new byte[1], "c.png");
+            bags = builder.finish();
+        }
+        
+        Assert.assertEquals(2, bags.size());
+        Assert.assertTrue(Files.exists(bags.get(1).resolve("data/b.png")));
+        Assert.assertTrue(Files.exists(bags.get(1).resolve("data/c.png")));
+    }
+    
+    @Test
+    public void testHardLinksDisabledCopiesPayload() throws Exception
+    {
+        final List<Path> bags;
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 1, true);)
+        {
+            builder.getImageStager().setHardLinks(false);
+            builder.addPayload(this.source, "a.png");
+            bags = builder.finish();
+        }
+        
+        final Path payload = bags.get(0).resolve("data/a.png");
+        Assert.assertFalse(Files.isSameFile(this.source, payload));
+        Assert.assertArrayEquals(Files.readAllBytes(this.source), Files.readAllBytes(payload));
+    }
+    
+    @Test(expected = IOException.class)
+    public void testInvalidPngFailsBag() throws Exception
+    {
+        final Path brokenPng = this.tempDir.newFile("broken.png").toPath();
+        Files.write(brokenPng, "abcdef".getBytes(StandardCharsets.UTF_8));
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 1, true);)
+        {
+            builder.addPayload(brokenPng, "a.png");
+            builder.finish();
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPayloadPath() throws Exception
+    {
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 1, true);)
+        {
+            builder.addPayload(this.source, "tray1/../../outside.png");
+        }
+    }
+    
+    @Test
+    public void testRerunReusesKnownPayloadsAndRemovesStaleFiles() throws Exception
+    {
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 1, false);)
+        {
+            builder.addPayload(this.source, "tray1/a.png");
+            builder.addPayload(this.source, "tray2/b.png");
+            builder.finish();
+        }
+        
+        final List<ExampleStagedImage> staged;
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 10, 1, false);)
+        {
+            builder.addPayload(this.source, "tray1/a.png", ExampleBagBuilderTest.ABCDEF_SHA256);
+            builder.finish();
+            staged = builder.getStagedFiles();
+        }
+        
+        Assert.assertEquals(1, staged.size());
+        Assert.assertTrue(staged.get(0).reused);
+        Assert.assertEquals(ExampleBagBuilderTest.ABCDEF_SHA256, staged.get(0).digest);
+        Assert.assertTrue(Files.exists(this.outputDirectory.resolve("experiment/tray1/a.png")));
+        Assert.assertFalse(Files.exists(this.outputDirectory.resolve("experiment/tray2")));
+    }
+    
+    @Test
+    public void testUnbaggedPayloadIsNotSplit() throws Exception
+    {
+        final List<Path> directories;
+        try (final ExampleBagBuilder builder = new ExampleBagBuilder(this.outputDirectory, "experiment", 1, 4, false);)
+        {
+            for(int i = 0; i < 20; i++)
+            {
+                builder.addPayload(this.source, "tray1/image" + i + ".png");
+            }
+            directories = builder.finish();
+        }
+        
+        Assert.assertEquals(1, directories.size());
+        Assert.assertEquals(this.outputDirectory.resolve("experiment"), directories.get(0));
+        Assert.assertArrayEquals("abcdef".getBytes(StandardCharsets.UTF_8),
+                Files.readAllBytes(directories.get(0).resolve("tray1/image19.png")));
+        Assert.assertFalse(Files.exists(directories.get(0).resolve("bagit.txt")));
+    }
+}
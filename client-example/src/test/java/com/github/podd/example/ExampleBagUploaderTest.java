@@ -0,0 +1,471 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.schmizz.sshj.common.SecurityUtils;
+import net.schmizz.sshj.userauth.keyprovider.KeyPairWrapper;
+
+import org.apache.sshd.SshServer;
+import org.apache.sshd.common.KeyPairProvider;
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.CommandFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.PublickeyAuthenticator;
+import org.apache.sshd.server.filesystem.NativeFileSystemFactory;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.apache.sshd.server.sftp.SftpSubsystem;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.podd.client.api.PoddClientException;
+import com.github.podd.utils.PoddDigestUtils.Algorithm;
+
+/**
+ * Tests for {@link ExampleBagUploader} using an embedded Apache SSHD server.
+ */
+public class ExampleBagUploaderTest
+{
+    /**
+     * Computes SHA-1 digests for <code>sha1sum -b '&lt;path&gt;'</code> commands, in the same format as
+     * <code>sha1sum</code>, so that the tests do not depend on the commands available on the test machine.
+     */
+    private static class DigestCommand implements Command
+    {
+        private final String command;
+        
+        private OutputStream out;
+        
+        private ExitCallback callback;
+        
+        DigestCommand(final String command)
+        {
+            this.command = command;
+        }
+        
+        @Override
+        public void destroy()
+        {
+        }
+        
+        @Override
+        public void setErrorStream(final OutputStream err)
+        {
+        }
+        
+        @Override
+        public void setExitCallback(final ExitCallback callback)
+        {
+            this.callback = callback;
+        }
+        
+        @Override
+        public void setInputStream(final InputStream in)
+        {
+        }
+        
+        @Override
+        public void setOutputStream(final OutputStream out)
+        {
+            this.out = out;
+        }
+        
+        @Override
+        public void start(final Environment env) throws IOException
+        {
+            final String prefix = "sha1sum -b '";
+            if(!this.command.startsWith(prefix) || !this.command.endsWith("'"))
+            {
+                this.callback.onExit(127, "Command not found: " + this.command);
+                return;
+            }
+            
+            final String path =
+                    this.command.substring(prefix.length(), this.command.length() - 1).replace("'\\''", "'");
+            final String digest = ExampleBagUploaderTest.sha1(Files.readAllBytes(Paths.get(path)));
+            this.out.write((digest + " *" + path + "\n").getBytes(StandardCharsets.UTF_8));
+            this.out.flush();
+            this.callback.onExit(0);
+        }
+    }
+    
+    private static final String USERNAME = "podd";
+    
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private SshServer sshd;
+    
+    private int port;
+    
+    private String fingerprint;
+    
+    private KeyPair clientKey;
+    
+    private Path localRoot;
+    
+    private Path remoteRoot;
+    
+    private final Map<Path, Map<Algorithm, String>> noDigests = Collections.emptyMap();
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        try (final ServerSocket socket = new ServerSocket(0);)
+        {
+            this.port = socket.getLocalPort();
+        }
+        
+        this.clientKey = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final PublicKey allowedKey = this.clientKey.getPublic();
+        
+        final SimpleGeneratorHostKeyProvider hostKeyProvider =
+                new SimpleGeneratorHostKeyProvider(this.tempDir.newFile("hostkey.ser").getAbsolutePath());
+        this.fingerprint = SecurityUtils.getFingerprint(hostKeyProvider.loadKey(KeyPairProvider.SSH_DSS).getPublic());
+        
+        this.sshd = SshServer.setUpDefaultServer();
+        this.sshd.setPort(this.port);
+        this.sshd.setKeyPairProvider(hostKeyProvider);
+        this.sshd.setPublickeyAuthenticator(new PublickeyAuthenticator()
+            {
+                @Override
+                public boolean authenticate(final String username, final PublicKey key, final ServerSession session)
+                {
+                    return ExampleBagUploaderTest.USERNAME.equals(username) && allowedKey.equals(key);
+                }
+            });
+        this.sshd.setSubsystemFactories(Arrays.<NamedFactory<Command>> asList(new SftpSubsystem.Factory()));
+        this.sshd.setFileSystemFactory(new NativeFileSystemFactory());
+        this.sshd.setCommandFactory(new CommandFactory()
+            {
+                @Override
+                public Command createCommand(final String command)
+                {
+                    return new DigestCommand(command);
+                }
+            });
+        this.sshd.start();
+        
+        this.localRoot = this.tempDir.newFolder("local").toPath().toAbsolutePath();
+        this.remoteRoot = this.tempDir.newFolder("remote").toPath().toAbsolutePath();
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        this.sshd.stop(true);
+    }
+    
+    private Path createBag(final String name, final int size, final long seed) throws IOException
+    {
+        final byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        final Path result = this.localRoot.resolve("experiment").resolve(name);
+        Files.createDirectories(result.getParent());
+        Files.write(result, content);
+        return result;
+    }
+    
+    private ExampleBagUploader createUploader(final int sessionCount)
+    {
+        return new ExampleBagUploader(this.fingerprint, "localhost", this.port, ExampleBagUploaderTest.USERNAME,
+                new KeyPairWrapper(this.clientKey), sessionCount);
+    }
+    
+    private ExampleBagUploader createUploader(final int sessionCount, final boolean useRemoteCommands)
+    {
+        return new ExampleBagUploader(this.fingerprint, "localhost", this.port, ExampleBagUploaderTest.USERNAME,
+                new KeyPairWrapper(this.clientKey), sessionCount, new ExampleRemoteDigestVerifier(useRemoteCommands));
+    }
+    
+    private Map<Path, Map<Algorithm, String>> digests(final Path bag) throws IOException
+    {
+        return Collections.singletonMap(bag,
+                Collections.singletonMap(Algorithm.SHA1, ExampleBagUploaderTest.sha1(Files.readAllBytes(bag))));
+    }
+    
+    private Path remotePath(final Path bag)
+    {
+        return this.remoteRoot.resolve(this.localRoot.relativize(bag));
+    }
+    
+    private static String sha1(final byte[] content)
+    {
+        try
+        {
+            final StringBuilder result = new StringBuilder();
+            for(final byte nextByte : MessageDigest.getInstance("SHA-1").digest(content))
+            {
+                result.append(String.format("%02x", nextByte));
+            }
+            return result.toString();
+        }
+        catch(final NoSuchAlgorithmException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+    
+    @Test
+    public void testUploadComputesDigestsWhileResuming() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        final Path remoteDigest = remoteBag.resolveSibling(remoteBag.getFileName() + Algorithm.SHA1.getExtension());
+        Files.createDirectories(remoteBag.getParent());
+        Files.write(remoteBag, Arrays.copyOf(Files.readAllBytes(bag), 120000));
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            // Use sizes that do not divide the bag evenly to check the ends of each buffer
+            uploader.setReadBufferSize(10007);
+            uploader.setWriteBufferSize(4093);
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(120000, result.offset);
+            Assert.assertEquals(80000, result.bytesTransferred);
+            Assert.assertTrue(result.digestVerified);
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(bag), Files.readAllBytes(remoteBag));
+        Assert.assertEquals(ExampleBagUploaderTest.sha1(Files.readAllBytes(bag)),
+                new String(Files.readAllBytes(remoteDigest), StandardCharsets.UTF_8).trim());
+    }
+    
+    @Test
+    public void testUploadInParallel() throws Exception
+    {
+        final List<Path> bags =
+                Arrays.asList(this.createBag("bag-1.zip", 200000, 1), this.createBag("bag-2.zip", 300000, 2),
+                        this.createBag("bag-3.zip", 100000, 3));
+        
+        try (final ExampleBagUploader uploader = this.createUploader(2);)
+        {
+            final List<ExampleBagTransfer> results =
+                    uploader.upload(bags, this.noDigests, this.localRoot, this.remoteRoot);
+            
+            Assert.assertEquals(bags.size(), results.size());
+            for(int i = 0; i < bags.size(); i++)
+            {
+                final ExampleBagTransfer nextResult = results.get(i);
+                Assert.assertEquals(bags.get(i), nextResult.localPath);
+                Assert.assertEquals(0, nextResult.offset);
+                Assert.assertEquals(Files.size(bags.get(i)), nextResult.bytesTransferred);
+                Assert.assertArrayEquals(Files.readAllBytes(bags.get(i)),
+                        Files.readAllBytes(this.remotePath(bags.get(i))));
+            }
+        }
+    }
+    
+    @Test
+    public void testUploadKeepsSameSizeBagWithoutRemoteCommands() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        Files.createDirectories(remoteBag.getParent());
+        final byte[] otherContent = new byte[200000];
+        new Random(99).nextBytes(otherContent);
+        Files.write(remoteBag, otherContent);
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1, false);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.digests(bag), this.localRoot, this.remoteRoot).get(0);
+            
+            // Without remote digests only the sizes can be compared
+            Assert.assertEquals(0, result.bytesTransferred);
+            Assert.assertFalse(result.digestVerified);
+        }
+        Assert.assertArrayEquals(otherContent, Files.readAllBytes(remoteBag));
+    }
+    
+    @Test
+    public void testUploadRejectsBagDirectory() throws Exception
+    {
+        // Bags are dumped as directories, and are only uploaded as files after they are archived
+        final Path bag = this.localRoot.resolve("experiment").resolve("bag-1");
+        Files.createDirectories(bag.resolve("data"));
+        Files.write(bag.resolve("bagit.txt"), "BagIt-Version: 0.97\n".getBytes(StandardCharsets.UTF_8));
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            uploader.upload(Arrays.asList(bag), this.localRoot, this.remoteRoot);
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final PoddClientException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("archiveBags"));
+        }
+        Assert.assertFalse(Files.exists(this.remotePath(bag)));
+    }
+    
+    @Test
+    public void testUploadReplacesMismatchedDigestFile() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        final Path remoteDigest = remoteBag.resolveSibling(remoteBag.getFileName() + Algorithm.SHA1.getExtension());
+        Files.createDirectories(remoteBag.getParent());
+        Files.copy(bag, remoteBag);
+        Files.write(remoteDigest, "0000000000000000000000000000000000000000".getBytes(StandardCharsets.UTF_8));
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.digests(bag), this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(0, result.bytesTransferred);
+            Assert.assertTrue(result.digestVerified);
+        }
+        Assert.assertEquals(ExampleBagUploaderTest.sha1(Files.readAllBytes(bag)),
+                new String(Files.readAllBytes(remoteDigest), StandardCharsets.UTF_8).trim());
+    }
+    
+    @Test
+    public void testUploadReplacesMismatchedPartialBag() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        Files.createDirectories(remoteBag.getParent());
+        final byte[] otherContent = new byte[50000];
+        new Random(99).nextBytes(otherContent);
+        Files.write(remoteBag, otherContent);
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.noDigests, this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(0, result.offset);
+            Assert.assertEquals(200000, result.bytesTransferred);
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(bag), Files.readAllBytes(remoteBag));
+    }
+    
+    @Test
+    public void testUploadReplacesSameSizeBagWithDifferentDigest() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        Files.createDirectories(remoteBag.getParent());
+        final byte[] otherContent = new byte[200000];
+        new Random(99).nextBytes(otherContent);
+        Files.write(remoteBag, otherContent);
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.digests(bag), this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(0, result.offset);
+            Assert.assertEquals(200000, result.bytesTransferred);
+            Assert.assertTrue(result.digestVerified);
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(bag), Files.readAllBytes(remoteBag));
+    }
+    
+    @Test
+    public void testUploadReportsTransfersBeforeFailure() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        // Bags outside the local root path fail after the first bag has been uploaded
+        final Path outsideBag = this.tempDir.newFile("bag-2.zip").toPath().toAbsolutePath();
+        final List<Path> transferred = Collections.synchronizedList(new ArrayList<Path>());
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            uploader.setTransferListener(new ExampleBagTransferListener()
+                {
+                    @Override
+                    public void transferred(final ExampleBagTransfer transfer)
+                    {
+                        transferred.add(transfer.localPath);
+                    }
+                });
+            uploader.upload(Arrays.asList(bag, outsideBag), this.localRoot, this.remoteRoot);
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final PoddClientException e)
+        {
+            // Expected
+        }
+        Assert.assertEquals(Arrays.asList(bag), transferred);
+        Assert.assertArrayEquals(Files.readAllBytes(bag), Files.readAllBytes(this.remotePath(bag)));
+    }
+    
+    @Test
+    public void testUploadResumesPartialBag() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        Files.createDirectories(remoteBag.getParent());
+        Files.write(remoteBag, Arrays.copyOf(Files.readAllBytes(bag), 120000));
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.noDigests, this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(120000, result.offset);
+            Assert.assertEquals(80000, result.bytesTransferred);
+        }
+        Assert.assertArrayEquals(Files.readAllBytes(bag), Files.readAllBytes(remoteBag));
+    }
+    
+    @Test
+    public void testUploadSkipsCompleteBag() throws Exception
+    {
+        final Path bag = this.createBag("bag-1.zip", 200000, 1);
+        final Path remoteBag = this.remotePath(bag);
+        Files.createDirectories(remoteBag.getParent());
+        Files.copy(bag, remoteBag);
+        
+        try (final ExampleBagUploader uploader = this.createUploader(1);)
+        {
+            final ExampleBagTransfer result =
+                    uploader.upload(Arrays.asList(bag), this.noDigests, this.localRoot, this.remoteRoot).get(0);
+            
+            Assert.assertEquals(0, result.bytesTransferred);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates the inputs used by the import benchmarks, with sizes given by the benchmark
+ * parameters, and stand-ins for the TrayScan database procedures.
+ */
+public final class ExampleBenchmarkFixtures
+{
+    public static final String GENUS = "Triticum";
+    
+    public static final String SPECIES = "aestivum";
+    
+    /**
+     * The number of pots generated in each tray.
+     */
+    public static final int POTS_PER_TRAY = 20;
+    
+    /**
+     * The TrayScan headers, in the order they appear in TrayScan lists.
+     */
+    public static final List<String> TRAYSCAN_HEADERS = Arrays.asList(ExampleSpreadsheetConstants.CLIENT_YEAR,
+            ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER, ExampleSpreadsheetConstants.CLIENT_PROJECT_ID,
+            ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_NUMBER, ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_ID,
+            ExampleSpreadsheetConstants.CLIENT_GENUS, ExampleSpreadsheetConstants.CLIENT_SPECIES,
+            ExampleSpreadsheetConstants.CLIENT_POT_NUMBER, ExampleSpreadsheetConstants.CLIENT_TRAY_NUMBER,
+            ExampleSpreadsheetConstants.CLIENT_POT_NUMBER_TRAY, ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_TRAY,
+            ExampleSpreadsheetConstants.CLIENT_COLUMN_LETTER, ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_TRAY,
+            ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_REP, ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_REP,
+            ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER, ExampleSpreadsheetConstants.CLIENT_TRAY_ID,
+            ExampleSpreadsheetConstants.CLIENT_TRAY_NOTES, ExampleSpreadsheetConstants.CLIENT_TRAY_ROW_NUMBER,
+            ExampleSpreadsheetConstants.CLIENT_TRAY_TYPE_NAME, ExampleSpreadsheetConstants.CLIENT_POSITION,
+            ExampleSpreadsheetConstants.CLIENT_PLANT_ID, ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER,
+            ExampleSpreadsheetConstants.CLIENT_PLANT_NAME, ExampleSpreadsheetConstants.CLIENT_PLANT_NOTES,
+            ExampleSpreadsheetConstants.CLIENT_POT_TYPE, ExampleSpreadsheetConstants.CLIENT_CONTROL,
+            ExampleSpreadsheetConstants.CLIENT_REPLICATE_NUMBER,
+            ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER);
+    
+    /**
+     * Removes every row from the TrayScan tables created by
+     * {@link #createTrayScanDatabase(Connection)}, so that the next lines written are inserted
+     * rather than found to already exist.
+     */
+    public static void clearTrayScanDatabase(final Connection connection) throws SQLException
+    {
+        try (final Statement statement = connection.createStatement();)
+        {
+            statement.execute("TRUNCATE TABLE tab_tray");
+            statement.execute("TRUNCATE TABLE tab_plant");
+            statement.execute("TRUNCATE TABLE tab_assign");
+        }
+    }
+    
+    /**
+     * Creates the TrayScan tables and stand-ins for the stored procedures in an H2 database. The
+     * tables do not have keys, so that the same lines can be written more than once.
+     */
+    public static void createTrayScanDatabase(final Connection connection) throws SQLException
+    {
+        final String className = ExampleBenchmarkFixtures.class.getName();
+        try (final Statement statement = connection.createStatement();)
+        {
+            statement.execute("CREATE TABLE tab_tray (tray_textId VARCHAR(255), tray_type VARCHAR(255), "
+                    + "tray_notes VARCHAR(255))");
+            statement.execute("CREATE TABLE tab_plant (plant_textId VARCHAR(255), pot_type VARCHAR(255), "
+                    + "plant_name VARCHAR(255), plant_notes VARCHAR(255))");
+            statement.execute("CREATE TABLE tab_assign (tray_textId VARCHAR(255), plant_textId VARCHAR(255), "
+                    + "position VARCHAR(255))");
+            statement.execute("CREATE ALIAS StoreTray FOR \"" + className + ".storeTray\"");
+            statement.execute("CREATE ALIAS StorePlant FOR \"" + className + ".storePlant\"");
+            statement.execute("CREATE ALIAS StoreAssign FOR \"" + className + ".storeAssign\"");
+        }
+    }
+    
+    public static String experimentName(final int project, final int experiment)
+    {
+        return String.format(ExampleSpreadsheetConstants.TEMPLATE_EXPERIMENT, 2013, project, experiment);
+    }
+    
+    private static void insert(final Connection connection, final String sql, final String... values)
+        throws SQLException
+    {
+        try (final PreparedStatement statement = connection.prepareStatement(sql);)
+        {
+            for(int i = 0; i < values.length; i++)
+            {
+                statement.setString(i + 1, values[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+    
+    /**
+     * Generates a line name mapping list with the given number of rows.
+     */
+    public static byte[] lineNameMappingList(final int rows)
+    {
+        final StringBuilder result = new StringBuilder(rows * 24);
+        result.append('"').append(ExampleLineMappingConstants.RAND_LINE_NUMBER).append("\",\"")
+                .append(ExampleLineMappingConstants.RAND_CLIENT_LINE_NAME).append("\"\r\n");
+        for(int row = 1; row <= rows; row++)
+        {
+            result.append(row).append(",\"").append(ExampleBenchmarkFixtures.lineName(row)).append("\"\r\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    public static String lineName(final int genotype)
+    {
+        return "Line " + genotype;
+    }
+    
+    /**
+     * Generates an LST file with the given number of rows.
+     */
+    public static byte[] lstFile(final int rows)
+    {
+        final StringBuilder result = new StringBuilder(rows * 48);
+        result.append("UNIT   ID    ENTRY ROW RANGE REP TRT   B111  B121\r\n");
+        for(int unit = 1; unit <= rows; unit++)
+        {
+            result.append(unit).append("   ").append(1000 + unit % 500).append("\t").append(unit % 500).append("  ")
+                    .append(unit % 40).append("  ").append(unit / 40 % 200).append(" ").append(unit % 4 + 1)
+                    .append("  ").append(unit % 7).append("   ").append(unit % 11).append("     ")
+                    .append(unit % 13).append("\r\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    public static String projectName(final int project)
+    {
+        return String.format(ExampleSpreadsheetConstants.TEMPLATE_PROJECT, 2013, project);
+    }
+    
+    /**
+     * Stand-in for the StoreAssign procedure.
+     */
+    public static void storeAssign(final Connection connection, final String trayId, final String plantId,
+            final String position) throws SQLException
+    {
+        ExampleBenchmarkFixtures.insert(connection, "INSERT INTO tab_assign VALUES (?, ?, ?)", trayId, plantId,
+                position);
+    }
+    
+    /**
+     * Stand-in for the StorePlant procedure.
+     */
+    public static void storePlant(final Connection connection, final String plantId, final String potType,
+            final String plantName, final String plantNotes) throws SQLException
+    {
+        ExampleBenchmarkFixtures.insert(connection, "INSERT INTO tab_plant VALUES (?, ?, ?, ?)", plantId, potType,
+                plantName, plantNotes);
+    }
+    
+    /**
+     * Stand-in for the StoreTray procedure.
+     */
+    public static void storeTray(final Connection connection, final String trayId, final String trayTypeName,
+            final String trayNotes) throws SQLException
+    {
+        ExampleBenchmarkFixtures.insert(connection, "INSERT INTO tab_tray VALUES (?, ?, ?)", trayId, trayTypeName,
+                trayNotes);
+    }
+    
+    /**
+     * Generates a TrayScan list containing the headers and the rows generated by
+     * {@link #trayScanRows(int, int, int, int)}, with every value quoted.
+     */
+    public static byte[] trayScanList(final int rows, final int projectCount, final int experimentCount,
+            final int genotypeCount)
+    {
+        final List<List<String>> lines = new ArrayList<>(rows + 1);
+        lines.add(ExampleBenchmarkFixtures.TRAYSCAN_HEADERS);
+        lines.addAll(ExampleBenchmarkFixtures.trayScanRows(rows, projectCount, experimentCount, genotypeCount));
+        
+        final StringBuilder result = new StringBuilder(rows * 512);
+        for(final List<String> nextLine : lines)
+        {
+            for(int i = 0; i < nextLine.size(); i++)
+            {
+                if(i > 0)
+                {
+                    result.append(',');
+                }
+                result.append('"').append(nextLine.get(i).replace("\"", "\"\"")).append('"');
+            }
+            result.append("\r\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Generates the rows of a TrayScan list, in the order of {@link #TRAYSCAN_HEADERS}, spread
+     * evenly across the given number of projects and experiments, with
+     * {@link #POTS_PER_TRAY} pots in each tray and each pot using one of the given number of
+     * genotypes.
+     */
+    public static List<List<String>> trayScanRows(final int rows, final int projectCount, final int experimentCount,
+            final int genotypeCount)
+    {
+        final List<List<String>> result = new ArrayList<>(rows);
+        for(int row = 0; row < rows; row++)
+        {
+            final int tray = row / ExampleBenchmarkFixtures.POTS_PER_TRAY + 1;
+            final int potInTray = row % ExampleBenchmarkFixtures.POTS_PER_TRAY + 1;
+            final int project = tray % projectCount + 1;
+            final int experiment = tray / projectCount % experimentCount + 1;
+            final int genotype = row % genotypeCount + 1;
+            final String experimentName = ExampleBenchmarkFixtures.experimentName(project, experiment);
+            final String trayId =
+                    String.format("%s_%s.%s_Tray#%05d", experimentName, ExampleBenchmarkFixtures.GENUS,
+                            ExampleBenchmarkFixtures.SPECIES, tray);
+            final String plantId = String.format("%s_Pot#%05d", trayId, row + 1);
+            final char columnLetter = (char)('A' + (potInTray - 1) % 5);
+            final int rowInTray = (potInTray - 1) / 5 + 1;
+            
+            result.add(Arrays.asList("2013", Integer.toString(project), ExampleBenchmarkFixtures.projectName(project),
+                    Integer.toString(experiment), experimentName, ExampleBenchmarkFixtures.GENUS,
+                    ExampleBenchmarkFixtures.SPECIES, Integer.toString(row + 1), Integer.toString(tray),
+                    Integer.toString(potInTray), Integer.toString((potInTray - 1) % 5 + 1),
+                    Character.toString(columnLetter), Integer.toString(rowInTray), Integer.toString(rowInTray),
+                    Integer.toString((potInTray - 1) % 5 + 1), Integer.toString((potInTray - 1) % 5 + 1), trayId,
+                    "Tray " + tray, Integer.toString(rowInTray), "Standard", columnLetter + Integer.toString(rowInTray),
+                    plantId, Integer.toString(genotype), ExampleBenchmarkFixtures.lineName(genotype),
+                    "Plant " + (row + 1), "Small", row % 10 == 0 ? "Yes" : "No", "1", "1"));
+        }
+        return result;
+    }
+}
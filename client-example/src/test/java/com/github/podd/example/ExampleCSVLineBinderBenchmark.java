@@ -0,0 +1,252 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Compares the throughput of binding TrayScan rows using {@link ExampleCSVLineBinder}, which finds
+ * the column for each header once, against comparing every header with each of the supported
+ * headers for every field of every row, as was done before the binder was added.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExampleCSVLineBinderBenchmark
+{
+    /**
+     * The supported headers, in the order they appear in TrayScan lists.
+     */
+    private static final List<String> ALL_HEADERS = Arrays.asList(
+                ExampleSpreadsheetConstants.CLIENT_YEAR, ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER,
+                ExampleSpreadsheetConstants.CLIENT_PROJECT_ID, ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_NUMBER,
+                ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_ID, ExampleSpreadsheetConstants.CLIENT_GENUS,
+                ExampleSpreadsheetConstants.CLIENT_SPECIES, ExampleSpreadsheetConstants.CLIENT_POT_NUMBER,
+                ExampleSpreadsheetConstants.CLIENT_TRAY_NUMBER, ExampleSpreadsheetConstants.CLIENT_POT_NUMBER_TRAY,
+                ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_TRAY, ExampleSpreadsheetConstants.CLIENT_COLUMN_LETTER,
+                ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_TRAY, ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_REP,
+                ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_REP, ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER,
+                ExampleSpreadsheetConstants.CLIENT_TRAY_ID, ExampleSpreadsheetConstants.CLIENT_TRAY_NOTES,
+                ExampleSpreadsheetConstants.CLIENT_TRAY_ROW_NUMBER, ExampleSpreadsheetConstants.CLIENT_TRAY_TYPE_NAME,
+                ExampleSpreadsheetConstants.CLIENT_POSITION, ExampleSpreadsheetConstants.CLIENT_PLANT_ID,
+                ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER, ExampleSpreadsheetConstants.CLIENT_PLANT_NAME,
+                ExampleSpreadsheetConstants.CLIENT_PLANT_NOTES, ExampleSpreadsheetConstants.CLIENT_POT_TYPE,
+                ExampleSpreadsheetConstants.CLIENT_CONTROL, ExampleSpreadsheetConstants.CLIENT_REPLICATE_NUMBER,
+                ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER);
+    
+    private List<String> headers;
+    
+    private List<String> row;
+    
+    private ExampleCSVLineBinder binder;
+    
+    public static void main(final String... args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ExampleCSVLineBinderBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+    /**
+     * The binding used before {@link ExampleCSVLineBinder}, kept here as the baseline.
+     */
+    private static ExampleCSVLine bindByComparingHeaders(final List<String> headers, final List<String> nextLine)
+        throws PoddClientException
+    {
+        final ExampleCSVLine result = new ExampleCSVLine();
+        
+        for(int i = 0; i < headers.size(); i++)
+        {
+            final String nextHeader = headers.get(i);
+            final String nextField = nextLine.get(i);
+            
+            if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_YEAR))
+            {
+                result.year = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER))
+            {
+                result.projectNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PROJECT_ID))
+            {
+                result.projectID = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_NUMBER))
+            {
+                result.experimentNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_EXPERIMENT_ID))
+            {
+                result.experimentID = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_GENUS))
+            {
+                result.genus = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_SPECIES))
+            {
+                result.species = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER))
+            {
+                result.potNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_NUMBER))
+            {
+                result.trayNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_NUMBER_TRAY))
+            {
+                result.potNumberTray = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_TRAY))
+            {
+                result.columnNumberTray = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_LETTER))
+            {
+                result.columnLetter = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_TRAY))
+            {
+                result.rowNumberTray = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_ROW_NUMBER_REP))
+            {
+                result.rowNumberRep = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER_REP))
+            {
+                result.columnNumberRep = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_COLUMN_NUMBER))
+            {
+                result.columnNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_ID))
+            {
+                result.trayID = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_NOTES))
+            {
+                result.trayNotes = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_ROW_NUMBER))
+            {
+                result.trayRowNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_TRAY_TYPE_NAME))
+            {
+                result.trayTypeName = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POSITION))
+            {
+                result.position = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_ID))
+            {
+                result.plantID = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER))
+            {
+                result.plantLineNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_NAME))
+            {
+                result.plantName = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_PLANT_NOTES))
+            {
+                result.plantNotes = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_TYPE))
+            {
+                result.potType = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_CONTROL))
+            {
+                result.control = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_REPLICATE_NUMBER))
+            {
+                result.replicateNumber = nextField;
+            }
+            else if(nextHeader.trim().equals(ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER))
+            {
+                result.potReplicateNumber = nextField;
+            }
+            else
+            {
+                throw new PoddClientException("TODO: Handle unrecognised header: " + nextHeader);
+            }
+        }
+        
+        return result;
+    }
+    
+    @Benchmark
+    public ExampleCSVLine bindByComparingHeaders() throws PoddClientException
+    {
+        return ExampleCSVLineBinderBenchmark.bindByComparingHeaders(this.headers, this.row);
+    }
+    
+    @Benchmark
+    public ExampleCSVLine bindCompiled() throws PoddClientException
+    {
+        return this.binder.bind(this.row);
+    }
+    
+    @Setup
+    public void setUp()
+    {
+        // Pad the headers as they may be in files, so that they need to be trimmed
+        this.headers = new ArrayList<>();
+        for(final String nextHeader : ExampleCSVLineBinderBenchmark.ALL_HEADERS)
+        {
+            this.headers.add(" " + nextHeader + " ");
+        }
+        
+        this.row = new ArrayList<>();
+        for(int i = 0; i < this.headers.size(); i++)
+        {
+            this.row.add("Value " + i);
+        }
+        
+        this.binder = ExampleCSVLineBinder.compile(this.headers);
+    }
+}
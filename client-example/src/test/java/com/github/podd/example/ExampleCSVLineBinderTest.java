@@ -0,0 +1,60 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Tests for {@link ExampleCSVLineBinder}.
+ */
+public class ExampleCSVLineBinderTest
+{
+    @Test
+    public void testBindInHeaderOrder() throws Exception
+    {
+        final ExampleCSVLineBinder binder =
+                ExampleCSVLineBinder.compile(Arrays.asList(ExampleSpreadsheetConstants.CLIENT_PLANT_ID,
+                        " " + ExampleSpreadsheetConstants.CLIENT_TRAY_ID + " ",
+                        ExampleSpreadsheetConstants.CLIENT_POT_REPLICATE_NUMBER));
+        
+        final ExampleCSVLine line = binder.bind(Arrays.asList("P000001", "T00001", "3"));
+        
+        Assert.assertEquals("P000001", line.plantID);
+        Assert.assertEquals("T00001", line.trayID);
+        Assert.assertEquals("3", line.potReplicateNumber);
+        Assert.assertNull(line.projectID);
+    }
+    
+    @Test
+    public void testUnrecognisedHeaderWithoutLines()
+    {
+        // Headers are only checked when lines are bound
+        ExampleCSVLineBinder.compile(Arrays.asList(ExampleSpreadsheetConstants.CLIENT_TRAY_ID, "Unknown"));
+    }
+    
+    @Test(expected = PoddClientException.class)
+    public void testUnrecognisedHeader() throws Exception
+    {
+        ExampleCSVLineBinder.compile(Collections.singletonList("Unknown")).bind(Collections.singletonList("value"));
+    }
+}
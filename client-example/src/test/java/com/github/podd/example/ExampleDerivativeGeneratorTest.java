@@ -0,0 +1,114 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ExampleDerivativeGenerator}.
+ */
+public class ExampleDerivativeGeneratorTest
+{
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private ExampleDerivativeGenerator generator;
+    
+    private Path wideImage;
+    
+    private Path tallImage;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        this.generator = new ExampleDerivativeGenerator(this.tempDir.newFolder("cache").toPath(), "png", 100, 2);
+        this.wideImage = this.writeImage("wide.png", 1000, 500);
+        this.tallImage = this.writeImage("tall.bmp", 40, 80);
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        this.generator.close();
+    }
+    
+    private Path writeImage(final String fileName, final int width, final int height) throws IOException
+    {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(width / 2, height / 2, 0x336699);
+        final Path result = this.tempDir.newFile(fileName).toPath();
+        Assert.assertTrue(ImageIO.write(image, fileName.substring(fileName.indexOf('.') + 1), result.toFile()));
+        return result;
+    }
+    
+    @Test
+    public void testGenerateAllScalesToMaximumDimension() throws Exception
+    {
+        final Map<Path, Path> previews = this.generator.generateAll(Arrays.asList(this.wideImage, this.tallImage));
+        
+        Assert.assertEquals(Arrays.asList(this.wideImage, this.tallImage), Arrays.asList(previews.keySet().toArray()));
+        final BufferedImage widePreview = ImageIO.read(previews.get(this.wideImage).toFile());
+        Assert.assertEquals(100, widePreview.getWidth());
+        Assert.assertEquals(50, widePreview.getHeight());
+        // Smaller images are not enlarged
+        final BufferedImage tallPreview = ImageIO.read(previews.get(this.tallImage).toFile());
+        Assert.assertEquals(40, tallPreview.getWidth());
+        Assert.assertEquals(80, tallPreview.getHeight());
+        Assert.assertEquals(2, this.generator.getRendered());
+    }
+    
+    @Test
+    public void testUnchangedContentIsCached() throws Exception
+    {
+        final Path first = this.generator.generate(this.wideImage);
+        final Path renamed = this.tempDir.getRoot().toPath().resolve("renamed.png");
+        Files.copy(this.wideImage, renamed);
+        
+        Assert.assertEquals(first, this.generator.generate(renamed));
+        Assert.assertEquals(1, this.generator.getRendered());
+        Assert.assertEquals(1, this.generator.getCacheHits());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testUnreadableImageFails() throws Exception
+    {
+        final Path notAnImage = this.tempDir.newFile("broken.png").toPath();
+        Files.write(notAnImage, "abcdef".getBytes(StandardCharsets.UTF_8));
+        this.generator.generateAll(Arrays.asList(this.wideImage, notAnImage));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedFormat() throws Exception
+    {
+        new ExampleDerivativeGenerator(this.tempDir.getRoot().toPath(), "not-a-format", 100, 1).close();
+    }
+}
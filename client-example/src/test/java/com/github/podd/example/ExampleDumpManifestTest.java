@@ -0,0 +1,164 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ExampleDumpManifest}.
+ */
+public class ExampleDumpManifestTest
+{
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private Path outputDirectory;
+    
+    private Path bag;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        this.outputDirectory = this.tempDir.newFolder("dump").toPath();
+        this.bag = Files.createDirectories(this.outputDirectory.resolve("experiment-0001"));
+        Files.write(this.bag.resolve(ExampleBagBuilder.getPayloadManifestName()),
+                "abcd  data/a.png\n".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void testChangedBagIsNotUploaded() throws Exception
+    {
+        final ExampleDumpManifest manifest =
+                new ExampleDumpManifest(ExampleDumpManifest.getManifestPath(this.outputDirectory, "experiment"));
+        manifest.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        manifest.recordUpload(this.bag, "/remote/experiment-0001");
+        Assert.assertTrue(manifest.isUploaded(this.bag, "/remote/experiment-0001"));
+        Assert.assertFalse(manifest.isUploaded(this.bag, "/other/experiment-0001"));
+        
+        // A new dump keeps the upload, which only matches while the bag is unchanged
+        final ExampleDumpManifest nextDump = manifest.startDump();
+        Files.write(this.bag.resolve(ExampleBagBuilder.getPayloadManifestName()),
+                "efgh  data/a.png\n".getBytes(StandardCharsets.UTF_8));
+        nextDump.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        Assert.assertFalse(nextDump.isUploaded(this.bag, "/remote/experiment-0001"));
+    }
+    
+    @Test
+    public void testChangedBagIsArchivedAgain() throws Exception
+    {
+        final ExampleDumpManifest manifest =
+                new ExampleDumpManifest(ExampleDumpManifest.getManifestPath(this.outputDirectory, "experiment"));
+        manifest.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        final Path archive = Files.write(this.outputDirectory.resolve("experiment-0001.tar.gz"), new byte[] { 1 });
+        final String tagDigest = ExampleDumpManifest.digestTagFiles(this.bag);
+        Assert.assertFalse(manifest.isArchived(archive, 6, tagDigest));
+        manifest.putArchive(archive, 6, tagDigest);
+        Assert.assertTrue(manifest.isArchived(archive, 6, tagDigest));
+        
+        // The archive is kept by the next dump, and only matches while the bag is unchanged
+        final ExampleDumpManifest nextDump = manifest.startDump();
+        Assert.assertFalse(nextDump.isArchived(archive, 6, tagDigest));
+        Files.write(this.bag.resolve(ExampleBagBuilder.getPayloadManifestName()),
+                "efgh  data/a.png\n".getBytes(StandardCharsets.UTF_8));
+        nextDump.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        Assert.assertFalse(nextDump.isArchived(archive, 6, tagDigest));
+        nextDump.putBag("experiment-0001", manifest.getBagDigest("experiment-0001"));
+        Assert.assertTrue(nextDump.isArchived(archive, 6, tagDigest));
+    }
+    
+    @Test
+    public void testChangedTagFilesOrLevelIsArchivedAgain() throws Exception
+    {
+        final ExampleDumpManifest manifest =
+                new ExampleDumpManifest(ExampleDumpManifest.getManifestPath(this.outputDirectory, "experiment"));
+        manifest.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        final Path archive = Files.write(this.outputDirectory.resolve("experiment-0001.tar.gz"), new byte[] { 1 });
+        Files.write(this.bag.resolve("bag-info.txt"), "Bagging-Date: 2013-10-01\n".getBytes(StandardCharsets.UTF_8));
+        final String tagDigest = ExampleDumpManifest.digestTagFiles(this.bag);
+        manifest.putArchive(archive, 6, tagDigest);
+        Assert.assertTrue(manifest.isArchived(archive, 6, tagDigest));
+        Assert.assertFalse(manifest.isArchived(archive, 9, tagDigest));
+        
+        // Rewriting the tag files with a new bagging date changes the archive, but the payload
+        // manifest is unchanged
+        Files.write(this.bag.resolve("bag-info.txt"), "Bagging-Date: 2013-10-02\n".getBytes(StandardCharsets.UTF_8));
+        final String nextTagDigest = ExampleDumpManifest.digestTagFiles(this.bag);
+        Assert.assertFalse(tagDigest.equals(nextTagDigest));
+        Assert.assertFalse(manifest.isArchived(archive, 6, nextTagDigest));
+        
+        // Payload files are not tag files
+        Files.createDirectories(this.bag.resolve("data"));
+        Files.write(this.bag.resolve("data/a.png"), new byte[] { 2 });
+        Assert.assertEquals(nextTagDigest, ExampleDumpManifest.digestTagFiles(this.bag));
+    }
+    
+    @Test
+    public void testFindForBag() throws Exception
+    {
+        final Path expected =
+                this.outputDirectory.toAbsolutePath().resolve("Project#2013-0015_Experiment#0001.dump-manifest");
+        Assert.assertEquals(expected,
+                ExampleDumpManifest.findForBag(this.outputDirectory.resolve("Project#2013-0015_Experiment#0001-0002")));
+        Assert.assertEquals(expected, ExampleDumpManifest.findForBag(this.outputDirectory
+                .resolve("Project#2013-0015_Experiment#0001-0002.tar.gz")));
+        Assert.assertNull(ExampleDumpManifest.findForBag(this.outputDirectory.resolve("experiment.ttl")));
+    }
+    
+    @Test
+    public void testStoreAndLoad() throws Exception
+    {
+        final Path file = ExampleDumpManifest.getManifestPath(this.outputDirectory, "experiment");
+        final ExampleDumpManifest manifest = new ExampleDumpManifest(file);
+        manifest.setArtifactVersion("urn:podd:version:2");
+        manifest.setMetadataPath(this.bag.resolve("data/experiment.ttl"));
+        manifest.putPayload("tray1/pot1/a.png", 6, 1000, "abcd");
+        manifest.putBag("experiment-0001", ExampleDumpManifest.digestBag(this.bag));
+        manifest.recordUpload(this.bag, "/remote/experiment-0001");
+        final Path archive = Files.write(this.outputDirectory.resolve("experiment-0001.zip"), new byte[] { 1 });
+        manifest.putArchive(archive, 9, ExampleDumpManifest.digestTagFiles(this.bag));
+        manifest.store();
+        
+        final ExampleDumpManifest loaded = new ExampleDumpManifest(file);
+        loaded.load();
+        Assert.assertEquals("urn:podd:version:2", loaded.getArtifactVersion());
+        Assert.assertEquals(this.bag.resolve("data/experiment.ttl").toAbsolutePath(), loaded.getMetadataPath());
+        Assert.assertEquals("abcd", loaded.getPayloadDigest("tray1/pot1/a.png", 6, 1000));
+        Assert.assertNull(loaded.getPayloadDigest("tray1/pot1/a.png", 6, 2000));
+        Assert.assertNull(loaded.getPayloadDigest("tray1/pot1/a.png", 7, 1000));
+        Assert.assertTrue(loaded.isUploaded(this.bag, "/remote/experiment-0001"));
+        Assert.assertTrue(loaded.isArchived(archive, 9, ExampleDumpManifest.digestTagFiles(this.bag)));
+        Assert.assertFalse(loaded.isArchived(archive, 6, ExampleDumpManifest.digestTagFiles(this.bag)));
+    }
+    
+    @Test
+    public void testUnknownFormatIsDiscarded() throws Exception
+    {
+        final Path file = ExampleDumpManifest.getManifestPath(this.outputDirectory, "experiment");
+        Files.write(file, "something else\nversion\turn:podd:version:1\n".getBytes(StandardCharsets.UTF_8));
+        final ExampleDumpManifest loaded = new ExampleDumpManifest(file);
+        loaded.load();
+        Assert.assertNull(loaded.getArtifactVersion());
+    }
+}
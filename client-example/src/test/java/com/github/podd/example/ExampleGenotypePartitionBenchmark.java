@@ -0,0 +1,194 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openrdf.model.Model;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+
+import com.github.podd.utils.PODD;
+
+/**
+ * Compares the time and memory cost of mapping every genotype in a synthetic project to the whole
+ * project model against partitioning the project model into one description per genotype. Both
+ * arms build the same map from genotype URI to description that is built for each project during
+ * an import.
+ * 
+ * Run using the main method, which enables the JMH GC profiler to report bytes allocated per
+ * operation alongside the average time. The allocation is the garbage created while building
+ * each map, not the memory that the map keeps alive, so after the benchmarks have run the main
+ * method also prints the retained size of each map, measured as the difference in used heap after
+ * forcing garbage collection before and after building it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExampleGenotypePartitionBenchmark
+{
+    @Param({ "10000" })
+    public int genotypeCount;
+    
+    private Model projectGenotypes;
+    
+    private URI sampleGenotype;
+    
+    private ConcurrentMap<URI, Model> partitionedGenotypes;
+    
+    private ConcurrentMap<URI, Model> sharedGenotypes;
+    
+    public static void main(final String... args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ExampleGenotypePartitionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class).build()).run();
+        
+        final ExampleGenotypePartitionBenchmark benchmark = new ExampleGenotypePartitionBenchmark();
+        benchmark.genotypeCount = 10000;
+        benchmark.setUp();
+        benchmark.partitionedGenotypes = null;
+        benchmark.sharedGenotypes = null;
+        
+        final long partitionedStart = ExampleGenotypePartitionBenchmark.usedHeapAfterGC();
+        final ConcurrentMap<URI, Model> partitioned = benchmark.populatePartitioned();
+        final long partitionedBytes = ExampleGenotypePartitionBenchmark.usedHeapAfterGC() - partitionedStart;
+        
+        final long sharedStart = ExampleGenotypePartitionBenchmark.usedHeapAfterGC();
+        final ConcurrentMap<URI, Model> shared = benchmark.populateShared();
+        final long sharedBytes = ExampleGenotypePartitionBenchmark.usedHeapAfterGC() - sharedStart;
+        
+        // Use both maps after measuring them, so that they are retained during the measurements
+        System.out.println("Retained bytes for " + benchmark.genotypeCount + " genotypes: partitioned="
+                + partitionedBytes + " (" + partitioned.size() + " genotypes) shared=" + sharedBytes + " ("
+                + shared.size() + " genotypes)");
+    }
+    
+    /**
+     * @return The used heap after requesting garbage collection until the used heap stops
+     *         shrinking.
+     */
+    private static long usedHeapAfterGC()
+    {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for(int i = 0; i < 10; i++)
+        {
+            System.gc();
+            final long nextUsed = runtime.totalMemory() - runtime.freeMemory();
+            if(nextUsed >= used)
+            {
+                break;
+            }
+            used = nextUsed;
+        }
+        return used;
+    }
+    
+    /**
+     * Copies the description of a single genotype out of the partitioned map, which only touches
+     * the statements for that genotype.
+     */
+    @Benchmark
+    public Model describeGenotypePartitioned()
+    {
+        return new LinkedHashModel(this.partitionedGenotypes.get(this.sampleGenotype));
+    }
+    
+    /**
+     * Copies the description of a single genotype out of the shared map, which must filter the
+     * statements for every genotype in the project.
+     */
+    @Benchmark
+    public Model describeGenotypeShared()
+    {
+        return new LinkedHashModel(this.sharedGenotypes.get(this.sampleGenotype).filter(this.sampleGenotype, null,
+                null));
+    }
+    
+    @Benchmark
+    public ConcurrentMap<URI, Model> populatePartitioned()
+    {
+        final Map<Resource, Model> descriptions = ExamplePoddClient.partitionBySubject(this.projectGenotypes);
+        final ConcurrentMap<URI, Model> result = new ConcurrentHashMap<>();
+        for(final Resource nextGenotype : this.projectGenotypes.filter(null, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE)
+                .subjects())
+        {
+            result.putIfAbsent((URI)nextGenotype, descriptions.get(nextGenotype));
+        }
+        return result;
+    }
+    
+    @Benchmark
+    public ConcurrentMap<URI, Model> populateShared()
+    {
+        final ConcurrentMap<URI, Model> result = new ConcurrentHashMap<>();
+        for(final Resource nextGenotype : this.projectGenotypes.filter(null, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE)
+                .subjects())
+        {
+            result.putIfAbsent((URI)nextGenotype, this.projectGenotypes);
+        }
+        return result;
+    }
+    
+    @Setup
+    public void setUp()
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        this.projectGenotypes = new LinkedHashModel();
+        for(int i = 0; i < this.genotypeCount; i++)
+        {
+            final URI nextGenotype = vf.createURI("urn:temp:benchmark:genotype:" + i);
+            this.projectGenotypes.add(nextGenotype, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE);
+            this.projectGenotypes.add(nextGenotype, RDFS.LABEL, vf.createLiteral("Genotype " + i));
+            this.projectGenotypes.add(nextGenotype, PODD.PODD_SCIENCE_HAS_GENUS, vf.createLiteral("Triticum"));
+            this.projectGenotypes.add(nextGenotype, PODD.PODD_SCIENCE_HAS_SPECIES, vf.createLiteral("aestivum"));
+            this.projectGenotypes.add(nextGenotype, PODD.PODD_SCIENCE_HAS_LINE, vf.createLiteral("Line " + i));
+            this.projectGenotypes.add(nextGenotype, PODD.PODD_SCIENCE_HAS_LINE_NUMBER, vf.createLiteral(i));
+            this.projectGenotypes.add(nextGenotype, PODD.PODD_SCIENCE_HAS_CONTROL,
+                    PODD.PODD_SCIENCE_HAS_CONTROL_UNKNOWN);
+        }
+        this.sampleGenotype = vf.createURI("urn:temp:benchmark:genotype:" + (this.genotypeCount / 2));
+        this.partitionedGenotypes = this.populatePartitioned();
+        this.sharedGenotypes = this.populateShared();
+    }
+}
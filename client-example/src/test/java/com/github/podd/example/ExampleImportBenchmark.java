@@ -0,0 +1,195 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openrdf.OpenRDFException;
+
+import com.github.podd.client.api.PoddClientException;
+import com.github.podd.utils.InferredOWLOntologyID;
+
+/**
+ * Measures the throughput and allocation of each of the import paths in {@link ExamplePoddClient},
+ * using generated inputs and an {@link ExampleStubPoddClient} that answers queries from memory.
+ * <p>
+ * Each invocation imports a whole generated input with the number of rows given by the rows
+ * parameter, starting with empty caches, so that lookups of existing objects are included. Run
+ * using the main method, which takes the number of rows as an optional argument and counts each
+ * row as one operation, so that ops/sec is rows per second and the GC profiler reports bytes
+ * allocated per row. When using the JMH command line instead, pass the same number to -opi as to
+ * -p rows.
+ * <p>
+ * The TrayScan database is an in-memory H2 database with stand-ins for the stored procedures, so
+ * the processTrayScanLine results include JDBC overhead but not the cost of the real database. The
+ * tables are emptied before each invocation, outside of the measured time, so processTrayScanLine
+ * measures the path where every tray, plant and assignment is new and is inserted, rather than
+ * the path where each row is found to already exist.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExampleImportBenchmark
+{
+    public static final int DEFAULT_ROWS = 10000;
+    
+    @Param({ "10000" })
+    public int rows;
+    
+    @Param({ "1" })
+    public int projects;
+    
+    @Param({ "4" })
+    public int experiments;
+    
+    @Param({ "100" })
+    public int genotypes;
+    
+    private ExampleStubPoddClient client;
+    
+    private List<List<String>> trayScanRows;
+    
+    private ExampleCSVLineBinder binder;
+    
+    private byte[] lstFile;
+    
+    private byte[] lineNameMappingList;
+    
+    private Connection keepAlive;
+    
+    private ExampleConnectionPool pool;
+    
+    public static void main(final String... args) throws RunnerException
+    {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : ExampleImportBenchmark.DEFAULT_ROWS;
+        new Runner(new OptionsBuilder().include(ExampleImportBenchmark.class.getSimpleName())
+                .param("rows", Integer.toString(rows)).operationsPerInvocation(rows).addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+    
+    /**
+     * Empties the TrayScan tables, so that each invocation of processTrayScanLine inserts every
+     * row. Each invocation imports a whole input, so the cost of running this before each one is
+     * not significant.
+     */
+    @Setup(Level.Invocation)
+    public void clearTrayScanDatabase() throws SQLException
+    {
+        ExampleBenchmarkFixtures.clearTrayScanDatabase(this.keepAlive);
+    }
+    
+    @Benchmark
+    public ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> generateTrayRDF()
+        throws PoddClientException, OpenRDFException
+    {
+        final ExampleImportContext context = new ExampleImportContext(this.client.newProjectUriMap());
+        for(final List<String> nextRow : this.trayScanRows)
+        {
+            this.client.generateTrayRDF(context, this.binder.bind(nextRow));
+        }
+        return context.uploadQueue;
+    }
+    
+    @Benchmark
+    public ConcurrentMap<String, String> processLineNameMappingList() throws IOException, PoddClientException
+    {
+        return this.client.processLineNameMappingList(new ByteArrayInputStream(this.lineNameMappingList));
+    }
+    
+    @Benchmark
+    public ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> processTrayScanLine()
+        throws PoddClientException, OpenRDFException, SQLException
+    {
+        final ExampleImportContext context = new ExampleImportContext(this.client.newProjectUriMap());
+        try (final ExampleTrayScanWriter writer = new ExampleTrayScanWriter(this.pool,
+                ExampleDBConstants.DEFAULT_DB_BATCH_SIZE);)
+        {
+            for(final List<String> nextRow : this.trayScanRows)
+            {
+                this.client.processTrayScanLine(nextRow, this.binder.bind(nextRow), context, writer);
+            }
+            writer.flush();
+        }
+        return context.uploadQueue;
+    }
+    
+    @Benchmark
+    public void parseLstFile() throws IOException, PoddClientException
+    {
+        this.client.parseLstFile(new ByteArrayInputStream(this.lstFile), new NullWriter());
+    }
+    
+    @Setup
+    public void setUp() throws PoddClientException, SQLException
+    {
+        this.client = new ExampleStubPoddClient(this.projects, this.experiments, this.genotypes);
+        this.trayScanRows =
+                ExampleBenchmarkFixtures.trayScanRows(this.rows, this.projects, this.experiments, this.genotypes);
+        this.binder = this.client.verifyTrayScanListHeadersOrFail(ExampleBenchmarkFixtures.TRAYSCAN_HEADERS);
+        this.lstFile = ExampleBenchmarkFixtures.lstFile(this.rows);
+        this.lineNameMappingList = ExampleBenchmarkFixtures.lineNameMappingList(this.rows);
+        
+        // Keep one connection open for the duration of the trial so the in-memory database is not
+        // dropped when the pool returns its connections
+        final String url = "jdbc:h2:mem:trayscan-benchmark-" + UUID.randomUUID().toString();
+        this.keepAlive = DriverManager.getConnection(url, "sa", "");
+        ExampleBenchmarkFixtures.createTrayScanDatabase(this.keepAlive);
+        this.pool = new ExampleConnectionPool(url, "sa", "", 1);
+    }
+    
+    @TearDown
+    public void tearDown() throws SQLException
+    {
+        try
+        {
+            this.pool.close();
+        }
+        finally
+        {
+            this.keepAlive.close();
+        }
+    }
+}
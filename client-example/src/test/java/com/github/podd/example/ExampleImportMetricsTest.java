@@ -0,0 +1,106 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ExampleImportMetrics} and {@link ExampleLatencyHistogram}.
+ */
+public class ExampleImportMetricsTest
+{
+    @Test
+    public void testHistogramPercentiles()
+    {
+        final ExampleLatencyHistogram histogram = new ExampleLatencyHistogram();
+        for(int i = 1; i <= 100; i++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        
+        final ExampleLatencySummary summary = histogram.getSummary();
+        Assert.assertEquals(100, summary.getCount());
+        Assert.assertEquals(50, summary.getMeanMicros());
+        // Percentiles are the upper bound of their bucket, but never more than the maximum
+        Assert.assertEquals(63, summary.getMedianMicros());
+        Assert.assertEquals(100, summary.getP99Micros());
+        Assert.assertEquals(100, summary.getMaxMicros());
+        
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getSummary().getCount());
+        Assert.assertEquals(0, histogram.getSummary().getMaxMicros());
+    }
+    
+    @Test
+    public void testHitRatios()
+    {
+        final ExampleImportMetrics metrics = new ExampleImportMetrics();
+        metrics.recordHit(ExampleImportMetrics.Cache.TRAY);
+        metrics.recordHit(ExampleImportMetrics.Cache.TRAY);
+        metrics.recordHit(ExampleImportMetrics.Cache.TRAY);
+        metrics.recordMiss(ExampleImportMetrics.Cache.TRAY);
+        metrics.recordQuery(ExampleImportMetrics.Cache.TRAY);
+        metrics.recordMiss(ExampleImportMetrics.Cache.POT);
+        metrics.recordRow();
+        
+        final ExampleImportSummary summary = metrics.getSummary();
+        Assert.assertEquals(1, summary.getRowCount());
+        Assert.assertEquals(Long.valueOf(1), summary.getQueryCounts().get("TRAY"));
+        Assert.assertNull(summary.getQueryCounts().get("POT"));
+        Assert.assertEquals(0.75, summary.getHitRatios().get("TRAY"), 0.0);
+        // Caches with only misses are included with a ratio of zero
+        Assert.assertEquals(0.0, summary.getHitRatios().get("POT"), 0.0);
+        Assert.assertFalse(summary.getHitRatios().containsKey("EXPERIMENT"));
+        
+        metrics.reset();
+        Assert.assertEquals(0, metrics.getRowCount());
+        Assert.assertTrue(metrics.getSummary().getQueryCounts().isEmpty());
+    }
+    
+    @Test
+    public void testSummaryOverJmx() throws Exception
+    {
+        final ExampleImportMetrics metrics = new ExampleImportMetrics();
+        metrics.recordQuery(ExampleImportMetrics.Cache.EXPERIMENT);
+        metrics.recordMySQLBatch(TimeUnit.MILLISECONDS.toNanos(5));
+        
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("com.github.podd.example:type=ImportMetrics,name=test");
+        server.registerMBean(metrics, name);
+        try
+        {
+            final ExampleImportSummary summary =
+                    JMX.newMXBeanProxy(server, name, ExampleImportMetricsMXBean.class).getSummary();
+            Assert.assertEquals(Long.valueOf(1), summary.getQueryCounts().get("EXPERIMENT"));
+            Assert.assertEquals(1, summary.getMySQLBatchLatency().getCount());
+            Assert.assertEquals(5000, summary.getMySQLBatchLatency().getMaxMicros());
+            Assert.assertEquals(0, summary.getAppendLatency().getCount());
+        }
+        finally
+        {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Measures the time taken to convert a generated LST file to CSV using
+ * {@link ExamplePoddClient#parseLstFile(InputStream, Writer)}.
+ * 
+ * The file is generated once for each trial, with a size in megabytes given by the fileSize
+ * parameter, and the benchmark is forked with a small maximum heap to check that the conversion
+ * does not depend on holding the file in memory. Divide the file size by the reported time to get
+ * the throughput.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx64m" })
+public class ExampleLstParseBenchmark
+{
+    private static final long MEGABYTE = 1024 * 1024;
+    
+    @Param({ "2048" })
+    public int fileSize;
+    
+    private Path lstFile;
+    
+    private ExamplePoddClient client;
+    
+    public static void main(final String... args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder().include(ExampleLstParseBenchmark.class.getSimpleName()).build()).run();
+    }
+    
+    @Benchmark
+    public void parseLstFile() throws IOException, PoddClientException
+    {
+        try (final InputStream in = Files.newInputStream(this.lstFile);)
+        {
+            this.client.parseLstFile(in, new NullWriter());
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException
+    {
+        this.client = new ExamplePoddClient();
+        this.lstFile = Files.createTempFile("podd-lst-benchmark-", ".lst");
+        
+        final long targetSize = this.fileSize * ExampleLstParseBenchmark.MEGABYTE;
+        long writtenSize = 0;
+        try (final BufferedWriter writer = Files.newBufferedWriter(this.lstFile, StandardCharsets.UTF_8);)
+        {
+            final String header = "UNIT   ID    ENTRY ROW RANGE REP TRT   B111  B121\r\n";
+            writer.write(header);
+            writtenSize += header.length();
+            
+            final StringBuilder nextLine = new StringBuilder(64);
+            for(int unit = 1; writtenSize < targetSize; unit++)
+            {
+                nextLine.setLength(0);
+                nextLine.append(unit).append("   ").append(1000 + unit % 500).append("\t").append(unit % 500)
+                        .append("  ").append(unit % 40).append("  ").append(unit / 40 % 200).append(" ")
+                        .append(unit % 4 + 1).append("  ").append(unit % 7).append("   ").append(unit % 11)
+                        .append("     ").append(unit % 13).append("\r\n");
+                writer.append(nextLine);
+                writtenSize += nextLine.length();
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(this.lstFile);
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ExampleLstTokenizer}.
+ */
+public class ExampleLstTokenizerTest
+{
+    @Test
+    public void testBlankLines()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        
+        Assert.assertEquals(0, tokenizer.tokenize(""));
+        Assert.assertEquals(Collections.emptyList(), tokenizer.getTokens());
+        
+        Assert.assertEquals(0, tokenizer.tokenize(" \t\r\f\u000B "));
+        Assert.assertEquals(Collections.emptyList(), tokenizer.getTokens());
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidIndex()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        tokenizer.tokenize("UNIT ID");
+        tokenizer.getToken(2);
+    }
+    
+    @Test
+    public void testLeadingAndTrailingSeparators()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        final String line = "  1   1001\t ";
+        
+        // Separators at either end of the line do not create empty fields
+        Assert.assertEquals(2, tokenizer.tokenize(line));
+        Assert.assertEquals(Arrays.asList("1", "1001"), tokenizer.getTokens());
+        Assert.assertEquals(2, tokenizer.getStart(0));
+        Assert.assertEquals(3, tokenizer.getEnd(0));
+        Assert.assertEquals(6, tokenizer.getStart(1));
+        Assert.assertEquals(10, tokenizer.getEnd(1));
+        Assert.assertEquals(line, tokenizer.getLine());
+    }
+    
+    @Test
+    public void testManyFields()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        final StringBuilder line = new StringBuilder();
+        for(int i = 0; i < 100; i++)
+        {
+            line.append(i).append(' ');
+        }
+        
+        Assert.assertEquals(100, tokenizer.tokenize(line.toString()));
+        Assert.assertEquals("0", tokenizer.getToken(0));
+        Assert.assertEquals("99", tokenizer.getToken(99));
+    }
+    
+    @Test
+    public void testMatchesRegularExpressionSplit()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        for(final String nextLine : Arrays.asList("UNIT   ID    ENTRY ROW RANGE REP TRT   B111  B121",
+                "1   1001\t1  1  0 2  1   1     1", " \t2\t\t1002 2\r", "a\u000Bb\fc\nd", "single"))
+        {
+            tokenizer.tokenize(nextLine);
+            Assert.assertEquals(Arrays.asList(nextLine.trim().split("\\s+")), tokenizer.getTokens());
+        }
+    }
+    
+    @Test
+    public void testQuotesAreNotSpecial()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        
+        // LST files do not quote fields, so quotes are part of the fields and do not stop
+        // whitespace from separating fields
+        Assert.assertEquals(4, tokenizer.tokenize("\"Line 1\" 'Line 2'"));
+        Assert.assertEquals(Arrays.asList("\"Line", "1\"", "'Line", "2'"), tokenizer.getTokens());
+        
+        Assert.assertEquals(1, tokenizer.tokenize("\"\""));
+        Assert.assertEquals(Arrays.asList("\"\""), tokenizer.getTokens());
+    }
+    
+    @Test
+    public void testReuse()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        Assert.assertEquals(3, tokenizer.tokenize("a b c"));
+        
+        // Fields from the previous line are replaced
+        Assert.assertEquals(1, tokenizer.tokenize("d"));
+        Assert.assertEquals(Arrays.asList("d"), tokenizer.getTokens());
+        
+        Assert.assertEquals(0, tokenizer.tokenize(""));
+        Assert.assertEquals(0, tokenizer.getCount());
+    }
+    
+    @Test
+    public void testSeparators()
+    {
+        final ExampleLstTokenizer tokenizer = new ExampleLstTokenizer();
+        
+        // Each of the whitespace characters matched by \s separates fields, and runs of them are a
+        // single separator
+        Assert.assertEquals(7, tokenizer.tokenize("a b\tc\nd\u000Be\ff\rg"));
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), tokenizer.getTokens());
+        Assert.assertEquals(2, tokenizer.tokenize("a \t\r\n b"));
+        Assert.assertEquals(Arrays.asList("a", "b"), tokenizer.getTokens());
+        
+        // Other whitespace, such as a non-breaking space, is part of the field, as it is not
+        // matched by \s
+        Assert.assertEquals(1, tokenizer.tokenize("a\u00A0b"));
+        Assert.assertEquals("a\u00A0b", tokenizer.getToken(0));
+        
+        Assert.assertTrue(ExampleLstTokenizer.isSeparator(' '));
+        Assert.assertFalse(ExampleLstTokenizer.isSeparator(','));
+    }
+}
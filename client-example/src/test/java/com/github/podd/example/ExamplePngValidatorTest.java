@@ -0,0 +1,117 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ExamplePngValidator}.
+ */
+public class ExamplePngValidatorTest
+{
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private byte[] png;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        final BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(3, 5, 0x336699);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assert.assertTrue(ImageIO.write(image, "png", output));
+        this.png = output.toByteArray();
+    }
+    
+    private int indexOf(final String chunkType)
+    {
+        final byte[] type = chunkType.getBytes(StandardCharsets.US_ASCII);
+        for(int i = 0; i + type.length <= this.png.length; i++)
+        {
+            if(Arrays.equals(type, Arrays.copyOfRange(this.png, i, i + type.length)))
+            {
+                return i;
+            }
+        }
+        throw new AssertionError("Chunk not found: " + chunkType);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testCorruptedDataIsRejected() throws Exception
+    {
+        this.png[this.indexOf("IDAT") + 5] ^= 0x01;
+        final ExamplePngValidator validator = new ExamplePngValidator();
+        validator.update(ByteBuffer.wrap(this.png));
+        validator.finish();
+    }
+    
+    @Test(expected = IOException.class)
+    public void testTrailingDataIsRejected() throws Exception
+    {
+        final ExamplePngValidator validator = new ExamplePngValidator();
+        validator.update(ByteBuffer.wrap(Arrays.copyOf(this.png, this.png.length + 1)));
+    }
+    
+    @Test(expected = IOException.class)
+    public void testTruncatedFileIsRejected() throws Exception
+    {
+        final ExamplePngValidator validator = new ExamplePngValidator();
+        validator.update(ByteBuffer.wrap(this.png, 0, this.png.length - 4));
+        validator.finish();
+    }
+    
+    @Test
+    public void testValidFileInSmallDirectBlocks() throws Exception
+    {
+        final ExamplePngValidator validator = new ExamplePngValidator();
+        final ByteBuffer block = ByteBuffer.allocateDirect(3);
+        for(int i = 0; i < this.png.length; i += block.capacity())
+        {
+            block.clear();
+            block.put(this.png, i, Math.min(block.capacity(), this.png.length - i));
+            block.flip();
+            validator.update(block);
+            Assert.assertEquals(0, block.position());
+        }
+        validator.finish();
+        Assert.assertTrue(validator.getChunkCount() >= 3);
+    }
+    
+    @Test
+    public void testValidFileOnDisk() throws Exception
+    {
+        final Path file = this.tempDir.newFile("valid.png").toPath();
+        Files.write(file, this.png);
+        ExamplePngValidator.validate(file);
+    }
+}
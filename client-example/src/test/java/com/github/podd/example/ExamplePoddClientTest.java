@@ -0,0 +1,715 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.semanticweb.owlapi.model.IRI;
+
+import com.github.podd.client.api.PoddClientException;
+import com.github.podd.client.impl.restlet.RestletPoddClientImpl;
+import com.github.podd.utils.InferredOWLOntologyID;
+import com.github.podd.utils.PODD;
+
+/**
+ * Tests for the TrayScan import in {@link ExamplePoddClient}, using an
+ * {@link ExampleStubPoddClient} and an in-memory H2 database with stand-ins for the TrayScan
+ * tables and stored procedures.
+ */
+public class ExamplePoddClientTest
+{
+    private static final int PROJECTS = 2;
+    
+    private static final int EXPERIMENTS = 3;
+    
+    private static final int GENOTYPES = 10;
+    
+    private Connection keepAlive;
+    
+    private ExampleConnectionPool pool;
+    
+    private ExampleStubPoddClient client;
+    
+    private List<String> selectPlantIds() throws SQLException
+    {
+        final List<String> result = new ArrayList<>();
+        try (final Statement statement = this.keepAlive.createStatement();
+                final ResultSet resultSet = statement.executeQuery("SELECT plant_textId FROM tab_assign");)
+        {
+            while(resultSet.next())
+            {
+                result.add(resultSet.getString(1));
+            }
+        }
+        return result;
+    }
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        // Keep one connection open for the duration of the test so the in-memory database is not
+        // dropped when the pool returns its connections
+        final String url = "jdbc:h2:mem:trayscan-client-" + UUID.randomUUID().toString();
+        this.keepAlive = DriverManager.getConnection(url, "sa", "");
+        ExampleBenchmarkFixtures.createTrayScanDatabase(this.keepAlive);
+        this.pool = new ExampleConnectionPool(url, "sa", "", 2);
+        
+        this.client =
+                new ExampleStubPoddClient(ExamplePoddClientTest.PROJECTS, ExamplePoddClientTest.EXPERIMENTS,
+                        ExamplePoddClientTest.GENOTYPES);
+        this.client.setConnectionPool(this.pool);
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            this.pool.close();
+        }
+        finally
+        {
+            this.keepAlive.close();
+        }
+    }
+    
+    @Test
+    public void testConcurrentResolveCreatesEachGenotypeOnce() throws Exception
+    {
+        // Lines refer to twice as many genotypes as exist, so half of the genotypes are created
+        final int genotypes = 2 * ExamplePoddClientTest.GENOTYPES;
+        final int rows = 500;
+        final List<List<String>> lines =
+                ExampleBenchmarkFixtures.trayScanRows(rows, ExamplePoddClientTest.PROJECTS,
+                        ExamplePoddClientTest.EXPERIMENTS, genotypes);
+        final int projectColumn =
+                ExampleBenchmarkFixtures.TRAYSCAN_HEADERS.indexOf(ExampleSpreadsheetConstants.CLIENT_PROJECT_NUMBER);
+        final int lineNumberColumn =
+                ExampleBenchmarkFixtures.TRAYSCAN_HEADERS
+                        .indexOf(ExampleSpreadsheetConstants.CLIENT_PLANT_LINE_NUMBER);
+        
+        // The lines of genotypes that do not exist, by project number
+        final Map<String, Set<String>> expectedLines = new HashMap<>();
+        for(final List<String> nextLine : lines)
+        {
+            final int nextGenotype = Integer.parseInt(nextLine.get(lineNumberColumn));
+            Set<String> nextExpected = expectedLines.get(nextLine.get(projectColumn));
+            if(nextExpected == null)
+            {
+                nextExpected = new HashSet<>();
+                expectedLines.put(nextLine.get(projectColumn), nextExpected);
+            }
+            if(nextGenotype > ExamplePoddClientTest.GENOTYPES)
+            {
+                nextExpected.add(ExampleBenchmarkFixtures.lineName(nextGenotype));
+            }
+        }
+        
+        final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue =
+                this.client.processTrayScanList(new ByteArrayInputStream(ExampleBenchmarkFixtures.trayScanList(rows,
+                        ExamplePoddClientTest.PROJECTS, ExamplePoddClientTest.EXPERIMENTS, genotypes)), 4, 2);
+        
+        Assert.assertEquals(ExamplePoddClientTest.PROJECTS, uploadQueue.size());
+        for(final Entry<InferredOWLOntologyID, ExampleStatementBuffer> nextEntry : uploadQueue.entrySet())
+        {
+            final List<String> createdLines = new ArrayList<>();
+            for(final org.openrdf.model.Statement nextStatement : nextEntry.getValue())
+            {
+                if(nextStatement.getPredicate().equals(PODD.PODD_SCIENCE_HAS_LINE)
+                        && nextStatement.getSubject().stringValue().startsWith(RestletPoddClientImpl.TEMP_UUID_PREFIX))
+                {
+                    createdLines.add(nextStatement.getObject().stringValue());
+                }
+            }
+            
+            // Existing genotypes were found by every line, and each missing genotype was only
+            // created once, even though the lines were resolved concurrently
+            final String artifact = nextEntry.getKey().getOntologyIRI().toString();
+            final String projectNumber = artifact.substring(artifact.lastIndexOf(':') + 1);
+            Assert.assertEquals("Genotypes were created more than once: " + createdLines,
+                    new HashSet<>(createdLines).size(), createdLines.size());
+            Assert.assertEquals(expectedLines.get(projectNumber), new HashSet<>(createdLines));
+        }
+    }
+    
+    @Test
+    public void testGetExperimentDetailsCachesMissingExperiments() throws Exception
+    {
+        final ExampleImportContext context = new ExampleImportContext(this.client.newProjectUriMap());
+        final String projectName = ExampleBenchmarkFixtures.projectName(1);
+        final URI projectUri = context.projectUriMap.get(projectName).keySet().iterator().next();
+        final InferredOWLOntologyID artifactId = context.projectUriMap.get(projectName).get(projectUri);
+        final String missingExperiment =
+                ExampleBenchmarkFixtures.experimentName(1, ExamplePoddClientTest.EXPERIMENTS + 1);
+        
+        for(int i = 0; i < 3; i++)
+        {
+            try
+            {
+                this.client.getExperimentDetails(context, projectName, projectUri, artifactId, missingExperiment);
+                Assert.fail("Did not find expected exception");
+            }
+            catch(final PoddClientException e)
+            {
+                // Expected, as the experiment does not exist
+            }
+        }
+        
+        // The project was only queried for the first line
+        Assert.assertEquals(1, this.client.getQueryCount());
+        Assert.assertTrue(context.experimentProjects.containsKey(projectUri));
+        
+        // Experiments that exist are still found without querying again
+        Assert.assertEquals(projectUri, this.client
+                .getExperimentDetails(context, projectName, projectUri, artifactId,
+                        ExampleBenchmarkFixtures.experimentName(1, 1)).values().iterator().next());
+        Assert.assertEquals(1, this.client.getQueryCount());
+    }
+    
+    @Test
+    public void testGetExperimentDetailsNotRecordedOutsideImport() throws Exception
+    {
+        final ExampleImportContext context = new ExampleImportContext(this.client.newProjectUriMap(), false);
+        final String projectName = ExampleBenchmarkFixtures.projectName(1);
+        final URI projectUri = context.projectUriMap.get(projectName).keySet().iterator().next();
+        final InferredOWLOntologyID artifactId = context.projectUriMap.get(projectName).get(projectUri);
+        
+        // A miss that queries the project, and then a hit
+        for(int i = 0; i < 2; i++)
+        {
+            this.client.getExperimentDetails(context, projectName, projectUri, artifactId,
+                    ExampleBenchmarkFixtures.experimentName(1, 1));
+        }
+        
+        final ExampleImportSummary summary = this.client.getImportMetrics().getSummary();
+        Assert.assertEquals(1, this.client.getQueryCount());
+        Assert.assertTrue(summary.getQueryCounts().isEmpty());
+        Assert.assertTrue(summary.getHitCounts().isEmpty());
+        Assert.assertTrue(summary.getMissCounts().isEmpty());
+    }
+    
+    @Test
+    public void testGetExperimentDetailsOnlyWaitsForTheSameProject() throws Exception
+    {
+        final CountDownLatch firstQueryStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstQuery = new CountDownLatch(1);
+        final ExampleStubPoddClient blockingClient =
+                new ExampleStubPoddClient(ExamplePoddClientTest.PROJECTS, ExamplePoddClientTest.EXPERIMENTS, 0)
+                    {
+                        @Override
+                        public Model doSPARQL(final String queryString,
+                                final Collection<InferredOWLOntologyID> artifactIds) throws PoddClientException
+                        {
+                            // Hold up the query for the first project until the test releases it
+                            if(artifactIds.iterator().next().getOntologyIRI().toString().endsWith(":1"))
+                            {
+                                firstQueryStarted.countDown();
+                                try
+                                {
+                                    releaseFirstQuery.await(10, TimeUnit.SECONDS);
+                                }
+                                catch(final InterruptedException e)
+                                {
+                                    Thread.currentThread().interrupt();
+                                    throw new PoddClientException("Interrupted while waiting", e);
+                                }
+                            }
+                            return super.doSPARQL(queryString, artifactIds);
+                        }
+                    };
+        final ExampleImportContext context = new ExampleImportContext(blockingClient.newProjectUriMap());
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            final Future<Map<URI, URI>> first =
+                    executor.submit(this.newExperimentLookup(blockingClient, context, 1));
+            Assert.assertTrue(firstQueryStarted.await(10, TimeUnit.SECONDS));
+            
+            // The second project is resolved while the first is still being queried
+            final Future<Map<URI, URI>> second =
+                    executor.submit(this.newExperimentLookup(blockingClient, context, 2));
+            Assert.assertEquals(1, second.get(5, TimeUnit.SECONDS).size());
+            Assert.assertFalse(first.isDone());
+            
+            releaseFirstQuery.countDown();
+            Assert.assertEquals(1, first.get(10, TimeUnit.SECONDS).size());
+        }
+        finally
+        {
+            releaseFirstQuery.countDown();
+            executor.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testIndexGenotypeOnlyIndexesPlainLiterals() throws Exception
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        final URI projectUri = vf.createURI("urn:test:project");
+        final URI plain = vf.createURI("urn:test:genotype:plain");
+        final URI typed = vf.createURI("urn:test:genotype:typed");
+        final URI tagged = vf.createURI("urn:test:genotype:tagged");
+        
+        final Model description = new LinkedHashModel();
+        description.add(plain, PODD.PODD_SCIENCE_HAS_GENUS, vf.createLiteral("Triticum"));
+        description.add(plain, PODD.PODD_SCIENCE_HAS_SPECIES, vf.createLiteral("aestivum"));
+        description.add(plain, PODD.PODD_SCIENCE_HAS_LINE, vf.createLiteral("Line 1"));
+        description.add(typed, PODD.PODD_SCIENCE_HAS_GENUS, vf.createLiteral("Triticum"));
+        description.add(typed, PODD.PODD_SCIENCE_HAS_SPECIES, vf.createLiteral("aestivum"));
+        description.add(typed, PODD.PODD_SCIENCE_HAS_LINE, vf.createLiteral("Line 2", XMLSchema.STRING));
+        description.add(tagged, PODD.PODD_SCIENCE_HAS_GENUS, vf.createLiteral("Triticum"));
+        description.add(tagged, PODD.PODD_SCIENCE_HAS_SPECIES, vf.createLiteral("aestivum", "en"));
+        description.add(tagged, PODD.PODD_SCIENCE_HAS_LINE, vf.createLiteral("Line 3"));
+        
+        final ConcurrentMap<ExampleGenotypeKey, URI> genotypeIndex = new ConcurrentHashMap<>();
+        this.client.indexGenotype(genotypeIndex, projectUri, plain, description);
+        this.client.indexGenotype(genotypeIndex, projectUri, typed, description);
+        this.client.indexGenotype(genotypeIndex, projectUri, tagged, description);
+        
+        Assert.assertEquals(1, genotypeIndex.size());
+        Assert.assertEquals(plain,
+                genotypeIndex.get(new ExampleGenotypeKey(projectUri, "Triticum", "aestivum", "Line 1")));
+        Assert.assertNull(genotypeIndex.get(new ExampleGenotypeKey(projectUri, "Triticum", "aestivum", "Line 2")));
+        Assert.assertNull(genotypeIndex.get(new ExampleGenotypeKey(projectUri, "Triticum", "aestivum", "Line 3")));
+    }
+    
+    @Test
+    public void testGetMaterialUriReusesMaterialForPotAndGenotype() throws Exception
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        final URI potUri = vf.createURI("urn:test:pot:1");
+        final URI otherPotUri = vf.createURI("urn:test:pot:2");
+        final URI genotypeUri = vf.createURI("urn:test:genotype:1");
+        final URI otherGenotypeUri = vf.createURI("urn:test:genotype:2");
+        final ExampleImportContext context = new ExampleImportContext();
+        
+        final URI material =
+                this.client.getMaterialUri(context.materialUriMap, context.materialIndex, genotypeUri, null, potUri,
+                        "1", "1", "No");
+        Assert.assertEquals(material, context.materialIndex.get(new ExampleMaterialKey(potUri, genotypeUri)));
+        Assert.assertTrue(context.materialUriMap.get(potUri).get(material)
+                .contains(material, PODD.PODD_SCIENCE_REFERS_TO_GENOTYPE, genotypeUri));
+        
+        // The same pot and genotype is found in the index instead of creating a new material
+        Assert.assertEquals(material, this.client.getMaterialUri(context.materialUriMap, context.materialIndex,
+                genotypeUri, null, potUri, "1", "1", "No"));
+        
+        // A different genotype in the same pot, or the same genotype in a different pot, is a
+        // different material
+        final URI otherGenotypeMaterial =
+                this.client.getMaterialUri(context.materialUriMap, context.materialIndex, otherGenotypeUri, null,
+                        potUri, "1", "2", "No");
+        final URI otherPotMaterial =
+                this.client.getMaterialUri(context.materialUriMap, context.materialIndex, genotypeUri, null,
+                        otherPotUri, "2", "1", "No");
+        Assert.assertFalse(material.equals(otherGenotypeMaterial));
+        Assert.assertFalse(material.equals(otherPotMaterial));
+        Assert.assertFalse(otherGenotypeMaterial.equals(otherPotMaterial));
+        
+        Assert.assertEquals(3, context.materialIndex.size());
+        Assert.assertEquals(2, context.materialUriMap.get(potUri).size());
+        Assert.assertEquals(1, context.materialUriMap.get(otherPotUri).size());
+    }
+    
+    @Test
+    public void testProcessTrayScanListStreamsLines() throws Exception
+    {
+        // Several batches of lines, so that lines are processed before the list has been read
+        final int rows = 3 * ExampleTrayScanPipeline.DEFAULT_BATCH_SIZE + 10;
+        final List<List<String>> expectedRows =
+                ExampleBenchmarkFixtures.trayScanRows(rows, ExamplePoddClientTest.PROJECTS,
+                        ExamplePoddClientTest.EXPERIMENTS, ExamplePoddClientTest.GENOTYPES);
+        final byte[] list =
+                ExampleBenchmarkFixtures.trayScanList(rows, ExamplePoddClientTest.PROJECTS,
+                        ExamplePoddClientTest.EXPERIMENTS, ExamplePoddClientTest.GENOTYPES);
+        
+        final AtomicInteger queriesBeforeEnd = new AtomicInteger(-1);
+        final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue =
+                this.client.processTrayScanList(new FilterInputStream(new ByteArrayInputStream(list))
+                    {
+                        @Override
+                        public int read(final byte[] b, final int off, final int len) throws IOException
+                        {
+                            final int result = super.read(b, off, len);
+                            if(result < 0)
+                            {
+                                queriesBeforeEnd.compareAndSet(-1, ExamplePoddClientTest.this.client.getQueryCount());
+                            }
+                            return result;
+                        }
+                    });
+        
+        Assert.assertTrue("Lines were not processed until the whole list was read: " + queriesBeforeEnd.get(),
+                queriesBeforeEnd.get() > 0);
+        
+        // Every line was written to the database in order
+        final List<String> expectedPlantIds = new ArrayList<>();
+        for(final List<String> nextRow : expectedRows)
+        {
+            expectedPlantIds.add(nextRow.get(ExampleBenchmarkFixtures.TRAYSCAN_HEADERS
+                    .indexOf(ExampleSpreadsheetConstants.CLIENT_PLANT_ID)));
+        }
+        Assert.assertEquals(expectedPlantIds, this.selectPlantIds());
+        
+        // Every line added a pot with its barcode to the changes for its project
+        Assert.assertEquals(ExamplePoddClientTest.PROJECTS, uploadQueue.size());
+        final List<String> barcodes = new ArrayList<>();
+        for(final ExampleStatementBuffer nextBuffer : uploadQueue.values())
+        {
+            for(final org.openrdf.model.Statement nextStatement : nextBuffer)
+            {
+                if(nextStatement.getPredicate().equals(PODD.PODD_SCIENCE_HAS_BARCODE)
+                        && nextStatement.getObject().stringValue().contains("_Pot#"))
+                {
+                    barcodes.add(nextStatement.getObject().stringValue());
+                }
+            }
+        }
+        Assert.assertEquals(rows, barcodes.size());
+        Assert.assertTrue(barcodes.containsAll(expectedPlantIds));
+    }
+    
+    @Test
+    public void testProcessTrayScanListClearsValueCache() throws Exception
+    {
+        final byte[] list =
+                ExampleBenchmarkFixtures.trayScanList(20, ExamplePoddClientTest.PROJECTS,
+                        ExamplePoddClientTest.EXPERIMENTS, ExamplePoddClientTest.GENOTYPES);
+        
+        this.client.processTrayScanList(new ByteArrayInputStream(list));
+        final int firstSize = this.client.getValueCache().getSize();
+        final long firstHits = this.client.getValueCache().getHitCount();
+        Assert.assertTrue(firstSize > 0);
+        
+        // The second import starts from an empty cache, rather than finding every value from the
+        // first import
+        this.client.processTrayScanList(new ByteArrayInputStream(list));
+        Assert.assertEquals(firstSize, this.client.getValueCache().getSize());
+        Assert.assertEquals(firstHits, this.client.getValueCache().getHitCount());
+    }
+    
+    @Test
+    public void testUploadArtifactsAppendsConcurrently() throws Exception
+    {
+        final int artifacts = 3;
+        final CountDownLatch allStarted = new CountDownLatch(artifacts);
+        final AppendingClient appendingClient = new AppendingClient(0, null, allStarted);
+        
+        final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue = this.newUploadQueue(artifacts);
+        final ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> results =
+                appendingClient.uploadArtifacts(uploadQueue, artifacts, ExampleRetryPolicy.NO_RETRY);
+        
+        // Each append waited for all of the others to start, so they were in progress together
+        Assert.assertEquals(artifacts, appendingClient.appendCount.get());
+        Assert.assertEquals(uploadQueue.keySet(), results.keySet());
+        for(final Entry<InferredOWLOntologyID, InferredOWLOntologyID> nextResult : results.entrySet())
+        {
+            Assert.assertEquals(AppendingClient.nextVersion(nextResult.getKey()), nextResult.getValue());
+        }
+    }
+    
+    @Test
+    public void testUploadArtifactsDoesNotRetryAfterRequestSent() throws Exception
+    {
+        final AppendingClient appendingClient =
+                new AppendingClient(1, new SocketTimeoutException("Read timed out"), null);
+        
+        try
+        {
+            appendingClient.uploadArtifacts(this.newUploadQueue(1), 1, new ExampleRetryPolicy(3, 0, 0));
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final PoddClientException e)
+        {
+            // The server may have committed the first append, so it must not be sent again
+            Assert.assertEquals(1, appendingClient.appendCount.get());
+        }
+    }
+    
+    @Test
+    public void testUploadArtifactsRetriesRefusedConnection() throws Exception
+    {
+        final AppendingClient appendingClient =
+                new AppendingClient(2, new ConnectException("Connection refused"), null);
+        
+        final ConcurrentMap<InferredOWLOntologyID, Model> uploadQueue = this.newUploadQueue(1);
+        final ConcurrentMap<InferredOWLOntologyID, InferredOWLOntologyID> results =
+                appendingClient.uploadArtifacts(uploadQueue, 1, new ExampleRetryPolicy(3, 0, 0));
+        
+        Assert.assertEquals(3, appendingClient.appendCount.get());
+        Assert.assertEquals(1, results.size());
+        final InferredOWLOntologyID artifactId = uploadQueue.keySet().iterator().next();
+        Assert.assertEquals(AppendingClient.nextVersion(artifactId), results.get(artifactId));
+    }
+    
+    @Test
+    public void testUploadArtifactsRetriesUntilPolicyExhausted() throws Exception
+    {
+        final AppendingClient appendingClient =
+                new AppendingClient(Integer.MAX_VALUE, new ConnectException("Connection refused"), null);
+        
+        try
+        {
+            appendingClient.uploadArtifacts(this.newUploadQueue(1), 1, new ExampleRetryPolicy(3, 0, 0));
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final PoddClientException e)
+        {
+            Assert.assertEquals(3, appendingClient.appendCount.get());
+        }
+    }
+    
+    @Test
+    public void testUploadArtifactsStreamsByDefault() throws Exception
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        final Model model = new LinkedHashModel();
+        for(int i = 0; i < 10000; i++)
+        {
+            model.add(vf.createURI("urn:test:pot:" + i), RDFS.LABEL, vf.createLiteral("Pot " + i));
+        }
+        // Count the statements that have been serialised so far
+        final AtomicInteger iterated = new AtomicInteger();
+        final Iterable<org.openrdf.model.Statement> counting = new Iterable<org.openrdf.model.Statement>()
+            {
+                @Override
+                public Iterator<org.openrdf.model.Statement> iterator()
+                {
+                    final Iterator<org.openrdf.model.Statement> iterator = model.iterator();
+                    return new Iterator<org.openrdf.model.Statement>()
+                        {
+                            @Override
+                            public boolean hasNext()
+                            {
+                                return iterator.hasNext();
+                            }
+                            
+                            @Override
+                            public org.openrdf.model.Statement next()
+                            {
+                                iterated.incrementAndGet();
+                                return iterator.next();
+                            }
+                            
+                            @Override
+                            public void remove()
+                            {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                }
+            };
+        
+        final AtomicReference<RDFFormat> sentFormat = new AtomicReference<>();
+        final AtomicInteger iteratedBeforeFirstByte = new AtomicInteger();
+        final ExamplePoddClient streamingClient = new ExampleStubPoddClient(0, 0, 0)
+            {
+                @Override
+                public InferredOWLOntologyID appendArtifact(final InferredOWLOntologyID artifactId,
+                        final InputStream input, final RDFFormat format) throws PoddClientException
+                {
+                    sentFormat.set(format);
+                    try
+                    {
+                        Assert.assertTrue(input.read() >= 0);
+                        iteratedBeforeFirstByte.set(iterated.get());
+                        while(input.read(new byte[8192]) >= 0)
+                        {
+                            // Read the rest of the body as the server would
+                        }
+                    }
+                    catch(final IOException e)
+                    {
+                        throw new PoddClientException("Could not read upload body", e);
+                    }
+                    return AppendingClient.nextVersion(artifactId);
+                }
+            };
+        
+        final ConcurrentMap<InferredOWLOntologyID, Iterable<org.openrdf.model.Statement>> uploadQueue =
+                new ConcurrentHashMap<>();
+        uploadQueue.put(this.newUploadQueue(1).keySet().iterator().next(), counting);
+        Assert.assertEquals(1, streamingClient.uploadArtifacts(uploadQueue, 1, ExampleRetryPolicy.NO_RETRY).size());
+        
+        // The body was written a chunk at a time as it was read, rather than serialised up front
+        Assert.assertEquals(ExamplePoddClient.DEFAULT_ARTIFACT_UPLOAD_FORMAT, sentFormat.get());
+        Assert.assertTrue(iteratedBeforeFirstByte.get() > 0);
+        Assert.assertTrue(iteratedBeforeFirstByte.get() < model.size());
+        Assert.assertEquals(model.size(), iterated.get());
+    }
+    
+    @Test
+    public void testUploadArtifactsStopsAtFirstFailure() throws Exception
+    {
+        final AppendingClient appendingClient =
+                new AppendingClient(Integer.MAX_VALUE, new ConnectException("Connection refused"), null);
+        
+        try
+        {
+            appendingClient.uploadArtifacts(this.newUploadQueue(3));
+            Assert.fail("Did not find expected exception");
+        }
+        catch(final PoddClientException e)
+        {
+            // The single argument form does not retry, and does not continue to the other artifacts
+            Assert.assertEquals(1, appendingClient.appendCount.get());
+        }
+    }
+    
+    /**
+     * Creates a task that finds the first experiment in the given project.
+     */
+    private Callable<Map<URI, URI>> newExperimentLookup(final ExampleStubPoddClient client,
+            final ExampleImportContext context, final int project)
+    {
+        return new Callable<Map<URI, URI>>()
+            {
+                @Override
+                public Map<URI, URI> call() throws PoddClientException
+                {
+                    final String projectName = ExampleBenchmarkFixtures.projectName(project);
+                    final URI projectUri = context.projectUriMap.get(projectName).keySet().iterator().next();
+                    return client.getExperimentDetails(context, projectName, projectUri,
+                            context.projectUriMap.get(projectName).get(projectUri),
+                            ExampleBenchmarkFixtures.experimentName(project, 1));
+                }
+            };
+    }
+    
+    /**
+     * Creates a queue of empty models for the given number of artifacts.
+     */
+    private ConcurrentMap<InferredOWLOntologyID, Model> newUploadQueue(final int artifacts)
+    {
+        final ConcurrentMap<InferredOWLOntologyID, Model> result = new ConcurrentHashMap<>();
+        for(int i = 1; i <= artifacts; i++)
+        {
+            final String artifactBase = "urn:test:artifact:" + i;
+            result.put(new InferredOWLOntologyID(IRI.create(artifactBase), IRI.create(artifactBase + ":version:1"),
+                    IRI.create(artifactBase + ":inferred:1")), new LinkedHashModel());
+        }
+        return result;
+    }
+    
+    /**
+     * A client that fails the given number of appends with the given cause, and then returns a new
+     * version for each artifact that is appended to.
+     */
+    private static class AppendingClient extends ExampleStubPoddClient
+    {
+        private final AtomicInteger appendCount = new AtomicInteger();
+        
+        private final AtomicInteger failuresRemaining;
+        
+        private final Exception cause;
+        
+        private final CountDownLatch allStarted;
+        
+        /**
+         * @param failures
+         *            The number of appends to fail.
+         * @param cause
+         *            The cause of each failure.
+         * @param allStarted
+         *            If not null, a latch that each append counts down and then waits for.
+         */
+        AppendingClient(final int failures, final Exception cause, final CountDownLatch allStarted)
+        {
+            super(0, 0, 0);
+            this.failuresRemaining = new AtomicInteger(failures);
+            this.cause = cause;
+            this.allStarted = allStarted;
+        }
+        
+        static InferredOWLOntologyID nextVersion(final InferredOWLOntologyID artifactId)
+        {
+            return new InferredOWLOntologyID(artifactId.getOntologyIRI(), IRI.create(artifactId.getOntologyIRI()
+                    + ":version:2"), IRI.create(artifactId.getOntologyIRI() + ":inferred:2"));
+        }
+        
+        @Override
+        public InferredOWLOntologyID appendArtifact(final InferredOWLOntologyID artifactId,
+                final InputStream input, final RDFFormat format) throws PoddClientException
+        {
+            this.appendCount.incrementAndGet();
+            if(this.failuresRemaining.getAndDecrement() > 0)
+            {
+                throw new PoddClientException("Could not append artifact", this.cause);
+            }
+            if(this.allStarted != null)
+            {
+                this.allStarted.countDown();
+                try
+                {
+                    if(!this.allStarted.await(10, TimeUnit.SECONDS))
+                    {
+                        throw new PoddClientException("Appends were not in progress at the same time");
+                    }
+                }
+                catch(final InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new PoddClientException("Interrupted while waiting for other appends", e);
+                }
+            }
+            return AppendingClient.nextVersion(artifactId);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+
+/**
+ * Tests for {@link ExampleRdfInputStream}.
+ */
+public class ExampleRdfInputStreamTest
+{
+    private Model model;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        this.model = new LinkedHashModel();
+        // Enough statements to need several chunks
+        for(int i = 0; i < 5000; i++)
+        {
+            final URI nextSubject = vf.createURI("urn:test:subject:" + i);
+            this.model.add(nextSubject, RDFS.LABEL, vf.createLiteral("Label " + i));
+            this.model.add(nextSubject, RDFS.SEEALSO, vf.createURI("urn:test:object:" + (i % 7)));
+        }
+    }
+    
+    private byte[] expected(final RDFFormat format) throws Exception
+    {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Rio.write(this.model, result, format);
+        return result.toByteArray();
+    }
+    
+    @Test
+    public void testBinaryRoundTrip() throws Exception
+    {
+        final Model actual;
+        try (final InputStream input = new ExampleRdfInputStream(this.model, RDFFormat.BINARY);)
+        {
+            actual = Rio.parse(input, "", RDFFormat.BINARY);
+        }
+        Assert.assertEquals(this.model.size(), actual.size());
+        Assert.assertEquals(this.model, actual);
+    }
+    
+    @Test
+    public void testEmptyModel() throws Exception
+    {
+        try (final InputStream input = new ExampleRdfInputStream(new LinkedHashModel(), RDFFormat.NTRIPLES);)
+        {
+            Assert.assertEquals(-1, input.read());
+        }
+    }
+    
+    @Test
+    public void testReadInBlocks() throws Exception
+    {
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (final InputStream input = new ExampleRdfInputStream(this.model, RDFFormat.NTRIPLES);)
+        {
+            // Use a block size that does not line up with the chunks
+            final byte[] block = new byte[1000];
+            int read;
+            while((read = input.read(block)) >= 0)
+            {
+                actual.write(block, 0, read);
+            }
+        }
+        Assert.assertArrayEquals(this.expected(RDFFormat.NTRIPLES), actual.toByteArray());
+    }
+    
+    @Test
+    public void testReadSingleBytes() throws Exception
+    {
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (final InputStream input = new ExampleRdfInputStream(this.model, RDFFormat.NTRIPLES);)
+        {
+            int next;
+            while((next = input.read()) >= 0)
+            {
+                actual.write(next);
+            }
+        }
+        Assert.assertArrayEquals(this.expected(RDFFormat.NTRIPLES), actual.toByteArray());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the parts of {@link ExampleRemoteDigestVerifier} that do not need an SSH server.
+ */
+public class ExampleRemoteDigestVerifierTest
+{
+    @Test
+    public void testGetDigestValue()
+    {
+        Assert.assertEquals("abc123", ExampleRemoteDigestVerifier.getDigestValue("abc123"));
+        Assert.assertEquals("abc123", ExampleRemoteDigestVerifier.getDigestValue("  abc123 *bag.zip\n"));
+        Assert.assertEquals("abc123", ExampleRemoteDigestVerifier.getDigestValue("abc123\tbag.zip"));
+        // Any whitespace ends the digest, not only the separators used in LST files
+        Assert.assertEquals("abc123", ExampleRemoteDigestVerifier.getDigestValue("abc123\u001Cbag.zip"));
+        Assert.assertEquals("", ExampleRemoteDigestVerifier.getDigestValue(" \r\n"));
+    }
+    
+    @Test
+    public void testIsCommandNotFound()
+    {
+        Assert.assertTrue(ExampleRemoteDigestVerifier.isCommandNotFound(127, ""));
+        Assert.assertTrue(ExampleRemoteDigestVerifier.isCommandNotFound(1, "bash: sha512sum: command not found\n"));
+        Assert.assertTrue(ExampleRemoteDigestVerifier.isCommandNotFound(null, "sh: 1: md5sum: Not found"));
+        
+        // Other failures, such as a missing file, do not mean that the command is unavailable
+        Assert.assertFalse(ExampleRemoteDigestVerifier.isCommandNotFound(1,
+                "sha1sum: /data/bag.zip: No such file or directory\n"));
+        Assert.assertFalse(ExampleRemoteDigestVerifier.isCommandNotFound(null, ""));
+        Assert.assertFalse(ExampleRemoteDigestVerifier.isCommandNotFound(0, ""));
+    }
+    
+    @Test
+    public void testMatches()
+    {
+        Assert.assertTrue(ExampleRemoteDigestVerifier.matches("ABC123", "abc123  bag.zip"));
+        Assert.assertFalse(ExampleRemoteDigestVerifier.matches("abc123", "abc124"));
+        Assert.assertFalse(ExampleRemoteDigestVerifier.matches("abc123", null));
+    }
+    
+    @Test
+    public void testQuote()
+    {
+        Assert.assertEquals("'/data/it'\\''s a bag.zip'", ExampleRemoteDigestVerifier.quote("/data/it's a bag.zip"));
+    }
+}
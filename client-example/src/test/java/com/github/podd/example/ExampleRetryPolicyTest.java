@@ -0,0 +1,91 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.restlet.data.Status;
+import org.restlet.resource.ResourceException;
+
+import com.github.podd.client.api.PoddClientException;
+
+/**
+ * Tests for {@link ExampleRetryPolicy}.
+ */
+public class ExampleRetryPolicyTest
+{
+    @Test
+    public void testBackoffDoublesUpToMaximum()
+    {
+        final ExampleRetryPolicy policy = new ExampleRetryPolicy(10, 100, 1000);
+        
+        Assert.assertEquals(100, policy.getBackoffMillis(1));
+        Assert.assertEquals(200, policy.getBackoffMillis(2));
+        Assert.assertEquals(400, policy.getBackoffMillis(3));
+        Assert.assertEquals(800, policy.getBackoffMillis(4));
+        Assert.assertEquals(1000, policy.getBackoffMillis(5));
+        Assert.assertEquals(1000, policy.getBackoffMillis(Integer.MAX_VALUE));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAttempts()
+    {
+        new ExampleRetryPolicy(0, 100, 1000);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBackoff()
+    {
+        new ExampleRetryPolicy(3, 1000, 100);
+    }
+    
+    @Test
+    public void testIsNotProcessed()
+    {
+        Assert.assertTrue(ExampleRetryPolicy.isNotProcessed(new PoddClientException("Could not append artifact",
+                new ConnectException("Connection refused"))));
+        Assert.assertTrue(ExampleRetryPolicy.isNotProcessed(new PoddClientException("Could not append artifact",
+                new ResourceException(Status.SERVER_ERROR_SERVICE_UNAVAILABLE))));
+        Assert.assertTrue(ExampleRetryPolicy.isNotProcessed(new ResourceException(Status.CONNECTOR_ERROR_CONNECTION)));
+        
+        // The server may have committed the change before these failures
+        Assert.assertFalse(ExampleRetryPolicy.isNotProcessed(new PoddClientException("Could not append artifact",
+                new SocketTimeoutException("Read timed out"))));
+        Assert.assertFalse(ExampleRetryPolicy.isNotProcessed(new PoddClientException("Could not append artifact",
+                new ResourceException(Status.SERVER_ERROR_INTERNAL))));
+        Assert.assertFalse(ExampleRetryPolicy.isNotProcessed(new PoddClientException("Could not append artifact")));
+    }
+    
+    @Test
+    public void testNoRetry()
+    {
+        Assert.assertFalse(ExampleRetryPolicy.NO_RETRY.shouldRetry(1));
+    }
+    
+    @Test
+    public void testShouldRetry()
+    {
+        final ExampleRetryPolicy policy = new ExampleRetryPolicy(3, 100, 1000);
+        
+        Assert.assertTrue(policy.shouldRetry(1));
+        Assert.assertTrue(policy.shouldRetry(2));
+        Assert.assertFalse(policy.shouldRetry(3));
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+
+/**
+ * Tests for {@link ExampleStatementBuffer}.
+ */
+public class ExampleStatementBufferTest
+{
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    
+    @Test
+    public void testAddAllFromModel()
+    {
+        final Model model = new LinkedHashModel();
+        final URI context = this.vf.createURI("urn:test:context");
+        model.add(this.vf.createURI("urn:test:a"), RDFS.LABEL, this.vf.createLiteral("A"));
+        model.add(this.vf.createURI("urn:test:b"), RDFS.LABEL, this.vf.createLiteral("B"), context);
+        
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        buffer.addAll(model);
+        
+        Assert.assertEquals(model, new LinkedHashModel(this.toList(buffer)));
+    }
+    
+    @Test
+    public void testContextsAreDistinct()
+    {
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        final URI subject = this.vf.createURI("urn:test:a");
+        final URI context = this.vf.createURI("urn:test:context");
+        
+        buffer.add(subject, RDFS.LABEL, this.vf.createLiteral("A"));
+        buffer.add(subject, RDFS.LABEL, this.vf.createLiteral("A"), context);
+        buffer.add(subject, RDFS.LABEL, this.vf.createLiteral("A"), context);
+        
+        final List<Statement> statements = this.toList(buffer);
+        Assert.assertEquals(2, statements.size());
+        Assert.assertNull(statements.get(0).getContext());
+        Assert.assertEquals(context, statements.get(1).getContext());
+    }
+    
+    @Test
+    public void testDuplicatesRemovedInFirstSeenOrder()
+    {
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        for(int i = 0; i < 1000; i++)
+        {
+            buffer.add(this.vf.createURI("urn:test:" + (i % 100)), RDFS.LABEL, this.vf.createLiteral(i % 100));
+        }
+        
+        Assert.assertEquals(100, buffer.flush());
+        final List<Statement> statements = this.toList(buffer);
+        Assert.assertEquals(100, statements.size());
+        for(int i = 0; i < 100; i++)
+        {
+            Assert.assertEquals(this.vf.createURI("urn:test:" + i), statements.get(i).getSubject());
+        }
+        Assert.assertEquals(201, buffer.getTermCount());
+    }
+    
+    @Test
+    public void testEmpty()
+    {
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(0, buffer.size());
+        Assert.assertFalse(buffer.iterator().hasNext());
+    }
+    
+    @Test
+    public void testEstimatedBytesPerMillionStatements()
+    {
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        for(int i = 0; i < 1000000; i++)
+        {
+            buffer.add(this.vf.createURI("urn:test:" + (i % 1000)), RDFS.LABEL, this.vf.createLiteral(i / 1000));
+        }
+        
+        // Dominated by the statement array, which is four integers for each statement plus spare
+        // capacity
+        Assert.assertEquals(1000000, buffer.size());
+        Assert.assertEquals(2001, buffer.getTermCount());
+        Assert.assertTrue(buffer.getEstimatedBytes() < 32 * 1000000);
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testIteratorRemove()
+    {
+        final ExampleStatementBuffer buffer = new ExampleStatementBuffer(this.vf);
+        buffer.add(this.vf.createURI("urn:test:a"), RDFS.LABEL, this.vf.createLiteral("A"));
+        
+        final Iterator<Statement> iterator = buffer.iterator();
+        iterator.next();
+        iterator.remove();
+    }
+    
+    private List<Statement> toList(final ExampleStatementBuffer buffer)
+    {
+        final List<Statement> result = new ArrayList<>();
+        for(final Statement nextStatement : buffer)
+        {
+            result.add(nextStatement);
+        }
+        return result;
+    }
+}
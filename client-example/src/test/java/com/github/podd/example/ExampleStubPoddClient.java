@@ -0,0 +1,194 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.semanticweb.owlapi.model.IRI;
+
+import com.github.podd.client.api.PoddClientException;
+import com.github.podd.utils.InferredOWLOntologyID;
+import com.github.podd.utils.PODD;
+
+/**
+ * An {@link ExamplePoddClient} that answers {@link #listArtifacts(boolean, boolean)} and
+ * {@link #doSPARQL(String, Collection)} from generated projects held in memory, so that the import
+ * paths can be benchmarked without a PODD server.
+ * <p>
+ * Each project is in its own artifact, and contains the given number of experiments and genotypes,
+ * named to match the lines generated by
+ * {@link ExampleBenchmarkFixtures#trayScanRows(int, int, int, int)}. Queries return every statement
+ * in the artifacts they are sent to, which the client filters in the same way as the results of
+ * the real queries.
+ */
+public class ExampleStubPoddClient extends ExamplePoddClient
+{
+    private static final String BASE = "urn:podd:benchmark:";
+    
+    private final Model artifacts = new LinkedHashModel();
+    
+    private final Map<InferredOWLOntologyID, Model> artifactContents = new LinkedHashMap<>();
+    
+    private final Map<InferredOWLOntologyID, URI> projectUris = new LinkedHashMap<>();
+    
+    private final AtomicInteger queryCount = new AtomicInteger();
+    
+    private volatile ExampleConnectionPool connectionPool;
+    
+    /**
+     * @param projectCount
+     *            The number of projects to generate.
+     * @param experimentCount
+     *            The number of experiments in each project.
+     * @param genotypeCount
+     *            The number of genotypes in each project.
+     */
+    public ExampleStubPoddClient(final int projectCount, final int experimentCount, final int genotypeCount)
+    {
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        for(int project = 1; project <= projectCount; project++)
+        {
+            final String artifactBase = ExampleStubPoddClient.BASE + "artifact:" + project;
+            final InferredOWLOntologyID artifactId =
+                    new InferredOWLOntologyID(IRI.create(artifactBase), IRI.create(artifactBase + ":version:1"),
+                            IRI.create(artifactBase + ":inferred:1"));
+            final URI projectUri = vf.createURI(ExampleStubPoddClient.BASE + "project:" + project);
+            final URI ontologyUri = vf.createURI(artifactBase);
+            
+            this.artifacts.add(ontologyUri, RDF.TYPE, OWL.ONTOLOGY);
+            this.artifacts.add(ontologyUri, OWL.VERSIONIRI, vf.createURI(artifactBase + ":version:1"));
+            this.artifacts.add(ontologyUri, PODD.PODD_BASE_HAS_TOP_OBJECT, projectUri);
+            this.artifacts.add(projectUri, RDF.TYPE, PODD.PODD_SCIENCE_PROJECT);
+            this.artifacts.add(projectUri, RDFS.LABEL, vf.createLiteral(ExampleBenchmarkFixtures.projectName(project)));
+            
+            final Model contents = new LinkedHashModel();
+            for(int experiment = 1; experiment <= experimentCount; experiment++)
+            {
+                final URI experimentUri =
+                        vf.createURI(ExampleStubPoddClient.BASE + "experiment:" + project + ":" + experiment);
+                contents.add(experimentUri, RDF.TYPE, PODD.PODD_SCIENCE_EXPERIMENT);
+                contents.add(experimentUri, RDFS.LABEL,
+                        vf.createLiteral(ExampleBenchmarkFixtures.experimentName(project, experiment)));
+            }
+            for(int genotype = 1; genotype <= genotypeCount; genotype++)
+            {
+                final URI genotypeUri =
+                        vf.createURI(ExampleStubPoddClient.BASE + "genotype:" + project + ":" + genotype);
+                contents.add(projectUri, PODD.PODD_SCIENCE_HAS_GENOTYPE, genotypeUri);
+                contents.add(genotypeUri, RDF.TYPE, PODD.PODD_SCIENCE_GENOTYPE);
+                contents.add(genotypeUri, PODD.PODD_SCIENCE_HAS_GENUS,
+                        vf.createLiteral(ExampleBenchmarkFixtures.GENUS));
+                contents.add(genotypeUri, PODD.PODD_SCIENCE_HAS_SPECIES,
+                        vf.createLiteral(ExampleBenchmarkFixtures.SPECIES));
+                contents.add(genotypeUri, PODD.PODD_SCIENCE_HAS_LINE,
+                        vf.createLiteral(ExampleBenchmarkFixtures.lineName(genotype)));
+            }
+            
+            this.artifactContents.put(artifactId, contents);
+            this.projectUris.put(artifactId, projectUri);
+        }
+    }
+    
+    @Override
+    public Model doSPARQL(final String queryString, final Collection<InferredOWLOntologyID> artifactIds)
+        throws PoddClientException
+    {
+        this.queryCount.incrementAndGet();
+        final Model result = new LinkedHashModel();
+        for(final InferredOWLOntologyID nextArtifact : artifactIds)
+        {
+            final Model nextContents = this.artifactContents.get(nextArtifact);
+            if(nextContents == null)
+            {
+                throw new PoddClientException("Unknown artifact: " + nextArtifact);
+            }
+            result.addAll(nextContents);
+        }
+        return result;
+    }
+    
+    /**
+     * @return The number of queries answered by {@link #doSPARQL(String, Collection)}.
+     */
+    public int getQueryCount()
+    {
+        return this.queryCount.get();
+    }
+    
+    /**
+     * Writes TrayScan lines to the given pool instead of the database configured in the properties.
+     */
+    public void setConnectionPool(final ExampleConnectionPool connectionPool)
+    {
+        this.connectionPool = connectionPool;
+    }
+    
+    @Override
+    public ExampleTrayScanWriter getTrayScanWriter() throws PoddClientException
+    {
+        if(this.connectionPool == null)
+        {
+            return super.getTrayScanWriter();
+        }
+        return new ExampleTrayScanWriter(this.connectionPool, ExampleDBConstants.DEFAULT_DB_BATCH_SIZE);
+    }
+    
+    @Override
+    public Model listArtifacts(final boolean published, final boolean unpublished) throws PoddClientException
+    {
+        final Model result = new LinkedHashModel();
+        if(unpublished)
+        {
+            result.addAll(this.artifacts);
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a project map containing the generated projects, in the form created by
+     * {@link ExamplePoddClient#processTrayScanList(java.io.InputStream)} before importing lines.
+     * 
+     * @return A new map from the name of each project to its URI and artifact.
+     */
+    public ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> newProjectUriMap()
+    {
+        final ConcurrentMap<String, ConcurrentMap<URI, InferredOWLOntologyID>> result = new ConcurrentHashMap<>();
+        int project = 1;
+        for(final Entry<InferredOWLOntologyID, URI> nextEntry : this.projectUris.entrySet())
+        {
+            final ConcurrentMap<URI, InferredOWLOntologyID> nextMapping = new ConcurrentHashMap<>();
+            nextMapping.put(nextEntry.getValue(), nextEntry.getKey());
+            result.put(ExampleBenchmarkFixtures.projectName(project), nextMapping);
+            project++;
+        }
+        return result;
+    }
+}
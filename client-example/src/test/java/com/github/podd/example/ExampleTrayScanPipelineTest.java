@@ -0,0 +1,166 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Value;
+
+import com.github.podd.client.impl.restlet.RestletPoddClientImpl;
+import com.github.podd.utils.InferredOWLOntologyID;
+
+/**
+ * Tests for {@link ExampleTrayScanPipeline}, comparing its results with the serial import in
+ * {@link ExamplePoddClient#processTrayScanList(java.io.InputStream, int, int)}.
+ */
+public class ExampleTrayScanPipelineTest
+{
+    private static final int ROWS = 1000;
+    
+    private static final int PROJECTS = 2;
+    
+    private static final int EXPERIMENTS = 3;
+    
+    private Connection keepAlive;
+    
+    private ExampleConnectionPool pool;
+    
+    /**
+     * Converts the statements for each artifact to strings in the order they were added, replacing
+     * each temporary URI with a name based on the order that it first appears in, as temporary
+     * URIs are random.
+     */
+    private static Map<InferredOWLOntologyID, List<String>> canonicalise(
+            final ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> uploadQueue)
+    {
+        final Map<InferredOWLOntologyID, List<String>> result = new HashMap<>();
+        for(final Entry<InferredOWLOntologyID, ExampleStatementBuffer> nextEntry : uploadQueue.entrySet())
+        {
+            final Map<Value, String> temporaryNames = new HashMap<>();
+            final List<String> nextStatements = new ArrayList<>();
+            for(final org.openrdf.model.Statement nextStatement : nextEntry.getValue())
+            {
+                nextStatements.add(ExampleTrayScanPipelineTest.name(nextStatement.getSubject(), temporaryNames)
+                        + " " + ExampleTrayScanPipelineTest.name(nextStatement.getPredicate(), temporaryNames)
+                        + " " + ExampleTrayScanPipelineTest.name(nextStatement.getObject(), temporaryNames));
+            }
+            result.put(nextEntry.getKey(), nextStatements);
+        }
+        return result;
+    }
+    
+    private static String name(final Value value, final Map<Value, String> temporaryNames)
+    {
+        if(!value.stringValue().startsWith(RestletPoddClientImpl.TEMP_UUID_PREFIX))
+        {
+            return value.toString();
+        }
+        String result = temporaryNames.get(value);
+        if(result == null)
+        {
+            result = "<temporary:" + temporaryNames.size() + ">";
+            temporaryNames.put(value, result);
+        }
+        return result;
+    }
+    
+    private int countAssignments() throws SQLException
+    {
+        try (final Statement statement = this.keepAlive.createStatement();
+                final ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM tab_assign");)
+        {
+            Assert.assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+    
+    private ConcurrentMap<InferredOWLOntologyID, ExampleStatementBuffer> importList(final byte[] list,
+            final int workerCount) throws Exception
+    {
+        // Only some of the genotypes exist, so that the imports also create genotypes
+        final ExampleStubPoddClient client =
+                new ExampleStubPoddClient(ExampleTrayScanPipelineTest.PROJECTS,
+                        ExampleTrayScanPipelineTest.EXPERIMENTS, 5);
+        client.setConnectionPool(this.pool);
+        return client.processTrayScanList(new ByteArrayInputStream(list), workerCount, 2);
+    }
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        // Keep one connection open for the duration of the test so the in-memory database is not
+        // dropped when the pool returns its connections
+        final String url = "jdbc:h2:mem:trayscan-pipeline-" + UUID.randomUUID().toString();
+        this.keepAlive = DriverManager.getConnection(url, "sa", "");
+        ExampleBenchmarkFixtures.createTrayScanDatabase(this.keepAlive);
+        this.pool = new ExampleConnectionPool(url, "sa", "", 2);
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            this.pool.close();
+        }
+        finally
+        {
+            this.keepAlive.close();
+        }
+    }
+    
+    @Test
+    public void testPipelineMatchesSerialImport() throws Exception
+    {
+        final byte[] list =
+                ExampleBenchmarkFixtures.trayScanList(ExampleTrayScanPipelineTest.ROWS,
+                        ExampleTrayScanPipelineTest.PROJECTS, ExampleTrayScanPipelineTest.EXPERIMENTS, 10);
+        
+        final Map<InferredOWLOntologyID, List<String>> serial =
+                ExampleTrayScanPipelineTest.canonicalise(this.importList(list, 0));
+        Assert.assertEquals(ExampleTrayScanPipelineTest.ROWS, this.countAssignments());
+        
+        final Map<InferredOWLOntologyID, List<String>> parallel =
+                ExampleTrayScanPipelineTest.canonicalise(this.importList(list, 4));
+        Assert.assertEquals(2 * ExampleTrayScanPipelineTest.ROWS, this.countAssignments());
+        
+        Assert.assertEquals(ExampleTrayScanPipelineTest.PROJECTS, serial.size());
+        Assert.assertEquals(serial.keySet(), parallel.keySet());
+        for(final InferredOWLOntologyID nextArtifact : serial.keySet())
+        {
+            Assert.assertFalse(serial.get(nextArtifact).isEmpty());
+            Assert.assertEquals("Statements differed for: " + nextArtifact, serial.get(nextArtifact),
+                    parallel.get(nextArtifact));
+        }
+    }
+}
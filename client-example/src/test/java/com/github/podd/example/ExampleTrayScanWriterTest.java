@@ -0,0 +1,245 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ExampleTrayScanWriter} and {@link ExampleConnectionPool} using an in-memory H2
+ * database with stand-ins for the TrayScan tables and stored procedures.
+ */
+public class ExampleTrayScanWriterTest
+{
+    private String url;
+    
+    private Connection keepAlive;
+    
+    private ExampleConnectionPool pool;
+    
+    /**
+     * Stand-in for the StoreAssign procedure.
+     */
+    public static void storeAssign(final Connection connection, final String trayId, final String plantId,
+            final String position) throws SQLException
+    {
+        ExampleTrayScanWriterTest.insert(connection, "INSERT INTO tab_assign VALUES (?, ?, ?)", trayId, plantId,
+                position);
+    }
+    
+    /**
+     * Stand-in for the StorePlant procedure.
+     */
+    public static void storePlant(final Connection connection, final String plantId, final String potType,
+            final String plantName, final String plantNotes) throws SQLException
+    {
+        ExampleTrayScanWriterTest.insert(connection, "INSERT INTO tab_plant VALUES (?, ?, ?, ?)", plantId, potType,
+                plantName, plantNotes);
+    }
+    
+    /**
+     * Stand-in for the StoreTray procedure.
+     */
+    public static void storeTray(final Connection connection, final String trayId, final String trayTypeName,
+            final String trayNotes) throws SQLException
+    {
+        ExampleTrayScanWriterTest.insert(connection, "INSERT INTO tab_tray VALUES (?, ?, ?)", trayId, trayTypeName,
+                trayNotes);
+    }
+    
+    private static void insert(final Connection connection, final String sql, final String... values)
+        throws SQLException
+    {
+        try (final PreparedStatement statement = connection.prepareStatement(sql);)
+        {
+            for(int i = 0; i < values.length; i++)
+            {
+                statement.setString(i + 1, values[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+    
+    private static ExampleCSVLine line(final String trayId, final String plantId, final String position)
+    {
+        final ExampleCSVLine result = new ExampleCSVLine();
+        result.trayID = trayId;
+        result.trayTypeName = "Type " + trayId;
+        result.trayNotes = "Notes " + trayId;
+        result.plantID = plantId;
+        result.potType = "Pot";
+        result.plantName = "Name " + plantId;
+        result.plantNotes = "Notes " + plantId;
+        result.position = position;
+        return result;
+    }
+    
+    private int count(final String table) throws SQLException
+    {
+        try (final Statement statement = this.keepAlive.createStatement();
+                final ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table);)
+        {
+            Assert.assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        // Keep one connection open for the duration of the test so the in-memory database is not
+        // dropped when the pool returns its connections
+        this.url = "jdbc:h2:mem:trayscan-" + UUID.randomUUID().toString();
+        this.keepAlive = DriverManager.getConnection(this.url, "sa", "");
+        
+        final String className = ExampleTrayScanWriterTest.class.getName();
+        try (final Statement statement = this.keepAlive.createStatement();)
+        {
+            statement.execute("CREATE TABLE tab_tray (tray_textId VARCHAR(255) PRIMARY KEY, "
+                    + "tray_type VARCHAR(255), tray_notes VARCHAR(255))");
+            statement.execute("CREATE TABLE tab_plant (plant_textId VARCHAR(255) PRIMARY KEY, "
+                    + "pot_type VARCHAR(255), plant_name VARCHAR(255), plant_notes VARCHAR(255))");
+            statement.execute("CREATE TABLE tab_assign (tray_textId VARCHAR(255), plant_textId VARCHAR(255), "
+                    + "position VARCHAR(255))");
+            statement.execute("CREATE ALIAS StoreTray FOR \"" + className + ".storeTray\"");
+            statement.execute("CREATE ALIAS StorePlant FOR \"" + className + ".storePlant\"");
+            statement.execute("CREATE ALIAS StoreAssign FOR \"" + className + ".storeAssign\"");
+        }
+        
+        this.pool = new ExampleConnectionPool(this.url, "sa", "", 2);
+    }
+    
+    @After
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            this.pool.close();
+        }
+        finally
+        {
+            this.keepAlive.close();
+        }
+    }
+    
+    @Test
+    public void testPoolReusesConnections() throws Exception
+    {
+        Connection first;
+        try (final Connection connection = this.pool.getConnection();)
+        {
+            first = connection.unwrap(Connection.class);
+        }
+        try (final Connection connection = this.pool.getConnection();)
+        {
+            Assert.assertSame(first, connection.unwrap(Connection.class));
+        }
+        Assert.assertEquals(1, this.pool.getOpenConnectionCount());
+    }
+    
+    @Test
+    public void testPoolRollsBackReturnedConnections() throws Exception
+    {
+        try (final Connection connection = this.pool.getConnection();)
+        {
+            connection.setAutoCommit(false);
+            ExampleTrayScanWriterTest.storeTray(connection, "T1", "Type", "Notes");
+        }
+        
+        Assert.assertEquals(0, this.count("tab_tray"));
+    }
+    
+    @Test(expected = SQLException.class)
+    public void testPoolRejectsUseAfterClose() throws Exception
+    {
+        final Connection connection = this.pool.getConnection();
+        connection.close();
+        Assert.assertTrue(connection.isClosed());
+        connection.createStatement();
+    }
+    
+    @Test
+    public void testWriterBatches() throws Exception
+    {
+        try (final ExampleTrayScanWriter writer = new ExampleTrayScanWriter(this.pool, 2);)
+        {
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P1", "A1"));
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P2", "A2"));
+            
+            // The first batch is full, so it must have been written
+            Assert.assertEquals(1, this.count("tab_tray"));
+            Assert.assertEquals(2, this.count("tab_plant"));
+            
+            writer.add(ExampleTrayScanWriterTest.line("T2", "P3", "A1"));
+            
+            // The second batch is not full yet
+            Assert.assertEquals(1, this.count("tab_tray"));
+            
+            writer.flush();
+        }
+        
+        Assert.assertEquals(2, this.count("tab_tray"));
+        Assert.assertEquals(3, this.count("tab_plant"));
+        Assert.assertEquals(3, this.count("tab_assign"));
+    }
+    
+    @Test
+    public void testWriterCloseDiscardsPendingLines() throws Exception
+    {
+        try (final ExampleTrayScanWriter writer = new ExampleTrayScanWriter(this.pool, 2);)
+        {
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P1", "A1"));
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P2", "A2"));
+            writer.add(ExampleTrayScanWriterTest.line("T2", "P3", "A1"));
+        }
+        
+        // Only the full batch was written
+        Assert.assertEquals(1, this.count("tab_tray"));
+        Assert.assertEquals(2, this.count("tab_plant"));
+        Assert.assertEquals(2, this.count("tab_assign"));
+    }
+    
+    @Test
+    public void testWriterSkipsExistingTraysAndPlants() throws Exception
+    {
+        ExampleTrayScanWriterTest.storeTray(this.keepAlive, "T1", "Type", "Notes");
+        ExampleTrayScanWriterTest.storePlant(this.keepAlive, "P1", "Pot", "Name", "Notes");
+        
+        try (final ExampleTrayScanWriter writer = new ExampleTrayScanWriter(this.pool, 10);)
+        {
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P1", "A1"));
+            writer.add(ExampleTrayScanWriterTest.line("T1", "P2", "A2"));
+            writer.add(ExampleTrayScanWriterTest.line("T2", "P2", "A2"));
+            writer.flush();
+        }
+        
+        Assert.assertEquals(2, this.count("tab_tray"));
+        Assert.assertEquals(2, this.count("tab_plant"));
+        // Only the new plant is assigned, using the first line it was found on
+        Assert.assertEquals(1, this.count("tab_assign"));
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Model;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LinkedHashModel;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+
+/**
+ * Tests for {@link ExampleUriResolutionCache}.
+ */
+public class ExampleUriResolutionCacheTest
+{
+    private static final String QUERY = "CONSTRUCT { ?s ?p ?o } WHERE { ?s ?p ?o }";
+    
+    private static final String VERSION_1 = "urn:test:artifact:version:1";
+    
+    private static final String VERSION_2 = "urn:test:artifact:version:2";
+    
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+    
+    private Path directory;
+    
+    private Model model;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        this.directory = this.tempDir.newFolder("cache").toPath();
+        
+        final ValueFactory vf = ValueFactoryImpl.getInstance();
+        this.model = new LinkedHashModel();
+        this.model.add(vf.createURI("urn:test:experiment:1"), RDFS.LABEL,
+                vf.createLiteral("Project#2013-0001_Experiment#0001"));
+        this.model.add(vf.createURI("urn:test:experiment:2"), RDFS.LABEL,
+                vf.createLiteral("Project#2013-0001_Experiment#0002"));
+    }
+    
+    @Test
+    public void testDiscardsPartialRecord() throws Exception
+    {
+        final long size;
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+            size = Files.size(cache.getFile());
+            cache.put(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY, this.model);
+        }
+        
+        // Simulate an import that was interrupted while writing the second record
+        final Path file = this.directory.resolve(ExampleUriResolutionCache.FILE_NAME);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);)
+        {
+            channel.truncate(size + 10);
+        }
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(1, cache.size());
+            Assert.assertEquals(size, Files.size(file));
+            Assert.assertEquals(this.model,
+                    cache.get(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY));
+            Assert.assertNull(cache.get(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY));
+        }
+    }
+    
+    @Test
+    public void testDiscardsUnknownFormat() throws Exception
+    {
+        final Path file = this.directory.resolve(ExampleUriResolutionCache.FILE_NAME);
+        Files.write(file, "Not a cache file".getBytes("UTF-8"));
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(0, cache.size());
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+        }
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(1, cache.size());
+        }
+    }
+    
+    @Test
+    public void testGetAppendedRecords() throws Exception
+    {
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+            cache.put(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY,
+                    new LinkedHashModel());
+            
+            // Both records were appended after the file was mapped
+            Assert.assertEquals(this.model,
+                    cache.get(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY));
+            Assert.assertTrue(cache.get(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY)
+                    .isEmpty());
+        }
+    }
+    
+    @Test
+    public void testGetMissingVersion() throws Exception
+    {
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+            
+            Assert.assertNull(cache.get(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY));
+            Assert.assertNull(cache.get(ExampleUriResolutionCacheTest.VERSION_1, "ASK { }"));
+        }
+    }
+    
+    @Test
+    public void testLockedWhileOpen() throws Exception
+    {
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            try
+            {
+                new ExampleUriResolutionCache(this.directory).close();
+                Assert.fail("Did not find expected exception");
+            }
+            catch(final IOException e)
+            {
+                // Expected, as the cache is still open
+            }
+            
+            // The cache that holds the lock can still be used
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+        }
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(1, cache.size());
+        }
+    }
+    
+    @Test
+    public void testPersistsAcrossRuns() throws Exception
+    {
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, "ASK { }", new LinkedHashModel());
+        }
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(2, cache.size());
+            Assert.assertEquals(this.model,
+                    cache.get(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY));
+            Assert.assertTrue(cache.get(ExampleUriResolutionCacheTest.VERSION_1, "ASK { }").isEmpty());
+        }
+    }
+    
+    @Test
+    public void testRetainVersions() throws Exception
+    {
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            cache.put(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY, this.model);
+            cache.put(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY, this.model);
+            
+            Assert.assertEquals(0, cache.retainVersions(Arrays.asList(ExampleUriResolutionCacheTest.VERSION_1,
+                    ExampleUriResolutionCacheTest.VERSION_2)));
+            Assert.assertEquals(1, cache.retainVersions(Arrays.asList(ExampleUriResolutionCacheTest.VERSION_2)));
+            
+            Assert.assertNull(cache.get(ExampleUriResolutionCacheTest.VERSION_1, ExampleUriResolutionCacheTest.QUERY));
+            Assert.assertEquals(this.model,
+                    cache.get(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY));
+        }
+        
+        try (final ExampleUriResolutionCache cache = new ExampleUriResolutionCache(this.directory);)
+        {
+            Assert.assertEquals(1, cache.size());
+            Assert.assertEquals(this.model,
+                    cache.get(ExampleUriResolutionCacheTest.VERSION_2, ExampleUriResolutionCacheTest.QUERY));
+        }
+    }
+}
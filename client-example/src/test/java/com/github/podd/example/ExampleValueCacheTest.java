@@ -0,0 +1,62 @@
+/**
+ * PODD is an OWL ontology database used for scientific project management
+ * 
+ * Copyright (C) 2009-2013 The University Of Queensland
+ * 
+ * This program is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Affero General Public License as published by the Free Software Foundation, either version 3
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Affero General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Affero General Public License along with this program.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.github.podd.example;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Tests for {@link ExampleValueCache}.
+ */
+public class ExampleValueCacheTest
+{
+    @Test
+    public void testFullCacheStillCreatesValues()
+    {
+        final ExampleValueCache cache = new ExampleValueCache(ValueFactoryImpl.getInstance(), 1);
+        
+        final Literal first = cache.createLiteral("A");
+        final Literal second = cache.createLiteral("B");
+        
+        Assert.assertEquals("B", second.getLabel());
+        Assert.assertNotSame(second, cache.createLiteral("B"));
+        Assert.assertSame(first, cache.createLiteral("A"));
+        Assert.assertEquals(1, cache.getSize());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(3, cache.getMissCount());
+    }
+    
+    @Test
+    public void testInternLiterals()
+    {
+        final ExampleValueCache cache = new ExampleValueCache(ValueFactoryImpl.getInstance(), 10);
+        
+        final Literal plain = cache.createLiteral("1");
+        final Literal typed = cache.createLiteral("1", XMLSchema.STRING);
+        
+        Assert.assertSame(plain, cache.createLiteral("1"));
+        Assert.assertSame(typed, cache.createLiteral("1", XMLSchema.STRING));
+        Assert.assertEquals(XMLSchema.STRING, typed.getDatatype());
+        Assert.assertNull(plain.getDatatype());
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+}